@@ -1,5 +1,6 @@
 package com.example.eomix;
 
+import com.example.eomix.repositories.FhirResourceRepository;
 import com.example.eomix.resource_provider.*;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -35,6 +36,7 @@ public class EomixApplication {
      * @param observationRP       the resource provider for {@code Observation} resources
      * @param molecularSequenceRP the resource provider for {@code MolecularSequence} resources
      * @param groupRP             the resource provider for {@code Group} resources
+     * @param fhirResourceRepository the repository the FHIR resources are stored in
      * @return a configured {@code ServletRegistrationBean} that registers the FHIR servlet
      * @implSpec This method uses {@code ServletRegistrationBean} to register and map the servlet.
      * The servlet is initialized with multiple resource providers, enabling it to support a broad
@@ -44,8 +46,8 @@ public class EomixApplication {
      * making it accessible for handling incoming FHIR requests.
      */
     @Bean
-    public ServletRegistrationBean ServletRegistrationBean(SpecimenRP specimenRP, PatientRP patientRP, ObservationRP observationRP, MolecularSequenceRP molecularSequenceRP, GroupRP groupRP) {
-        ServletRegistrationBean registration = new ServletRegistrationBean(new SimpleRestfulServer(specimenRP, patientRP, observationRP, molecularSequenceRP, groupRP), "/fhir/*");
+    public ServletRegistrationBean ServletRegistrationBean(SpecimenRP specimenRP, PatientRP patientRP, ObservationRP observationRP, MolecularSequenceRP molecularSequenceRP, GroupRP groupRP, FhirResourceRepository fhirResourceRepository) {
+        ServletRegistrationBean registration = new ServletRegistrationBean(new SimpleRestfulServer(specimenRP, patientRP, observationRP, molecularSequenceRP, groupRP, fhirResourceRepository), "/fhir/*");
         registration.setName("FhirServlet");
         return registration;
     }
@@ -2,10 +2,13 @@ package com.example.eomix;
 
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.server.FifoMemoryPagingProvider;
 import ca.uhn.fhir.rest.server.RestfulServer;
 import ca.uhn.fhir.rest.server.interceptor.CorsInterceptor;
-import ca.uhn.fhir.rest.server.provider.HashMapResourceProvider;
+import com.example.eomix.repositories.FhirResourceRepository;
+import com.example.eomix.repositories.InMemoryFhirResourceRepository;
 import com.example.eomix.resource_provider.*;
+import com.example.eomix.utils.Constants;
 import jakarta.servlet.annotation.WebServlet;
 import org.hl7.fhir.r5.model.*;
 import org.jetbrains.annotations.NotNull;
@@ -30,6 +33,7 @@ public class SimpleRestfulServer extends RestfulServer {
     private final transient PatientRP patientResourceProvider;
     private final transient MolecularSequenceRP molecularSequenceResourceProvider;
     private final transient GroupRP groupResourceProvider;
+    private final transient FhirResourceRepository fhirResourceRepository;
 
     /**
      * Initializes a new FHIR R5 RESTful server with specified resource providers.
@@ -56,15 +60,17 @@ public class SimpleRestfulServer extends RestfulServer {
      * @param observationResourceProvider       observation resource provider
      * @param molecularSequenceResourceProvider molecular sequence resource provider
      * @param groupResourceProvider             group resource provider
+     * @param fhirResourceRepository            the repository the resources are stored in
      * @implSpec Uses FHIR R5 (latest stable version)
      * @implNote Primarily intended for development environments
      */
-    public SimpleRestfulServer(SpecimenRP specimenResourceProvider, PatientRP patientResourceProvider, ObservationRP observationResourceProvider, MolecularSequenceRP molecularSequenceResourceProvider, GroupRP groupResourceProvider) {
+    public SimpleRestfulServer(SpecimenRP specimenResourceProvider, PatientRP patientResourceProvider, ObservationRP observationResourceProvider, MolecularSequenceRP molecularSequenceResourceProvider, GroupRP groupResourceProvider, FhirResourceRepository fhirResourceRepository) {
         this.specimenResourceProvider = specimenResourceProvider;
         this.observationResourceProvider = observationResourceProvider;
         this.patientResourceProvider = patientResourceProvider;
         this.molecularSequenceResourceProvider = molecularSequenceResourceProvider;
         this.groupResourceProvider = groupResourceProvider;
+        this.fhirResourceRepository = fhirResourceRepository;
     }
 
     /**
@@ -111,10 +117,16 @@ public class SimpleRestfulServer extends RestfulServer {
      * responsible for handling various FHIR resource types such as {@code Specimen}, {@code Patient},
      * {@code Observation}, {@code MolecularSequence}, and {@code Group}.
      * It also registers a CORS interceptor to support cross-origin requests.
+     * Search results are paged: the page size is set with {@code _count}, and the following pages are fetched with the
+     * {@code next} links, served by a paging provider keeping a bounded number of searches.
+     * With the {@link InMemoryFhirResourceRepository}, the in-memory resource providers and the interceptor service
+     * (with the identifier index that follows every create, update and delete) are shared with the ingestion.
+     * With a persistent repository, the read, create, update and delete interactions are served from it by
+     * {@link FhirRepositoryResourceProvider}s.
      *
      * @implSpec This method uses {@link ca.uhn.fhir.context.FhirContext#forR5()} to create the context
-     * for R5 FHIR resources. It then registers both custom and in-memory (HashMap-based) resource providers
-     * for the supported resource types.
+     * for R5 FHIR resources. It then registers both custom and repository resource providers
+     * for the supported resource types, and a transaction provider writing to the repository.
      * @implNote This method is typically called during server startup or configuration
      * to prepare the FHIR environment for processing incoming requests.
      * It ensures that all necessary resource providers and interceptors are registered before handling requests.
@@ -122,16 +134,26 @@ public class SimpleRestfulServer extends RestfulServer {
     @Override
     protected void initialize() {
         setFhirContext(FhirContext.forR5());
+        FifoMemoryPagingProvider pagingProvider = new FifoMemoryPagingProvider(Constants.FHIR_MAXIMUM_PAGED_SEARCHES);
+        pagingProvider.setDefaultPageSize(Constants.FHIR_DEFAULT_PAGE_SIZE);
+        pagingProvider.setMaximumPageSize(Constants.FHIR_MAXIMUM_PAGE_SIZE);
+        setPagingProvider(pagingProvider);
         registerProvider(specimenResourceProvider);
         registerProvider(patientResourceProvider);
         registerProvider(observationResourceProvider);
         registerProvider(molecularSequenceResourceProvider);
         registerProvider(groupResourceProvider);
-        registerProvider(new HashMapResourceProvider<>(ourFhirContext, Specimen.class));
-        registerProvider(new HashMapResourceProvider<>(ourFhirContext, Patient.class));
-        registerProvider(new HashMapResourceProvider<>(ourFhirContext, Observation.class));
-        registerProvider(new HashMapResourceProvider<>(ourFhirContext, MolecularSequence.class));
-        registerProvider(new HashMapResourceProvider<>(ourFhirContext, Group.class));
+        if (fhirResourceRepository instanceof InMemoryFhirResourceRepository inMemoryRepository) {
+            setInterceptorService(inMemoryRepository.getInterceptorService());
+            inMemoryRepository.getResourceProviders().forEach(this::registerProvider);
+        } else {
+            registerProvider(new FhirRepositoryResourceProvider<>(fhirResourceRepository, Specimen.class));
+            registerProvider(new FhirRepositoryResourceProvider<>(fhirResourceRepository, Patient.class));
+            registerProvider(new FhirRepositoryResourceProvider<>(fhirResourceRepository, Observation.class));
+            registerProvider(new FhirRepositoryResourceProvider<>(fhirResourceRepository, MolecularSequence.class));
+            registerProvider(new FhirRepositoryResourceProvider<>(fhirResourceRepository, Group.class));
+        }
+        registerProvider(new TransactionProvider(fhirResourceRepository));
         CorsInterceptor corsInterceptor = getCorsInterceptor();
         registerInterceptor(corsInterceptor);
 
@@ -36,6 +36,9 @@ public class CouchDBConfig {
     @Value("${couchdb.database.experiment}")
     private String experimentDatabase;
 
+    @Value("${couchdb.database.fhir}")
+    private String fhirDatabase;
+
     /**
      * Couch db instance couch db instance.
      *
@@ -93,4 +96,19 @@ public class CouchDBConfig {
     public CouchDbConnector couchDbConnector3(CouchDbInstance couchDbInstance) {
         return couchDbInstance.createConnector(attachmentDatabase, true);
     }
+
+    /**
+     * Couch db connector 4 : fhir and returns a CouchDbConnector instance.
+     * This method creates a CouchDbConnector for the fhirDatabase database,
+     * allowing for interaction with the CouchDB instance.
+     *
+     * @param couchDbInstance the couch db instance
+     * @return the couch db connector
+     * @implNote This connector is used for storing and retrieving the FHIR resources.
+     * @implSpec The connector is created with the fhirDatabase database name and is set to create the database if it does not exist.
+     */
+    @Bean
+    public CouchDbConnector couchDbConnector4(CouchDbInstance couchDbInstance) {
+        return couchDbInstance.createConnector(fhirDatabase, true);
+    }
 }
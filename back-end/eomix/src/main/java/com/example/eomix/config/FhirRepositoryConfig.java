@@ -0,0 +1,53 @@
+package com.example.eomix.config;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.example.eomix.repositories.CouchDbFhirResourceRepository;
+import com.example.eomix.repositories.FhirResourceDocumentRepository;
+import com.example.eomix.repositories.FhirResourceRepository;
+import com.example.eomix.service.ResourcesFetcher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The type Fhir repository config.
+ * <p>
+ * The FHIR resources are stored according to the following properties:
+ * <ul>
+ *     <li>{@code fhir.server.remote-url}: if set, on a remote FHIR server.</li>
+ *     <li>{@code fhir.store=couchdb}: in the CouchDB database {@code couchdb.database.fhir}, so that they survive a
+ *     restart.</li>
+ *     <li>{@code fhir.store=memory}: in process, on the in-memory store of the embedded FHIR server.</li>
+ * </ul>
+ */
+@Configuration
+public class FhirRepositoryConfig {
+
+    /**
+     * The constant COUCHDB_STORE.
+     */
+    public static final String COUCHDB_STORE = "couchdb";
+
+    @Value("${fhir.server.remote-url:}")
+    private String remoteUrl;
+
+    @Value("${fhir.store:couchdb}")
+    private String store;
+
+    /**
+     * Fhir resource repository.
+     *
+     * @param documentRepository the CouchDB repository of the FHIR resource documents
+     * @return the FHIR resource repository used by the ingestion and the resource providers
+     * @implNote The repository is held by {@link ResourcesFetcher}, which is also used outside the Spring context.
+     */
+    @Bean
+    public FhirResourceRepository fhirResourceRepository(FhirResourceDocumentRepository documentRepository) {
+        if (remoteUrl != null && !remoteUrl.isBlank()) {
+            ResourcesFetcher.useRemoteServer(remoteUrl);
+        } else if (COUCHDB_STORE.equalsIgnoreCase(store)) {
+            ResourcesFetcher.useRepository(new CouchDbFhirResourceRepository(FhirContext.forR5Cached(), documentRepository));
+        }
+        return ResourcesFetcher.getRepository();
+    }
+}
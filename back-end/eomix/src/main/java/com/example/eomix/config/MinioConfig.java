@@ -1,5 +1,6 @@
 package com.example.eomix.config;
 
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -20,6 +21,12 @@ public class MinioConfig {
     @Value("${minio.url}")
     private String minioUrl;
 
+    @Value("${minio.public.url:${minio.url}}")
+    private String minioPublicUrl;
+
+    @Value("${minio.region:us-east-1}")
+    private String region;
+
     /**
      * Minio client .
      * * This method creates a MinioClient bean that can be used to interact with the MinIO server.
@@ -36,4 +43,28 @@ public class MinioConfig {
                 .credentials(accessKey, secretKey)
                 .build();
     }
+
+    /**
+     * Multipart minio client.
+     * * This method creates the client of the multipart uploads whose parts are uploaded by the browser.
+     * * Its operations go to the MinIO server URL, while the URLs of the parts are signed for the public URL of MinIO
+     * ({@code minio.public.url}, the server URL by default).
+     *
+     * @return the multipart minio client
+     * @implNote Both clients use the region {@code minio.region}, so that no request is needed to look it up.
+     */
+    @Bean
+    public MultipartMinioClient multipartMinioClient() {
+        MinioAsyncClient client = MinioAsyncClient.builder()
+                .endpoint(minioUrl)
+                .credentials(accessKey, secretKey)
+                .region(region)
+                .build();
+        MinioClient presigner = MinioClient.builder()
+                .endpoint(minioPublicUrl)
+                .credentials(accessKey, secretKey)
+                .region(region)
+                .build();
+        return new MultipartMinioClient(client, presigner, region);
+    }
 }
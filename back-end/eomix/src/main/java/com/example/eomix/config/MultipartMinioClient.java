@@ -0,0 +1,210 @@
+package com.example.eomix.config;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import io.minio.GetPresignedObjectUrlArgs;
+import io.minio.ListPartsResponse;
+import io.minio.MinioAsyncClient;
+import io.minio.MinioClient;
+import io.minio.RemoveObjectArgs;
+import io.minio.errors.MinioException;
+import io.minio.http.Method;
+import io.minio.messages.Part;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+/**
+ * The type Multipart minio client.
+ * <p>
+ * This client exposes the multipart upload operations of the S3 API, which the MinIO SDK keeps protected, so that the
+ * parts of an object can be uploaded by the browser itself, with presigned URLs:
+ * </p>
+ * <ul>
+ *     <li>the upload is created and completed, or aborted, by the server;</li>
+ *     <li>the URLs of the parts are signed for the public endpoint of MinIO ({@code minio.public.url}), the one the
+ *     browser can reach, which may differ from the endpoint used by the server.</li>
+ * </ul>
+ * <p>
+ * The downloads redirected to MinIO are signed for the public endpoint the same way.
+ * </p>
+ *
+ * @implNote The region is fixed ({@code minio.region}), so that signing a URL does not query MinIO.
+ */
+public class MultipartMinioClient extends MinioAsyncClient {
+
+    private final MinioClient presigner;
+    private final String region;
+
+    /**
+     * Instantiates a new Multipart minio client.
+     *
+     * @param client    the client connected to the endpoint used by the server
+     * @param presigner the client signing the URLs for the public endpoint
+     * @param region    the region of the buckets
+     */
+    MultipartMinioClient(MinioAsyncClient client, MinioClient presigner, String region) {
+        super(client);
+        this.presigner = presigner;
+        this.region = region;
+    }
+
+    /**
+     * Creates a multipart upload.
+     *
+     * @param bucketName  the bucket name
+     * @param objectName  the object name
+     * @param contentType the content type of the object, or null
+     * @param tags        the tags of the object, set when the upload is completed
+     * @return the upload id
+     * @throws MinioException           if MinIO rejects the request
+     * @throws GeneralSecurityException if the request cannot be signed
+     * @throws IOException              if MinIO cannot be reached
+     */
+    public String createMultipartUpload(String bucketName, String objectName, String contentType,
+                                        Map<String, String> tags) throws MinioException, GeneralSecurityException, IOException {
+        Multimap<String, String> headers = HashMultimap.create();
+        if (contentType != null) {
+            headers.put("Content-Type", contentType);
+        }
+        if (!tags.isEmpty()) {
+            headers.put("x-amz-tagging", tags.entrySet().stream()
+                    .map(tag -> encode(tag.getKey()) + "=" + encode(tag.getValue()))
+                    .collect(Collectors.joining("&")));
+        }
+        return join(createMultipartUploadAsync(bucketName, region, objectName, headers, null)).result().uploadId();
+    }
+
+    /**
+     * Signs the URL of a part of a multipart upload, for the public endpoint.
+     *
+     * @param bucketName    the bucket name
+     * @param objectName    the object name
+     * @param uploadId      the upload id
+     * @param partNumber    the part number, from 1
+     * @param expirySeconds the validity of the URL, in seconds
+     * @return the URL, to upload the part with a {@code PUT}
+     * @throws MinioException           if the URL cannot be built
+     * @throws GeneralSecurityException if the URL cannot be signed
+     * @throws IOException              if the URL cannot be built
+     */
+    public String presignUploadPart(String bucketName, String objectName, String uploadId, int partNumber,
+                                    int expirySeconds) throws MinioException, GeneralSecurityException, IOException {
+        return presigner.getPresignedObjectUrl(GetPresignedObjectUrlArgs.builder().method(Method.PUT)
+                .bucket(bucketName).object(objectName).region(region).expiry(expirySeconds)
+                .extraQueryParams(Map.of("uploadId", uploadId, "partNumber", String.valueOf(partNumber))).build());
+    }
+
+    /**
+     * Signs the URL of an object, for the public endpoint.
+     *
+     * @param bucketName      the bucket name
+     * @param objectName      the object name
+     * @param expirySeconds   the validity of the URL, in seconds
+     * @param responseHeaders the headers of the response overridden by MinIO, e.g. {@code response-content-type}
+     * @return the URL, to download the object with a {@code GET}
+     * @throws MinioException           if the URL cannot be built
+     * @throws GeneralSecurityException if the URL cannot be signed
+     * @throws IOException              if the URL cannot be built
+     */
+    public String presignGetObject(String bucketName, String objectName, int expirySeconds,
+                                   Map<String, String> responseHeaders) throws MinioException, GeneralSecurityException, IOException {
+        return presigner.getPresignedObjectUrl(GetPresignedObjectUrlArgs.builder().method(Method.GET)
+                .bucket(bucketName).object(objectName).region(region).expiry(expirySeconds)
+                .extraQueryParams(responseHeaders).build());
+    }
+
+    /**
+     * Lists the parts uploaded so far.
+     *
+     * @param bucketName the bucket name
+     * @param objectName the object name
+     * @param uploadId   the upload id
+     * @return the parts, with their number, ETag and size
+     * @throws MinioException           if MinIO rejects the request, e.g. if the upload is unknown
+     * @throws GeneralSecurityException if the request cannot be signed
+     * @throws IOException              if MinIO cannot be reached
+     */
+    public List<Part> listParts(String bucketName, String objectName, String uploadId) throws MinioException, GeneralSecurityException, IOException {
+        List<Part> parts = new ArrayList<>();
+        Integer partNumberMarker = null;
+        ListPartsResponse response;
+        do {
+            response = join(listPartsAsync(bucketName, region, objectName, null, partNumberMarker, uploadId, null, null));
+            parts.addAll(response.result().partList());
+            partNumberMarker = response.result().nextPartNumberMarker();
+        } while (response.result().isTruncated());
+        return parts;
+    }
+
+    /**
+     * Completes a multipart upload.
+     *
+     * @param bucketName the bucket name
+     * @param objectName the object name
+     * @param uploadId   the upload id
+     * @param parts      the parts of the object, in order
+     * @throws MinioException           if MinIO rejects the request
+     * @throws GeneralSecurityException if the request cannot be signed
+     * @throws IOException              if MinIO cannot be reached
+     */
+    public void completeMultipartUpload(String bucketName, String objectName, String uploadId, List<Part> parts) throws MinioException, GeneralSecurityException, IOException {
+        Part[] completedParts = parts.stream().map(part -> new Part(part.partNumber(), part.etag())).toArray(Part[]::new);
+        join(completeMultipartUploadAsync(bucketName, region, objectName, uploadId, completedParts, null, null));
+    }
+
+    /**
+     * Aborts a multipart upload, deleting its parts.
+     *
+     * @param bucketName the bucket name
+     * @param objectName the object name
+     * @param uploadId   the upload id
+     * @throws MinioException           if MinIO rejects the request
+     * @throws GeneralSecurityException if the request cannot be signed
+     * @throws IOException              if MinIO cannot be reached
+     */
+    public void abortMultipartUpload(String bucketName, String objectName, String uploadId) throws MinioException, GeneralSecurityException, IOException {
+        join(abortMultipartUploadAsync(bucketName, region, objectName, uploadId, null, null));
+    }
+
+    /**
+     * Deletes an object, e.g. a completed upload whose alignment could not be recorded.
+     *
+     * @param bucketName the bucket name
+     * @param objectName the object name
+     * @throws MinioException           if MinIO rejects the request
+     * @throws GeneralSecurityException if the request cannot be signed
+     * @throws IOException              if MinIO cannot be reached
+     */
+    public void deleteObject(String bucketName, String objectName) throws MinioException, GeneralSecurityException, IOException {
+        join(removeObject(RemoveObjectArgs.builder().bucket(bucketName).region(region).object(objectName).build()));
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    private static <T> T join(CompletableFuture<T> future) throws MinioException, GeneralSecurityException, IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof MinioException minioException) {
+                throw minioException;
+            } else if (cause instanceof GeneralSecurityException generalSecurityException) {
+                throw generalSecurityException;
+            } else if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw e;
+        }
+    }
+}
@@ -1,26 +1,31 @@
 package com.example.eomix.controller;
 
+import com.example.eomix.entities.AlignmentUploadRequest;
+import com.example.eomix.entities.AlignmentUploadSession;
 import com.example.eomix.entities.ExperimentFileEntity;
 import com.example.eomix.entities.ExperimentResponse;
 import com.example.eomix.repositories.ExperimentFileRepository;
+import com.example.eomix.exception.IncompleteUploadException;
 import com.example.eomix.resource_provider.SpecimenRP;
+import com.example.eomix.service.AlignmentUploadSessionService;
 import com.example.eomix.service.MinioStorageService;
 import com.example.eomix.service.RemoteScriptExecutor;
 import com.example.eomix.utils.Helper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.List;
+import java.util.Optional;
 
 import static com.example.eomix.utils.Constants.*;
 
@@ -41,21 +46,24 @@ public class ExperimentsController {
     private final MinioStorageService minioStorageService;
     private final RemoteScriptExecutor scriptExecutor;
     private final ExperimentFileRepository experimentFileRepository;
+    private final AlignmentUploadSessionService alignmentUploadSessionService;
 
 
     /**
      * Instantiates a new Experiments controller.
      *
-     * @param minioStorageService      the minio storage service
-     * @param scriptExecutor           the script executor
-     * @param experimentFileRepository the experiment file repository
-     * @param specimenRP               the specimen rp
+     * @param minioStorageService           the minio storage service
+     * @param scriptExecutor                the script executor
+     * @param experimentFileRepository      the experiment file repository
+     * @param specimenRP                    the specimen rp
+     * @param alignmentUploadSessionService the alignment upload session service
      */
-    public ExperimentsController(MinioStorageService minioStorageService, RemoteScriptExecutor scriptExecutor, ExperimentFileRepository experimentFileRepository, SpecimenRP specimenRP) {
+    public ExperimentsController(MinioStorageService minioStorageService, RemoteScriptExecutor scriptExecutor, ExperimentFileRepository experimentFileRepository, SpecimenRP specimenRP, AlignmentUploadSessionService alignmentUploadSessionService) {
         this.minioStorageService = minioStorageService;
         this.scriptExecutor = scriptExecutor;
         this.experimentFileRepository = experimentFileRepository;
         this.specimenRP = specimenRP;
+        this.alignmentUploadSessionService = alignmentUploadSessionService;
     }
 
     /**
@@ -111,6 +119,73 @@ public class ExperimentsController {
             return responseEntity;
         }
         String pathToJSONInMinio = minioStorageService.uploadAlignmentFile(fq1Files, fq2Files, experimentName, jsonData);
+        return startAlignment(pathToJSONInMinio);
+    }
+
+    /**
+     * Open an upload session of an alignment, whose FASTQ files are uploaded by the browser straight to MinIO, and return a response entity.
+     * * This method takes the alignment parameters and the name and size of the fastq/fasta files, and creates a multipart upload for each file.
+     * * The browser uploads each part of a file with a PUT to its presigned URL, then commits the session with {@link #commitAlignmentUpload(String)}.
+     *
+     * @param request the experiment name, the json data with the parameters for alignment and the fastq/fasta files
+     * @return the response entity, with the upload session
+     * @implNote The method verifies the JSON data for errors before creating the uploads.
+     * @implSpec If a file is invalid, it returns a response entity with a bad request status, and if the metadata file of the experiment is not found, with a not found status.
+     */
+    @PostMapping("/alignment/uploads")
+    public ResponseEntity<Object> openAlignmentUpload(@RequestBody AlignmentUploadRequest request) {
+        ResponseEntity<String> responseEntity = ErrorHandler.verifyErrorsInJSON(request.jsonData(), "Alignment");
+        if (responseEntity.getStatusCode().equals(HttpStatus.BAD_REQUEST)) {
+            return ResponseEntity.badRequest().body(responseEntity.getBody());
+        }
+        try {
+            AlignmentUploadSession session = alignmentUploadSessionService.open(request);
+            return ResponseEntity.status(HttpStatus.CREATED).body(session);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Commit an upload session of an alignment, once its files are uploaded, and execute the remote Python script to start the alignment and return a response entity.
+     * * This method completes the uploads of the session and saves the JSON data to Minio, as {@link #handleAlignment} does once the files are uploaded.
+     *
+     * @param sessionId the session id
+     * @return the response entity
+     * @throws FileNotFoundException the file not found exception
+     * @implSpec If the session is unknown or expired, it returns a response entity with a not found status.
+     * * If a part of a file is missing, it returns a response entity with a conflict status, and the session can be committed again once the part is uploaded.
+     */
+    @PostMapping("/alignment/uploads/{sessionId}/commit")
+    public ResponseEntity<String> commitAlignmentUpload(@PathVariable String sessionId) throws FileNotFoundException {
+        Optional<String> pathToJSONInMinio;
+        try {
+            pathToJSONInMinio = alignmentUploadSessionService.commit(sessionId);
+        } catch (IncompleteUploadException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+        if (pathToJSONInMinio.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Upload session not found or expired");
+        }
+        return startAlignment(pathToJSONInMinio.get());
+    }
+
+    /**
+     * Abort an upload session of an alignment and return a response entity.
+     * * The parts uploaded so far are deleted.
+     *
+     * @param sessionId the session id
+     * @return the response entity
+     * @implSpec If the session is unknown or expired, it returns a response entity with a not found status.
+     */
+    @DeleteMapping("/alignment/uploads/{sessionId}")
+    public ResponseEntity<Void> abortAlignmentUpload(@PathVariable String sessionId) {
+        return alignmentUploadSessionService.abort(sessionId) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    private ResponseEntity<String> startAlignment(String pathToJSONInMinio) {
         // Start script execution asynchronously
         try {
             scriptExecutor.executeRemotePythonScript(pathToJSONInMinio);
@@ -238,40 +313,45 @@ public class ExperimentsController {
     /**
      * Gets multiqc file from Minio storage service and returns it as a response entity.
      * * This method retrieves a MultiQC file based on the provided folder name and file name.
-     * * It uses the MinioStorageService to access the file and returns it as an InputStreamResource.
+     * * It uses the MinioStorageService to send the file, with range support, or to redirect to a presigned URL of MinIO.
      *
      * @param folderName the folder name
      * @param fileName   the file name
+     * @param redirect   whether to redirect to a presigned URL, the configured default if absent
+     * @param headers    the headers of the request
      * @return the multiqc file
      */
     @GetMapping("/experiment/result/multiqc/{folderName}/{fileName}")
-    public ResponseEntity<InputStreamResource> getMultiqcFile(@PathVariable String folderName, @PathVariable String fileName) {
-        return minioStorageService.getMultiqcFile(folderName, fileName);
+    public ResponseEntity<StreamingResponseBody> getMultiqcFile(@PathVariable String folderName, @PathVariable String fileName, @RequestParam(value = "redirect", required = false) Boolean redirect, @RequestHeader HttpHeaders headers) {
+        return minioStorageService.getMultiqcFile(folderName, fileName, redirect, headers);
     }
 
     /**
      * Gets raw matrix file from Minio storage service and returns it as a response entity.
      * * This method retrieves a raw matrix file based on the provided folder name and file name.
-     * * It uses the MinioStorageService to access the file and returns it as an InputStreamResource.
+     * * It uses the MinioStorageService to zip the matrices of the samples and stream the zip file to the client.
      *
      * @param folderName the folder name
      * @return the raw matrix file
      */
     @GetMapping("/experiment/result/rawMatrix/{folderName}")
-    public ResponseEntity<InputStreamResource> getRawMatrixFile(@PathVariable String folderName) {
+    public ResponseEntity<StreamingResponseBody> getRawMatrixFile(@PathVariable String folderName) {
         return minioStorageService.downloadAllMatricesAsZip(folderName);
 
     }
 
     /**
      * Gets result matrix for post-processing
+     * * The matrix is sent by the server, with range support, or through a redirect to a presigned URL of MinIO.
      *
      * @param experimentName the experiment name
+     * @param redirect       whether to redirect to a presigned URL, the configured default if absent
+     * @param headers        the headers of the request
      * @return the processed matrix
      */
     @GetMapping("/experiment/result/postProcessing/matrix/{experimentName}")
-    public ResponseEntity<InputStreamResource> getProcessedMatrix(@PathVariable String experimentName) {
-        return minioStorageService.getProcessedMatrix(experimentName);
+    public ResponseEntity<StreamingResponseBody> getProcessedMatrix(@PathVariable String experimentName, @RequestParam(value = "redirect", required = false) Boolean redirect, @RequestHeader HttpHeaders headers) {
+        return minioStorageService.getProcessedMatrix(experimentName, redirect, headers);
     }
 
     /**
@@ -289,7 +369,7 @@ public class ExperimentsController {
         headers.add(PRAGMA, NO_CACHE);
         headers.add(EXPIRES, "0");
         try {
-            List<String> sampleIds = experimentFileRepository.getSampleIds(metadataFileName, this);
+            List<String> sampleIds = experimentFileRepository.getSampleIds(metadataFileName);
             return ResponseEntity.ok().headers(headers).body(sampleIds);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
@@ -1,26 +1,40 @@
 package com.example.eomix.controller;
 
+import com.example.eomix.entities.FhirIngestionJob;
+import com.example.eomix.entities.MetadataDeletionJob;
+import com.example.eomix.model.MetadataFileFormat;
 import com.example.eomix.repositories.CsvDocumentRepository;
 import com.example.eomix.repositories.MetadataFileRepository;
-import com.example.eomix.service.FhirServiceImplementation;
-import com.example.eomix.service.FileSystemStorageService;
+import com.example.eomix.service.FhirIngestionJobService;
+import com.example.eomix.service.MetadataCatalogService;
+import com.example.eomix.service.MetadataDeletionJobService;
 import com.example.eomix.service.StorageService;
-import com.fasterxml.jackson.databind.JsonNode;
+import org.ektorp.AttachmentInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPInputStream;
 
 import static com.example.eomix.utils.Constants.*;
 
@@ -41,57 +55,83 @@ public class MetadataController {
     private final StorageService storageService;
     private final MetadataFileRepository fileUploadRepository;
     private final CsvDocumentRepository csvDocumentRepository;
-    private final FhirServiceImplementation fhirServiceImplementation;
+    private final FhirIngestionJobService fhirIngestionJobService;
+    private final MetadataCatalogService metadataCatalogService;
+    private final MetadataDeletionJobService metadataDeletionJobService;
 
     /**
      * Instantiates a new Upload file controller.
      *
-     * @param storageService            the storage service
-     * @param fileUploadRepository      the file upload repository
-     * @param csvDocumentRepository     the csv document repository
-     * @param fhirServiceImplementation the fhir service implementation
+     * @param storageService             the storage service
+     * @param fileUploadRepository       the file upload repository
+     * @param csvDocumentRepository      the csv document repository
+     * @param fhirIngestionJobService    the fhir ingestion job service
+     * @param metadataCatalogService     the metadata catalog service
+     * @param metadataDeletionJobService the metadata deletion job service
      */
     @Autowired
-    public MetadataController(StorageService storageService, MetadataFileRepository fileUploadRepository, CsvDocumentRepository csvDocumentRepository, FhirServiceImplementation fhirServiceImplementation) {
+    public MetadataController(StorageService storageService, MetadataFileRepository fileUploadRepository, CsvDocumentRepository csvDocumentRepository, FhirIngestionJobService fhirIngestionJobService, MetadataCatalogService metadataCatalogService, MetadataDeletionJobService metadataDeletionJobService) {
         this.storageService = storageService;
         this.fileUploadRepository = fileUploadRepository;
         this.csvDocumentRepository = csvDocumentRepository;
-        this.fhirServiceImplementation = fhirServiceImplementation;
+        this.fhirIngestionJobService = fhirIngestionJobService;
+        this.metadataCatalogService = metadataCatalogService;
+        this.metadataDeletionJobService = metadataDeletionJobService;
     }
 
     /**
      * Handle file upload and store it on CouchDB and return a response entity.
-     * * This method handles the file upload, detects the delimiter, and stores the file on CouchDB.
+     * * This method handles the file upload and stores the file on CouchDB; the storage service detects the delimiter,
+     * * headers and type rows of a csv file from its first bytes.
      * * It also saves the file metadata in the CSV document repository.
+     * * The content hash of the file is computed while it is staged for the CSV document repository: a file uploaded
+     * * again with the same name and content is not parsed nor stored again.
+     * * A file whose deletion is queued or running is refused, so that its new samples are not deleted with the old
+     * * ones.
      *
-     * @param detectedDelimiter  the detected delimiter
      * @param file               the file "sample metadata.csv"
      * @param redirectAttributes the redirect attributes
      * @return the response entity
      * @throws IOException the io exception
+     * @implSpec If the deletion of a file of the same name is queued or running, it returns a response entity with a
+     * conflict status.
      */
     @PostMapping("/upload")
-    public ResponseEntity<Map<String, String>> handleMetadataFileUpload(@RequestParam("detectedDelimiter") String detectedDelimiter, @RequestParam("file") MultipartFile file, RedirectAttributes redirectAttributes) throws IOException {
+    public ResponseEntity<Map<String, String>> handleMetadataFileUpload(@RequestParam("file") MultipartFile file, RedirectAttributes redirectAttributes) throws IOException {
         long startTime = System.currentTimeMillis();
 
         SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy_HH-mm-ss");
         sdf.format(startTime);
         logger.info("start Time {} ms", startTime);
         Map<String, String> mapResponse = new HashMap<>();
-        ResponseEntity<String> responseEntity = storageService.storeOnCouchDb(file, detectedDelimiter);
-        if (responseEntity.getStatusCode().equals(HttpStatus.OK)) {
-            csvDocumentRepository.addCsvDocument(file);
-            redirectAttributes.addFlashAttribute(MESSAGE, "You successfully uploaded " + file.getOriginalFilename() + "!");
-            logger.info("You successfully uploaded  {}", file.getOriginalFilename());
-            mapResponse.put(MESSAGE, "File uploaded successfully");
-            long endTime = System.currentTimeMillis();
-            long duration = endTime - startTime;
-            logger.info("timeTaken : {} ms", duration);
-            mapResponse.put("timeTaken : ", duration + " ms");
-            return ResponseEntity.ok(mapResponse);
-        } else {
-            mapResponse.put(MESSAGE, responseEntity.getBody());
-            return ResponseEntity.status(responseEntity.getStatusCode()).body(mapResponse);
+        if (metadataDeletionJobService.isDeleting(file.getOriginalFilename())) {
+            logger.info("{} is being deleted, upload refused", file.getOriginalFilename());
+            mapResponse.put(MESSAGE, "File is being deleted, try again once its deletion is done");
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(mapResponse);
+        }
+        try (CsvDocumentRepository.StagedCsv stagedCsv = csvDocumentRepository.stageCsvDocument(file)) {
+            if (!file.isEmpty() && csvDocumentRepository.isStored(stagedCsv)) {
+                logger.info("{} is already uploaded with the same content", file.getOriginalFilename());
+                mapResponse.put(MESSAGE, "File already uploaded, unchanged");
+                mapResponse.put("timeTaken : ", (System.currentTimeMillis() - startTime) + " ms");
+                return ResponseEntity.ok(mapResponse);
+            }
+            ResponseEntity<String> responseEntity = storageService.storeOnCouchDb(file);
+            metadataCatalogService.invalidate();
+            if (responseEntity.getStatusCode().equals(HttpStatus.OK)) {
+                csvDocumentRepository.addCsvDocument(stagedCsv);
+                redirectAttributes.addFlashAttribute(MESSAGE, "You successfully uploaded " + file.getOriginalFilename() + "!");
+                logger.info("You successfully uploaded  {}: {}", file.getOriginalFilename(), responseEntity.getBody());
+                mapResponse.put(MESSAGE, "File uploaded successfully");
+                long endTime = System.currentTimeMillis();
+                long duration = endTime - startTime;
+                logger.info("timeTaken : {} ms", duration);
+                mapResponse.put("timeTaken : ", duration + " ms");
+                return ResponseEntity.ok(mapResponse);
+            } else {
+                mapResponse.put(MESSAGE, responseEntity.getBody());
+                return ResponseEntity.status(responseEntity.getStatusCode()).body(mapResponse);
+            }
         }
     }
 
@@ -99,111 +139,203 @@ public class MetadataController {
     /**
      * Export sample metadata as csv and return a response entity.
      * * This method exports the sample metadata as a CSV file.
-     * * It retrieves the CSV file from the repository based on the provided filename and returns it as a response entity.
+     * * It opens the CSV file stored in the repository based on the provided filename and streams it to the client.
+     * * The file is exported in the format it was uploaded in: an Arrow IPC file is sent as
+     * * {@code application/vnd.apache.arrow.file} or {@code application/vnd.apache.arrow.stream}, with its Arrow
+     * * extension, instead of CSV.
+     * * If the file is stored compressed and the client accepts gzip, the compressed bytes are sent as is with a
+     * * {@code Content-Encoding: gzip} header; otherwise they are decompressed on the fly.
      *
-     * @param filename the filename for the CSV file
+     * @param filename       the filename for the CSV file
+     * @param acceptEncoding the Accept-Encoding header of the request, if any
      * @return the response entity
+     * @implNote The file is never loaded on the heap; the attachment stream is closed once it has been sent.
+     * @implSpec If no file of that name is stored, it returns a response entity with a not found status; if the file
+     * cannot be read, an internal server error status. Both carry a plain text message.
      */
     @GetMapping("/export")
-    public ResponseEntity<byte[]> exportSampleMetadataAsCsv(@RequestParam("filename") String filename) {
+    public ResponseEntity<StreamingResponseBody> exportSampleMetadataAsCsv(@RequestParam("filename") String filename,
+                                                                           @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        AttachmentInputStream attachment;
+        MetadataFileFormat format;
         try {
+            Optional<MetadataFileFormat> storedFormat = csvDocumentRepository.getFormat(filename);
+            Optional<AttachmentInputStream> storedAttachment = storedFormat.flatMap(f -> csvDocumentRepository.openCsv(filename));
+            if (storedAttachment.isEmpty()) {
+                return getTextResponse(HttpStatus.NOT_FOUND, "Metadata file not found: " + filename);
+            }
+            format = storedFormat.get();
+            attachment = storedAttachment.get();
+        } catch (Exception e) {
+            logger.error("Error exporting {}: {}", filename, e.getMessage());
+            return getTextResponse(HttpStatus.INTERNAL_SERVER_ERROR, "Error generating CSV: " + e.getMessage());
+        }
+        boolean compressed = CsvDocumentRepository.isCompressed(attachment);
+        boolean sendCompressed = compressed && acceptsGzip(acceptEncoding);
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "_export" + format.getExtension() + "\"");
+        headers.add(HttpHeaders.CONTENT_TYPE, format.getContentType());
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (sendCompressed) {
+            headers.add(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        if (sendCompressed == compressed && attachment.getContentLength() > 0) {
+            headers.setContentLength(attachment.getContentLength());
+        }
+        StreamingResponseBody body = outputStream -> {
+            try (InputStream inputStream = compressed && !sendCompressed ? new GZIPInputStream(attachment) : attachment) {
+                inputStream.transferTo(outputStream);
+            }
+        };
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
 
-            byte[] csvBytes = csvDocumentRepository.getCsv(filename);
-            HttpHeaders headers = new HttpHeaders();
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "_export.csv\"");
-            headers.add(HttpHeaders.CONTENT_TYPE, "text/csv");
-            return new ResponseEntity<>(csvBytes, headers, HttpStatus.OK);
+    private static ResponseEntity<StreamingResponseBody> getTextResponse(HttpStatus status, String message) {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        return ResponseEntity.status(status).contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                .contentLength(body.length).body(outputStream -> outputStream.write(body));
+    }
 
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(("Error generating CSV: " + e.getMessage()).getBytes());
+    /**
+     * Checks if a client accepts gzip encoded responses.
+     *
+     * @param acceptEncoding the Accept-Encoding header of the request
+     * @return true if gzip (or any encoding) is accepted with a non-zero quality
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.trim().split(";");
+            String name = parameters[0].trim().toLowerCase();
+            if (name.equals("gzip") || name.equals("*")) {
+                boolean refused = Arrays.stream(parameters).skip(1).map(String::trim)
+                        .anyMatch(parameter -> parameter.matches("q=0(\\.0*)?"));
+                return !refused;
+            }
         }
+        return false;
     }
 
     /**
      * Save fhir resource on server and return a response entity.
-     * * This method saves FHIR resources on the server by storing them in the database.
-     * * It takes a filename as a request parameter, retrieves the FHIR resources from the specified file,
-     * * and stores them in the database using the FhirServiceImplementation.
+     * * This method queues the ingestion of the FHIR resources of a metadata file and returns the ingestion job right away.
+     * * It takes a filename as a request parameter; the FHIR resources are retrieved from the specified file
+     * * and stored on the server in the background by the FhirIngestionJobService.
+     * * If the ingestion of the file is already queued or running, the existing job is returned.
      *
      * @param filename the filename
-     * @return the response entity
+     * @return the response entity, with the ingestion job
+     * @implNote The progress of the job is polled with {@link #getFHIRResourceIngestionStatus(String)}.
+     * @implSpec If the queue of the ingestion jobs is full, it returns a response entity with a service unavailable status.
      */
     @PostMapping("/resourceFHIR")
     public ResponseEntity<Object> saveFHIRResourceOnServer(@RequestParam("filename") String filename) {
         try {
-            fhirServiceImplementation.storeAllResources(filename);
-            return ResponseEntity.status(HttpStatus.CREATED).body(null);
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e);
+            FhirIngestionJob job = fhirIngestionJobService.submit(filename);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(MESSAGE, "Too many metadata files are being ingested, try again later"));
         }
     }
 
     /**
-     * Gets file metadata from the file upload repository and returns it as a response entity.
-     * * This method retrieves all file metadata from the file upload repository and formats it into a list of maps.
-     * * It adds appropriate headers to the response to prevent caching and ensure that the data is always fresh.
+     * Gets the status of an ingestion job of FHIR resources and returns it as a response entity.
+     * * The job reports its status, the rows processed, the resources written, the throughput and the error if any.
      *
-     * @return the file metadata
-     * @implNote The method uses the FileSystemStorageService to convert the JsonNode results into a list of maps.
-     * @implSpec If an exception occurs while retrieving the file metadata, it returns a response entity with an internal server error status.
+     * @param jobId the job id
+     * @return the response entity, with the ingestion job
+     * @implSpec If the job is unknown, it returns a response entity with a not found status.
      */
-    @GetMapping("/files/allMetadataFiles")
-    public ResponseEntity<List<Map<String, Object>>> getFileMetadata() {
+    @GetMapping("/resourceFHIR/status")
+    public ResponseEntity<FhirIngestionJob> getFHIRResourceIngestionStatus(@RequestParam("jobId") String jobId) {
         HttpHeaders headers = new HttpHeaders();
         headers.add(CACHE_CONTROL, NO_CACHE_NO_STORE_MUST_REVALIDATE);
-        headers.add(PRAGMA, NO_CACHE);
-        headers.add(EXPIRES, "0");
+        return fhirIngestionJobService.getJob(jobId).map(job -> ResponseEntity.ok().headers(headers).body(job)).orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Gets file metadata from the metadata catalog and returns it as a response entity.
+     * * This method retrieves all file metadata from the in-memory catalog, built from the file upload repository.
+     * * The response carries a strong ETag and must be revalidated by the client, which gets a 304 Not Modified
+     * * while the catalog is unchanged.
+     *
+     * @param request the web request, for the If-None-Match header
+     * @return the file metadata, or null if the client's copy is current (304 Not Modified)
+     * @implNote The catalog is invalidated when a metadata file is uploaded or deleted.
+     * @implSpec If an exception occurs while retrieving the file metadata, it returns a response entity with an internal server error status.
+     */
+    @GetMapping("/files/allMetadataFiles")
+    public ResponseEntity<List<Map<String, Object>>> getFileMetadata(WebRequest request) {
         try {
-            List<JsonNode> results = fileUploadRepository.findAllMetadataFiles();
-            List<Map<String, Object>> fileMetadataList = FileSystemStorageService.getAllMetadataFromJsonNodes(results);
-            return ResponseEntity.ok().headers(headers).body(fileMetadataList);
+            return getCatalogResponse(metadataCatalogService.getAllMetadataFiles(), request);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
         }
     }
 
     /**
-     * Gets file metadata by filename from the file upload repository and returns it as a response entity.
-     * * This method retrieves file metadata based on the provided filename and formats it into a list of maps.
-     * * It adds appropriate headers to the response to prevent caching and ensure that the data is always fresh.
+     * Gets file metadata by filename from the metadata catalog and returns it as a response entity.
+     * * This method retrieves the metadata of the provided filename from the in-memory catalog.
+     * * The response carries a strong ETag and must be revalidated by the client, which gets a 304 Not Modified
+     * * while the metadata of the file is unchanged.
      *
      * @param filename the filename
-     * @return the file metadata by filename
+     * @param request  the web request, for the If-None-Match header
+     * @return the file metadata by filename, or null if the client's copy is current (304 Not Modified)
      */
     @GetMapping("/files/metadata")
-    public ResponseEntity<List<Map<String, Object>>> getFileMetadataByFilename(@RequestParam("filename") String filename) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.add(CACHE_CONTROL, NO_CACHE_NO_STORE_MUST_REVALIDATE);
-        headers.add(PRAGMA, NO_CACHE);
-        headers.add(EXPIRES, "0");
+    public ResponseEntity<List<Map<String, Object>>> getFileMetadataByFilename(@RequestParam("filename") String filename, WebRequest request) {
         try {
-            List<JsonNode> results = fileUploadRepository.findFileMetadataByFilename(filename);
-            List<Map<String, Object>> fileMetadataList = FileSystemStorageService.getAllMetadataFromJsonNodes(results);
-            return ResponseEntity.ok().headers(headers).body(fileMetadataList);
+            return getCatalogResponse(metadataCatalogService.getMetadataFile(filename), request);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
         }
     }
 
+    private static ResponseEntity<List<Map<String, Object>>> getCatalogResponse(MetadataCatalogService.CatalogEntry entry, WebRequest request) {
+        if (request.checkNotModified(entry.eTag())) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(entry.eTag()).cacheControl(CacheControl.noCache()).body(entry.metadata());
+    }
+
     /**
      * Delete metadata by filename and completely remove the document from the repository.
-     * * This method deletes all documents associated with the specified filename from the CSV document repository
-     * * and the file upload repository.
+     * * This method removes the CSV document of the specified filename from the CSV document repository,
+     * * and queues the deletion of all its samples from the file upload repository.
+     * * The file is left out of the metadata files right away.
      *
      * @param filename the filename
-     * @return the response entity
+     * @return the response entity, with the deletion job
+     * @implNote The progress of the job is polled with {@link #getMetadataDeletionStatus(String)}.
      */
     @DeleteMapping("/delete/metadata")
-    public ResponseEntity<String> deleteMetadataByFilename(@RequestParam("filename") String filename) {
+    public ResponseEntity<Object> deleteMetadataByFilename(@RequestParam("filename") String filename) {
         try {
             csvDocumentRepository.completelyRemoveDocument(filename);
-            fileUploadRepository.deleteAllByFilename(filename);
-
-            return ResponseEntity.ok("Deleted all documents with filename: " + filename);
+            MetadataDeletionJob job = metadataDeletionJobService.submit(filename);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error deleting documents: " + e.getMessage());
         }
     }
 
+    /**
+     * Gets the status of a deletion job of metadata and returns it as a response entity.
+     * * The job reports its status, the documents deleted and failed, and the error if any.
+     *
+     * @param jobId the job id
+     * @return the response entity, with the deletion job
+     * @implSpec If the job is unknown, it returns a response entity with a not found status.
+     */
+    @GetMapping("/delete/metadata/status")
+    public ResponseEntity<MetadataDeletionJob> getMetadataDeletionStatus(@RequestParam("jobId") String jobId) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(CACHE_CONTROL, NO_CACHE_NO_STORE_MUST_REVALIDATE);
+        return metadataDeletionJobService.getJob(jobId).map(job -> ResponseEntity.ok().headers(headers).body(job)).orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
 
 }
@@ -0,0 +1,29 @@
+package com.example.eomix.entities;
+
+import java.util.List;
+
+/**
+ * The type Alignment upload request.
+ * This record represents the request opening an upload session of an alignment, whose FASTQ files are then uploaded
+ * by the browser straight to MinIO.
+ * * It carries the same parameters as the multipart submission of an alignment, with the name and size of the FASTQ
+ * files instead of their content.
+ *
+ * @param experimentName the name of the metadata file of the experiment
+ * @param jsonData       the json data with the parameters for alignment
+ * @param fq1Files       the fastq/fasta 1 files
+ * @param fq2Files       the fastq/fasta 2 files, null or empty for single-end data
+ */
+public record AlignmentUploadRequest(String experimentName, String jsonData, List<FastqFile> fq1Files,
+                                     List<FastqFile> fq2Files) {
+
+    /**
+     * The type Fastq file.
+     *
+     * @param name        the file name, as renamed by the browser
+     * @param size        the size of the file, in bytes
+     * @param contentType the content type of the file, or null
+     */
+    public record FastqFile(String name, long size, String contentType) {
+    }
+}
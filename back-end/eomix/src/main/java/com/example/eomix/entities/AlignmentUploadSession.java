@@ -0,0 +1,84 @@
+package com.example.eomix.entities;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The type Alignment upload session.
+ * This class represents an alignment whose FASTQ files are being uploaded by the browser straight to MinIO,
+ * and is returned as is when the session is opened.
+ * <p>
+ * It reports:
+ * <ul>
+ *     <li>sessionId and folderName: the session, to commit or abort, and the folder of the experiment in the bucket.</li>
+ *     <li>expiresAt: the time after which the URLs expire and the uploads of the session are aborted.</li>
+ *     <li>fq1Files and fq2Files: for each FASTQ file, the size of its parts and the presigned URL of each part.</li>
+ * </ul>
+ *
+ * @implNote The alignment parameters are kept with the session until it is committed, but are not returned.
+ */
+@Getter
+public class AlignmentUploadSession {
+    private final String sessionId;
+    private final String experimentName;
+    private final String folderName;
+    private final String createdAt;
+    private final Instant expiresAt;
+    @JsonIgnore
+    private final String jsonData;
+    private final List<FastqUpload> fq1Files;
+    private final List<FastqUpload> fq2Files;
+
+    /**
+     * Instantiates a new Alignment upload session.
+     *
+     * @param sessionId      the session id
+     * @param experimentName the name of the metadata file of the experiment
+     * @param folderName     the folder of the experiment in the bucket
+     * @param createdAt      the creation date of the experiment, as formatted in its folder name
+     * @param expiresAt      the expiry of the session
+     * @param jsonData       the json data with the parameters for alignment
+     * @param fq1Files       the uploads of the fastq/fasta 1 files
+     * @param fq2Files       the uploads of the fastq/fasta 2 files, empty for single-end data
+     */
+    public AlignmentUploadSession(String sessionId, String experimentName, String folderName, String createdAt,
+                                  Instant expiresAt, String jsonData, List<FastqUpload> fq1Files,
+                                  List<FastqUpload> fq2Files) {
+        this.sessionId = sessionId;
+        this.experimentName = experimentName;
+        this.folderName = folderName;
+        this.createdAt = createdAt;
+        this.expiresAt = expiresAt;
+        this.jsonData = jsonData;
+        this.fq1Files = List.copyOf(fq1Files);
+        this.fq2Files = List.copyOf(fq2Files);
+    }
+
+    /**
+     * Checks if the session is expired.
+     *
+     * @param now the current time
+     * @return true if the session is expired
+     */
+    public boolean isExpired(Instant now) {
+        return now.isAfter(expiresAt);
+    }
+
+    /**
+     * The type Fastq upload.
+     *
+     * @param fileName   the file name
+     * @param objectName the name of the object in the bucket
+     * @param uploadId   the id of the multipart upload
+     * @param tag        the tag of the file, recorded in the alignment parameters
+     * @param size       the size of the file, in bytes
+     * @param partSize   the size of the parts, the last one being smaller
+     * @param partUrls   the presigned URLs of the parts, to upload them with a {@code PUT}, in order
+     */
+    public record FastqUpload(String fileName, String objectName, String uploadId, String tag, long size,
+                              long partSize, List<String> partUrls) {
+    }
+}
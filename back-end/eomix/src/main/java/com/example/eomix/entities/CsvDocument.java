@@ -15,9 +15,10 @@ import org.ektorp.support.CouchDbDocument;
  * It extends the CouchDbDocument class, which provides basic functionality
  * for CouchDB documents.
  * <p>
- * The CsvDocument class has two fields:
+ * The CsvDocument class has three fields:
  * - id: a string representing the unique identifier of the document in the database.
  * - filename: a string representing the name of the CSV file.
+ * - contentHash: the SHA-256 hash of the uploaded file, in hex, used to recognize unchanged re-uploads.
  * </p>
  * The class uses Lombok annotations to generate getters and setters for the fields,
  * and the @JsonProperty annotation to specify the JSON property name for the id field.
@@ -31,4 +32,5 @@ public class CsvDocument extends CouchDbDocument {
     @JsonProperty("_id")
     private String id;
     private String filename;
+    private String contentHash;
 }
\ No newline at end of file
@@ -0,0 +1,136 @@
+package com.example.eomix.entities;
+
+import com.example.eomix.model.IngestionJobStatus;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The type Fhir ingestion job.
+ * This class represents the ingestion of the FHIR resources of a metadata file, run in the background,
+ * and is returned as is by the status endpoint.
+ * <p>
+ * It reports:
+ * <ul>
+ *     <li>jobId and filename: the job and the metadata file it ingests.</li>
+ *     <li>status: queued, running, done or error, and the error message if the ingestion failed.</li>
+ *     <li>rowsProcessed and resourcesWritten: the progress of the ingestion.</li>
+ *     <li>throughput: the number of rows processed per second since the job started.</li>
+ * </ul>
+ *
+ * @implNote The progress is updated by the worker thread and read by the request threads, the fields are
+ * volatile or atomic.
+ */
+@Getter
+public class FhirIngestionJob {
+    private final String jobId;
+    private final String filename;
+    private final Instant submittedAt = Instant.now();
+    private volatile IngestionJobStatus status = IngestionJobStatus.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+    @Getter(AccessLevel.NONE)
+    private final AtomicLong rowsProcessed = new AtomicLong();
+    @Getter(AccessLevel.NONE)
+    private final AtomicLong resourcesWritten = new AtomicLong();
+
+    /**
+     * Instantiates a new Fhir ingestion job.
+     *
+     * @param jobId    the job id
+     * @param filename the metadata file name
+     */
+    public FhirIngestionJob(String jobId, String filename) {
+        this.jobId = jobId;
+        this.filename = filename;
+    }
+
+    /**
+     * Marks the job as running.
+     */
+    public void start() {
+        startedAt = Instant.now();
+        status = IngestionJobStatus.RUNNING;
+    }
+
+    /**
+     * Marks the job as done.
+     */
+    public void complete() {
+        finishedAt = Instant.now();
+        status = IngestionJobStatus.DONE;
+    }
+
+    /**
+     * Marks the job as failed.
+     *
+     * @param cause the cause of the failure
+     */
+    public void fail(Throwable cause) {
+        finishedAt = Instant.now();
+        error = cause.getMessage();
+        status = IngestionJobStatus.ERROR;
+    }
+
+    /**
+     * Counts a processed sample row.
+     */
+    public void rowProcessed() {
+        rowsProcessed.incrementAndGet();
+    }
+
+    /**
+     * Counts resources written to the FHIR server.
+     *
+     * @param count the number of resources written
+     */
+    public void addResourcesWritten(int count) {
+        resourcesWritten.addAndGet(count);
+    }
+
+    /**
+     * Gets the number of sample rows processed.
+     *
+     * @return the rows processed
+     */
+    public long getRowsProcessed() {
+        return rowsProcessed.get();
+    }
+
+    /**
+     * Gets the number of resources written to the FHIR server.
+     *
+     * @return the resources written
+     */
+    public long getResourcesWritten() {
+        return resourcesWritten.get();
+    }
+
+    /**
+     * Gets the number of rows processed per second since the job started.
+     *
+     * @return the throughput, 0 if the job has not started
+     */
+    public double getThroughput() {
+        if (startedAt == null) {
+            return 0;
+        }
+        long durationMs = Duration.between(startedAt, finishedAt != null ? finishedAt : Instant.now()).toMillis();
+        return durationMs == 0 ? 0 : rowsProcessed.get() * 1000.0 / durationMs;
+    }
+
+    /**
+     * Checks whether the job is queued or running.
+     *
+     * @return true if the job is not finished
+     */
+    @JsonIgnore
+    public boolean isActive() {
+        return status == IngestionJobStatus.QUEUED || status == IngestionJobStatus.RUNNING;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.eomix.entities;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.ektorp.support.CouchDbDocument;
+import org.ektorp.support.TypeDiscriminator;
+
+/**
+ * The type Fhir resource document.
+ * This class represents a FHIR resource stored in the CouchDB database of the FHIR server.
+ * <p>
+ * The document id is the logical id of the resource ({@code Type/id}), and the identifiers used by the lookups of the
+ * application are copied next to the resource so that they can be indexed by the views of
+ * {@link com.example.eomix.repositories.FhirResourceDocumentRepository}:
+ * </p>
+ * <ul>
+ *     <li>resourceType: the FHIR resource type (Specimen, Patient, Group...).</li>
+ *     <li>accession: the accession identifier, i.e. the metadata file name.</li>
+ *     <li>identifier: the official identifier (sample id, patient id, batch id...).</li>
+ *     <li>version: the version of the resource, incremented on each update and copied to its {@code meta.versionId}.</li>
+ *     <li>resource: the resource encoded in FHIR JSON.</li>
+ * </ul>
+ *
+ * @implNote The class uses Lombok annotations for getter and setter methods.
+ */
+@Getter
+@Setter
+public class FhirResourceDocument extends CouchDbDocument {
+    @TypeDiscriminator
+    private String resourceType;
+    private String accession;
+    private String identifier;
+    private long version;
+    private String resource;
+}
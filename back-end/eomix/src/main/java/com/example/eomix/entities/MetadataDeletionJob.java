@@ -0,0 +1,116 @@
+package com.example.eomix.entities;
+
+import com.example.eomix.model.IngestionJobStatus;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The type Metadata deletion job.
+ * This class represents the deletion of the samples of a metadata file, run in the background,
+ * and is returned as is by the status endpoint.
+ * <p>
+ * It reports:
+ * <ul>
+ *     <li>jobId and filename: the job and the metadata file it deletes.</li>
+ *     <li>status: queued, running, done or error, and the error message if the deletion failed.</li>
+ *     <li>documentsDeleted and documentsFailed: the progress of the deletion.</li>
+ * </ul>
+ *
+ * @implNote The progress is updated by the worker threads and read by the request threads, the fields are
+ * volatile or atomic.
+ */
+@Getter
+public class MetadataDeletionJob {
+    private final String jobId;
+    private final String filename;
+    private final Instant submittedAt = Instant.now();
+    private volatile IngestionJobStatus status = IngestionJobStatus.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+    @Getter(AccessLevel.NONE)
+    private final AtomicLong documentsDeleted = new AtomicLong();
+    @Getter(AccessLevel.NONE)
+    private final AtomicLong documentsFailed = new AtomicLong();
+
+    /**
+     * Instantiates a new Metadata deletion job.
+     *
+     * @param jobId    the job id
+     * @param filename the metadata file name
+     */
+    public MetadataDeletionJob(String jobId, String filename) {
+        this.jobId = jobId;
+        this.filename = filename;
+    }
+
+    /**
+     * Marks the job as running.
+     */
+    public void start() {
+        startedAt = Instant.now();
+        status = IngestionJobStatus.RUNNING;
+    }
+
+    /**
+     * Marks the job as done.
+     */
+    public void complete() {
+        finishedAt = Instant.now();
+        status = IngestionJobStatus.DONE;
+    }
+
+    /**
+     * Marks the job as failed.
+     *
+     * @param cause the cause of the failure
+     */
+    public void fail(Throwable cause) {
+        finishedAt = Instant.now();
+        error = cause.getMessage();
+        status = IngestionJobStatus.ERROR;
+    }
+
+    /**
+     * Counts the documents of a bulk delete.
+     *
+     * @param deleted the number of documents deleted
+     * @param failed  the number of documents CouchDB refused to delete
+     */
+    public void addDocuments(int deleted, int failed) {
+        documentsDeleted.addAndGet(deleted);
+        documentsFailed.addAndGet(failed);
+    }
+
+    /**
+     * Gets the number of documents deleted.
+     *
+     * @return the documents deleted
+     */
+    public long getDocumentsDeleted() {
+        return documentsDeleted.get();
+    }
+
+    /**
+     * Gets the number of documents CouchDB refused to delete.
+     *
+     * @return the documents failed
+     */
+    public long getDocumentsFailed() {
+        return documentsFailed.get();
+    }
+
+    /**
+     * Checks whether the job is queued or running.
+     *
+     * @return true if the job is not finished
+     */
+    @JsonIgnore
+    public boolean isActive() {
+        return status == IngestionJobStatus.QUEUED || status == IngestionJobStatus.RUNNING;
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.eomix.exception;
+
+/**
+ * The type Fhir transaction exception.
+ */
+public class FhirTransactionException extends RuntimeException {
+    /**
+     * Instantiates a new Fhir transaction exception.
+     * * This exception is used to indicate that the application
+     * was unable to store a set of resources on the FHIR server as a transaction.
+     * * <p>
+     * * The resources already committed by previous chunks of the same ingestion
+     * are rolled back before this exception is thrown.
+     * * </p>
+     *
+     * @param message the message
+     * @param cause   the cause
+     * @implNote This exception is typically thrown when a transaction Bundle is rejected by the FHIR server,
+     * or when the server cannot be reached.
+     * @implSpec The message should be clear and concise, allowing developers to quickly understand the issue.
+     */
+    public FhirTransactionException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
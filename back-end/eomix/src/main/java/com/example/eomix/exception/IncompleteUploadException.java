@@ -0,0 +1,20 @@
+package com.example.eomix.exception;
+
+/**
+ * The type Incomplete upload exception.
+ */
+public class IncompleteUploadException extends RuntimeException {
+    /**
+     * Instantiates a new Incomplete upload exception.
+     * This constructor is used to create an exception with a specific message.
+     * This message should name the file whose parts are missing or do not add up to its size.
+     *
+     * @param message the message
+     * @implNote This exception is thrown when an upload session is committed before the browser has uploaded all
+     * the parts of its FASTQ files; the session is kept, so that the missing parts can still be uploaded.
+     * @implSpec The message should be clear and concise, allowing developers to quickly understand the issue.
+     */
+    public IncompleteUploadException(String message) {
+        super(message);
+    }
+}
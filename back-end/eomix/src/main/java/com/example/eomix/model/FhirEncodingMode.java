@@ -0,0 +1,17 @@
+package com.example.eomix.model;
+
+/**
+ * The enum Fhir encoding mode.
+ * How a Specimen carries its Group (batch) and its Patient when it is stored on the FHIR server.
+ */
+public enum FhirEncodingMode {
+    /**
+     * The Specimen contains a summary of its Group (identifiers and type, without the members) and its Patient,
+     * in addition to the references.
+     */
+    CONTAINED,
+    /**
+     * The Specimen only references its Group and its Patient by ID.
+     */
+    REFERENCE
+}
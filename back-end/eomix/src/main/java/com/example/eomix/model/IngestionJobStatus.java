@@ -0,0 +1,47 @@
+package com.example.eomix.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonValue;
+import lombok.Getter;
+
+/**
+ * The enum Ingestion job status.
+ * The status of a background job on a metadata file: the ingestion of its FHIR resources, or its deletion.
+ */
+@Getter
+@JsonFormat(shape = JsonFormat.Shape.STRING)
+public enum IngestionJobStatus {
+    /**
+     * Queued ingestion job status, waiting for a free worker.
+     */
+    QUEUED("Queued"),
+    /**
+     * Running ingestion job status.
+     */
+    RUNNING("Running"),
+    /**
+     * Done ingestion job status.
+     */
+    DONE("Done"),
+    /**
+     * Error ingestion job status.
+     */
+    ERROR("Error");
+
+    private final String value;
+
+    IngestionJobStatus(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Returns the string representation of the ingestion job status value.
+     *
+     * @return the string representation of the ingestion job status value
+     */
+    @JsonValue
+    @Override
+    public String toString() {
+        return value;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.eomix.model;
+
+import java.util.Locale;
+
+/**
+ * The enum Metadata file format.
+ * The format of an uploaded metadata file, recognized from its extension, with the content type and the extension it
+ * is exported with.
+ */
+public enum MetadataFileFormat {
+    /**
+     * A delimited text file (CSV, TSV...).
+     */
+    CSV("text/csv", ".csv"),
+    /**
+     * An Arrow IPC file in the file format ({@code .arrow}, {@code .feather}).
+     */
+    ARROW_FILE("application/vnd.apache.arrow.file", ".arrow"),
+    /**
+     * An Arrow IPC file in the stream format ({@code .arrows}).
+     */
+    ARROW_STREAM("application/vnd.apache.arrow.stream", ".arrows");
+
+    private final String contentType;
+    private final String extension;
+
+    MetadataFileFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    /**
+     * Gets the format of a file from its name.
+     *
+     * @param filename the filename
+     * @return the format, {@link #CSV} unless the file has an Arrow IPC extension
+     */
+    public static MetadataFileFormat fromFilename(String filename) {
+        String lowerCaseName = filename == null ? "" : filename.toLowerCase(Locale.ROOT);
+        if (lowerCaseName.endsWith(".arrows")) {
+            return ARROW_STREAM;
+        } else if (lowerCaseName.endsWith(".arrow") || lowerCaseName.endsWith(".feather")) {
+            return ARROW_FILE;
+        }
+        return CSV;
+    }
+
+    /**
+     * Gets the content type of the exported file.
+     *
+     * @return the content type
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Gets the extension of the exported file.
+     *
+     * @return the extension, with its leading dot
+     */
+    public String getExtension() {
+        return extension;
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.eomix.repositories;
+
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
+import ca.uhn.fhir.util.UrlUtil;
+import com.example.eomix.service.FhirIdentifierIndex;
+import com.google.common.util.concurrent.Striped;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r5.model.Bundle;
+import org.hl7.fhir.r5.model.IdType;
+import org.hl7.fhir.r5.model.Resource;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+
+/**
+ * Base class of the FHIR resource repositories storing the resources themselves.
+ * <p>
+ * Conditional creates, versioned updates and transactions lock the metadata files whose resources they write, keyed by
+ * resource type and accession identifier (or by {@code Type/id} for a resource without accession identifier): the
+ * writes of one file are serialized, while the ingestions of different files run concurrently. A transaction chunk of
+ * a file only holds a few keys (one per resource type), whatever its size.
+ * </p>
+ * <p>
+ * Transaction Bundles are applied entry by entry with the create, update, read and delete operations of the
+ * repository, and the applied entries are undone if an entry fails.
+ * </p>
+ * <ul>
+ *     <li>{@code POST} entries are created, unless the {@code ifNoneExist} condition matches a stored resource.</li>
+ *     <li>{@code PUT} entries with a conditional URL update the matching resource, or create it.</li>
+ *     <li>{@code PUT} and {@code DELETE} entries with a {@code Type/id} URL update or delete that resource.</li>
+ * </ul>
+ * <p>
+ * Transaction conditions use the {@code accession} (metadata file name) and {@code identifier} (official identifier)
+ * parameters, e.g. {@code Group?accession=sample.csv&identifier=batch1}, and are resolved with
+ * {@link #findByIdentifiers(Class, String, String)}.
+ * </p>
+ */
+public abstract class AbstractFhirResourceRepository implements FhirResourceRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(AbstractFhirResourceRepository.class);
+    private static final String ACCESSION = "accession";
+    private static final String IDENTIFIER = "identifier";
+    private static final int LOCK_STRIPES = 1024;
+
+    private final Striped<Lock> locks = Striped.lock(LOCK_STRIPES);
+
+    private static String getLockKey(Resource resource) {
+        String accessionIdentifier = FhirIdentifierIndex.getAccessionIdentifier(resource);
+        if (accessionIdentifier == null) {
+            return resource.fhirType() + "/" + resource.getIdElement().getIdPart();
+        }
+        return resource.fhirType() + "|" + accessionIdentifier;
+    }
+
+    private static @Nullable String getLockKey(Bundle.BundleEntryComponent entry) {
+        Resource resource = entry.getResource();
+        if (resource != null) {
+            return getLockKey(resource);
+        }
+        String url = entry.getRequest().getUrl();
+        return url == null ? null : new IdType(url).toUnqualifiedVersionless().getValue();
+    }
+
+    private static void runUndoAction(Runnable undoAction) {
+        try {
+            undoAction.run();
+        } catch (RuntimeException e) {
+            logger.error("Failed to undo a transaction entry: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the response of a transaction entry.
+     *
+     * @param status the HTTP status, e.g. {@code 201 Created}
+     * @param id     the id of the written resource, with its version
+     * @return the entry response, with the resource as location
+     */
+    protected static Bundle.BundleEntryResponseComponent getEntryResponse(String status, IIdType id) {
+        Bundle.BundleEntryResponseComponent entryResponse = new Bundle.BundleEntryResponseComponent();
+        entryResponse.setStatus(status);
+        entryResponse.setLocation(id.toUnqualified().getValue());
+        return entryResponse;
+    }
+
+    /**
+     * Creates a resource, unless a resource of the same type with the same accession and official identifiers exists.
+     *
+     * @param resource the resource
+     * @return the outcome, with the id of the created or existing resource
+     * @implNote The accession of the resource is locked, so that two concurrent calls cannot both create it.
+     */
+    @Override
+    public MethodOutcome createIfNoneExist(Resource resource) {
+        String condition = FhirIdentifierIndex.getCondition(resource);
+        if (condition == null) {
+            return new MethodOutcome(create(resource), true);
+        }
+        return withLocks(List.of(getLockKey(resource)), () -> {
+            Resource existing = findByCondition(resource.getClass(), condition);
+            if (existing != null) {
+                return new MethodOutcome(existing.getIdElement(), false);
+            }
+            return new MethodOutcome(create(resource), true);
+        });
+    }
+
+    /**
+     * Updates a resource, only if its current version is the expected one.
+     *
+     * @param resource  the resource, with its id
+     * @param versionId the expected current version of the resource
+     * @return the id of the updated resource, with its new version
+     * @throws PreconditionFailedException if the resource does not exist or was changed since that version
+     * @implNote The accession of the resource is locked, so that the version cannot change between the check and the
+     * update.
+     */
+    @Override
+    public IIdType updateIfMatch(Resource resource, String versionId) {
+        return withLocks(List.of(getLockKey(resource)), () -> {
+            Resource current = read(new IdType(resource.fhirType(), resource.getIdElement().getIdPart()));
+            if (current == null || !Objects.equals(versionId, FhirResourceRepository.getVersionId(current))) {
+                throw new PreconditionFailedException("Version " + versionId + " of " + resource.fhirType() + "/" + resource.getIdElement().getIdPart() + " is not the current version");
+            }
+            return update(resource);
+        });
+    }
+
+    /**
+     * Processes a transaction Bundle and returns the transaction-response Bundle.
+     *
+     * @param transaction the transaction bundle
+     * @return the transaction-response bundle, with one entry per request entry
+     * @throws InvalidRequestException if an entry is not supported; the applied entries are undone first
+     * @implNote The accessions of all the entries are locked for the whole transaction, and a failing transaction
+     * undoes the entries it already applied so that a Bundle is stored entirely or not at all.
+     */
+    @Override
+    public Bundle transaction(Bundle transaction) {
+        List<String> lockKeys = transaction.getEntry().stream().map(AbstractFhirResourceRepository::getLockKey).filter(Objects::nonNull).distinct().toList();
+        return withLocks(lockKeys, () -> applyTransaction(transaction));
+    }
+
+    /**
+     * Runs an action holding the locks of the given keys.
+     *
+     * @param <T>    the result type
+     * @param keys   the lock keys
+     * @param action the action
+     * @return the result of the action
+     * @implNote The stripes are acquired in a consistent order, so that two transactions sharing resources cannot
+     * deadlock; two keys sharing a stripe only serialize their writes, which the number of stripes keeps unlikely
+     * for the few keys of a transaction.
+     */
+    private <T> T withLocks(Collection<String> keys, Supplier<T> action) {
+        List<Lock> acquired = new ArrayList<>();
+        try {
+            for (Lock lock : locks.bulkGet(keys)) {
+                lock.lock();
+                acquired.add(lock);
+            }
+            return action.get();
+        } finally {
+            for (int i = acquired.size() - 1; i >= 0; i--) {
+                acquired.get(i).unlock();
+            }
+        }
+    }
+
+    /**
+     * Applies a transaction Bundle, once the resources of its entries are locked.
+     *
+     * @param transaction the transaction bundle
+     * @return the transaction-response bundle, with one entry per request entry
+     * @implSpec A failing transaction undoes the entries it already applied before throwing. By default the entries
+     * are applied one at a time; a repository may override this method to write them together.
+     */
+    protected Bundle applyTransaction(Bundle transaction) {
+        Bundle response = new Bundle();
+        response.setType(Bundle.BundleType.TRANSACTIONRESPONSE);
+        Deque<Runnable> undoActions = new ArrayDeque<>();
+        try {
+            for (Bundle.BundleEntryComponent entry : transaction.getEntry()) {
+                response.addEntry().setResponse(processEntry(entry, undoActions));
+            }
+        } catch (RuntimeException e) {
+            logger.error("Transaction failed, undoing {} applied entries", undoActions.size());
+            undoActions.forEach(AbstractFhirResourceRepository::runUndoAction);
+            throw e;
+        }
+        return response;
+    }
+
+    private Bundle.BundleEntryResponseComponent processEntry(Bundle.BundleEntryComponent entry,
+                                                             Deque<Runnable> undoActions) {
+        Bundle.BundleEntryRequestComponent request = entry.getRequest();
+        Bundle.HTTPVerb method = request.getMethod();
+        if (method == Bundle.HTTPVerb.POST) {
+            return create(entry.getResource(), request.getIfNoneExist(), undoActions);
+        } else if (method == Bundle.HTTPVerb.PUT) {
+            return update(entry.getResource(), request.getUrl(), undoActions);
+        } else if (method == Bundle.HTTPVerb.DELETE) {
+            return delete(new IdType(request.getUrl()), undoActions);
+        }
+        throw new InvalidRequestException("Unsupported transaction entry method: " + method);
+    }
+
+    private Bundle.BundleEntryResponseComponent create(Resource resource, String ifNoneExist,
+                                                       Deque<Runnable> undoActions) {
+        if (resource == null) {
+            throw new InvalidRequestException("Transaction POST entry without resource");
+        }
+        if (ifNoneExist != null && !ifNoneExist.isEmpty()) {
+            Resource existing = findByCondition(resource.getClass(), ifNoneExist);
+            if (existing != null) {
+                return getEntryResponse("200 OK", existing.getIdElement());
+            }
+        }
+        IIdType createdId = create(resource);
+        undoActions.push(() -> delete(createdId.toVersionless()));
+        return getEntryResponse("201 Created", createdId);
+    }
+
+    private Bundle.BundleEntryResponseComponent update(Resource resource, String url, Deque<Runnable> undoActions) {
+        if (resource == null || url == null) {
+            throw new InvalidRequestException("Transaction PUT entry without resource or URL");
+        }
+        Resource existing;
+        int conditionIndex = url.indexOf('?');
+        if (conditionIndex >= 0) {
+            existing = findByCondition(resource.getClass(), url.substring(conditionIndex + 1));
+            if (existing != null) {
+                resource.setId(existing.getIdElement().getIdPart());
+            } else if (!resource.hasIdElement()) {
+                return create(resource, null, undoActions);
+            }
+        } else {
+            resource.setId(new IdType(url).getIdPart());
+            existing = read(new IdType(resource.fhirType(), resource.getIdElement().getIdPart()));
+        }
+        IIdType updatedId = update(resource);
+        if (existing != null) {
+            Resource previousVersion = existing;
+            undoActions.push(() -> update(previousVersion));
+            return getEntryResponse("200 OK", updatedId);
+        }
+        undoActions.push(() -> delete(updatedId.toVersionless()));
+        return getEntryResponse("201 Created", updatedId);
+    }
+
+    private Bundle.BundleEntryResponseComponent delete(IdType id, Deque<Runnable> undoActions) {
+        Resource existing = read(id);
+        if (existing != null) {
+            delete(id);
+            undoActions.push(() -> update(existing));
+        }
+        return new Bundle.BundleEntryResponseComponent().setStatus("204 No Content");
+    }
+
+    private Resource findByCondition(Class<? extends Resource> resourceType, String condition) {
+        Condition identifiers = parseCondition(condition);
+        return findByIdentifiers(resourceType, identifiers.accession(), identifiers.identifier());
+    }
+
+    /**
+     * Parses a transaction condition, e.g. {@code accession=sample.csv&identifier=batch1}.
+     *
+     * @param condition the condition, without the resource type
+     * @return the accession and official identifiers of the condition
+     * @throws InvalidRequestException if the condition does not have both parameters
+     */
+    protected static Condition parseCondition(String condition) {
+        Map<String, String[]> parameters = UrlUtil.parseQueryString(condition);
+        String[] accession = parameters.get(ACCESSION);
+        String[] identifier = parameters.get(IDENTIFIER);
+        if (accession == null || identifier == null) {
+            throw new InvalidRequestException("Unsupported transaction condition: " + condition);
+        }
+        return new Condition(accession[0], identifier[0]);
+    }
+
+    /**
+     * The identifiers of a transaction condition.
+     *
+     * @param accession  the accession identifier (metadata file name)
+     * @param identifier the official identifier
+     */
+    protected record Condition(String accession, String identifier) {
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.eomix.repositories;
+
+import org.hl7.fhir.r5.model.Resource;
+
+import java.util.List;
+
+/**
+ * The interface Accession pager.
+ * <p>
+ * Paging session over the resources of a type sharing the same accession identifier, opened by
+ * {@link FhirResourceRepository#openAccessionPager(Class, String)} for one search and kept as long as its pages are
+ * read, so that a repository can carry its position from one page to the next:
+ * </p>
+ * <ul>
+ *     <li>{@link CouchDbFhirResourceRepository} resumes the view after the last document read, instead of skipping
+ *     the documents of the previous pages;</li>
+ *     <li>{@link RemoteFhirResourceRepository} resumes the search of the remote server at the page it stopped, and
+ *     counts the resources once.</li>
+ * </ul>
+ *
+ * @param <T> the resource type
+ * @implSpec Pages may be read in any order, reading them in order is the fast path.
+ */
+public interface AccessionPager<T extends Resource> {
+
+    /**
+     * Gets a page of the resources.
+     *
+     * @param offset the index of the first resource of the page
+     * @param count  the maximum number of resources of the page
+     * @return the resources of the page, never null
+     */
+    List<T> getPage(int offset, int count);
+
+    /**
+     * Counts the resources.
+     *
+     * @return the number of resources
+     */
+    int size();
+}
@@ -0,0 +1,69 @@
+package com.example.eomix.repositories;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import org.hl7.fhir.r5.model.Bundle;
+import org.hl7.fhir.r5.model.Resource;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over the resources of a paged FHIR search.
+ * <p>
+ * The pages are loaded lazily by following the {@code next} link of the search-set Bundle, so that only one page is
+ * held in memory, whatever the number of matching resources.
+ * </p>
+ *
+ * @param <T> the resource type
+ * @implNote Not thread-safe; entries whose resource is not of the expected type (e.g. OperationOutcome) are skipped.
+ */
+class BundlePageIterator<T extends Resource> implements Iterator<T> {
+
+    private final IGenericClient client;
+    private final Class<T> resourceType;
+    private Bundle page;
+    private Iterator<Bundle.BundleEntryComponent> entries;
+    private T nextResource;
+
+    /**
+     * Instantiates a new Bundle page iterator.
+     *
+     * @param client       the FHIR client used to load the next pages
+     * @param firstPage    the first page of the search
+     * @param resourceType the resource class
+     */
+    BundlePageIterator(IGenericClient client, Bundle firstPage, Class<T> resourceType) {
+        this.client = client;
+        this.resourceType = resourceType;
+        this.page = firstPage;
+        this.entries = firstPage.getEntry().iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (nextResource == null) {
+            if (entries.hasNext()) {
+                Resource resource = entries.next().getResource();
+                if (resourceType.isInstance(resource)) {
+                    nextResource = resourceType.cast(resource);
+                }
+            } else if (page.getLink(Bundle.LINK_NEXT) != null) {
+                page = client.loadPage().next(page).execute();
+                entries = page.getEntry().iterator();
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T resource = nextResource;
+        nextResource = null;
+        return resource;
+    }
+}
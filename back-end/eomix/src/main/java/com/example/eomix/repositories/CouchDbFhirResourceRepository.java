@@ -0,0 +1,410 @@
+package com.example.eomix.repositories;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceVersionConflictException;
+import com.example.eomix.entities.FhirResourceDocument;
+import com.example.eomix.service.FhirIdentifierIndex;
+import org.ektorp.BulkDeleteDocument;
+import org.ektorp.ComplexKey;
+import org.ektorp.DocumentOperationResult;
+import org.ektorp.UpdateConflictException;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r5.model.Bundle;
+import org.hl7.fhir.r5.model.IdType;
+import org.hl7.fhir.r5.model.Resource;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * CouchDB FHIR resource repository.
+ * <p>
+ * This repository persists the FHIR resources in the CouchDB database of {@link FhirResourceDocumentRepository},
+ * one document per resource, so that the resources survive a restart and the heap does not grow with the catalog.
+ * </p>
+ * <ul>
+ *     <li>The document id is the logical id of the resource ({@code Type/id}).</li>
+ *     <li>Each write increments the version of the resource, exposed as its {@code meta.versionId}.</li>
+ *     <li>The lookups by accession and official identifiers are answered by the CouchDB views, not by a scan.</li>
+ *     <li>A transaction is written with a handful of requests, whatever its size: one query of the identifiers of its
+ *     conditions, one read of the documents it targets by id, and one bulk write.</li>
+ * </ul>
+ *
+ * @implNote Resources are encoded in FHIR JSON; a new parser is created for each call since parsers are not
+ * thread-safe.
+ */
+public class CouchDbFhirResourceRepository extends AbstractFhirResourceRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(CouchDbFhirResourceRepository.class);
+    private final FhirContext fhirContext;
+    private final FhirResourceDocumentRepository documentRepository;
+
+    /**
+     * Instantiates a new Couch db fhir resource repository.
+     *
+     * @param fhirContext        the FHIR context
+     * @param documentRepository the CouchDB repository of the resource documents
+     */
+    public CouchDbFhirResourceRepository(FhirContext fhirContext, FhirResourceDocumentRepository documentRepository) {
+        this.fhirContext = fhirContext;
+        this.documentRepository = documentRepository;
+    }
+
+    private static String getDocumentId(IIdType id) {
+        return id.getResourceType() + "/" + id.getIdPart();
+    }
+
+    @Override
+    public IIdType create(Resource resource) {
+        resource.setId(new IdType(resource.fhirType(), UUID.randomUUID().toString()));
+        return write(resource, null);
+    }
+
+    @Override
+    public IIdType update(Resource resource) {
+        return write(resource, documentRepository.find(getDocumentId(new IdType(resource.fhirType(), resource.getIdElement().getIdPart()))));
+    }
+
+    /**
+     * Updates a resource, only if its current version is the expected one.
+     *
+     * @param resource  the resource, with its id
+     * @param versionId the expected current version of the resource
+     * @return the id of the updated resource, with its new version
+     * @throws PreconditionFailedException if the resource does not exist or was changed since that version
+     * @implNote The update is sent with the revision of the checked document, so CouchDB itself rejects it if the
+     * document was changed in between; the repository is not locked.
+     */
+    @Override
+    public IIdType updateIfMatch(Resource resource, String versionId) {
+        IdType id = new IdType(resource.fhirType(), resource.getIdElement().getIdPart());
+        FhirResourceDocument existing = documentRepository.find(getDocumentId(id));
+        if (existing == null || !String.valueOf(existing.getVersion()).equals(versionId)) {
+            throw new PreconditionFailedException("Version " + versionId + " of " + getDocumentId(id) + " is not the current version");
+        }
+        try {
+            return write(resource, existing);
+        } catch (UpdateConflictException e) {
+            throw new PreconditionFailedException("Version " + versionId + " of " + getDocumentId(id) + " was changed concurrently");
+        }
+    }
+
+    @Override
+    public @Nullable Resource read(IIdType id) {
+        FhirResourceDocument document = documentRepository.find(getDocumentId(id));
+        return document == null ? null : toResource(document, Resource.class);
+    }
+
+    @Override
+    public void delete(IIdType id) {
+        FhirResourceDocument document = documentRepository.find(getDocumentId(id));
+        if (document != null) {
+            documentRepository.remove(document);
+        }
+    }
+
+    @Override
+    public <T extends Resource> @Nullable T findByIdentifiers(Class<T> resourceType, String accessionIdentifier,
+                                                              String officialIdentifier) {
+        FhirResourceDocument document = documentRepository.findByIdentifiers(fhirContext.getResourceType(resourceType), accessionIdentifier, officialIdentifier);
+        return document == null ? null : toResource(document, resourceType);
+    }
+
+    @Override
+    public <T extends Resource> List<T> findAllByAccession(Class<T> resourceType, String accessionIdentifier) {
+        return documentRepository.findByAccession(fhirContext.getResourceType(resourceType), accessionIdentifier).stream().map(document -> toResource(document, resourceType)).toList();
+    }
+
+    @Override
+    public <T extends Resource> List<T> findPageByAccession(Class<T> resourceType, String accessionIdentifier,
+                                                            int offset, int count) {
+        return documentRepository.findPageByAccession(fhirContext.getResourceType(resourceType), accessionIdentifier, offset, count).stream().map(document -> toResource(document, resourceType)).toList();
+    }
+
+    @Override
+    public int countByAccession(Class<? extends Resource> resourceType, String accessionIdentifier) {
+        return documentRepository.countByAccession(fhirContext.getResourceType(resourceType), accessionIdentifier);
+    }
+
+    /**
+     * Opens a paging session over the resources of a type sharing the same accession identifier.
+     *
+     * @param <T>                 the resource type
+     * @param resourceType        the resource class
+     * @param accessionIdentifier the accession identifier (metadata file name)
+     * @return the pager, resuming the view after the last document it read
+     * @implNote A page that does not follow the previous one (e.g. a {@code previous} link) falls back to
+     * {@code skip}, and the cursor resumes from there.
+     */
+    @Override
+    public <T extends Resource> AccessionPager<T> openAccessionPager(Class<T> resourceType, String accessionIdentifier) {
+        return new CouchDbAccessionPager<>(resourceType, accessionIdentifier);
+    }
+
+    /**
+     * Applies a transaction Bundle with a single bulk write.
+     *
+     * @param transaction the transaction bundle
+     * @return the transaction-response bundle, with one entry per request entry
+     * @throws InvalidRequestException          if an entry is not supported; nothing is written
+     * @throws ResourceVersionConflictException if CouchDB rejects a document of the bulk write; the documents it
+     *                                          accepted are restored with a second bulk write first
+     * @implNote The conditions of all the entries are resolved with one keyed query of the identifiers view, and the
+     * documents targeted by id with one {@code _all_docs} request; the entries are then applied in order to these
+     * documents in memory, so that an entry sees the writes of the previous ones, and the resulting documents are
+     * written together.
+     */
+    @Override
+    protected Bundle applyTransaction(Bundle transaction) {
+        TransactionDocuments documents = new TransactionDocuments(transaction);
+        Bundle response = new Bundle();
+        response.setType(Bundle.BundleType.TRANSACTIONRESPONSE);
+        for (Bundle.BundleEntryComponent entry : transaction.getEntry()) {
+            response.addEntry().setResponse(documents.apply(entry));
+        }
+        if (documents.writes.isEmpty()) {
+            return response;
+        }
+        List<DocumentOperationResult> failures = documentRepository.executeBulk(documents.writes.values());
+        if (!failures.isEmpty()) {
+            logger.error("Transaction rejected by CouchDB for {} of {} documents, undoing the others", failures.size(), documents.writes.size());
+            documents.undo(failures);
+            DocumentOperationResult failure = failures.get(0);
+            throw new ResourceVersionConflictException("Transaction rejected by CouchDB: " + failure.getId() + " " + failure.getError() + " " + failure.getReason());
+        }
+        return response;
+    }
+
+    private IIdType write(Resource resource, @Nullable FhirResourceDocument existing) {
+        FhirResourceDocument document = toVersionedDocument(resource, existing);
+        if (existing == null) {
+            documentRepository.add(document);
+        } else {
+            documentRepository.update(document);
+        }
+        return resource.getIdElement();
+    }
+
+    /**
+     * Gets the document of the next version of a resource, and sets that version on the resource.
+     *
+     * @param resource the resource, with its id
+     * @param existing the document of the current version, or null if the resource is created
+     * @return the document, with the revision of the current version
+     */
+    private FhirResourceDocument toVersionedDocument(Resource resource, @Nullable FhirResourceDocument existing) {
+        long version = existing == null ? 1 : existing.getVersion() + 1;
+        IdType id = new IdType(resource.fhirType(), resource.getIdElement().getIdPart(), String.valueOf(version));
+        resource.setId(id);
+        resource.getMeta().setVersionId(id.getVersionIdPart());
+        FhirResourceDocument document = toDocument(resource);
+        document.setVersion(version);
+        if (existing != null) {
+            document.setRevision(existing.getRevision());
+        }
+        return document;
+    }
+
+    private static String getIdentifiersKey(String resourceType, String accession, String identifier) {
+        return resourceType + "|" + accession + "|" + identifier;
+    }
+
+    private static @Nullable String getCondition(Bundle.BundleEntryRequestComponent request) {
+        if (request.getMethod() == Bundle.HTTPVerb.POST && request.hasIfNoneExist()) {
+            return request.getIfNoneExist();
+        } else if (request.getMethod() == Bundle.HTTPVerb.PUT && request.getUrl() != null && request.getUrl().contains("?")) {
+            return request.getUrl().substring(request.getUrl().indexOf('?') + 1);
+        }
+        return null;
+    }
+
+    private FhirResourceDocument toDocument(Resource resource) {
+        FhirResourceDocument document = new FhirResourceDocument();
+        document.setId(getDocumentId(resource.getIdElement()));
+        document.setResourceType(resource.fhirType());
+        document.setAccession(FhirIdentifierIndex.getAccessionIdentifier(resource));
+        document.setIdentifier(FhirIdentifierIndex.getOfficialIdentifier(resource));
+        document.setResource(fhirContext.newJsonParser().encodeResourceToString(resource));
+        return document;
+    }
+
+    private <T extends Resource> T toResource(FhirResourceDocument document, Class<T> resourceType) {
+        return resourceType.cast(fhirContext.newJsonParser().parseResource(document.getResource()));
+    }
+
+    private class CouchDbAccessionPager<T extends Resource> implements AccessionPager<T> {
+
+        private final Class<T> resourceType;
+        private final String documentType;
+        private final String accessionIdentifier;
+        private int nextOffset;
+        private String lastDocumentId;
+        private Integer size;
+
+        CouchDbAccessionPager(Class<T> resourceType, String accessionIdentifier) {
+            this.resourceType = resourceType;
+            this.documentType = fhirContext.getResourceType(resourceType);
+            this.accessionIdentifier = accessionIdentifier;
+        }
+
+        @Override
+        public synchronized List<T> getPage(int offset, int count) {
+            List<FhirResourceDocument> documents;
+            if (offset == nextOffset) {
+                documents = documentRepository.findPageByAccessionAfter(documentType, accessionIdentifier, lastDocumentId, count);
+            } else {
+                documents = documentRepository.findPageByAccession(documentType, accessionIdentifier, offset, count);
+            }
+            if (!documents.isEmpty()) {
+                nextOffset = offset + documents.size();
+                lastDocumentId = documents.get(documents.size() - 1).getId();
+            }
+            return documents.stream().map(document -> toResource(document, resourceType)).toList();
+        }
+
+        @Override
+        public synchronized int size() {
+            if (size == null) {
+                size = documentRepository.countByAccession(documentType, accessionIdentifier);
+            }
+            return size;
+        }
+    }
+
+    /**
+     * The documents of a transaction: the stored documents its entries target, read upfront, and the documents its
+     * entries write, keyed by document id so that an entry sees the writes of the previous ones.
+     */
+    private class TransactionDocuments {
+
+        private final Map<String, FhirResourceDocument> storedById = new HashMap<>();
+        private final Map<String, FhirResourceDocument> currentById = new HashMap<>();
+        private final Map<String, FhirResourceDocument> currentByIdentifiers = new HashMap<>();
+        private final Map<String, Object> writes = new LinkedHashMap<>();
+
+        TransactionDocuments(Bundle transaction) {
+            List<ComplexKey> keys = new ArrayList<>();
+            Set<String> ids = new LinkedHashSet<>();
+            for (Bundle.BundleEntryComponent entry : transaction.getEntry()) {
+                Bundle.BundleEntryRequestComponent request = entry.getRequest();
+                String condition = getCondition(request);
+                if (condition != null && entry.getResource() != null) {
+                    Condition identifiers = parseCondition(condition);
+                    keys.add(ComplexKey.of(entry.getResource().fhirType(), identifiers.accession(), identifiers.identifier()));
+                    if (entry.getResource().hasIdElement()) {
+                        ids.add(getDocumentId(entry.getResource().getIdElement()));
+                    }
+                } else if ((request.getMethod() == Bundle.HTTPVerb.PUT || request.getMethod() == Bundle.HTTPVerb.DELETE) && request.getUrl() != null) {
+                    ids.add(getDocumentId(new IdType(request.getUrl())));
+                }
+            }
+            for (FhirResourceDocument document : documentRepository.findAllByIdentifiers(keys)) {
+                storedById.put(document.getId(), document);
+                currentByIdentifiers.putIfAbsent(getIdentifiersKey(document.getResourceType(), document.getAccession(), document.getIdentifier()), document);
+            }
+            for (FhirResourceDocument document : documentRepository.findAllById(ids)) {
+                storedById.put(document.getId(), document);
+            }
+            currentById.putAll(storedById);
+        }
+
+        Bundle.BundleEntryResponseComponent apply(Bundle.BundleEntryComponent entry) {
+            Bundle.BundleEntryRequestComponent request = entry.getRequest();
+            Resource resource = entry.getResource();
+            Bundle.HTTPVerb method = request.getMethod();
+            if (method == Bundle.HTTPVerb.DELETE) {
+                if (request.getUrl() == null) {
+                    throw new InvalidRequestException("Transaction DELETE entry without URL");
+                }
+                return delete(getDocumentId(new IdType(request.getUrl())));
+            }
+            if (method != Bundle.HTTPVerb.POST && method != Bundle.HTTPVerb.PUT) {
+                throw new InvalidRequestException("Unsupported transaction entry method: " + method);
+            }
+            if (resource == null || (method == Bundle.HTTPVerb.PUT && request.getUrl() == null)) {
+                throw new InvalidRequestException("Transaction " + method + " entry without resource or URL");
+            }
+            String condition = getCondition(request);
+            FhirResourceDocument existing = null;
+            if (condition != null) {
+                Condition identifiers = parseCondition(condition);
+                existing = currentByIdentifiers.get(getIdentifiersKey(resource.fhirType(), identifiers.accession(), identifiers.identifier()));
+                if (existing != null && method == Bundle.HTTPVerb.POST) {
+                    return getEntryResponse("200 OK", new IdType(existing.getId()).withVersion(String.valueOf(existing.getVersion())));
+                }
+            }
+            if (existing != null) {
+                resource.setId(new IdType(existing.getId()).getIdPart());
+            } else if (method == Bundle.HTTPVerb.POST || (condition != null && !resource.hasIdElement())) {
+                resource.setId(UUID.randomUUID().toString());
+            } else if (condition == null) {
+                resource.setId(new IdType(request.getUrl()).getIdPart());
+            }
+            String documentId = getDocumentId(new IdType(resource.fhirType(), resource.getIdElement().getIdPart()));
+            FhirResourceDocument current = currentById.get(documentId);
+            FhirResourceDocument document = toVersionedDocument(resource, current);
+            FhirResourceDocument stored = storedById.get(documentId);
+            document.setRevision(stored == null ? null : stored.getRevision());
+            writes.put(documentId, document);
+            currentById.put(documentId, document);
+            if (document.getAccession() != null && document.getIdentifier() != null) {
+                currentByIdentifiers.put(getIdentifiersKey(document.getResourceType(), document.getAccession(), document.getIdentifier()), document);
+            }
+            return getEntryResponse(current == null ? "201 Created" : "200 OK", resource.getIdElement());
+        }
+
+        private Bundle.BundleEntryResponseComponent delete(String documentId) {
+            FhirResourceDocument current = currentById.get(documentId);
+            if (current != null) {
+                FhirResourceDocument stored = storedById.get(documentId);
+                if (stored == null) {
+                    writes.remove(documentId);
+                } else {
+                    writes.put(documentId, new BulkDeleteDocument(documentId, stored.getRevision()));
+                }
+                currentById.remove(documentId);
+                if (current.getAccession() != null && current.getIdentifier() != null) {
+                    currentByIdentifiers.remove(getIdentifiersKey(current.getResourceType(), current.getAccession(), current.getIdentifier()));
+                }
+            }
+            return new Bundle.BundleEntryResponseComponent().setStatus("204 No Content");
+        }
+
+        /**
+         * Restores the documents of the bulk write CouchDB accepted: the created ones are deleted, the updated and
+         * deleted ones get their stored content back.
+         *
+         * @param failures the documents CouchDB rejected
+         */
+        void undo(List<DocumentOperationResult> failures) {
+            Set<String> failedIds = new HashSet<>();
+            failures.forEach(failure -> failedIds.add(failure.getId()));
+            List<Object> undoWrites = new ArrayList<>();
+            writes.forEach((documentId, written) -> {
+                if (failedIds.contains(documentId)) {
+                    return;
+                }
+                String revision = written instanceof BulkDeleteDocument deletion ? deletion.getRevision() : ((FhirResourceDocument) written).getRevision();
+                FhirResourceDocument stored = storedById.get(documentId);
+                if (stored == null) {
+                    undoWrites.add(new BulkDeleteDocument(documentId, revision));
+                } else {
+                    stored.setRevision(revision);
+                    undoWrites.add(stored);
+                }
+            });
+            if (undoWrites.isEmpty()) {
+                return;
+            }
+            try {
+                documentRepository.executeBulk(undoWrites).forEach(failure -> logger.error("Failed to undo the write of {}: {} {}", failure.getId(), failure.getError(), failure.getReason()));
+            } catch (RuntimeException e) {
+                logger.error("Failed to undo the writes of the transaction: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.eomix.repositories;
 
 import com.example.eomix.entities.CsvDocument;
+import com.example.eomix.model.MetadataFileFormat;
 import org.ektorp.AttachmentInputStream;
 import org.ektorp.CouchDbConnector;
 import org.ektorp.DocumentNotFoundException;
@@ -12,75 +13,189 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Repository;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * The type Csv document repository.
+ * <p>
+ * The uploaded files are stored as gzip compressed attachments ({@value #GZIP_CONTENT_TYPE}). The files stored before
+ * keep their original content type and are read as is.
+ * </p>
+ * <p>
+ * The SHA-256 hash of each uploaded file is recorded on its document ({@value #CONTENT_HASH}), so that a file uploaded
+ * again unchanged can be recognized without reading nor parsing the stored one.
+ * </p>
+ * <p>
+ * The format of each uploaded file ({@value #FORMAT}) is recorded as well, so that an Arrow IPC file is exported as
+ * the Arrow IPC file it was uploaded as.
+ * </p>
  */
 @Repository
 public class CsvDocumentRepository extends CouchDbRepositorySupport<CsvDocument> {
 
+    /**
+     * The content type of the compressed attachments.
+     */
+    public static final String GZIP_CONTENT_TYPE = "application/gzip";
+    /**
+     * The field of the documents holding the SHA-256 hash of the uploaded file.
+     */
+    public static final String CONTENT_HASH = "contentHash";
+    /**
+     * The field of the documents holding the {@link MetadataFileFormat} of the uploaded file.
+     */
+    public static final String FORMAT = "format";
     private static final Logger logger = LoggerFactory.getLogger(CsvDocumentRepository.class);
 
+    private final MetadataFileRepository metadataFileRepository;
+
     /**
      * Instantiates a new Csv document repository.
      * * This constructor initializes the repository with the specified CouchDbConnector.
      * * It calls the superclass constructor with the CsvDocument class type and the provided CouchDbConnector.
      * * * It also initializes the standard design document for the repository.
      *
-     * @param db the db
+     * @param db                     the db
+     * @param metadataFileRepository the metadata file repository, holding the samples of the stored files
      * @implNote The design document is used to define views and indexes for the repository.
      * couchDbConnector3 : attachment database
      */
-    public CsvDocumentRepository(@Qualifier("couchDbConnector3") CouchDbConnector db) {
+    public CsvDocumentRepository(@Qualifier("couchDbConnector3") CouchDbConnector db,
+                                 MetadataFileRepository metadataFileRepository) {
         super(CsvDocument.class, db);
+        this.metadataFileRepository = metadataFileRepository;
         initStandardDesignDocument();
     }
 
     /**
-     * Add csv document.
-     * * This method adds a CSV document to the CouchDB database.
-     * * It checks if the file is not empty, retrieves the input stream and content type,
-     * * and creates an attachment input stream with the file name, input stream, and content type.
-     * * * The method then stores the attachment in the database using the file's original filename.
+     * Stage csv document.
+     * * This method compresses an uploaded CSV file with gzip into a temporary file, and computes the SHA-256 hash of
+     * * its content in the same pass, so that the file can be compared with the stored one before being parsed.
      *
      * @param file the file
+     * @return the staged file; the caller closes it to delete the temporary file
      * @throws IOException the io exception
-     * @implNote The method logs the process of storing the document and the attachment ID.
+     * @implSpec The file is compressed to a temporary file rather than in memory, so that the length of the attachment
+     * is known without holding it on the heap.
+     */
+    public StagedCsv stageCsvDocument(MultipartFile file) throws IOException {
+        Path compressedFile = Files.createTempFile("eomix-csv-", ".gz");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream inputStream = new DigestInputStream(file.getInputStream(), digest);
+                 OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(compressedFile))) {
+                inputStream.transferTo(outputStream);
+            }
+            return new StagedCsv(file.getOriginalFilename(), compressedFile, HexFormat.of().formatHex(digest.digest()),
+                    MetadataFileFormat.fromFilename(file.getOriginalFilename()));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(compressedFile);
+            throw e;
+        } catch (NoSuchAlgorithmException e) {
+            Files.deleteIfExists(compressedFile);
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Checks if a staged file is already stored.
+     * * This method compares the content hash of the staged file with the one stored on the document of the same
+     * * filename, without reading the attachment, then checks that the samples of the file are still stored.
+     *
+     * @param stagedCsv the staged file
+     * @return true if a file with the same name and content is stored, with its samples
+     * @implNote The files stored before the content hash was recorded are never considered as already stored, nor
+     * are the files whose samples were deleted (or never written) while the document was left.
      */
-    public void addCsvDocument(MultipartFile file) throws IOException {
+    @SuppressWarnings("unchecked")
+    public boolean isStored(StagedCsv stagedCsv) {
+        Map<String, Object> doc = db.find(Map.class, stagedCsv.filename());
+        return doc != null && stagedCsv.contentHash().equals(doc.get(CONTENT_HASH))
+                && metadataFileRepository.existsByFilename(stagedCsv.filename());
+    }
 
-        if (!file.isEmpty()) {
-            logger.info("Storing document in CouchDB: {}", file.getOriginalFilename());
-            InputStream inputStream = file.getInputStream();
-            String contentType = file.getContentType();
-            String fileName = file.getOriginalFilename();
+    /**
+     * Add csv document.
+     * * This method stores a staged CSV file as a gzip compressed attachment of the document named after the file,
+     * * replacing the attachment of a previous upload of the same filename, then records the content hash and the
+     * * format of the file on the document.
+     *
+     * @param stagedCsv the staged file
+     * @throws IOException the io exception
+     * @implNote The method logs the process of storing the document and the attachment ID.
+     */
+    @SuppressWarnings("unchecked")
+    public void addCsvDocument(StagedCsv stagedCsv) throws IOException {
+        String fileName = stagedCsv.filename();
+        logger.info("Storing document in CouchDB: {}", fileName);
+        Map<String, Object> existing = db.find(Map.class, fileName);
+        try (InputStream compressedStream = Files.newInputStream(stagedCsv.compressedFile())) {
             AttachmentInputStream attachment = new AttachmentInputStream(
-                    fileName, inputStream, contentType);
-            db.createAttachment(file.getOriginalFilename(), attachment);
-            logger.info("Attachment added to document with ID: {}", file.getOriginalFilename());
+                    fileName, compressedStream, GZIP_CONTENT_TYPE, Files.size(stagedCsv.compressedFile()));
+            if (existing == null) {
+                db.createAttachment(fileName, attachment);
+            } else {
+                db.createAttachment(fileName, (String) existing.get("_rev"), attachment);
+            }
         }
+        Map<String, Object> doc = db.get(Map.class, fileName);
+        doc.put(CONTENT_HASH, stagedCsv.contentHash());
+        doc.put(FORMAT, stagedCsv.format().name());
+        db.update(doc);
+        logger.info("Attachment added to document with ID: {}", fileName);
     }
 
     /**
-     * Get csv byte [ ].
-     * * This method retrieves a CSV file from the CouchDB database by its filename.
+     * Open csv attachment input stream.
+     * * This method opens a CSV file stored in the CouchDB database by its filename.
      * * It queries the database for a document with the specified filename,
-     * * retrieves the attachment associated with that document,
-     * * and returns the content of the attachment as a byte array.
+     * * and opens the attachment associated with that document, without reading it.
      * * The method uses a view query to find the document by its filename,
      * * includes the document in the result, and limits the result to one document.
      *
      * @param filename the filename
-     * @return the byte [ ]
-     * @throws IOException the io exception
+     * @return the attachment stream, compressed if {@link #isCompressed(AttachmentInputStream)}; the caller closes it.
+     * Empty if no file of that name is stored.
      */
-    @SuppressWarnings("unchecked")
-    public byte[] getCsv(String filename) throws IOException {
+    public Optional<AttachmentInputStream> openCsv(String filename) {
+        return findByFilename(filename).map(doc -> {
+            try {
+                return db.getAttachment((String) doc.get("_id"), filename);
+            } catch (DocumentNotFoundException e) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Gets the format of a stored file.
+     *
+     * @param filename the filename
+     * @return the format recorded on its document, {@link MetadataFileFormat#CSV} for the files stored before the
+     * format was recorded; empty if no file of that name is stored
+     */
+    public Optional<MetadataFileFormat> getFormat(String filename) {
+        return findByFilename(filename).map(doc -> {
+            Object format = doc.get(FORMAT);
+            return format == null ? MetadataFileFormat.CSV : MetadataFileFormat.valueOf((String) format);
+        });
+    }
 
+    @SuppressWarnings("unchecked")
+    private Optional<Map<String, Object>> findByFilename(String filename) {
         ViewQuery query = new ViewQuery()
                 .designDocId("_design/csv_docs")
                 .viewName("by_filename")
@@ -89,9 +204,17 @@ public class CsvDocumentRepository extends CouchDbRepositorySupport<CsvDocument>
                 .limit(1);
 
         List<Map<String, Object>> result = (List<Map<String, Object>>) (List<?>) db.queryView(query, Map.class);
-        String attachmentId = (String) result.get(0).get("_id");
-        AttachmentInputStream attachmentStream = db.getAttachment(attachmentId, filename);
-        return attachmentStream.readAllBytes();
+        return result.stream().findFirst();
+    }
+
+    /**
+     * Checks if an attachment is stored gzip compressed.
+     *
+     * @param attachment the attachment stream
+     * @return true if the attachment is compressed
+     */
+    public static boolean isCompressed(AttachmentInputStream attachment) {
+        return GZIP_CONTENT_TYPE.equals(attachment.getContentType());
     }
 
     /**
@@ -112,4 +235,26 @@ public class CsvDocumentRepository extends CouchDbRepositorySupport<CsvDocument>
             logger.error("Error during complete removal of document {}: {}", documentId, e.getMessage());
         }
     }
+
+    /**
+     * A CSV file compressed to a temporary file, waiting to be stored.
+     *
+     * @param filename       the original filename of the file
+     * @param compressedFile the temporary gzip compressed file
+     * @param contentHash    the SHA-256 hash of the uncompressed content, in hex
+     * @param format         the format of the file, from its extension
+     */
+    public record StagedCsv(String filename, Path compressedFile, String contentHash,
+                            MetadataFileFormat format) implements Closeable {
+
+        /**
+         * Deletes the temporary file.
+         *
+         * @throws IOException the io exception
+         */
+        @Override
+        public void close() throws IOException {
+            Files.deleteIfExists(compressedFile);
+        }
+    }
 }
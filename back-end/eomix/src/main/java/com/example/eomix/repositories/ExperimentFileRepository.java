@@ -1,9 +1,8 @@
 package com.example.eomix.repositories;
 
-import ca.uhn.fhir.rest.param.TokenParam;
-import com.example.eomix.controller.ExperimentsController;
 import com.example.eomix.entities.ExperimentFileEntity;
 import com.example.eomix.exception.ExperimentException;
+import com.example.eomix.service.ResourcesFetcher;
 import org.ektorp.CouchDbConnector;
 import org.ektorp.ViewQuery;
 import org.ektorp.support.CouchDbRepositorySupport;
@@ -72,17 +71,15 @@ public class ExperimentFileRepository extends CouchDbRepositorySupport<Experimen
     /**
      * Gets sample ids from metadata file name.
      * <p> This method retrieves a list of sample IDs based on the metadata file name. <br>
-     * It uses the ExperimentsController to search for specimens by their identifier,
-     * which is set to the metadata file name.<br>
+     * It reads the specimens whose accession identifier is the metadata file name from the identifier index.<br>
      * For each specimen found, it checks if the specimen has an ID and retrieves its official identifier.
      *
-     * @param metadataFileName      the metadata file name
-     * @param experimentsController the experiments controller
+     * @param metadataFileName the metadata file name
      * @return the list of sample IDs
      * @throws ExperimentException if a specimen has no ID
      */
-    public @NotNull List<String> getSampleIds(String metadataFileName, ExperimentsController experimentsController) {
-        List<Specimen> specimens = experimentsController.specimenRP.searchByIdentifier(new TokenParam().setValue(metadataFileName));
+    public @NotNull List<String> getSampleIds(String metadataFileName) {
+        List<Specimen> specimens = ResourcesFetcher.getSpecimenFromServerByAccessionIdentifier(metadataFileName);
         List<String> sampleIds = new ArrayList<>();
         for (Specimen specimen : specimens) {
             if (specimen.getId() == null || specimen.getId().isEmpty()) {
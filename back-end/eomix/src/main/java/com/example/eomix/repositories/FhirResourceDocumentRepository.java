@@ -0,0 +1,186 @@
+package com.example.eomix.repositories;
+
+import com.example.eomix.entities.FhirResourceDocument;
+import org.ektorp.ComplexKey;
+import org.ektorp.CouchDbConnector;
+import org.ektorp.DocumentOperationResult;
+import org.ektorp.ViewQuery;
+import org.ektorp.ViewResult;
+import org.ektorp.support.CouchDbRepositorySupport;
+import org.ektorp.support.View;
+import org.ektorp.support.Views;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The type Fhir resource document repository.
+ * <p>
+ * CouchDB repository of the FHIR resources stored by {@link CouchDbFhirResourceRepository}, with the views indexing
+ * them by accession identifier and by accession and official identifiers, and counting them by accession identifier.
+ * </p>
+ */
+@Repository
+@Views({
+        @View(name = FhirResourceDocumentRepository.BY_ACCESSION, map = "function(doc) { if (doc.resourceType && doc.accession) { emit([doc.resourceType, doc.accession], null); } }"),
+        @View(name = FhirResourceDocumentRepository.COUNT_BY_ACCESSION, map = "function(doc) { if (doc.resourceType && doc.accession) { emit([doc.resourceType, doc.accession], null); } }", reduce = "_count"),
+        @View(name = FhirResourceDocumentRepository.BY_IDENTIFIERS, map = "function(doc) { if (doc.resourceType && doc.accession && doc.identifier) { emit([doc.resourceType, doc.accession, doc.identifier], null); } }")
+})
+public class FhirResourceDocumentRepository extends CouchDbRepositorySupport<FhirResourceDocument> {
+
+    /**
+     * The constant BY_ACCESSION.
+     */
+    public static final String BY_ACCESSION = "by_accession";
+    /**
+     * The constant COUNT_BY_ACCESSION.
+     */
+    public static final String COUNT_BY_ACCESSION = "count_by_accession";
+    /**
+     * The constant BY_IDENTIFIERS.
+     */
+    public static final String BY_IDENTIFIERS = "by_identifiers";
+
+    /**
+     * Instantiates a new Fhir resource document repository.
+     * This constructor initializes the repository with the specified CouchDbConnector,
+     * and creates or updates the design document holding the views.
+     *
+     * @param db the db
+     * @implNote couchDbConnector4 : FHIR resources database
+     */
+    public FhirResourceDocumentRepository(@Qualifier("couchDbConnector4") CouchDbConnector db) {
+        super(FhirResourceDocument.class, db);
+        initStandardDesignDocument();
+    }
+
+    /**
+     * Finds a document by its id.
+     *
+     * @param id the document id ({@code Type/id})
+     * @return the document, or null if it does not exist
+     */
+    public @Nullable FhirResourceDocument find(String id) {
+        return db.find(FhirResourceDocument.class, id);
+    }
+
+    /**
+     * Finds all the documents of a resource type with the given accession identifier.
+     *
+     * @param resourceType the resource type
+     * @param accession    the accession identifier (metadata file name)
+     * @return the documents (may be empty)
+     */
+    public List<FhirResourceDocument> findByAccession(String resourceType, String accession) {
+        return queryView(BY_ACCESSION, ComplexKey.of(resourceType, accession));
+    }
+
+    /**
+     * Finds a page of the documents of a resource type with the given accession identifier.
+     *
+     * @param resourceType the resource type
+     * @param accession    the accession identifier (metadata file name)
+     * @param offset       the index of the first document of the page
+     * @param count        the maximum number of documents of the page
+     * @return the documents of the page (may be empty)
+     * @implNote Pages are read with {@code skip} and {@code limit}, ordered by document id, so CouchDB walks the
+     * documents of the previous pages; reading the pages in order goes through {@link #findPageByAccessionAfter}.
+     */
+    public List<FhirResourceDocument> findPageByAccession(String resourceType, String accession, int offset, int count) {
+        ViewQuery query = createQuery(BY_ACCESSION).key(ComplexKey.of(resourceType, accession)).includeDocs(true).skip(offset).limit(count);
+        return db.queryView(query, FhirResourceDocument.class);
+    }
+
+    /**
+     * Finds a page of the documents of a resource type with the given accession identifier, from a cursor.
+     *
+     * @param resourceType   the resource type
+     * @param accession      the accession identifier (metadata file name)
+     * @param lastDocumentId the id of the last document of the previous page, or null for the first page
+     * @param count          the maximum number of documents of the page
+     * @return the documents following the cursor, ordered by document id (may be empty)
+     * @implNote The view is resumed at the cursor with {@code startkey} and {@code startkey_docid}, so the cost of a
+     * page does not depend on its position; the cursor document itself is skipped.
+     */
+    public List<FhirResourceDocument> findPageByAccessionAfter(String resourceType, String accession,
+                                                               @Nullable String lastDocumentId, int count) {
+        ComplexKey key = ComplexKey.of(resourceType, accession);
+        ViewQuery query = createQuery(BY_ACCESSION).startKey(key).endKey(key).includeDocs(true).limit(count);
+        if (lastDocumentId != null) {
+            query.startDocId(lastDocumentId).skip(1);
+        }
+        return db.queryView(query, FhirResourceDocument.class);
+    }
+
+    /**
+     * Counts the documents of a resource type with the given accession identifier.
+     *
+     * @param resourceType the resource type
+     * @param accession    the accession identifier (metadata file name)
+     * @return the number of documents
+     */
+    public int countByAccession(String resourceType, String accession) {
+        ViewQuery query = createQuery(COUNT_BY_ACCESSION).key(ComplexKey.of(resourceType, accession)).reduce(true);
+        List<ViewResult.Row> rows = db.queryView(query).getRows();
+        return rows.isEmpty() ? 0 : rows.get(0).getValueAsInt();
+    }
+
+    /**
+     * Finds the first document of a resource type with the given accession and official identifiers.
+     *
+     * @param resourceType the resource type
+     * @param accession    the accession identifier (metadata file name)
+     * @param identifier   the official identifier
+     * @return the document, or null if no document matches
+     */
+    public @Nullable FhirResourceDocument findByIdentifiers(String resourceType, String accession, String identifier) {
+        ViewQuery query = createQuery(BY_IDENTIFIERS).key(ComplexKey.of(resourceType, accession, identifier)).includeDocs(true).limit(1);
+        List<FhirResourceDocument> documents = db.queryView(query, FhirResourceDocument.class);
+        return documents.isEmpty() ? null : documents.get(0);
+    }
+
+    /**
+     * Finds the documents with the given ids.
+     *
+     * @param ids the document ids ({@code Type/id})
+     * @return the documents found, in the order of the ids; the missing ones are left out
+     * @implNote A single {@code _all_docs} request with the ids as keys.
+     */
+    public List<FhirResourceDocument> findAllById(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        ViewQuery query = new ViewQuery().allDocs().keys(ids).includeDocs(true);
+        query.setIgnoreNotFound(true);
+        return db.queryView(query, FhirResourceDocument.class);
+    }
+
+    /**
+     * Finds the documents matching any of the given accession and official identifiers.
+     *
+     * @param keys the keys, each made of the resource type, the accession identifier and the official identifier
+     * @return the documents matching the keys, in the order of the keys
+     * @implNote A single query of the view with the keys, instead of one query per key.
+     */
+    public List<FhirResourceDocument> findAllByIdentifiers(Collection<ComplexKey> keys) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+        ViewQuery query = createQuery(BY_IDENTIFIERS).keys(keys).includeDocs(true);
+        return db.queryView(query, FhirResourceDocument.class);
+    }
+
+    /**
+     * Writes documents in a single bulk request.
+     *
+     * @param documents the documents to create or update, and the {@link org.ektorp.BulkDeleteDocument}s to delete
+     * @return the results of the documents CouchDB rejected (conflict...), empty if all were written; the revisions of
+     * the written documents are updated
+     */
+    public List<DocumentOperationResult> executeBulk(Collection<?> documents) {
+        return db.executeBulk(documents);
+    }
+}
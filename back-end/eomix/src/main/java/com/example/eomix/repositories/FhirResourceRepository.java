@@ -0,0 +1,175 @@
+package com.example.eomix.repositories;
+
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r5.model.Bundle;
+import org.hl7.fhir.r5.model.Resource;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * The interface Fhir resource repository.
+ * <p>
+ * Access to the FHIR resources of the application, shared by {@link com.example.eomix.service.ResourcesFetcher}
+ * during the ingestion of the metadata files and by the resource providers of the FHIR servlet.
+ * </p>
+ * <ul>
+ *     <li>{@link InMemoryFhirResourceRepository} works in process on the resource providers of the embedded FHIR
+ *     server, without serializing the resources.</li>
+ *     <li>{@link CouchDbFhirResourceRepository} persists the resources in a CouchDB database, indexed by identifiers.</li>
+ *     <li>{@link RemoteFhirResourceRepository} works on a remote FHIR server through the HAPI FHIR client.</li>
+ * </ul>
+ * <p>
+ * Resources are looked up by their accession identifier (the metadata file name) and their official identifier
+ * (sample id, patient id, batch id...).
+ * </p>
+ *
+ * @implSpec Returned resources are copies, callers may modify them freely.
+ */
+public interface FhirResourceRepository {
+
+    /**
+     * Gets the version of a resource, from its id or its meta.
+     *
+     * @param resource the resource
+     * @return the version id, or null if the resource is not versioned
+     */
+    static @Nullable String getVersionId(Resource resource) {
+        if (resource.getIdElement().hasVersionIdPart()) {
+            return resource.getIdElement().getVersionIdPart();
+        }
+        return resource.getMeta().getVersionId();
+    }
+
+    /**
+     * Creates a resource.
+     *
+     * @param resource the resource
+     * @return the id of the created resource
+     */
+    IIdType create(Resource resource);
+
+    /**
+     * Updates a resource, or creates it with its id if it does not exist.
+     *
+     * @param resource the resource, with its id
+     * @return the id of the updated resource
+     */
+    IIdType update(Resource resource);
+
+    /**
+     * Creates a resource, unless a resource of the same type with the same accession and official identifiers exists
+     * (conditional create, {@code If-None-Exist}).
+     *
+     * @param resource the resource
+     * @return the outcome, with the id of the created or existing resource; {@code getCreated()} tells which
+     */
+    MethodOutcome createIfNoneExist(Resource resource);
+
+    /**
+     * Updates a resource, only if its current version is the expected one (versioned update, {@code If-Match}).
+     *
+     * @param resource  the resource, with its id
+     * @param versionId the expected current version of the resource
+     * @return the id of the updated resource, with its new version
+     * @throws PreconditionFailedException if the resource does not exist or was changed since that version
+     */
+    IIdType updateIfMatch(Resource resource, String versionId);
+
+    /**
+     * Reads a resource by its id.
+     *
+     * @param id the id of the resource, with its resource type
+     * @return the resource, or null if it does not exist or was deleted
+     */
+    @Nullable Resource read(IIdType id);
+
+    /**
+     * Deletes a resource, if it exists.
+     *
+     * @param id the id of the resource, with its resource type
+     */
+    void delete(IIdType id);
+
+    /**
+     * Finds a resource by its accession and official identifiers.
+     *
+     * @param <T>                 the resource type
+     * @param resourceType        the resource class
+     * @param accessionIdentifier the accession identifier (metadata file name)
+     * @param officialIdentifier  the official identifier
+     * @return the resource, or null if no matching resource is found
+     */
+    <T extends Resource> @Nullable T findByIdentifiers(Class<T> resourceType, String accessionIdentifier,
+                                                       String officialIdentifier);
+
+    /**
+     * Finds all resources of a type sharing the same accession identifier.
+     *
+     * @param <T>                 the resource type
+     * @param resourceType        the resource class
+     * @param accessionIdentifier the accession identifier (metadata file name)
+     * @return the matching resources, never null
+     */
+    <T extends Resource> List<T> findAllByAccession(Class<T> resourceType, String accessionIdentifier);
+
+    /**
+     * Finds a page of the resources of a type sharing the same accession identifier.
+     *
+     * @param <T>                 the resource type
+     * @param resourceType        the resource class
+     * @param accessionIdentifier the accession identifier (metadata file name)
+     * @param offset              the index of the first resource of the page
+     * @param count               the maximum number of resources of the page
+     * @return the resources of the page, never null
+     */
+    <T extends Resource> List<T> findPageByAccession(Class<T> resourceType, String accessionIdentifier, int offset,
+                                                     int count);
+
+    /**
+     * Counts the resources of a type sharing the same accession identifier.
+     *
+     * @param resourceType        the resource class
+     * @param accessionIdentifier the accession identifier (metadata file name)
+     * @return the number of resources
+     */
+    int countByAccession(Class<? extends Resource> resourceType, String accessionIdentifier);
+
+    /**
+     * Opens a paging session over the resources of a type sharing the same accession identifier.
+     *
+     * @param <T>                 the resource type
+     * @param resourceType        the resource class
+     * @param accessionIdentifier the accession identifier (metadata file name)
+     * @return the pager, reading the pages with {@link #findPageByAccession} and counting the resources once with
+     * {@link #countByAccession} unless the repository keeps its position between pages
+     */
+    default <T extends Resource> AccessionPager<T> openAccessionPager(Class<T> resourceType, String accessionIdentifier) {
+        return new AccessionPager<>() {
+            private Integer size;
+
+            @Override
+            public List<T> getPage(int offset, int count) {
+                return findPageByAccession(resourceType, accessionIdentifier, offset, count);
+            }
+
+            @Override
+            public synchronized int size() {
+                if (size == null) {
+                    size = countByAccession(resourceType, accessionIdentifier);
+                }
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Processes a transaction Bundle.
+     *
+     * @param transaction the transaction bundle
+     * @return the transaction-response bundle, with one entry per request entry
+     */
+    Bundle transaction(Bundle transaction);
+}
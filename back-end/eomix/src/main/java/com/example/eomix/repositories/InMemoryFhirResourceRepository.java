@@ -0,0 +1,148 @@
+package com.example.eomix.repositories;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.IInterceptorService;
+import ca.uhn.fhir.interceptor.executor.InterceptorService;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.api.server.SystemRequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.rest.server.provider.HashMapResourceProvider;
+import com.example.eomix.service.FhirIdentifierIndex;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r5.model.*;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * In-process FHIR resource repository.
+ * <p>
+ * This repository owns the in-memory resource providers of the embedded FHIR server and the
+ * {@link FhirIdentifierIndex} kept in sync with them. The ingestion calls the providers directly, so the resources
+ * are neither serialized to JSON nor sent through the loopback socket of the servlet.
+ * </p>
+ * <p>
+ * The FHIR servlet registers the same providers and uses the same interceptor service, so resources written
+ * through HTTP and in process share a single store and a single index.
+ * The resources are lost on restart; {@link CouchDbFhirResourceRepository} persists them.
+ * </p>
+ *
+ * @implNote In-process calls are made with a {@link SystemRequestDetails} bound to the shared interceptor service, so
+ * that the storage hooks (and the index) are fired exactly as for HTTP requests.
+ */
+public class InMemoryFhirResourceRepository extends AbstractFhirResourceRepository {
+
+    private final Map<String, HashMapResourceProvider<? extends IBaseResource>> resourceProviders = new LinkedHashMap<>();
+    private final FhirIdentifierIndex identifierIndex = new FhirIdentifierIndex();
+    private final IInterceptorService interceptorService = new InterceptorService("FhirResourceRepository");
+
+    /**
+     * Instantiates a new In memory fhir resource repository, with a resource provider for Specimen, Patient,
+     * Observation, MolecularSequence and Group.
+     *
+     * @param fhirContext the FHIR context
+     */
+    public InMemoryFhirResourceRepository(FhirContext fhirContext) {
+        addResourceProvider(fhirContext, Specimen.class);
+        addResourceProvider(fhirContext, Patient.class);
+        addResourceProvider(fhirContext, Observation.class);
+        addResourceProvider(fhirContext, MolecularSequence.class);
+        addResourceProvider(fhirContext, Group.class);
+        interceptorService.registerInterceptor(identifierIndex);
+    }
+
+    private <T extends IBaseResource> void addResourceProvider(FhirContext fhirContext, Class<T> resourceType) {
+        resourceProviders.put(fhirContext.getResourceType(resourceType), new HashMapResourceProvider<>(fhirContext, resourceType));
+    }
+
+    /**
+     * Gets the in-memory resource providers, to be registered on the FHIR servlet.
+     *
+     * @return the resource providers
+     */
+    public Collection<HashMapResourceProvider<? extends IBaseResource>> getResourceProviders() {
+        return Collections.unmodifiableCollection(resourceProviders.values());
+    }
+
+    /**
+     * Gets the interceptor service shared with the FHIR servlet.
+     * <p>
+     * The identifier index is registered on it, so that it follows every create, update and delete.
+     *
+     * @return the interceptor service
+     */
+    public IInterceptorService getInterceptorService() {
+        return interceptorService;
+    }
+
+    /**
+     * Gets the identifier index.
+     *
+     * @return the identifier index
+     */
+    public FhirIdentifierIndex getIdentifierIndex() {
+        return identifierIndex;
+    }
+
+    @Override
+    public IIdType create(Resource resource) {
+        return getProvider(resource.fhirType()).create(resource, newRequestDetails()).getId();
+    }
+
+    @Override
+    public IIdType update(Resource resource) {
+        return getProvider(resource.fhirType()).update(resource, null, newRequestDetails()).getId();
+    }
+
+    @Override
+    public <T extends Resource> @Nullable T findByIdentifiers(Class<T> resourceType, String accessionIdentifier,
+                                                              String officialIdentifier) {
+        return identifierIndex.find(resourceType, accessionIdentifier, officialIdentifier);
+    }
+
+    @Override
+    public <T extends Resource> List<T> findAllByAccession(Class<T> resourceType, String accessionIdentifier) {
+        return identifierIndex.findAllByAccession(resourceType, accessionIdentifier);
+    }
+
+    @Override
+    public <T extends Resource> List<T> findPageByAccession(Class<T> resourceType, String accessionIdentifier,
+                                                            int offset, int count) {
+        return identifierIndex.findPageByAccession(resourceType, accessionIdentifier, offset, count);
+    }
+
+    @Override
+    public int countByAccession(Class<? extends Resource> resourceType, String accessionIdentifier) {
+        return identifierIndex.countByAccession(resourceType, accessionIdentifier);
+    }
+
+    @Override
+    public @Nullable Resource read(IIdType id) {
+        try {
+            return ((Resource) getProvider(id.getResourceType()).read(id.toVersionless(), newRequestDetails())).copy();
+        } catch (ResourceNotFoundException | ResourceGoneException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void delete(IIdType id) {
+        getProvider(id.getResourceType()).delete(id.toVersionless(), newRequestDetails());
+    }
+
+    private RequestDetails newRequestDetails() {
+        return new SystemRequestDetails(interceptorService);
+    }
+
+    @SuppressWarnings("unchecked")
+    private HashMapResourceProvider<IBaseResource> getProvider(String resourceType) {
+        HashMapResourceProvider<? extends IBaseResource> provider = resourceProviders.get(resourceType);
+        if (provider == null) {
+            throw new InvalidRequestException("Unsupported resource type: " + resourceType);
+        }
+        return (HashMapResourceProvider<IBaseResource>) provider;
+    }
+}
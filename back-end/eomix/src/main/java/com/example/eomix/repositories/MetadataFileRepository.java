@@ -3,16 +3,23 @@ package com.example.eomix.repositories;
 import com.example.eomix.entities.MetadataFileUploadEntity;
 import com.example.eomix.exception.MetadataFileUploadException;
 import com.fasterxml.jackson.databind.JsonNode;
+import org.ektorp.BulkDeleteDocument;
 import org.ektorp.CouchDbConnector;
+import org.ektorp.DocumentOperationResult;
+import org.ektorp.StreamingViewResult;
 import org.ektorp.ViewQuery;
 import org.ektorp.ViewResult;
 import org.ektorp.support.CouchDbRepositorySupport;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Repository;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * The type File repository.
@@ -61,6 +68,56 @@ public class MetadataFileRepository extends CouchDbRepositorySupport<MetadataFil
         return queryView("by_filename", filename);
     }
 
+    /**
+     * Checks if at least one sample of a metadata file is stored.
+     *
+     * @param filename the exact filename to search for
+     * @return true if a sample of the file is stored
+     * @implNote Reads a single row of the {@code by_filename} view, without the document.
+     */
+    public boolean existsByFilename(String filename) {
+        ViewQuery query = new ViewQuery().designDocId(DESIGN_FILE_UPLOAD_ENTITY).viewName("by_filename").key(filename).limit(1);
+        return !db.queryView(query).isEmpty();
+    }
+
+    /**
+     * Streams the source columns of all metadata file uploads matching the given filename.
+     *
+     * <p>This method queries the {@code by_filename} view with the documents included and hands the source columns
+     * of each sample to the consumer as soon as its row is read from the CouchDB response,
+     * without materializing the list of documents.</p>
+     *
+     * @param filename the exact filename to search for
+     * @param consumer the consumer of the source columns of each sample; columns without value are left out
+     * @return the number of samples streamed (0 if no matches found)
+     * @implNote Uses ektorp's streaming view, so the memory used does not depend on the number of samples
+     * @implSpec The connection is released once all the rows are consumed, or if the consumer throws
+     */
+    public int streamSourceColumnsByFilename(String filename, Consumer<Map<String, String>> consumer) {
+        ViewQuery query = new ViewQuery().designDocId(DESIGN_FILE_UPLOAD_ENTITY).viewName("by_filename").key(filename).includeDocs(true);
+        int samplesCount = 0;
+        try (StreamingViewResult result = db.queryForStreamingView(query)) {
+            for (ViewResult.Row row : result) {
+                JsonNode doc = row.getDocAsNode();
+                if (doc != null && doc.hasNonNull("sourceColumns")) {
+                    consumer.accept(getSourceColumns(doc.get("sourceColumns")));
+                    samplesCount++;
+                }
+            }
+        }
+        return samplesCount;
+    }
+
+    private static @NotNull Map<String, String> getSourceColumns(JsonNode sourceColumnsNode) {
+        Map<String, String> sourceColumns = new LinkedHashMap<>();
+        sourceColumnsNode.fields().forEachRemaining(column -> {
+            if (!column.getValue().isNull()) {
+                sourceColumns.put(column.getKey(), column.getValue().asText());
+            }
+        });
+        return sourceColumns;
+    }
+
     /**
      * Retrieves aggregated file metadata from CouchDB without loading full documents.
      *
@@ -78,52 +135,48 @@ public class MetadataFileRepository extends CouchDbRepositorySupport<MetadataFil
     }
 
     /**
-     * Deletes all documents associated with the specified filename from CouchDB.
+     * Finds a page of the documents of the specified filename, as deletion stubs.
      *
-     * <p>This method performs a complete cleanup by:</p>
-     * <ul>
-     *   <li>Finding all documents matching the filename</li>
-     *   <li>Deleting them in bulk operations</li>
-     *   <li>Repeating until no matching documents remain</li>
-     * </ul>
+     * <p>The pages are ordered by document id and follow each other with {@code startkey_docid}, so that the next page
+     * can be read while the previous one is being deleted, without skipping rows.</p>
      *
-     * @param filename the filename of documents to delete
-     * @implNote Uses a while loop to ensure complete deletion of all matching documents
-     * @implSpec Operates as a void method with no return value
+     * @param filename   the filename of documents to delete
+     * @param afterDocId the id of the last document of the previous page, or null for the first page
+     * @param limit      the maximum number of documents of the page
+     * @return the id and revision of the documents of the page, empty once all were returned
+     * @implNote The row of {@code afterDocId} is left out if it is still in the view.
      */
-    public void deleteAllByFilename(String filename) {
-        while (true) {
-            List<MetadataFileUploadEntity> docsToDelete = getFileUploadEntitiesByFileName(filename);
-            if (docsToDelete.isEmpty()) {
-                break;
-            }
-            db.executeBulk(docsToDelete);
+    public List<BulkDeleteDocument> findDocumentsToDeleteByFilename(String filename, @Nullable String afterDocId, int limit) {
+        ViewQuery query = new ViewQuery().designDocId(DESIGN_FILE_UPLOAD_ENTITY).viewName("by_filename").startKey(filename).endKey(filename).limit(limit + 1);
+        if (afterDocId != null) {
+            query.startDocId(afterDocId);
         }
+        return db.queryView(query).getRows().stream()
+                .filter(row -> !row.getId().equals(afterDocId))
+                .limit(limit)
+                .map(row -> new BulkDeleteDocument(row.getId(), row.getValueAsNode().get("_rev").asText()))
+                .toList();
+    }
+
+    /**
+     * Deletes documents in a single bulk operation.
+     *
+     * @param documents the id and revision of the documents to delete
+     * @return the results of the documents CouchDB refused to delete (conflict...), empty if all were deleted
+     */
+    public List<DocumentOperationResult> bulkDelete(List<BulkDeleteDocument> documents) {
+        return db.executeBulk(documents);
     }
 
     /**
-     * Gets file upload entities by file name.
-     * * This method retrieves a list of MetadataFileUploadEntity objects based on the specified filename.
-     * * It constructs a ViewQuery to query the CouchDB database using the specified design document and view name.
-     * * The key for the query is set to the filename, and the limit is set to 10000 to retrieve a maximum of 10000 results.
-     *
-     * @param filename the filename
-     * @return the list
-     * @implNote The method uses the db to query the view and return a list of MetadataFileUploadEntity objects.
-     * @implSpec The method is designed to return all documents that match the specified filename.
-     * @implNote The method is useful for retrieving all file upload entities associated with a specific filename.
-     * * It is typically used in scenarios where you need to fetch all file uploads related to a specific filename
-     * * for further processing or analysis.
+     * Compacts the database and the views of the metadata files, to reclaim the space of the deleted documents.
+     *
+     * @implNote CouchDB runs the compaction in the background; this method returns once it is started.
      */
-    private @NotNull List<MetadataFileUploadEntity> getFileUploadEntitiesByFileName(String filename) {
-        ViewQuery query = new ViewQuery().designDocId(DESIGN_FILE_UPLOAD_ENTITY).viewName("by_filename").key(filename).limit(10000);
-
-        return db.queryView(query).getRows().stream().map(row -> {
-            MetadataFileUploadEntity doc = new MetadataFileUploadEntity();
-            doc.setId(row.getId());
-            doc.setRevision(row.getValueAsNode().get("_rev").asText());
-            return doc;
-        }).toList();
+    public void compact() {
+        db.compact();
+        db.compactViews(DESIGN_FILE_UPLOAD_ENTITY);
+        db.cleanupViews();
     }
 
     /**
@@ -140,18 +193,31 @@ public class MetadataFileRepository extends CouchDbRepositorySupport<MetadataFil
      * </ul>
      *
      * @param documents list of MetadataFileUploadEntity objects to insert
+     * @return the results of the documents CouchDB rejected (conflict, validation...), empty if all were stored
+     * @throws MetadataFileUploadException if the bulk request itself fails
      * @implNote Uses CouchDB's bulk operation API for optimal performance
-     * @implSpec This is a void operation with no return value
      */
-    public void bulkAdd(List<MetadataFileUploadEntity> documents) {
+    public List<DocumentOperationResult> bulkAdd(List<MetadataFileUploadEntity> documents) {
         try {
             List<Object> docsToSave = new ArrayList<>(documents);
-            db.executeBulk(docsToSave);
+            return db.executeBulk(docsToSave);
         } catch (Exception e) {
             throw new MetadataFileUploadException("Failed to add MetadataFile documents as bulk", e);
         }
     }
 
+    /**
+     * Gets the update sequence of the database.
+     *
+     * <p>The sequence changes on every write to the database, so it tells whether the samples of a file may have
+     * changed since it was last read.</p>
+     *
+     * @return the update sequence, as an opaque string
+     */
+    public String getUpdateSequence() {
+        return db.getDbInfo().getUpdateSeqAsString();
+    }
+
     /**
      * Retrieves file metadata for documents matching the specified filename.
      *
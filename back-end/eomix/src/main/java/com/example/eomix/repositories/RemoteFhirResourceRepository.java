@@ -0,0 +1,296 @@
+package com.example.eomix.repositories;
+
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import com.example.eomix.service.FhirIdentifierIndex;
+import com.example.eomix.utils.Constants;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r5.model.Bundle;
+import org.hl7.fhir.r5.model.IdType;
+import org.hl7.fhir.r5.model.Resource;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Remote FHIR resource repository.
+ * <p>
+ * This repository works on a remote FHIR server through the HAPI FHIR client. It is only used when the application is
+ * configured with {@code fhir.server.remote-url}; by default the resources are accessed in process through
+ * {@link InMemoryFhirResourceRepository}.
+ * </p>
+ *
+ * <p>
+ * Versioned updates are sent with {@code If-Match}. Conditional creates are not sent to the server: the
+ * {@code accession} and {@code identifier} conditions of the application are not search parameters of a standard
+ * FHIR server, so they are resolved here, and the write sent is a plain create, an update of the matching resource,
+ * or a read of it.
+ * </p>
+ *
+ * @implNote The identifiers of the application are stored in the {@code id} of the {@link org.hl7.fhir.r5.model.Identifier}
+ * elements, which a FHIR server cannot search on, so the accession searches go through the pages of the resource type
+ * and filter them; the pages are loaded lazily, one at a time. The conditions are resolved with a
+ * {@link FhirIdentifierIndex} instead: the resources of a type are read once, on its first lookup, and the index then
+ * follows the creates, updates, deletes and transactions sent through this repository. Resources written on the server
+ * by other clients are not seen by the lookups, and since the condition is checked before the write, two concurrent
+ * writers may both create the same resource.
+ */
+public class RemoteFhirResourceRepository implements FhirResourceRepository {
+
+    private final IGenericClient client;
+    private final FhirIdentifierIndex identifierIndex = new FhirIdentifierIndex();
+    private final Set<String> indexedTypes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Instantiates a new Remote fhir resource repository.
+     *
+     * @param client the FHIR client of the remote server
+     */
+    public RemoteFhirResourceRepository(IGenericClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public IIdType create(Resource resource) {
+        return index(resource, client.create().resource(resource).execute().getId());
+    }
+
+    @Override
+    public IIdType update(Resource resource) {
+        return index(resource, client.update().resource(resource).execute().getId());
+    }
+
+    @Override
+    public MethodOutcome createIfNoneExist(Resource resource) {
+        String accessionIdentifier = FhirIdentifierIndex.getAccessionIdentifier(resource);
+        String officialIdentifier = FhirIdentifierIndex.getOfficialIdentifier(resource);
+        if (accessionIdentifier != null && officialIdentifier != null) {
+            Resource existing = findByIdentifiers(resource.getClass(), accessionIdentifier, officialIdentifier);
+            if (existing != null) {
+                return new MethodOutcome(existing.getIdElement(), false);
+            }
+        }
+        MethodOutcome outcome = client.create().resource(resource).execute();
+        index(resource, outcome.getId());
+        return outcome;
+    }
+
+    @Override
+    public IIdType updateIfMatch(Resource resource, String versionId) {
+        resource.setId(new IdType(resource.fhirType(), resource.getIdElement().getIdPart(), versionId));
+        return index(resource, client.update().resource(resource).execute().getId());
+    }
+
+    @Override
+    public @Nullable Resource read(IIdType id) {
+        try {
+            return (Resource) client.read().resource(id.getResourceType()).withId(id.getIdPart()).execute();
+        } catch (ResourceNotFoundException | ResourceGoneException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void delete(IIdType id) {
+        client.delete().resourceById(id.toUnqualifiedVersionless()).execute();
+        identifierIndex.remove(id);
+    }
+
+    /**
+     * Finds a resource by its accession and official identifiers.
+     *
+     * @param <T>                 the resource type
+     * @param resourceType        the resource class
+     * @param accessionIdentifier the accession identifier (metadata file name)
+     * @param officialIdentifier  the official identifier
+     * @return the resource, or null if no matching resource is found
+     * @implNote The lookup is answered by the identifier index; the resources of the type are read from the server
+     * only on the first lookup.
+     */
+    @Override
+    public <T extends Resource> @Nullable T findByIdentifiers(Class<T> resourceType, String accessionIdentifier,
+                                                              String officialIdentifier) {
+        loadIndex(resourceType);
+        return identifierIndex.find(resourceType, accessionIdentifier, officialIdentifier);
+    }
+
+    @Override
+    public <T extends Resource> List<T> findAllByAccession(Class<T> resourceType, String accessionIdentifier) {
+        return streamByAccession(resourceType, accessionIdentifier).toList();
+    }
+
+    @Override
+    public <T extends Resource> List<T> findPageByAccession(Class<T> resourceType, String accessionIdentifier,
+                                                            int offset, int count) {
+        return streamByAccession(resourceType, accessionIdentifier).skip(offset).limit(count).toList();
+    }
+
+    @Override
+    public int countByAccession(Class<? extends Resource> resourceType, String accessionIdentifier) {
+        return (int) streamByAccession(resourceType, accessionIdentifier).count();
+    }
+
+    /**
+     * Opens a paging session over the resources of a type sharing the same accession identifier.
+     *
+     * @param <T>                 the resource type
+     * @param resourceType        the resource class
+     * @param accessionIdentifier the accession identifier (metadata file name)
+     * @return the pager, keeping the search of the remote server open between pages
+     * @implNote The pager keeps the iterator of the search, so the next page follows the {@code next} link where the
+     * previous one stopped, and counts the resources once, or not at all if the last page was already read. A page
+     * before the current position restarts the search.
+     */
+    @Override
+    public <T extends Resource> AccessionPager<T> openAccessionPager(Class<T> resourceType, String accessionIdentifier) {
+        return new RemoteAccessionPager<>(resourceType, accessionIdentifier);
+    }
+
+    /**
+     * Iterates over all the resources of a type stored on the remote server.
+     *
+     * @param <T>          the resource type
+     * @param resourceType the resource class
+     * @return an iterator loading the pages of the search lazily
+     */
+    public <T extends Resource> Iterator<T> iterate(Class<T> resourceType) {
+        Bundle firstPage = client.search().forResource(resourceType).count(Constants.FHIR_CLIENT_PAGE_SIZE).returnBundle(Bundle.class).execute();
+        return new BundlePageIterator<>(client, firstPage, resourceType);
+    }
+
+    private <T extends Resource> Stream<T> streamByAccession(Class<T> resourceType, String accessionIdentifier) {
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(iterate(resourceType), Spliterator.ORDERED);
+        return StreamSupport.stream(spliterator, false).filter(resource -> Objects.equals(FhirIdentifierIndex.getAccessionIdentifier(resource), accessionIdentifier));
+    }
+
+    /**
+     * Processes a transaction Bundle on the remote server, once its conditions are resolved.
+     *
+     * @param transaction the transaction bundle
+     * @return the transaction-response bundle, with one entry per request entry
+     * @implNote The conditions are resolved with the identifier index: a {@code POST} whose {@code ifNoneExist}
+     * matches becomes a {@code GET} of the matching resource, a conditional {@code PUT} becomes a {@code PUT} of the
+     * matching resource, and an entry matching nothing becomes a plain {@code POST}. The written resources are then
+     * indexed from the locations of the response, so the next chunks of the ingestion do not read the server again.
+     */
+    @Override
+    public Bundle transaction(Bundle transaction) {
+        Bundle resolved = new Bundle();
+        resolved.setType(Bundle.BundleType.TRANSACTION);
+        for (Bundle.BundleEntryComponent entry : transaction.getEntry()) {
+            resolved.addEntry(resolveConditions(entry));
+        }
+        Bundle response = client.transaction().withBundle(resolved).execute();
+        for (int i = 0; i < resolved.getEntry().size() && i < response.getEntry().size(); i++) {
+            index(resolved.getEntry().get(i), response.getEntry().get(i).getResponse());
+        }
+        return response;
+    }
+
+    private Bundle.BundleEntryComponent resolveConditions(Bundle.BundleEntryComponent entry) {
+        Bundle.BundleEntryRequestComponent request = entry.getRequest();
+        boolean conditionalCreate = request.getMethod() == Bundle.HTTPVerb.POST && request.hasIfNoneExist();
+        boolean conditionalUpdate = request.getMethod() == Bundle.HTTPVerb.PUT && request.getUrl() != null && request.getUrl().contains("?");
+        if (!conditionalCreate && !conditionalUpdate) {
+            return entry.copy();
+        }
+        Resource resource = entry.getResource().copy();
+        String accessionIdentifier = FhirIdentifierIndex.getAccessionIdentifier(resource);
+        String officialIdentifier = FhirIdentifierIndex.getOfficialIdentifier(resource);
+        Resource existing = accessionIdentifier == null || officialIdentifier == null ? null
+                : findByIdentifiers(resource.getClass(), accessionIdentifier, officialIdentifier);
+        Bundle.BundleEntryComponent resolvedEntry = new Bundle.BundleEntryComponent();
+        if (existing == null) {
+            resolvedEntry.setResource(resource).getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl(resource.fhirType());
+        } else if (conditionalUpdate) {
+            resource.setId(existing.getIdElement().getIdPart());
+            resolvedEntry.setResource(resource).getRequest().setMethod(Bundle.HTTPVerb.PUT).setUrl(resource.fhirType() + "/" + existing.getIdElement().getIdPart());
+        } else {
+            resolvedEntry.getRequest().setMethod(Bundle.HTTPVerb.GET).setUrl(resource.fhirType() + "/" + existing.getIdElement().getIdPart());
+        }
+        return resolvedEntry;
+    }
+
+    /**
+     * Reads the resources of a type into the identifier index, unless they were already read.
+     *
+     * @param resourceType the resource class
+     */
+    private void loadIndex(Class<? extends Resource> resourceType) {
+        if (indexedTypes.contains(resourceType.getSimpleName())) {
+            return;
+        }
+        synchronized (indexedTypes) {
+            if (!indexedTypes.contains(resourceType.getSimpleName())) {
+                iterate(resourceType).forEachRemaining(identifierIndex::put);
+                indexedTypes.add(resourceType.getSimpleName());
+            }
+        }
+    }
+
+    private IIdType index(Resource resource, IIdType id) {
+        if (id != null && id.hasIdPart()) {
+            Resource indexed = resource.copy();
+            indexed.setId(new IdType(resource.fhirType(), id.getIdPart(), id.getVersionIdPart()));
+            identifierIndex.put(indexed);
+        }
+        return id;
+    }
+
+    private void index(Bundle.BundleEntryComponent entry, Bundle.BundleEntryResponseComponent response) {
+        Bundle.HTTPVerb method = entry.getRequest().getMethod();
+        if (method == Bundle.HTTPVerb.DELETE) {
+            identifierIndex.remove(new IdType(entry.getRequest().getUrl()));
+        } else if ((method == Bundle.HTTPVerb.POST || method == Bundle.HTTPVerb.PUT) && entry.hasResource() && response.hasLocation()) {
+            index(entry.getResource(), new IdType(response.getLocation()));
+        }
+    }
+
+    private class RemoteAccessionPager<T extends Resource> implements AccessionPager<T> {
+
+        private final Class<T> resourceType;
+        private final String accessionIdentifier;
+        private Iterator<T> resources;
+        private int position;
+        private Integer size;
+
+        RemoteAccessionPager(Class<T> resourceType, String accessionIdentifier) {
+            this.resourceType = resourceType;
+            this.accessionIdentifier = accessionIdentifier;
+        }
+
+        @Override
+        public synchronized List<T> getPage(int offset, int count) {
+            if (resources == null || offset < position) {
+                resources = streamByAccession(resourceType, accessionIdentifier).iterator();
+                position = 0;
+            }
+            while (position < offset && resources.hasNext()) {
+                resources.next();
+                position++;
+            }
+            List<T> page = new ArrayList<>(count);
+            while (page.size() < count && resources.hasNext()) {
+                page.add(resources.next());
+                position++;
+            }
+            if (!resources.hasNext()) {
+                size = position;
+            }
+            return page;
+        }
+
+        @Override
+        public synchronized int size() {
+            if (size == null) {
+                size = countByAccession(resourceType, accessionIdentifier);
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.eomix.resource_provider;
+
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import com.example.eomix.repositories.AccessionPager;
+import com.example.eomix.repositories.FhirResourceRepository;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.hl7.fhir.r5.model.InstantType;
+import org.hl7.fhir.r5.model.Resource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The type Accession bundle provider.
+ * <p>
+ * Result of a search by accession identifier (metadata file name). The resources are read from the
+ * {@link FhirResourceRepository} one page at a time, when the FHIR servlet asks for a page, so that a search never
+ * loads all the resources of a metadata file. The provider holds the {@link AccessionPager} of the search, so that the
+ * next page resumes where the previous one stopped.
+ * </p>
+ * <p>
+ * The pages are served through the paging provider of the servlet, with the {@code _count} parameter and the
+ * {@code next} links of the search-set Bundle.
+ * </p>
+ *
+ * @param <T> the resource type
+ */
+public class AccessionBundleProvider<T extends Resource> implements IBundleProvider {
+
+    private final AccessionPager<T> pager;
+    private final InstantType published = InstantType.withCurrentTime();
+
+    /**
+     * Instantiates a new Accession bundle provider.
+     *
+     * @param repository          the repository the resources are read from
+     * @param resourceType        the resource class
+     * @param accessionIdentifier the accession identifier (metadata file name)
+     */
+    public AccessionBundleProvider(FhirResourceRepository repository, Class<T> resourceType,
+                                   String accessionIdentifier) {
+        this.pager = repository.openAccessionPager(resourceType, accessionIdentifier);
+    }
+
+    @Override
+    public IPrimitiveType<java.util.Date> getPublished() {
+        return published;
+    }
+
+    @Override
+    public List<IBaseResource> getResources(int theFromIndex, int theToIndex) {
+        return new ArrayList<>(pager.getPage(theFromIndex, theToIndex - theFromIndex));
+    }
+
+    @Override
+    public String getUuid() {
+        return null;
+    }
+
+    @Override
+    public Integer preferredPageSize() {
+        return null;
+    }
+
+    @Override
+    public Integer size() {
+        return pager.size();
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.eomix.resource_provider;
+
+import ca.uhn.fhir.rest.annotation.*;
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.server.IResourceProvider;
+import ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import com.example.eomix.repositories.FhirResourceRepository;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r5.model.IdType;
+import org.hl7.fhir.r5.model.Resource;
+
+/**
+ * The type Fhir repository resource provider.
+ * <p>
+ * This provider serves the read, create, update and delete interactions of a resource type from a
+ * {@link FhirResourceRepository}. It replaces the in-memory {@code HashMapResourceProvider} of the FHIR servlet when
+ * the resources are stored in a persistent repository.
+ * </p>
+ *
+ * @param <T> the resource type
+ */
+public class FhirRepositoryResourceProvider<T extends Resource> implements IResourceProvider {
+
+    private final FhirResourceRepository repository;
+    private final Class<T> resourceType;
+
+    /**
+     * Instantiates a new Fhir repository resource provider.
+     *
+     * @param repository   the repository the resources are stored in
+     * @param resourceType the resource type
+     */
+    public FhirRepositoryResourceProvider(FhirResourceRepository repository, Class<T> resourceType) {
+        this.repository = repository;
+        this.resourceType = resourceType;
+    }
+
+    /**
+     * Reads a resource by its id.
+     *
+     * @param theId the id of the resource
+     * @return the resource
+     * @throws ResourceNotFoundException if the resource does not exist
+     */
+    @Read
+    public T read(@IdParam IdType theId) {
+        Resource resource = repository.read(new IdType(getResourceTypeName(), theId.getIdPart()));
+        if (!resourceType.isInstance(resource)) {
+            throw new ResourceNotFoundException(theId);
+        }
+        return resourceType.cast(resource);
+    }
+
+    /**
+     * Creates a resource.
+     * With an {@code If-None-Exist} header, the resource is only created if no resource of the same type has the same
+     * accession and official identifiers.
+     *
+     * @param theResource    the resource
+     * @param theConditional the {@code If-None-Exist} condition, if any
+     * @return the outcome, with the id of the created or existing resource
+     */
+    @Create
+    public MethodOutcome create(@ResourceParam T theResource, @ConditionalUrlParam String theConditional) {
+        if (theConditional != null) {
+            return repository.createIfNoneExist(theResource);
+        }
+        return new MethodOutcome(repository.create(theResource), true);
+    }
+
+    /**
+     * Updates a resource, or creates it with its id if it does not exist.
+     * With an {@code If-Match} header, the resource is only updated if its current version is the given one.
+     *
+     * @param theId       the id of the resource, with the {@code If-Match} version if any
+     * @param theResource the resource
+     * @return the outcome, with the id of the updated resource
+     * @throws PreconditionFailedException if the resource was changed since the {@code If-Match} version
+     */
+    @Update
+    public MethodOutcome update(@IdParam IdType theId, @ResourceParam T theResource) {
+        theResource.setId(theId.getIdPart());
+        if (theId.hasVersionIdPart()) {
+            return new MethodOutcome(repository.updateIfMatch(theResource, theId.getVersionIdPart()));
+        }
+        return new MethodOutcome(repository.update(theResource));
+    }
+
+    /**
+     * Deletes a resource.
+     *
+     * @param theId the id of the resource
+     * @return the outcome
+     */
+    @Delete
+    public MethodOutcome delete(@IdParam IdType theId) {
+        repository.delete(new IdType(getResourceTypeName(), theId.getIdPart()));
+        return new MethodOutcome();
+    }
+
+    @Override
+    public Class<? extends IBaseResource> getResourceType() {
+        return resourceType;
+    }
+
+    private String getResourceTypeName() {
+        return resourceType.getSimpleName();
+    }
+}
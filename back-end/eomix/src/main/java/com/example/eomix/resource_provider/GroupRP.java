@@ -2,6 +2,7 @@ package com.example.eomix.resource_provider;
 
 import ca.uhn.fhir.rest.annotation.RequiredParam;
 import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import com.example.eomix.service.ResourcesFetcher;
@@ -9,8 +10,6 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r5.model.Group;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
-
 /**
  * The type Group resource provider.
  */
@@ -22,13 +21,13 @@ public class GroupRP implements IResourceProvider {
      * This method is used to search for groups based on the provided accession identifier.
      *
      * @param theProvider the provider containing the accession identifier
-     * @return the list
+     * @return the matching resources, read one page at a time
      */
     @Search
-    public List<Group> searchByAccessionIdentifier(
+    public IBundleProvider searchByAccessionIdentifier(
             @RequiredParam(name = Group.SP_IDENTIFIER) TokenParam theProvider) {
         String identifier = theProvider.getValue();
-        return ResourcesFetcher.getGroupFromServerByAccessionIdentifier(identifier);
+        return new AccessionBundleProvider<>(ResourcesFetcher.getRepository(), Group.class, identifier);
     }
 
     @Override
@@ -2,6 +2,7 @@ package com.example.eomix.resource_provider;
 
 import ca.uhn.fhir.rest.annotation.RequiredParam;
 import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import com.example.eomix.service.ResourcesFetcher;
@@ -9,8 +10,6 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r5.model.MolecularSequence;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
-
 /**
  * The type Molecular sequence resource provider.
  */
@@ -23,12 +22,12 @@ public class MolecularSequenceRP implements IResourceProvider {
      * It retrieves the molecular sequence from the server using the identifier.
      *
      * @param theProvider the provider containing the identifier
-     * @return the molecular sequence
+     * @return the matching resources, read one page at a time
      */
     @Search
-    public List<MolecularSequence> searchAllMolecularSequence(@RequiredParam(name = MolecularSequence.SP_IDENTIFIER) TokenParam theProvider) {
+    public IBundleProvider searchAllMolecularSequence(@RequiredParam(name = MolecularSequence.SP_IDENTIFIER) TokenParam theProvider) {
         String identifier = theProvider.getValue();
-        return ResourcesFetcher.getMolecularSequenceFromServerByAccessionIdentifier(identifier);
+        return new AccessionBundleProvider<>(ResourcesFetcher.getRepository(), MolecularSequence.class, identifier);
     }
 
     @Override
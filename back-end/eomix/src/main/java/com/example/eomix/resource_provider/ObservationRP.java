@@ -2,6 +2,7 @@ package com.example.eomix.resource_provider;
 
 import ca.uhn.fhir.rest.annotation.RequiredParam;
 import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import com.example.eomix.service.ResourcesFetcher;
@@ -10,7 +11,6 @@ import org.hl7.fhir.r5.model.Observation;
 import org.springframework.stereotype.Component;
 
 import java.io.FileNotFoundException;
-import java.util.List;
 
 /**
  * The type Observation resource provider.
@@ -23,14 +23,14 @@ public class ObservationRP implements IResourceProvider {
      * It retrieves the Observations from the server using the identifier.
      *
      * @param theProvider the provider containing the identifier
-     * @return the list
+     * @return the matching resources, read one page at a time
      * @throws FileNotFoundException the file not found exception
      */
     @Search
-    public List<Observation> searchByIdentifier(
+    public IBundleProvider searchByIdentifier(
             @RequiredParam(name = Observation.SP_IDENTIFIER) TokenParam theProvider) throws FileNotFoundException {
         String identifier = theProvider.getValue();
-        return ResourcesFetcher.getObservationFromServerByAccessionIdentifier(identifier);
+        return new AccessionBundleProvider<>(ResourcesFetcher.getRepository(), Observation.class, identifier);
     }
 
     @Override
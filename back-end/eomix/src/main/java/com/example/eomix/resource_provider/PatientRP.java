@@ -2,6 +2,7 @@ package com.example.eomix.resource_provider;
 
 import ca.uhn.fhir.rest.annotation.RequiredParam;
 import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import com.example.eomix.service.ResourcesFetcher;
@@ -9,8 +10,6 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r5.model.Patient;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
-
 /**
  * The type Patient resource provider.
  */
@@ -26,13 +25,13 @@ public class PatientRP implements IResourceProvider {
      * This method retrieves a list of patients from the server based on the provided identifier.
      *
      * @param theProvider the provider containing the identifier
-     * @return the list
+     * @return the matching resources, read one page at a time
      */
     @Search
-    public List<Patient> searchByAccessionIdentifier(
+    public IBundleProvider searchByAccessionIdentifier(
             @RequiredParam(name = Patient.SP_IDENTIFIER) TokenParam theProvider) {
         String identifier = theProvider.getValue();
-        return ResourcesFetcher.getPatientFromServerByAccessionIdentifier(identifier);
+        return new AccessionBundleProvider<>(ResourcesFetcher.getRepository(), Patient.class, identifier);
     }
 
     @Override
@@ -0,0 +1,44 @@
+package com.example.eomix.resource_provider;
+
+import ca.uhn.fhir.rest.annotation.Transaction;
+import ca.uhn.fhir.rest.annotation.TransactionParam;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import com.example.eomix.repositories.FhirResourceRepository;
+import org.hl7.fhir.r5.model.Bundle;
+
+/**
+ * The type Transaction provider.
+ * <p>
+ * This plain provider adds support for FHIR {@code transaction} Bundles to the in-memory server,
+ * so that all the resources of a metadata file can be stored in a single request.
+ * </p>
+ * <p>
+ * The Bundles are applied by the {@link FhirResourceRepository} of the application, which also serves the
+ * transactions of the ingestion made in process.
+ * </p>
+ */
+public class TransactionProvider {
+
+    private final FhirResourceRepository repository;
+
+    /**
+     * Instantiates a new Transaction provider.
+     *
+     * @param repository the repository the transactions are applied to
+     */
+    public TransactionProvider(FhirResourceRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Processes a transaction Bundle and returns the transaction-response Bundle.
+     *
+     * @param theBundle the transaction bundle
+     * @return the transaction-response bundle, with one entry per request entry
+     * @throws InvalidRequestException if an entry is not supported; the applied entries are undone first
+     */
+    @Transaction
+    public Bundle transaction(@TransactionParam Bundle theBundle) {
+        return repository.transaction(theBundle);
+    }
+}
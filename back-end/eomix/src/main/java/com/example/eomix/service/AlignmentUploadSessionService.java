@@ -0,0 +1,336 @@
+package com.example.eomix.service;
+
+import com.example.eomix.config.MultipartMinioClient;
+import com.example.eomix.entities.AlignmentUploadRequest;
+import com.example.eomix.entities.AlignmentUploadSession;
+import com.example.eomix.entities.AlignmentUploadSession.FastqUpload;
+import com.example.eomix.exception.IncompleteUploadException;
+import com.example.eomix.exception.MinioStorageException;
+import com.example.eomix.utils.Helper;
+import io.minio.ObjectWriteArgs;
+import io.minio.errors.MinioException;
+import io.minio.messages.Part;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The type Alignment upload session service.
+ * <p>
+ * This service lets the browser upload the FASTQ files of an alignment straight to MinIO, so that they do not go
+ * through the server, in two phases:
+ * </p>
+ * <ul>
+ *     <li>A session is opened with the alignment parameters and the name and size of the files: a multipart upload is
+ *     created for each file, in the folder of the experiment, and the presigned URL of each of its parts is returned.
+ *     The parts are {@code minio.upload.part-size} large, or larger for the files that would have more than
+ *     {@value ObjectWriteArgs#MAX_MULTIPART_COUNT} parts.</li>
+ *     <li>Once the browser has uploaded the parts, the session is committed: the uploads are completed, and the
+ *     alignment is recorded the same way as when the files are sent to the server. A session committed before all its
+ *     parts are uploaded is kept, so that the browser can upload the missing parts and commit it again.</li>
+ *     <li>The sessions neither committed nor aborted within {@code minio.upload.session-ttl} expire, and their uploads
+ *     are aborted.</li>
+ * </ul>
+ *
+ * @implNote The sessions are kept in memory: the uploads of the sessions still open when the application shuts down
+ * are aborted. A lifecycle rule aborting the incomplete multipart uploads of the bucket covers the uploads left behind
+ * if the application is killed.
+ */
+@Service
+public class AlignmentUploadSessionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlignmentUploadSessionService.class);
+
+    /**
+     * The longest validity of a presigned URL allowed by the S3 API.
+     */
+    private static final Duration MAX_URL_EXPIRY = Duration.ofDays(7);
+
+    private final MultipartMinioClient multipartMinioClient;
+    private final MinioStorageService minioStorageService;
+    private final StorageService storageService;
+    private final String bucketName;
+    private final Duration sessionTtl;
+    private final ScheduledExecutorService sweeper;
+    private final Map<String, AlignmentUploadSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates a new Alignment upload session service.
+     *
+     * @param multipartMinioClient the multipart minio client
+     * @param minioStorageService  the minio storage service
+     * @param storageService       the storage service
+     * @param bucketName           the bucket of the alignments
+     * @param sessionTtl           the time given to the browser to upload the files of a session and commit it
+     */
+    public AlignmentUploadSessionService(MultipartMinioClient multipartMinioClient,
+                                         MinioStorageService minioStorageService, StorageService storageService,
+                                         @Value("${minio.bucket.name}") String bucketName,
+                                         @Value("${minio.upload.session-ttl:24h}") Duration sessionTtl) {
+        this.multipartMinioClient = multipartMinioClient;
+        this.minioStorageService = minioStorageService;
+        this.storageService = storageService;
+        this.bucketName = bucketName;
+        this.sessionTtl = sessionTtl;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "minio-upload-sessions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sweeper.scheduleWithFixedDelay(this::abortExpiredSessions, 5, 5, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Opens an upload session.
+     *
+     * @param request the alignment parameters and the FASTQ files to upload
+     * @return the session, with the presigned URLs of the parts of each file
+     * @throws FileNotFoundException    if the metadata file of the experiment is not found
+     * @throws IllegalArgumentException if a file has no name, a name with a path, or a negative size, or if two files
+     *                                  have the same name
+     * @throws MinioStorageException    if an upload cannot be created
+     */
+    public AlignmentUploadSession open(AlignmentUploadRequest request) throws FileNotFoundException {
+        List<AlignmentUploadRequest.FastqFile> fq1Files = Objects.requireNonNullElse(request.fq1Files(), List.of());
+        List<AlignmentUploadRequest.FastqFile> fq2Files = Objects.requireNonNullElse(request.fq2Files(), List.of());
+        validateFiles(fq1Files, fq2Files);
+        String createdAt = Helper.getDateString();
+        String aligner = Helper.getAlignerFromJson(request.jsonData());
+        String folderName = Helper.generateFolderName(request.experimentName(), aligner, createdAt);
+        // Fail before creating the uploads if the experiment has no metadata
+        storageService.getMetadataFileFromCouchDBByFileNameForMinio(request.experimentName());
+        Instant expiresAt = Instant.now().plus(sessionTtl);
+        int urlExpirySeconds = (int) (sessionTtl.compareTo(MAX_URL_EXPIRY) < 0 ? sessionTtl : MAX_URL_EXPIRY).toSeconds();
+        List<FastqUpload> createdUploads = new ArrayList<>();
+        try {
+            List<FastqUpload> fq1Uploads = createUploads(fq1Files, folderName, urlExpirySeconds, createdUploads);
+            List<FastqUpload> fq2Uploads = createUploads(fq2Files, folderName, urlExpirySeconds, createdUploads);
+            AlignmentUploadSession session = new AlignmentUploadSession(UUID.randomUUID().toString(),
+                    request.experimentName(), folderName, createdAt, expiresAt, request.jsonData(), fq1Uploads, fq2Uploads);
+            sessions.put(session.getSessionId(), session);
+            logger.info("Upload session {} of {} opened: {} FASTQ files in {}", session.getSessionId(),
+                    session.getExperimentName(), createdUploads.size(), folderName);
+            return session;
+        } catch (RuntimeException e) {
+            abortUploads(createdUploads);
+            throw e;
+        }
+    }
+
+    private static void validateFiles(List<AlignmentUploadRequest.FastqFile> fq1Files,
+                                      List<AlignmentUploadRequest.FastqFile> fq2Files) {
+        if (fq1Files.isEmpty()) {
+            throw new IllegalArgumentException("No fq1 file to upload");
+        }
+        Set<String> names = new HashSet<>();
+        for (AlignmentUploadRequest.FastqFile file : Stream.concat(fq1Files.stream(), fq2Files.stream()).toList()) {
+            if (file.name() == null || file.name().isBlank() || file.size() < 0) {
+                throw new IllegalArgumentException("Invalid FASTQ file: " + file.name());
+            }
+            // The name becomes the last segment of the object name, it must not leave the folder of the experiment
+            if (file.name().contains("/") || file.name().contains("\\") || file.name().equals(".") || file.name().equals("..")) {
+                throw new IllegalArgumentException("Invalid FASTQ file name, it must not contain a path: " + file.name());
+            }
+            if (!names.add(file.name())) {
+                throw new IllegalArgumentException("Duplicate FASTQ file: " + file.name());
+            }
+        }
+    }
+
+    private List<FastqUpload> createUploads(List<AlignmentUploadRequest.FastqFile> files, String folderName,
+                                            int urlExpirySeconds, List<FastqUpload> createdUploads) {
+        List<FastqUpload> uploads = new ArrayList<>();
+        for (AlignmentUploadRequest.FastqFile file : files) {
+            FastqUpload upload = createUpload(file, folderName, urlExpirySeconds);
+            uploads.add(upload);
+            createdUploads.add(upload);
+        }
+        return uploads;
+    }
+
+    private FastqUpload createUpload(AlignmentUploadRequest.FastqFile file, String folderName, int urlExpirySeconds) {
+        String objectName = folderName + "/" + file.name();
+        long partSize = Math.max(minioStorageService.getUploadPartSize(),
+                (file.size() + ObjectWriteArgs.MAX_MULTIPART_COUNT - 1) / ObjectWriteArgs.MAX_MULTIPART_COUNT);
+        int partCount = (int) Math.max(1, (file.size() + partSize - 1) / partSize);
+        Map<String, String> tags = MinioStorageService.generateTag(file.name());
+        String uploadId = null;
+        try {
+            uploadId = multipartMinioClient.createMultipartUpload(bucketName, objectName, file.contentType(), tags);
+            List<String> partUrls = new ArrayList<>(partCount);
+            for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+                partUrls.add(multipartMinioClient.presignUploadPart(bucketName, objectName, uploadId, partNumber, urlExpirySeconds));
+            }
+            return new FastqUpload(file.name(), objectName, uploadId, tags.get(file.name()), file.size(), partSize, partUrls);
+        } catch (MinioException | GeneralSecurityException | IOException e) {
+            if (uploadId != null) {
+                abortUpload(objectName, uploadId);
+            }
+            throw new MinioStorageException("Failed to create the upload of file " + file.name(), e);
+        }
+    }
+
+    /**
+     * Commits an upload session, once its files are uploaded.
+     *
+     * @param sessionId the session id
+     * @return the path of the alignment parameters in the bucket, or empty if the session is unknown or expired
+     * @throws IncompleteUploadException if a part of a file is missing; the session is kept
+     * @throws FileNotFoundException     if the metadata file of the experiment is not found; the uploaded files are
+     *                                   deleted
+     * @throws MinioStorageException     if the uploads cannot be completed, or the alignment parameters cannot be
+     *                                   saved; the uploaded files are deleted
+     * @implNote Once completed, the uploads cannot be committed again, so a failure to save the alignment parameters
+     * deletes the uploaded files rather than keeping the session.
+     */
+    public Optional<String> commit(String sessionId) throws FileNotFoundException {
+        AlignmentUploadSession session = sessions.remove(sessionId);
+        if (session == null) {
+            return Optional.empty();
+        }
+        if (session.isExpired(Instant.now())) {
+            abortUploads(getUploads(session));
+            return Optional.empty();
+        }
+        Map<FastqUpload, List<Part>> partsByUpload = new LinkedHashMap<>();
+        try {
+            for (FastqUpload upload : getUploads(session)) {
+                partsByUpload.put(upload, getUploadedParts(upload));
+            }
+        } catch (MinioException | GeneralSecurityException | IOException e) {
+            sessions.put(sessionId, session);
+            throw new MinioStorageException("Failed to list the uploaded parts of session " + sessionId, e);
+        } catch (IncompleteUploadException e) {
+            sessions.put(sessionId, session);
+            throw e;
+        }
+        List<FastqUpload> completedUploads = new ArrayList<>();
+        try {
+            for (Map.Entry<FastqUpload, List<Part>> entry : partsByUpload.entrySet()) {
+                FastqUpload upload = entry.getKey();
+                multipartMinioClient.completeMultipartUpload(bucketName, upload.objectName(), upload.uploadId(), entry.getValue());
+                completedUploads.add(upload);
+            }
+        } catch (MinioException | GeneralSecurityException | IOException e) {
+            // The completed uploads are objects now, only the others can still be aborted
+            deleteObjects(completedUploads);
+            abortUploads(getUploads(session).stream().filter(upload -> !completedUploads.contains(upload)).toList());
+            throw new MinioStorageException("Failed to complete the uploads of session " + sessionId, e);
+        }
+        Map<String, String> fastq2Tags = session.getFq2Files().isEmpty() ? null : getTags(session.getFq2Files());
+        String pathToJSONInMinio;
+        try {
+            pathToJSONInMinio = minioStorageService.saveAlignmentParameters(session.getExperimentName(),
+                    session.getJsonData(), session.getFolderName(), session.getCreatedAt(), getTags(session.getFq1Files()), fastq2Tags);
+        } catch (FileNotFoundException | RuntimeException e) {
+            logger.error("Failed to save the alignment parameters of session {}, deleting its files: {}", sessionId, e.getMessage());
+            deleteObjects(getUploads(session));
+            throw e;
+        }
+        logger.info("Upload session {} of {} committed: {} FASTQ files in {}", sessionId, session.getExperimentName(),
+                partsByUpload.size(), session.getFolderName());
+        return Optional.of(pathToJSONInMinio);
+    }
+
+    /**
+     * Gets the parts of an upload, checking that they cover the whole file.
+     *
+     * @param upload the upload
+     * @return the parts, in order
+     * @throws IncompleteUploadException if a part is missing or the parts do not add up to the size of the file
+     */
+    private List<Part> getUploadedParts(FastqUpload upload) throws MinioException, GeneralSecurityException, IOException {
+        List<Part> parts = new ArrayList<>(multipartMinioClient.listParts(bucketName, upload.objectName(), upload.uploadId()));
+        parts.sort(Comparator.comparingInt(Part::partNumber));
+        long uploadedSize = parts.stream().mapToLong(Part::partSize).sum();
+        int expectedParts = upload.partUrls().size();
+        boolean numbered = parts.size() == expectedParts
+                && parts.stream().allMatch(part -> part.partNumber() >= 1 && part.partNumber() <= expectedParts);
+        if (!numbered || uploadedSize != upload.size()) {
+            throw new IncompleteUploadException(upload.fileName() + " is not fully uploaded: " + parts.size() + " of "
+                    + expectedParts + " parts, " + uploadedSize + " of " + upload.size() + " bytes");
+        }
+        return parts;
+    }
+
+    /**
+     * Aborts an upload session, deleting the parts uploaded so far.
+     *
+     * @param sessionId the session id
+     * @return true if the session was open
+     */
+    public boolean abort(String sessionId) {
+        AlignmentUploadSession session = sessions.remove(sessionId);
+        if (session == null) {
+            return false;
+        }
+        abortUploads(getUploads(session));
+        logger.info("Upload session {} of {} aborted", sessionId, session.getExperimentName());
+        return true;
+    }
+
+    private void abortExpiredSessions() {
+        Instant now = Instant.now();
+        sessions.forEach((sessionId, session) -> {
+            if (session.isExpired(now) && sessions.remove(sessionId, session)) {
+                abortUploads(getUploads(session));
+                logger.info("Upload session {} of {} expired", sessionId, session.getExperimentName());
+            }
+        });
+    }
+
+    private void abortUploads(List<FastqUpload> uploads) {
+        uploads.forEach(upload -> abortUpload(upload.objectName(), upload.uploadId()));
+    }
+
+    private void abortUpload(String objectName, String uploadId) {
+        try {
+            multipartMinioClient.abortMultipartUpload(bucketName, objectName, uploadId);
+        } catch (Exception e) {
+            logger.warn("Failed to abort the upload of {}: {}", objectName, e.getMessage());
+        }
+    }
+
+    private void deleteObjects(List<FastqUpload> uploads) {
+        for (FastqUpload upload : uploads) {
+            try {
+                multipartMinioClient.deleteObject(bucketName, upload.objectName());
+            } catch (Exception e) {
+                logger.warn("Failed to delete {}: {}", upload.objectName(), e.getMessage());
+            }
+        }
+    }
+
+    private static List<FastqUpload> getUploads(AlignmentUploadSession session) {
+        return Stream.concat(session.getFq1Files().stream(), session.getFq2Files().stream()).toList();
+    }
+
+    private static Map<String, String> getTags(List<FastqUpload> uploads) {
+        Map<String, String> tags = new HashMap<>();
+        uploads.forEach(upload -> tags.put(upload.fileName(), upload.tag()));
+        return tags;
+    }
+
+    /**
+     * Stops the sweeper and aborts the uploads of the open sessions when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+        sessions.keySet().forEach(this::abort);
+    }
+}
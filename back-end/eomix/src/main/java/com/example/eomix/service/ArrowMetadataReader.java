@@ -0,0 +1,183 @@
+package com.example.eomix.service;
+
+import com.example.eomix.model.MetadataFileFormat;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryEncoder;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The type Arrow metadata reader.
+ * <p>
+ * This class reads the metadata tables stored in the Arrow IPC format, as exported by pyarrow, pandas or the atlas
+ * tools ({@code .arrow} and {@code .feather} files, {@code .arrows} streams), one record batch at a time:
+ * </p>
+ * <ul>
+ *     <li>the headers are the names of the fields of the schema;</li>
+ *     <li>only the columns given to {@link #setUsedColumns(int[])} are read, straight from their vectors, without any
+ *     text parsing; the other columns of a batch are never decoded;</li>
+ *     <li>the dictionary encoded columns (pandas categoricals) are decoded once per batch.</li>
+ * </ul>
+ *
+ * @implNote The values are read as text, the way they would be read from a CSV file. Arrow needs
+ * {@code --add-opens=java.base/java.nio=ALL-UNNAMED} on Java 17, which the jar manifest declares. The reader is not
+ * thread-safe.
+ */
+final class ArrowMetadataReader implements Closeable {
+
+    private static final byte[] FILE_MAGIC = "ARROW1".getBytes(StandardCharsets.US_ASCII);
+
+    private final BufferAllocator allocator;
+    private final ArrowReader reader;
+    private final String[] headers;
+    private final FieldVector[] columns;
+    private final List<FieldVector> decodedColumns = new ArrayList<>();
+    private int[] usedColumns = new int[0];
+    private int rowCount;
+
+    private ArrowMetadataReader(BufferAllocator allocator, ArrowReader reader) throws IOException {
+        this.allocator = allocator;
+        this.reader = reader;
+        this.headers = reader.getVectorSchemaRoot().getSchema().getFields().stream().map(Field::getName).toArray(String[]::new);
+        this.columns = new FieldVector[headers.length];
+    }
+
+    /**
+     * Checks if a file is an Arrow IPC file, from its name.
+     *
+     * @param filename the filename
+     * @return true if the file has an Arrow IPC extension
+     */
+    static boolean isArrowFile(String filename) {
+        return MetadataFileFormat.fromFilename(filename) != MetadataFileFormat.CSV;
+    }
+
+    /**
+     * Opens an Arrow IPC file, in the file or the stream format.
+     *
+     * @param path the path of the file
+     * @return the reader, positioned before the first batch
+     * @throws IOException if the file cannot be read or is not an Arrow IPC file
+     */
+    static ArrowMetadataReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        BufferAllocator allocator = new RootAllocator();
+        try {
+            ByteBuffer magic = ByteBuffer.allocate(FILE_MAGIC.length);
+            channel.read(magic);
+            channel.position(0);
+            ArrowReader reader = Arrays.equals(magic.array(), FILE_MAGIC)
+                    ? new ArrowFileReader(channel, allocator)
+                    : new ArrowStreamReader(channel, allocator);
+            return new ArrowMetadataReader(allocator, reader);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            allocator.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the headers of the file.
+     *
+     * @return the names of the fields of the schema
+     */
+    String[] getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Sets the columns to read.
+     *
+     * @param usedColumns the header indexes of the columns to read, the other ones read as null
+     */
+    void setUsedColumns(int[] usedColumns) {
+        this.usedColumns = usedColumns.clone();
+    }
+
+    /**
+     * Loads the next record batch.
+     *
+     * @return true if a batch was loaded, false at the end of the file
+     * @throws IOException if the file cannot be read
+     */
+    boolean loadNextBatch() throws IOException {
+        releaseDecodedColumns();
+        if (!reader.loadNextBatch()) {
+            rowCount = 0;
+            return false;
+        }
+        VectorSchemaRoot root = reader.getVectorSchemaRoot();
+        rowCount = root.getRowCount();
+        for (int column : usedColumns) {
+            FieldVector vector = root.getVector(column);
+            DictionaryEncoding encoding = vector.getField().getDictionary();
+            if (encoding != null) {
+                Dictionary dictionary = reader.getDictionaryVectors().get(encoding.getId());
+                vector = (FieldVector) DictionaryEncoder.decode(vector, dictionary);
+                decodedColumns.add(vector);
+            }
+            columns[column] = vector;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of rows of the current batch.
+     *
+     * @return the number of rows
+     */
+    int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Gets a value of the current batch, as text.
+     *
+     * @param column the header index of the column
+     * @param row    the row in the batch
+     * @return the value, or null if it is null or its column is not read
+     */
+    @Nullable String getValue(int column, int row) {
+        FieldVector vector = columns[column];
+        if (vector == null || vector.isNull(row)) {
+            return null;
+        }
+        return vector.getObject(row).toString();
+    }
+
+    private void releaseDecodedColumns() {
+        decodedColumns.forEach(FieldVector::close);
+        decodedColumns.clear();
+        Arrays.fill(columns, null);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            releaseDecodedColumns();
+            reader.close();
+        } finally {
+            allocator.close();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.example.eomix.service;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.util.UrlUtil;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r5.model.*;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Secondary index of the FHIR resources stored on the server, keyed by resource type, accession identifier and
+ * official identifier.
+ * <p>
+ * The index is registered as an interceptor on the FHIR server and follows every create, update and delete committed
+ * by the resource providers, so that the lookups done by {@link ResourcesFetcher} are answered in constant time
+ * instead of scanning the whole bundle of a resource type. The remote repository, which has no storage hooks, feeds
+ * its own index with the writes it sends.
+ * </p>
+ * <ul>
+ *     <li>The accession identifier is the metadata file name (the {@code accessionIdentifier} of a Specimen, the
+ *     {@code SECONDARY} identifier of the other resources).</li>
+ *     <li>The official identifier is the {@code OFFICIAL} identifier (sample id, patient id, batch id...).</li>
+ * </ul>
+ *
+ * @implNote Lookups are lock-free; mutations are synchronized so that the three maps stay consistent.
+ * @implSpec Returned resources are copies, callers may modify them freely.
+ */
+@Interceptor
+public class FhirIdentifierIndex {
+
+    private final Map<IdentifierKey, Resource> resourcesByIdentifiers = new ConcurrentHashMap<>();
+    private final Map<AccessionKey, Map<String, Resource>> resourcesByAccession = new ConcurrentHashMap<>();
+    private final Map<String, IndexEntry> entriesByResourceId = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the accession identifier of a resource.
+     *
+     * @param resource the resource
+     * @return the accession identifier, or null if the resource has none
+     */
+    public static @Nullable String getAccessionIdentifier(Resource resource) {
+        if (resource instanceof Specimen specimen) {
+            return specimen.hasAccessionIdentifier() ? specimen.getAccessionIdentifier().getId() : null;
+        }
+        return ResourcesFetcher.getAccessionIdentifier(getIdentifiers(resource));
+    }
+
+    /**
+     * Gets the official identifier of a resource.
+     *
+     * @param resource the resource
+     * @return the official identifier, or null if the resource has none
+     */
+    public static @Nullable String getOfficialIdentifier(Resource resource) {
+        return ResourcesFetcher.getOfficialIdentifier(getIdentifiers(resource));
+    }
+
+    /**
+     * Gets the search condition matching a resource by its identifiers, e.g. {@code accession=sample.csv&identifier=batch1}.
+     * <p>
+     * The condition is resolved by the repositories of the application with their identifier lookups, not by a FHIR
+     * server: a remote server has no {@code accession} parameter and does not search the {@code id} of the identifiers.
+     * </p>
+     *
+     * @param resource the resource
+     * @return the condition, or null if the resource has no accession or no official identifier
+     */
+    public static @Nullable String getCondition(Resource resource) {
+        String accessionIdentifier = getAccessionIdentifier(resource);
+        String officialIdentifier = getOfficialIdentifier(resource);
+        if (accessionIdentifier == null || officialIdentifier == null) {
+            return null;
+        }
+        return "accession=" + UrlUtil.escapeUrlParam(accessionIdentifier) + "&identifier=" + UrlUtil.escapeUrlParam(officialIdentifier);
+    }
+
+    private static List<Identifier> getIdentifiers(Resource resource) {
+        if (resource instanceof Specimen specimen) {
+            return specimen.getIdentifier();
+        } else if (resource instanceof Patient patient) {
+            return patient.getIdentifier();
+        } else if (resource instanceof Group group) {
+            return group.getIdentifier();
+        } else if (resource instanceof MolecularSequence molecularSequence) {
+            return molecularSequence.getIdentifier();
+        } else if (resource instanceof Observation observation) {
+            return observation.getIdentifier();
+        }
+        return Collections.emptyList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Resource> T copyOf(Resource resource) {
+        return (T) resource.copy();
+    }
+
+    /**
+     * Finds a resource by its accession and official identifiers.
+     *
+     * @param <T>                 the resource type
+     * @param resourceType        the resource class
+     * @param accessionIdentifier the accession identifier (metadata file name)
+     * @param officialIdentifier  the official identifier
+     * @return a copy of the resource, or null if it is not indexed
+     */
+    public <T extends Resource> @Nullable T find(Class<T> resourceType, String accessionIdentifier,
+                                                 String officialIdentifier) {
+        Resource resource = resourcesByIdentifiers.get(new IdentifierKey(resourceType.getSimpleName(),
+                accessionIdentifier, officialIdentifier));
+        return resource == null ? null : copyOf(resource);
+    }
+
+    /**
+     * Finds all resources of a type sharing the same accession identifier.
+     *
+     * @param <T>                 the resource type
+     * @param resourceType        the resource class
+     * @param accessionIdentifier the accession identifier (metadata file name)
+     * @return copies of the matching resources in creation order, never null
+     */
+    public synchronized <T extends Resource> List<T> findAllByAccession(Class<T> resourceType,
+                                                                       String accessionIdentifier) {
+        Map<String, Resource> resources = resourcesByAccession.get(new AccessionKey(resourceType.getSimpleName(),
+                accessionIdentifier));
+        if (resources == null) {
+            return new ArrayList<>();
+        }
+        List<T> resourceList = new ArrayList<>(resources.size());
+        resources.values().forEach(resource -> resourceList.add(copyOf(resource)));
+        return resourceList;
+    }
+
+    /**
+     * Finds a page of the resources of a type sharing the same accession identifier.
+     *
+     * @param <T>                 the resource type
+     * @param resourceType        the resource class
+     * @param accessionIdentifier the accession identifier (metadata file name)
+     * @param offset              the index of the first resource of the page
+     * @param count               the maximum number of resources of the page
+     * @return copies of the resources of the page in creation order, never null
+     * @implNote Only the resources of the page are copied.
+     */
+    public synchronized <T extends Resource> List<T> findPageByAccession(Class<T> resourceType,
+                                                                        String accessionIdentifier, int offset,
+                                                                        int count) {
+        Map<String, Resource> resources = resourcesByAccession.get(new AccessionKey(resourceType.getSimpleName(),
+                accessionIdentifier));
+        if (resources == null) {
+            return new ArrayList<>();
+        }
+        List<T> resourceList = new ArrayList<>(Math.min(count, resources.size()));
+        resources.values().stream().skip(offset).limit(count).forEach(resource -> resourceList.add(copyOf(resource)));
+        return resourceList;
+    }
+
+    /**
+     * Counts the resources of a type indexed under the accession identifier.
+     *
+     * @param resourceType        the resource class
+     * @param accessionIdentifier the accession identifier (metadata file name)
+     * @return the number of resources
+     */
+    public int countByAccession(Class<? extends Resource> resourceType, String accessionIdentifier) {
+        Map<String, Resource> resources = resourcesByAccession.get(new AccessionKey(resourceType.getSimpleName(),
+                accessionIdentifier));
+        return resources == null ? 0 : resources.size();
+    }
+
+    /**
+     * Checks whether at least one resource of a type is indexed under the accession identifier.
+     *
+     * @param resourceType        the resource class
+     * @param accessionIdentifier the accession identifier (metadata file name)
+     * @return true if at least one resource is indexed
+     */
+    public boolean existsByAccession(Class<? extends Resource> resourceType, String accessionIdentifier) {
+        Map<String, Resource> resources = resourcesByAccession.get(new AccessionKey(resourceType.getSimpleName(),
+                accessionIdentifier));
+        return resources != null && !resources.isEmpty();
+    }
+
+    /**
+     * Adds or replaces a resource in the index.
+     * <p>
+     * If the resource was already indexed under other identifiers, the previous entry is removed first.
+     *
+     * @param resource the stored resource, with its server id
+     */
+    public synchronized void put(IBaseResource resource) {
+        if (!(resource instanceof Resource indexedResource) || !indexedResource.hasIdElement()) {
+            return;
+        }
+        String resourceId = indexedResource.getIdElement().toUnqualifiedVersionless().getValue();
+        remove(resourceId);
+        String resourceType = indexedResource.fhirType();
+        String accessionIdentifier = getAccessionIdentifier(indexedResource);
+        if (accessionIdentifier == null) {
+            return;
+        }
+        String officialIdentifier = getOfficialIdentifier(indexedResource);
+        IdentifierKey identifierKey = null;
+        if (officialIdentifier != null) {
+            identifierKey = new IdentifierKey(resourceType, accessionIdentifier, officialIdentifier);
+            resourcesByIdentifiers.put(identifierKey, indexedResource);
+        }
+        AccessionKey accessionKey = new AccessionKey(resourceType, accessionIdentifier);
+        resourcesByAccession.computeIfAbsent(accessionKey, key -> new LinkedHashMap<>()).put(resourceId,
+                indexedResource);
+        entriesByResourceId.put(resourceId, new IndexEntry(accessionKey, identifierKey));
+    }
+
+    /**
+     * Removes a resource from the index.
+     *
+     * @param resource the deleted resource
+     */
+    public synchronized void remove(IBaseResource resource) {
+        if (resource != null) {
+            remove(resource.getIdElement());
+        }
+    }
+
+    /**
+     * Removes a resource from the index by its id.
+     *
+     * @param id the id of the deleted resource, with its resource type
+     */
+    public synchronized void remove(IIdType id) {
+        if (id != null && !id.isEmpty()) {
+            remove(id.toUnqualifiedVersionless().getValue());
+        }
+    }
+
+    private void remove(String resourceId) {
+        IndexEntry entry = entriesByResourceId.remove(resourceId);
+        if (entry == null) {
+            return;
+        }
+        if (entry.identifierKey() != null) {
+            Resource indexed = resourcesByIdentifiers.get(entry.identifierKey());
+            if (indexed != null && resourceId.equals(indexed.getIdElement().toUnqualifiedVersionless().getValue())) {
+                resourcesByIdentifiers.remove(entry.identifierKey());
+            }
+        }
+        Map<String, Resource> resources = resourcesByAccession.get(entry.accessionKey());
+        if (resources != null) {
+            resources.remove(resourceId);
+            if (resources.isEmpty()) {
+                resourcesByAccession.remove(entry.accessionKey());
+            }
+        }
+    }
+
+    /**
+     * Clears the index.
+     */
+    public synchronized void clear() {
+        resourcesByIdentifiers.clear();
+        resourcesByAccession.clear();
+        entriesByResourceId.clear();
+    }
+
+    /**
+     * Indexes a resource once its creation is committed.
+     *
+     * @param resource the created resource
+     */
+    @Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_CREATED)
+    public void resourceCreated(IBaseResource resource) {
+        put(resource);
+    }
+
+    /**
+     * Re-indexes a resource once its update is committed.
+     *
+     * @param oldResource the previous version of the resource
+     * @param newResource the new version of the resource
+     */
+    @Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_UPDATED)
+    public void resourceUpdated(IBaseResource oldResource, IBaseResource newResource) {
+        put(newResource);
+    }
+
+    /**
+     * Removes a resource from the index once its deletion is committed.
+     *
+     * @param resource the deleted resource
+     */
+    @Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_DELETED)
+    public void resourceDeleted(IBaseResource resource) {
+        remove(resource);
+    }
+
+    private record IdentifierKey(String resourceType, String accessionIdentifier, String officialIdentifier) {
+    }
+
+    private record AccessionKey(String resourceType, String accessionIdentifier) {
+    }
+
+    private record IndexEntry(AccessionKey accessionKey, IdentifierKey identifierKey) {
+    }
+}
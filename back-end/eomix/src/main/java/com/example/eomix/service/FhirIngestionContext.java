@@ -0,0 +1,180 @@
+package com.example.eomix.service;
+
+import com.example.eomix.entities.FhirIngestionJob;
+import org.hl7.fhir.r5.model.Group;
+import org.hl7.fhir.r5.model.MolecularSequence;
+import org.hl7.fhir.r5.model.Patient;
+import org.hl7.fhir.r5.model.Specimen;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * The state of the ingestion of one metadata file into the FHIR server.
+ * <p>
+ * A new context is created by each call to
+ * {@link FhirServiceImplementation#storeAllResources(String, FhirIngestionJob)}, so that several metadata files can be
+ * ingested in parallel without sharing any state.
+ * </p>
+ * <ul>
+ *     <li>Patients and specimens already parsed are tracked by their sanitized ID, and those not stored yet are kept
+ *     as pending until the next chunk is stored.</li>
+ *     <li>Groups are kept by batch id and molecular sequences by ID until all the samples are read.</li>
+ * </ul>
+ *
+ * @implNote Every lookup is a hash lookup, so the ingestion of a file is linear in its number of samples.
+ * @implSpec Not thread-safe, a context is used by a single ingestion.
+ */
+class FhirIngestionContext {
+
+    private final String fileName;
+    private final Set<String> patientIds = new HashSet<>();
+    private final Set<String> specimenIds = new HashSet<>();
+    private final List<Patient> pendingPatients = new ArrayList<>();
+    private final List<Specimen> pendingSpecimens = new ArrayList<>();
+    private final Map<String, Group> groupsByBatchId = new LinkedHashMap<>();
+    private final Map<String, MolecularSequence> molecularSequencesById = new LinkedHashMap<>();
+
+    /**
+     * Instantiates a new Fhir ingestion context.
+     *
+     * @param fileName the metadata file name, used as accession identifier
+     */
+    FhirIngestionContext(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * Gets the metadata file name.
+     *
+     * @return the file name
+     */
+    String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Adds a patient to the pending patients, unless a patient with the same ID was already added.
+     *
+     * @param patient the patient
+     */
+    void addPatient(Patient patient) {
+        if (patientIds.add(patient.getId())) {
+            pendingPatients.add(patient);
+        }
+    }
+
+    /**
+     * Checks if a specimen with this ID was already added.
+     *
+     * @param specimenId the sanitized specimen id
+     * @return true if the specimen was already added
+     */
+    boolean isSpecimenAlreadyAdded(String specimenId) {
+        return specimenIds.contains(specimenId);
+    }
+
+    /**
+     * Adds a specimen to the pending specimens, unless a specimen with the same ID was already added.
+     *
+     * @param specimen the specimen
+     */
+    void addSpecimen(Specimen specimen) {
+        if (specimenIds.add(specimen.getId())) {
+            pendingSpecimens.add(specimen);
+        }
+    }
+
+    /**
+     * Gets the group of a batch.
+     *
+     * @param batchId the batch id
+     * @return the group, or null if no sample of this batch was parsed yet
+     */
+    @Nullable Group getGroup(String batchId) {
+        return groupsByBatchId.get(batchId);
+    }
+
+    /**
+     * Adds the group of a batch.
+     *
+     * @param batchId the batch id
+     * @param group   the group
+     */
+    void addGroup(String batchId, Group group) {
+        groupsByBatchId.put(batchId, group);
+    }
+
+    /**
+     * Gets a molecular sequence.
+     *
+     * @param molecularSequenceId the molecular sequence id
+     * @return the molecular sequence, or null if it was not parsed yet
+     */
+    @Nullable MolecularSequence getMolecularSequence(String molecularSequenceId) {
+        return molecularSequencesById.get(molecularSequenceId);
+    }
+
+    /**
+     * Adds a molecular sequence.
+     *
+     * @param molecularSequence the molecular sequence
+     */
+    void addMolecularSequence(MolecularSequence molecularSequence) {
+        molecularSequencesById.put(molecularSequence.getId(), molecularSequence);
+    }
+
+    /**
+     * Gets the patients not stored yet.
+     *
+     * @return the pending patients
+     */
+    List<Patient> getPendingPatients() {
+        return pendingPatients;
+    }
+
+    /**
+     * Gets the specimens not stored yet.
+     *
+     * @return the pending specimens
+     */
+    List<Specimen> getPendingSpecimens() {
+        return pendingSpecimens;
+    }
+
+    /**
+     * Gets the number of patients and specimens not stored yet.
+     *
+     * @return the pending resources count
+     */
+    int getPendingResourcesCount() {
+        return pendingPatients.size() + pendingSpecimens.size();
+    }
+
+    /**
+     * Clears the pending patients and specimens, once they are stored.
+     * The IDs are kept so that they are not added again.
+     */
+    void clearPendingResources() {
+        pendingPatients.clear();
+        pendingSpecimens.clear();
+    }
+
+    /**
+     * Gets the groups, in parsing order.
+     *
+     * @return the groups
+     */
+    List<Group> getGroups() {
+        return new ArrayList<>(groupsByBatchId.values());
+    }
+
+    /**
+     * Gets the molecular sequences, in parsing order.
+     *
+     * @return the molecular sequences
+     */
+    List<MolecularSequence> getMolecularSequences() {
+        return new ArrayList<>(molecularSequencesById.values());
+    }
+}
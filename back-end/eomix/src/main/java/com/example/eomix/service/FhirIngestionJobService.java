@@ -0,0 +1,123 @@
+package com.example.eomix.service;
+
+import com.example.eomix.entities.FhirIngestionJob;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The type Fhir ingestion job service.
+ * <p>
+ * This service runs the ingestion of the FHIR resources of the metadata files in the background, on a bounded pool of
+ * workers, so that the request storing the resources of a file returns as soon as the job is queued.
+ * </p>
+ * <ul>
+ *     <li>Up to {@code fhir.ingestion.max-concurrent-files} files are ingested concurrently, each on its own
+ *     ingestion context.</li>
+ *     <li>Up to {@code fhir.ingestion.queue-capacity} jobs wait for a free worker; beyond that the job is rejected.</li>
+ *     <li>A request for a file whose ingestion is queued or running joins the existing job.</li>
+ * </ul>
+ *
+ * @implNote The last {@link #RETAINED_JOBS} jobs are kept for the status endpoint, the oldest are evicted first.
+ */
+@Service
+public class FhirIngestionJobService {
+
+    /**
+     * The constant RETAINED_JOBS.
+     */
+    public static final int RETAINED_JOBS = 1000;
+    private static final Logger logger = LoggerFactory.getLogger(FhirIngestionJobService.class);
+
+    private final FhirServiceImplementation fhirServiceImplementation;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, FhirIngestionJob> activeJobsByFilename = new ConcurrentHashMap<>();
+    private final Map<String, FhirIngestionJob> jobsById = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FhirIngestionJob> eldest) {
+            return size() > RETAINED_JOBS;
+        }
+    });
+
+    /**
+     * Instantiates a new Fhir ingestion job service.
+     *
+     * @param fhirServiceImplementation the fhir service implementation
+     * @param maxConcurrentFiles        the maximum number of files ingested concurrently
+     * @param queueCapacity             the maximum number of jobs waiting for a free worker
+     */
+    public FhirIngestionJobService(FhirServiceImplementation fhirServiceImplementation,
+                                   @Value("${fhir.ingestion.max-concurrent-files:2}") int maxConcurrentFiles,
+                                   @Value("${fhir.ingestion.queue-capacity:20}") int queueCapacity) {
+        this.fhirServiceImplementation = fhirServiceImplementation;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxConcurrentFiles, maxConcurrentFiles, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> new Thread(runnable, "fhir-ingestion-" + threadCount.incrementAndGet()));
+    }
+
+    /**
+     * Submits the ingestion of the FHIR resources of a metadata file.
+     *
+     * @param filename the metadata file name
+     * @return the new job, or the queued or running job of the file
+     * @throws RejectedExecutionException if the queue of the jobs is full
+     */
+    public synchronized FhirIngestionJob submit(String filename) {
+        FhirIngestionJob activeJob = activeJobsByFilename.get(filename);
+        if (activeJob != null) {
+            logger.info("Joining the ingestion job {} of {}", activeJob.getJobId(), filename);
+            return activeJob;
+        }
+        FhirIngestionJob job = new FhirIngestionJob(UUID.randomUUID().toString(), filename);
+        activeJobsByFilename.put(filename, job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            activeJobsByFilename.remove(filename, job);
+            throw e;
+        }
+        jobsById.put(job.getJobId(), job);
+        logger.info("Ingestion job {} of {} queued", job.getJobId(), filename);
+        return job;
+    }
+
+    /**
+     * Gets a job by its id.
+     *
+     * @param jobId the job id
+     * @return the job, if it is still retained
+     */
+    public Optional<FhirIngestionJob> getJob(String jobId) {
+        return Optional.ofNullable(jobsById.get(jobId));
+    }
+
+    private void run(FhirIngestionJob job) {
+        job.start();
+        try {
+            fhirServiceImplementation.storeAllResources(job.getFilename(), job);
+            job.complete();
+            logger.info("Ingestion job {} of {} done: {} rows, {} resources", job.getJobId(), job.getFilename(), job.getRowsProcessed(), job.getResourcesWritten());
+        } catch (Exception e) {
+            job.fail(e);
+            logger.error("Ingestion job {} of {} failed: {}", job.getJobId(), job.getFilename(), e.getMessage());
+        } finally {
+            activeJobsByFilename.remove(job.getFilename(), job);
+        }
+    }
+
+    /**
+     * Stops the workers when the application shuts down.
+     * The queued jobs are dropped and the running ones are interrupted.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
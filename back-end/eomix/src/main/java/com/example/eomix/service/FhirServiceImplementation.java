@@ -1,22 +1,22 @@
 package com.example.eomix.service;
 
-import com.example.eomix.utils.Helper;
-import org.apache.commons.csv.CSVRecord;
+import com.example.eomix.entities.FhirIngestionJob;
+import com.example.eomix.model.FhirEncodingMode;
 import org.hl7.fhir.r5.model.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
 import java.io.FileNotFoundException;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 
 /**
  * The type Fhir service implementation.
@@ -81,20 +81,27 @@ public class FhirServiceImplementation {
      */
     static final Logger ourLog = LoggerFactory.getLogger(FhirServiceImplementation.class);
     private static final Logger logger = LoggerFactory.getLogger(FhirServiceImplementation.class);
+    private final FileSystemStorageService fileSystemStorageService;
+
     /**
-     * The Headers list.
+     * Whether the resources of a metadata file are stored with FHIR transaction Bundles
+     * instead of one request per resource.
      */
-    public static List<String> headersList;
+    @Value("${fhir.ingestion.transaction.enabled:true}")
+    private boolean transactionMode;
+
     /**
-     * The Molecular sequences list.
+     * The maximum number of entries per transaction Bundle,
+     * and the number of patients and specimens kept in memory before they are stored.
      */
-    static List<MolecularSequence> molecularSequencesList = new ArrayList<>();
+    @Value("${fhir.ingestion.transaction.chunk-size:1000}")
+    private int transactionChunkSize;
+
     /**
-     * The Tissues list.
+     * How a specimen carries its group and its patient: contained or referenced by ID only.
      */
-    static List<String> tissuesList = new ArrayList<>();
-
-    private final FileSystemStorageService fileSystemStorageService;
+    @Value("${fhir.ingestion.encoding-mode:CONTAINED}")
+    private FhirEncodingMode encodingMode;
 
     /**
      * Instantiates a new Fhir service implementation.
@@ -110,33 +117,33 @@ public class FhirServiceImplementation {
 
     /**
      * Sets patient details.
-     * * This method sets the details of a patient based on the provided CSV record and file name.
-     * * It creates a new Patient object and populates its fields based on the values in the CSV record.
+     * * This method sets the details of a patient based on the provided sample record and file name.
+     * * It creates a new Patient object and populates its fields based on the values in the sample record.
      *
      * @param nextRecord the next record
      * @param fileName   the file name
      * @return the patient
-     * @implNote The method checks if the patient ID is present in the headers list and if it is not equal to "Unknown".
-     * * It generates a unique ID for the patient by using the patient ID from the CSV record.
+     * @implNote The method checks if the patient ID is present in the sample record and if it is not equal to "Unknown".
+     * * It generates a unique ID for the patient by using the patient ID from the sample record.
      * * * If the patient with the generated ID does not already exist, it sets the ID, identifiers,
      */
-    private static Patient setPatientDetails(CSVRecord nextRecord, String fileName) {
+    private static Patient setPatientDetails(Map<String, String> nextRecord, String fileName) {
         Patient patient = new Patient();
-        if (headersList.contains(PATIENT_ID) && !nextRecord.get(PATIENT_ID).equalsIgnoreCase(UNKNOWN)) {
+        if (hasColumn(nextRecord, PATIENT_ID) && !nextRecord.get(PATIENT_ID).equalsIgnoreCase(UNKNOWN)) {
             patient.addIdentifier(setAccessionId(fileName));
             patient.addIdentifier(setOfficialId(getIdValue(nextRecord.get(PATIENT_ID)), PATIENT_ID));
             patient.setId(getIdValue(nextRecord.get(PATIENT_ID)));
             List<Extension> extensionList = new ArrayList<>();
-            if (headersList.contains(GENDER)) {
+            if (hasColumn(nextRecord, GENDER)) {
                 patient.setGender(getGender(nextRecord.get(GENDER)));
             }
-            if (headersList.contains(AGE)) {
+            if (hasColumn(nextRecord, AGE)) {
                 Extension ageExtension = new Extension();
                 ageExtension.setUrl("https://hl7.org/fhir/StructureDefinition/patient-birthTime");
                 ageExtension.setValue(setCodeableConceptDetails(AGE, nextRecord));
                 extensionList.add(ageExtension);
             }
-            if (headersList.contains(STANDARDIZED_SPECIES)) {
+            if (hasColumn(nextRecord, STANDARDIZED_SPECIES)) {
                 Extension speciesExtension = new Extension();
                 speciesExtension.setUrl("https://hl7.org/fhir/ValueSet/animal-species");
                 speciesExtension.setValue(setCodeableConceptDetails(STANDARDIZED_SPECIES, nextRecord));
@@ -147,6 +154,17 @@ public class FhirServiceImplementation {
         return patient;
     }
 
+    /**
+     * Checks if a column has a value in a sample record.
+     *
+     * @param nextRecord the sample record, by column name
+     * @param column     the column name
+     * @return true if the column is present and has a value
+     */
+    private static boolean hasColumn(Map<String, String> nextRecord, String column) {
+        return nextRecord.get(column) != null;
+    }
+
     /**
      * Sets identifier.
      * * This method sets an identifier for a resource based on the provided parameters.
@@ -175,21 +193,23 @@ public class FhirServiceImplementation {
 
     /**
      * Sets specimen details.
-     * * This method sets the details of a specimen based on the provided CSV record, file name, patient, and specimen group list.
-     * * It creates a new Specimen object and populates its fields based on the values in the CSV record.
+     * * This method sets the details of a specimen based on the provided sample record, file name, patient, and specimen group list.
+     * * It creates a new Specimen object and populates its fields based on the values in the sample record.
      *
-     * @param nextRecord        the next record
-     * @param fileName          the file name
-     * @param patient           the patient
-     * @param specimenGroupList the specimen group list
+     * @param nextRecord   the next record
+     * @param context      the ingestion context
+     * @param patient      the patient
+     * @param encodingMode whether the group and the patient are contained in the specimen or only referenced
      * @return the specimen
-     * @implNote The method checks if the sample ID is present in the headers list and if it is not equal to "Unknown".
-     * * It generates a unique ID for the specimen by using the sample ID from the CSV record.
+     * @implNote The method checks if the sample ID is present in the sample record and if it is not equal to "Unknown".
+     * * It generates a unique ID for the specimen by using the sample ID from the sample record.
      * * If the specimen with the generated ID does not already exist, it sets the ID, identifiers, collection method,
      * * body site, condition, subject, and batch extension for the specimen.
+     * * The contained group is a summary without the members, so the size of a specimen does not grow with its batch.
      */
-    private static Specimen setSpecimenDetails(CSVRecord nextRecord, String fileName, Patient patient, List<Group> specimenGroupList, List<MolecularSequence> molecularSequenceList) {
+    private static Specimen setSpecimenDetails(Map<String, String> nextRecord, FhirIngestionContext context, Patient patient, FhirEncodingMode encodingMode) {
 
+        String fileName = context.getFileName();
         Specimen specimen = new Specimen();
         Identifier fileIdentifier = new Identifier();
         fileIdentifier.setId(fileName);
@@ -198,31 +218,33 @@ public class FhirServiceImplementation {
         specimen.setId(specimenId);
         specimen.addIdentifier(setOfficialId(specimenId, SAMPLE_ID));
         setSpecimenCollectionForProtocolAndOrgan(nextRecord, specimen);
-        if (headersList.contains(DISORDER)) {
+        if (hasColumn(nextRecord, DISORDER)) {
             specimen.setCondition(Collections.singletonList(setCodeableConceptDetails(DISORDER, nextRecord)));
         }
-        Group specimenGroup = setAndGetSpecimenGroup(fileName,nextRecord, specimenGroupList,  specimen);
+        Group specimenGroup = setAndGetSpecimenGroup(context, nextRecord, specimen);
         if (specimenGroup == null) return null;
         String groupId = specimenGroup.getId();
-        setAndGetMolecularSequencesDetails(nextRecord, fileName, specimenGroup, molecularSequenceList);
+        setAndGetMolecularSequencesDetails(nextRecord, context, specimenGroup);
         setGroupExtensionForSpecimen(groupId, specimenGroup, specimen);
-        specimen.addContained(specimenGroup);
+        boolean containedMode = encodingMode == FhirEncodingMode.CONTAINED;
+        if (containedMode) {
+            specimen.addContained(getGroupSummary(specimenGroup));
+        }
         if (!patient.isEmpty()) {
-            specimen.setSubject(setSubjectPatient(patient));
-            specimen.addContained(patient);
+            specimen.setSubject(setSubjectPatient(patient, containedMode));
+            if (containedMode) {
+                specimen.addContained(patient);
+            }
         }
         return specimen;
     }
 
-    private static void setSpecimenCollectionForProtocolAndOrgan(CSVRecord nextRecord, Specimen specimen) {
+    private static void setSpecimenCollectionForProtocolAndOrgan(Map<String, String> nextRecord, Specimen specimen) {
         Specimen.SpecimenCollectionComponent collection = new Specimen.SpecimenCollectionComponent();
-        if (headersList.contains(PROTOCOL)) {
+        if (hasColumn(nextRecord, PROTOCOL)) {
             collection.setMethod(setCodeableConceptDetails(PROTOCOL, nextRecord));
         }
-        if (headersList.contains(ORGAN)) {
-            if (!tissuesList.contains(nextRecord.get(ORGAN))) {
-                tissuesList.add(nextRecord.get(ORGAN));
-            }
+        if (hasColumn(nextRecord, ORGAN)) {
             CodeableReference organ = new CodeableReference();
             organ.setConcept(setCodeableConceptDetails(ORGAN, nextRecord));
             collection.setBodySite(organ);
@@ -230,22 +252,67 @@ public class FhirServiceImplementation {
         specimen.setCollection(collection);
     }
 
-    private static @Nullable Group setAndGetSpecimenGroup(String fileName, CSVRecord nextRecord, List<Group> specimenGroupList, Specimen specimen) {
+    private static @Nullable Group setAndGetSpecimenGroup(FhirIngestionContext context, Map<String, String> nextRecord, Specimen specimen) {
+        String fileName = context.getFileName();
         String specimenGroupId;
-        if (headersList.contains(BATCH)) {
+        if (hasColumn(nextRecord, BATCH)) {
             specimenGroupId = nextRecord.get(BATCH);
         } else {
             specimenGroupId = "Default_Batch";
         }
-        Group specimenGroup = setSpecimenGroup(specimenGroupId, fileName, specimen, specimenGroupList);
+        Group specimenGroup = setSpecimenGroup(specimenGroupId, context, specimen);
         if (specimenGroup == null || specimenGroup.isEmpty()) {
             logger.info("No Group found!");
             return null;
         }
-        specimenGroup.setId(ResourcesFetcher.addOrUpdateGroupTOServerFHIRAndGetID(specimenGroup));
+        specimenGroup.setId(getGroupId(specimenGroup, fileName, specimenGroupId));
         return specimenGroup;
     }
 
+    /**
+     * Gets group summary.
+     * <p>
+     * The summary of a group holds its ID, identifiers and type, but not its members, so that the specimens
+     * containing it do not carry the whole batch.
+     *
+     * @param group the group
+     * @return the group summary
+     */
+    private static Group getGroupSummary(Group group) {
+        Group groupSummary = new Group();
+        groupSummary.setId(group.getIdElement().getIdPart());
+        group.getIdentifier().forEach(identifier -> groupSummary.addIdentifier(identifier.copy()));
+        groupSummary.setType(group.getType());
+        return groupSummary;
+    }
+
+    /**
+     * Gets group id.
+     * <p>
+     * The groups are written once, with all their members, after all the rows are parsed (with a transaction or one
+     * by one), so their ID must be known beforehand to be referenced by the specimens and molecular sequences.
+     * <ul>
+     *     <li>A group already parsed keeps its ID.</li>
+     *     <li>A group already on the server keeps its server ID.</li>
+     *     <li>Otherwise, the ID is derived from the file name and the batch id.</li>
+     * </ul>
+     *
+     * @param specimenGroup the specimen group
+     * @param fileName      the file name as accession identifier
+     * @param batchId       the batch id as official identifier
+     * @return the group id
+     */
+    private static String getGroupId(Group specimenGroup, String fileName, String batchId) {
+        if (specimenGroup.hasIdElement()) {
+            return specimenGroup.getIdElement().getIdPart();
+        }
+        Group existingGroup = ResourcesFetcher.getGroupByIdAndIdentifier(fileName, batchId);
+        if (existingGroup != null) {
+            return existingGroup.getIdElement().getIdPart();
+        }
+        return getIdValue(fileName + "-" + batchId);
+    }
+
     private static void setGroupExtensionForSpecimen(String groupId, Group specimenGroup, Specimen specimen) {
         Extension batchExtension = new Extension();
         batchExtension.setUrl("http://localhost:7000/api/fhir/Group/" + groupId);
@@ -257,69 +324,53 @@ public class FhirServiceImplementation {
 
     /**
      * Sets specimen group.
-     * * This method sets the specimen group based on the provided CSV record, file name, specimen, and specimen group list.
-     * * It creates a new Group object and populates its fields based on the values in the CSV record.
+     * * This method sets the specimen group based on the provided batch id, ingestion context and specimen.
+     * * It creates a new Group object and populates its fields based on the values in the sample record.
      *
-     * @param batchId           the batch id
-     * @param fileName          the file name
-     * @param specimen          the specimen
-     * @param specimenGroupList the specimen group list
+     * @param batchId  the batch id
+     * @param context  the ingestion context
+     * @param specimen the specimen
      * @return the group
-     * @implNote The method checks if a specimen group already exists for the given batch identifier.
+     * @implNote The method checks if a specimen group already exists in the context for the given batch identifier.
      * * If it does not exist, it creates a new group with the specified type and adds the specimen as a member.
-     * * If the group already exists and the specimen is not already a member, it adds the specimen to the existing group.
+     * * If the group already exists, it adds the specimen to the existing group;
+     * * duplicated specimens are skipped before, in {@link #addAndGetSpecimen}.
      */
-    private static Group setSpecimenGroup(String batchId, String fileName, Specimen specimen, List<Group> specimenGroupList) {
+    private static Group setSpecimenGroup(String batchId, FhirIngestionContext context, Specimen specimen) {
         Group.GroupMemberComponent member = new Group.GroupMemberComponent();
         member.setEntity(setSubjectSpecimen(specimen));
-        Group isSpecimenGroupFound = getExistingSpecimenGroup(fileName, batchId, specimenGroupList);
+        Group isSpecimenGroupFound = context.getGroup(batchId);
         if (isSpecimenGroupFound == null) {
             Group specimenGroup = new Group();
-            specimenGroup.addIdentifier(setAccessionId(fileName));
+            specimenGroup.addIdentifier(setAccessionId(context.getFileName()));
             specimenGroup.addIdentifier(setOfficialId(batchId, BATCH));
             specimenGroup.setType(Group.GroupType.SPECIMEN);
             specimenGroup.addMember(member);
-            specimenGroupList.add(specimenGroup);
+            context.addGroup(batchId, specimenGroup);
             return specimenGroup;
-        } else if (!isSpecimenGroupFound.getMember().contains(member)) {
-            isSpecimenGroupFound.addMember(member);
-            return isSpecimenGroupFound;
         }
-        return null;
+        isSpecimenGroupFound.addMember(member);
+        return isSpecimenGroupFound;
     }
 
     /**
      * Sets codeable concept details.
-     * * This method sets the details of a CodeableConcept based on the provided extension string and CSV record.
-     * * It creates a new CodeableConcept object and populates its fields based on the values in the CSV record.
+     * * This method sets the details of a CodeableConcept based on the provided extension string and sample record.
+     * * It creates a new CodeableConcept object and populates its fields based on the values in the sample record.
      *
      * @param extensionString the extension string
      * @param nextRecord      the next record
      * @return the codeable concept
-     * @implNote The method adds a coding to the CodeableConcept with the code and display set to the value from the CSV record.
+     * @implNote The method adds a coding to the CodeableConcept with the code and display set to the value from the sample record.
      * * It also sets the text of the CodeableConcept to the provided extension string.
      */
-    private static CodeableConcept setCodeableConceptDetails(String extensionString, CSVRecord nextRecord) {
+    private static CodeableConcept setCodeableConceptDetails(String extensionString, Map<String, String> nextRecord) {
         CodeableConcept extensionConcept = new CodeableConcept();
         extensionConcept.addCoding().setCode(nextRecord.get(extensionString)).setDisplay(nextRecord.get(extensionString));
         extensionConcept.setText(extensionString);
         return extensionConcept;
     }
 
-    /**
-     * Gets molecular sequence.
-     * * This method retrieves a molecular sequence based on the provided molecular sequence id.
-     * * It searches through the list of molecular sequences and returns the first one that matches the given id.
-     *
-     * @param molecularSequenceId the molecular sequence id
-     * @return the molecular sequence
-     * @implNote The method uses a stream to filter the molecular sequences list and find the matching id. * * If no matching molecular sequence is found, it returns null.
-     * @implSpec The method is static and can be called without creating an instance of the class.
-     */
-    public static MolecularSequence getMolecularSequence(String molecularSequenceId) {
-        return molecularSequencesList.stream().filter(molecularSequence -> Objects.equals(molecularSequence.getId(), molecularSequenceId)).findFirst().orElse(null);
-    }
-
     /**
      * Gets id value.
      * * This method retrieves the ID value from the provided string.
@@ -354,7 +405,6 @@ public class FhirServiceImplementation {
             Reference reference = new Reference("Specimen/" + specimen.getId());
             reference.setId(specimen.getId());
             reference.setType("Specimen");
-            reference.setResource(specimen);
             return reference;
         }
         return null;
@@ -365,12 +415,13 @@ public class FhirServiceImplementation {
      * * This method sets the subject patient for a specimen.
      * * It creates a new Reference object and sets its ID, type, and resource based on the provided patient.
      *
-     * @param patient the patient
+     * @param patient      the patient
+     * @param withResource whether the patient is set as the resource of the reference
      * @return the reference
      * @implNote The method checks if the patient is not null before creating the reference.
      * * If the patient is null, it returns null.
      */
-    private static Reference setSubjectPatient(Patient patient) {
+    private static Reference setSubjectPatient(Patient patient, boolean withResource) {
         if (patient != null) {
             Reference reference = new Reference("http://localhost:7000/api/fhir/Patient/" + patient.getId());
             reference.getExtensionByUrl("http://localhost:7000/api/fhir/Patient/" + patient.getId());
@@ -378,7 +429,9 @@ public class FhirServiceImplementation {
             UriType uriType = new UriType("https://hl7.org/fhir/fhir-types");
             reference.setTypeElement(uriType);
             reference.setType("Patient");
-            reference.setResource(patient);
+            if (withResource) {
+                reference.setResource(patient);
+            }
             return reference;
         }
         return null;
@@ -387,101 +440,25 @@ public class FhirServiceImplementation {
     /**
      * Sets group reference.
      * * This method sets the specimen group reference for a specimen.
-     * * It creates a new Reference object and sets its ID, type, and resource based on the provided group.
+     * * It creates a new Reference object and sets its ID and type based on the provided group.
      *
      * @param group the group
      * @return the reference
      * @implNote The method checks if the group is not null before creating the reference.
      * * If the group is null, it returns null.
+     * * The group is referenced by ID only, it is not set as the resource of the reference, which would keep the whole
+     * * batch attached to every specimen and molecular sequence.
      */
     private static Reference setGroupReference(Group group) {
         if (group != null) {
             Reference reference = new Reference("Group/" + group.getId());
             reference.setId(group.getId());
             reference.setType("Group");
-            reference.setResource(group);
             return reference;
         }
         return null;
     }
 
-    /**
-     * Checks if the patient is already found in the list.
-     * * This method checks if a patient with the same ID already exists in the provided patient list.
-     * * It uses a stream to filter the patient list and returns true if a matching patient is found, false otherwise.
-     *
-     * @param nextRecord  the next record
-     * @param patientList the patient list
-     * @return true if the patient is already found, false otherwise
-     */
-    private static boolean isPatientAlreadyFound(CSVRecord nextRecord, List<Patient> patientList) {
-        return patientList.stream().filter(pat -> Objects.equals(pat.getId(), getIdValue(nextRecord.get(PATIENT_ID)))).findFirst().orElse(null) == null;
-    }
-
-    /**
-     * Checks if the specimen is already existing in the list.
-     * * This method checks if a specimen with the same ID already exists in the provided specimen list.
-     * * It uses a stream to filter the specimen list and returns true if a matching specimen is found, false otherwise.
-     *
-     * @param nextRecord   the next record
-     * @param specimenList the specimen list
-     * @return true if the specimen is already existing, false otherwise
-     */
-    private static boolean isSpecimenAlreadyExisting(CSVRecord nextRecord, List<Specimen> specimenList) {
-        String specimenId = getIdValue(nextRecord.get(SAMPLE_ID));
-        return specimenList.stream().filter(specimen -> Objects.equals(specimen.getId(), specimenId)).findFirst().orElse(null) == null;
-    }
-
-    /**
-     * Checks if the specimen group is already found in the list.
-     * * This method checks if a specimen group with the same ID already exists in the provided specimen group list.
-     * * It uses a stream to filter the specimen group list and returns the first matching group if found, null otherwise.
-     *
-     * @param fileName          the file name as accession identifier
-     * @param batchId           the batch id as official identifier
-     * @param specimenGroupList the specimen group list
-     * @return the group if found, null otherwise
-     */
-    private static Group getExistingSpecimenGroup(String fileName, String batchId, List<Group> specimenGroupList) {
-        return specimenGroupList.stream().filter(group -> {
-            List<Identifier> identifiersList = group.getIdentifier().stream().toList();
-            return verifyByAccessionAndOfficialID(fileName, batchId, identifiersList);
-        }).findFirst().orElse(null);
-    }
-
-    /**
-     * Checks if the molecular sequence is already existing in the list and return the molecular sequence if found.
-     * * This method checks if a molecular sequence with the same accession and official ID already exists in the provided molecular sequence list.
-     * * It uses a stream to filter the molecular sequence list and returns the first matching molecular sequence if found, null otherwise.
-     *
-     * @param fileName              the file name as accession identifier
-     * @param id                    the official id
-     * @param molecularSequenceList the molecular sequence list
-     * @return the molecular sequence if found, null otherwise
-     */
-    private static MolecularSequence isMolecularSequenceExisting(String fileName, String id, List<MolecularSequence> molecularSequenceList) {
-        return molecularSequenceList.stream().filter(molecularSequence -> {
-            List<Identifier> identifiersList = molecularSequence.getIdentifier().stream().toList();
-            return verifyByAccessionAndOfficialID(fileName, id, identifiersList);
-        }).findFirst().orElse(null);
-    }
-
-    /**
-     * Verify by accession and official id and return boolean.
-     * * This method verifies if the provided file name and ID match the official and accession identifiers in the list.
-     * * It retrieves the official and accession identifiers from the list and compares them with the provided values.
-     *
-     * @param fileName        the file name as accession identifier
-     * @param id              the official Identifier
-     * @param identifiersList the identifiers list
-     * @return true if both identifiers match, false otherwise
-     */
-    private static boolean verifyByAccessionAndOfficialID(String fileName, String id, List<Identifier> identifiersList) {
-        String officialIdentifier = ResourcesFetcher.getOfficialIdentifier(identifiersList);
-        String accessionIdentifier = ResourcesFetcher.getAccessionIdentifier(identifiersList);
-        return Objects.equals(officialIdentifier, id) && Objects.equals(accessionIdentifier, fileName);
-    }
-
     /**
      * Gets gender.
      * * This method retrieves gender based on the provided code string.
@@ -534,58 +511,53 @@ public class FhirServiceImplementation {
 
     /**
      * Add and get patient.
-     * * This method adds a patient to the patient list if it is not already present.
-     * * It sets the patient details based on the provided CSV record and file name.
-     * * If the patient is not empty and is not already found in the patient list, it adds the patient to the list.
+     * * This method adds a patient to the pending patients of the ingestion context if it is not already present.
+     * * It sets the patient details based on the provided sample record and file name.
+     * * If the patient is not empty and its ID was not already added to the context, it adds the patient to the pending patients.
      *
-     * @param nextRecord  the next record
-     * @param fileName    the file name
-     * @param patientList the patient list
+     * @param nextRecord the next record
+     * @param context    the ingestion context
      * @return the patient
      * @implNote The method uses the setPatientDetails method to create a new Patient object
-     * * and checks if the patient is already found in the patient list using the isPatientAlreadyFound method.
+     * * and relies on the context, keyed by patient ID, to skip the patients already found.
      */
-    private static Patient addAndGetPatient(CSVRecord nextRecord, String fileName, List<Patient> patientList) {
-        Patient patient = setPatientDetails(nextRecord, fileName);
-        if (!patient.isEmpty() && isPatientAlreadyFound(nextRecord, patientList)) patientList.add(patient);
+    private static Patient addAndGetPatient(Map<String, String> nextRecord, FhirIngestionContext context) {
+        Patient patient = setPatientDetails(nextRecord, context.getFileName());
+        if (!patient.isEmpty()) context.addPatient(patient);
         return patient;
 
     }
 
     /**
      * Sets molecular sequences details.
-     * * This method sets the details of molecular sequences based on the provided CSV record, file name, group, and molecular sequence list.
-     * * It creates a new MolecularSequence object and populates its fields based on the values in the CSV record.
+     * * This method sets the details of molecular sequences based on the provided sample record, ingestion context and group.
+     * * It creates a new MolecularSequence object and populates its fields based on the values in the sample record.
      *
-     * @param nextRecord            the next record
-     * @param fileName              the file name
-     * @param group                 the group
-     * @param molecularSequenceList the molecular sequence list
-     * @implNote The method checks if the sequence type is present in the headers list and if it is not null. * It generates a unique ID for the molecular sequence by combining the file name and sequence type. * * If the molecular sequence with the generated ID does not already exist, it sets the ID, identifiers, * type, and extensions for the molecular sequence.
+     * @param nextRecord the next record
+     * @param context    the ingestion context
+     * @param group      the group
+     * @implNote The method checks if the sequence type is present in the sample record and if it is not null. * It generates a unique ID for the molecular sequence by combining the file name and sequence type. * * If the molecular sequence with the generated ID does not already exist, it sets the ID, identifiers, * type, and extensions for the molecular sequence.
      * @implSpec The method also sets the cellular resolution extension with a specific URL and value.
      */
-    static void setAndGetMolecularSequencesDetails(CSVRecord nextRecord, String fileName, Group group, List<MolecularSequence> molecularSequenceList) {
-        if (headersList.contains(SEQUENCE_TYPE) && nextRecord.get(SEQUENCE_TYPE) != null) {
+    static void setAndGetMolecularSequencesDetails(Map<String, String> nextRecord, FhirIngestionContext context, Group group) {
+        if (hasColumn(nextRecord, SEQUENCE_TYPE)) {
             List<Identifier> identifiersList = group.getIdentifier().stream().toList();
             String officialIdentifier = ResourcesFetcher.getOfficialIdentifier(identifiersList);
             String id = officialIdentifier + "_" + nextRecord.get(SEQUENCE_TYPE);
-            MolecularSequence foundMolecularSequence = isMolecularSequenceExisting(fileName, id, molecularSequenceList);
-            if (foundMolecularSequence == null) {
+            if (context.getMolecularSequence(id) == null) {
                 MolecularSequence molecularSequence = new MolecularSequence();
-                if (getMolecularSequence(id) == null) {
-                    molecularSequence.setId(id);
-                    molecularSequence.addIdentifier(setAccessionId(fileName));
-                    molecularSequence.addIdentifier(setOfficialId(id, MOLECULAR_SEQUENCE_ID));
-                    molecularSequence.setType(MolecularSequence.SequenceType.fromCode(nextRecord.get(SEQUENCE_TYPE)));
-                    molecularSequence.setSubject(setGroupReference(group));
-                    Extension cellularResolutionExtension = new Extension();
-                    cellularResolutionExtension.setUrl("http://localhost:7000/api/fhir/cellularResolution");
-                    cellularResolutionExtension.setValue(setCodeableConceptDetails(CELLULAR_RESOLUTION, nextRecord));
-                    List<Extension> extensionList = new ArrayList<>();
-                    extensionList.add(cellularResolutionExtension);
-                    molecularSequence.setExtension(extensionList);
-                    molecularSequenceList.add(molecularSequence);
-                }
+                molecularSequence.setId(id);
+                molecularSequence.addIdentifier(setAccessionId(context.getFileName()));
+                molecularSequence.addIdentifier(setOfficialId(id, MOLECULAR_SEQUENCE_ID));
+                molecularSequence.setType(MolecularSequence.SequenceType.fromCode(nextRecord.get(SEQUENCE_TYPE)));
+                molecularSequence.setSubject(setGroupReference(group));
+                Extension cellularResolutionExtension = new Extension();
+                cellularResolutionExtension.setUrl("http://localhost:7000/api/fhir/cellularResolution");
+                cellularResolutionExtension.setValue(setCodeableConceptDetails(CELLULAR_RESOLUTION, nextRecord));
+                List<Extension> extensionList = new ArrayList<>();
+                extensionList.add(cellularResolutionExtension);
+                molecularSequence.setExtension(extensionList);
+                context.addMolecularSequence(molecularSequence);
             }
 
         }
@@ -595,32 +567,48 @@ public class FhirServiceImplementation {
      * Store all resources in FHIR server.
      * * This method stores all resources : Patients, Specimens, Specimens Group and Molecular Sequence from a metadata file into the FHIR server.
      * * It first checks if the molecular sequence with the given file name already exists on the server.
-     * * If it does not exist, it retrieves the metadata file from CouchDB, processes the CSV records,
+     * * If it does not exist, it streams the samples of the metadata file from CouchDB, processes the sample records one by one,
      * * * and adds the patients, specimens, specimen groups, and molecular sequence resources to the FHIR server.
      *
      * @param fileName the file name
+     * @param job      the ingestion job, updated with the rows processed and the resources written
      * @throws FileNotFoundException the file not found exception
      * @implNote The method uses the ResourcesFetcher class to interact with the FHIR server and perform the necessary operations.
+     * * Patients and specimens are stored every {@code transactionChunkSize} resources, so the memory used does not grow
+     * * with the number of samples; groups and molecular sequences (one per batch) are stored once all the samples are read.
+     * * Each call works on its own {@link FhirIngestionContext}, so several files can be ingested in parallel.
      * @implSpec The method logs the duration of the operation in milliseconds.
+     * * In transaction mode, the resources already stored are deleted if the ingestion fails.
      */
-    public void storeAllResources(String fileName) throws FileNotFoundException {
+    public void storeAllResources(String fileName, FhirIngestionJob job) throws FileNotFoundException {
         Instant start = Instant.now();
         if (ResourcesFetcher.getMolecularSequenceFromServerByAccessionIdentifier(fileName).isEmpty()) {
-            List<Patient> patientList = new ArrayList<>();
-            List<Specimen> specimenList = new ArrayList<>();
-            List<Group> specimenGroupList = new ArrayList<>();
-            List<MolecularSequence> molecularSequenceList = new ArrayList<>();
-            File tempFile = fileSystemStorageService.getMetadataFileFromCouchDBByFileName(fileName);
-            List<CSVRecord> csvRecordList;
-            if (tempFile != null) {
-                csvRecordList = Helper.getCSVRecords(tempFile);
-                for (CSVRecord nextRecord : csvRecordList) {
-                    Patient patient = addAndGetPatient(nextRecord, fileName, patientList);
-                    addAndGetSpecimen(nextRecord, fileName, specimenList, patient, specimenGroupList, molecularSequenceList);
+            FhirIngestionContext context = new FhirIngestionContext(fileName);
+            FhirTransactionWriter writer = transactionMode ? ResourcesFetcher.newTransactionWriter(transactionChunkSize) : null;
+            try {
+                fileSystemStorageService.forEachSampleOfMetadataFile(fileName, nextRecord -> {
+                    Patient patient = addAndGetPatient(nextRecord, context);
+                    addAndGetSpecimen(nextRecord, context, patient);
+                    job.rowProcessed();
+                    if (context.getPendingResourcesCount() >= transactionChunkSize) {
+                        storePendingResources(context, writer, job);
+                    }
+                });
+                storePendingResources(context, writer, job);
+                if (writer != null) {
+                    writer.addAll(context.getGroups());
+                    writer.addAll(context.getMolecularSequences());
+                    writer.commit();
+                } else {
+                    context.getGroups().forEach(ResourcesFetcher::addOrUpdateGroupTOServerFHIRAndGetID);
+                    ResourcesFetcher.addListOfMolecularSequenceResourcesToFHIRServer(context.getMolecularSequences());
                 }
-                ResourcesFetcher.addSpecimenResourcesToFHIRServer(specimenList);
-                ResourcesFetcher.addListOfPatientsResourcesToFHIRServer(patientList);
-                ResourcesFetcher.addListOfMolecularSequenceResourcesToFHIRServer(molecularSequenceList);
+                job.addResourcesWritten(context.getGroups().size() + context.getMolecularSequences().size());
+            } catch (RuntimeException e) {
+                if (writer != null) {
+                    writer.rollback();
+                }
+                throw e;
             }
         } else {
             ourLog.info("The resources on this metadata file are already on the FHIR server");
@@ -630,27 +618,48 @@ public class FhirServiceImplementation {
 
     }
 
+    /**
+     * Store pending resources.
+     * * This method stores the patients and specimens parsed since the last call, then clears them from the context.
+     * * The context keeps their IDs, so they are not added again by the next sample records.
+     *
+     * @param context the ingestion context
+     * @param writer  the transaction writer, or null to store the resources one by one
+     * @param job     the ingestion job, updated with the resources written
+     */
+    private static void storePendingResources(FhirIngestionContext context, @Nullable FhirTransactionWriter writer,
+                                              FhirIngestionJob job) {
+        if (writer != null) {
+            writer.addAll(context.getPendingPatients());
+            writer.addAll(context.getPendingSpecimens());
+            writer.flush();
+        } else {
+            ResourcesFetcher.addSpecimenResourcesToFHIRServer(context.getPendingSpecimens());
+            ResourcesFetcher.addListOfPatientsResourcesToFHIRServer(context.getPendingPatients());
+        }
+        job.addResourcesWritten(context.getPendingResourcesCount());
+        context.clearPendingResources();
+    }
+
     /**
      * Add and get specimen.
-     * * This method adds a specimen to the specimen list if it is not already present.
-     * * It sets the specimen details based on the provided CSV record, file name, patient, specimen group list and molecular sequence list.
-     * * If the sample ID is present in the headers list and is not equal to "Unknown", it adds the specimen to the list
-     * * if it is not already existing.
+     * * This method adds a specimen to the pending specimens of the ingestion context if it is not already present.
+     * * It sets the specimen details based on the provided sample record, ingestion context and patient.
+     * * If the sample ID is present and is not equal to "Unknown", and was not already added to the context,
+     * * it adds the specimen to the pending specimens and to the group of its batch.
      *
-     * @param nextRecord            the next record
-     * @param fileName              the file name
-     * @param specimenList          the specimen list
-     * @param patient               the patient
-     * @param specimenGroupList     the specimen group list
-     * @param molecularSequenceList the molecular sequence list
-     * @implNote The method uses the setSpecimenDetails method to create a new Specimen object
-     * * and checks if the specimen is already existing in the specimen list using the isSpecimenAlreadyExisting method.
-     */
-    private void addAndGetSpecimen(CSVRecord nextRecord, String fileName, List<Specimen> specimenList, Patient patient, List<Group> specimenGroupList, List<MolecularSequence> molecularSequenceList) {
+     * @param nextRecord the next record
+     * @param context    the ingestion context
+     * @param patient    the patient
+     * @implNote The method checks the sample ID against the context before calling setSpecimenDetails,
+     * * so that a duplicated sample record neither creates a specimen nor adds a member to its group.
+     */
+    private void addAndGetSpecimen(Map<String, String> nextRecord, FhirIngestionContext context, Patient patient) {
         Specimen specimen;
-        if (headersList.contains(SAMPLE_ID) && !nextRecord.get(SAMPLE_ID).equalsIgnoreCase(UNKNOWN)) {
-            specimen = setSpecimenDetails(nextRecord, fileName, patient, specimenGroupList, molecularSequenceList);
-            if (isSpecimenAlreadyExisting(nextRecord, specimenList)) specimenList.add(specimen);
+        if (hasColumn(nextRecord, SAMPLE_ID) && !nextRecord.get(SAMPLE_ID).equalsIgnoreCase(UNKNOWN)
+                && !context.isSpecimenAlreadyAdded(getIdValue(nextRecord.get(SAMPLE_ID)))) {
+            specimen = setSpecimenDetails(nextRecord, context, patient, encodingMode);
+            if (specimen != null) context.addSpecimen(specimen);
         }
 
     }
@@ -0,0 +1,205 @@
+package com.example.eomix.service;
+
+import com.example.eomix.exception.FhirTransactionException;
+import com.example.eomix.repositories.FhirResourceRepository;
+import org.hl7.fhir.r5.model.Bundle;
+import org.hl7.fhir.r5.model.Group;
+import org.hl7.fhir.r5.model.IdType;
+import org.hl7.fhir.r5.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Writes FHIR resources to the server with {@code transaction} Bundles, as they are produced.
+ * <p>
+ * The resources are buffered and submitted as soon as a chunk of {@code chunkSize} entries is full,
+ * so that only one chunk is kept in memory whatever the number of resources written.
+ * </p>
+ * <ul>
+ *     <li>Groups are written with a conditional update on their accession and official identifiers.</li>
+ *     <li>The other resources are written with a conditional create ({@code ifNoneExist}) on the same identifiers,
+ *     so that resources already on the server are not duplicated.</li>
+ * </ul>
+ * <p>
+ * The writer keeps the locations of the resources created by the chunks already committed, and the previous version
+ * of the Groups they updated, so that {@link #rollback()} deletes the former and restores the latter, and the
+ * ingestion of a file stays all or nothing.
+ * </p>
+ *
+ * @implNote Not thread-safe, a writer is used by a single ingestion.
+ */
+public class FhirTransactionWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(FhirTransactionWriter.class);
+
+    private final FhirResourceRepository repository;
+    private final int chunkSize;
+    private final List<String> createdLocations = new ArrayList<>();
+    private final Set<String> createdIds = new HashSet<>();
+    private final Map<String, Resource> previousVersions = new LinkedHashMap<>();
+    private Bundle transaction;
+    private int resourcesCount;
+    private int transactionsCount;
+
+    /**
+     * Instantiates a new Fhir transaction writer.
+     *
+     * @param repository the FHIR resource repository
+     * @param chunkSize  the maximum number of entries per transaction Bundle
+     */
+    public FhirTransactionWriter(FhirResourceRepository repository, int chunkSize) {
+        this.repository = repository;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.transaction = newTransaction();
+    }
+
+    private static Bundle newTransaction() {
+        Bundle bundle = new Bundle();
+        bundle.setType(Bundle.BundleType.TRANSACTION);
+        return bundle;
+    }
+
+    /**
+     * Adds a resource to the current chunk, and submits the chunk if it is full.
+     *
+     * @param resource the resource
+     * @throws FhirTransactionException if the chunk is rejected; the resources already created are deleted first
+     */
+    public void add(Resource resource) {
+        addTransactionEntry(resource);
+        if (transaction.getEntry().size() >= chunkSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Adds resources to the current chunk, submitting the chunks as they are full.
+     *
+     * @param resources the resources
+     * @throws FhirTransactionException if a chunk is rejected; the resources already created are deleted first
+     */
+    public void addAll(List<? extends Resource> resources) {
+        resources.forEach(this::add);
+    }
+
+    /**
+     * Submits the current chunk, if it is not empty.
+     *
+     * @throws FhirTransactionException if the chunk is rejected; the resources already created are deleted first
+     */
+    public void flush() {
+        if (transaction.getEntry().isEmpty()) {
+            return;
+        }
+        Bundle chunk = transaction;
+        transaction = newTransaction();
+        try {
+            List<Resource> currentVersions = getCurrentVersions(chunk);
+            Bundle response = repository.transaction(chunk);
+            transactionsCount++;
+            resourcesCount += chunk.getEntry().size();
+            for (int i = 0; i < response.getEntry().size(); i++) {
+                Bundle.BundleEntryResponseComponent entryResponse = response.getEntry().get(i).getResponse();
+                String status = entryResponse.getStatus();
+                if (status == null) {
+                    continue;
+                }
+                if (status.startsWith("201")) {
+                    createdLocations.add(entryResponse.getLocation());
+                    createdIds.add(new IdType(entryResponse.getLocation()).toUnqualifiedVersionless().getValue());
+                } else if (status.startsWith("200") && i < currentVersions.size() && currentVersions.get(i) != null) {
+                    Resource previousVersion = currentVersions.get(i);
+                    String id = previousVersion.getIdElement().toUnqualifiedVersionless().getValue();
+                    if (!createdIds.contains(id)) {
+                        previousVersions.putIfAbsent(id, previousVersion);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            rollback();
+            throw new FhirTransactionException("Failed to store resources as transaction", e);
+        }
+    }
+
+    /**
+     * Submits the last chunk and logs the number of resources stored.
+     *
+     * @throws FhirTransactionException if the chunk is rejected; the resources already created are deleted first
+     */
+    public void commit() {
+        flush();
+        logger.info("{} resources stored in {} transaction(s)", resourcesCount, transactionsCount);
+        clearUndoState();
+    }
+
+    private void clearUndoState() {
+        createdLocations.clear();
+        createdIds.clear();
+        previousVersions.clear();
+    }
+
+    /**
+     * Gets the current version of the resources updated by the conditional updates of a chunk, before it is submitted.
+     *
+     * @param chunk the chunk
+     * @return for each entry of the chunk, the resource its conditional update will overwrite, or null
+     */
+    private List<Resource> getCurrentVersions(Bundle chunk) {
+        List<Resource> currentVersions = new ArrayList<>(chunk.getEntry().size());
+        for (Bundle.BundleEntryComponent entry : chunk.getEntry()) {
+            Resource resource = entry.getResource();
+            Resource current = null;
+            if (entry.getRequest().getMethod() == Bundle.HTTPVerb.PUT) {
+                current = repository.findByIdentifiers(resource.getClass(), FhirIdentifierIndex.getAccessionIdentifier(resource),
+                        FhirIdentifierIndex.getOfficialIdentifier(resource));
+            }
+            currentVersions.add(current == null ? null : current.copy());
+        }
+        return currentVersions;
+    }
+
+    /**
+     * Discards the current chunk and, in a single transaction, deletes the resources created by the chunks already
+     * committed and restores the previous version of the Groups they updated.
+     */
+    public void rollback() {
+        transaction = newTransaction();
+        if (createdLocations.isEmpty() && previousVersions.isEmpty()) {
+            return;
+        }
+        Bundle rollback = newTransaction();
+        previousVersions.forEach((id, previousVersion) -> {
+            previousVersion.setIdElement(new IdType(id));
+            previousVersion.getMeta().setVersionId(null);
+            rollback.addEntry().setResource(previousVersion).getRequest().setMethod(Bundle.HTTPVerb.PUT).setUrl(id);
+        });
+        createdLocations.forEach(location -> rollback.addEntry().getRequest().setMethod(Bundle.HTTPVerb.DELETE).setUrl(new IdType(location).toUnqualifiedVersionless().getValue()));
+        try {
+            repository.transaction(rollback);
+            logger.info("{} resources rolled back: {} deleted, {} restored", rollback.getEntry().size(), createdLocations.size(), previousVersions.size());
+        } catch (Exception e) {
+            logger.error("Failed to roll back {} resources: {}", rollback.getEntry().size(), e.getMessage());
+        }
+        clearUndoState();
+    }
+
+    /**
+     * Add transaction entry.
+     * <p>
+     * This method adds a resource to the current chunk as a conditional update (Groups) or a conditional create
+     * (other resources) on its accession and official identifiers.
+     *
+     * @param resource the resource
+     */
+    private void addTransactionEntry(Resource resource) {
+        Bundle.BundleEntryComponent entry = transaction.addEntry().setResource(resource);
+        String condition = FhirIdentifierIndex.getCondition(resource);
+        if (resource instanceof Group && condition != null) {
+            entry.getRequest().setMethod(Bundle.HTTPVerb.PUT).setUrl(resource.fhirType() + "?" + condition);
+        } else {
+            entry.getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl(resource.fhirType()).setIfNoneExist(condition);
+        }
+    }
+}
@@ -4,13 +4,20 @@ package com.example.eomix.service;
 import com.example.eomix.entities.MetadataFileUploadEntity;
 import com.example.eomix.model.Protocols;
 import com.example.eomix.repositories.MetadataFileRepository;
-import com.example.eomix.utils.Helper;
+import com.example.eomix.utils.CsvDialect;
+import com.example.eomix.utils.CsvRecordReader;
 import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.annotation.PreDestroy;
+import org.ektorp.BulkDeleteDocument;
 import org.ektorp.CouchDbConnector;
+import org.ektorp.DocumentOperationResult;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
@@ -18,10 +25,13 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 
 import static com.example.eomix.controller.ErrorHandler.handleMissingDataInMetadataFile;
 import static com.example.eomix.utils.Constants.*;
@@ -32,21 +42,40 @@ import static com.example.eomix.utils.Constants.*;
 @Service
 public class FileSystemStorageService implements StorageService {
 
+    private static final Logger logger = LoggerFactory.getLogger(FileSystemStorageService.class);
+    private static final String MISSING_SAMPLE_ID = "Missing sample id in the records";
+    private static final String MISSING_PROTOCOL = "File is missing required parameter(s) : " + PROTOCOL +
+            ". It is required for Single Cell data.";
 
-    private static final String SAMPLE_ID = "sample_id";
     /**
      * The Metadata file repository.
      */
     public final MetadataFileRepository metadataFileRepository;
+    private final MetadataBulkWriter metadataBulkWriter;
+    private final MetadataTsvCache metadataTsvCache;
 
     /**
      * Instantiates a new File system storage service.
      *
-     * @param db the db
+     * @param db              the db
+     * @param bulkMaxInFlight the maximum number of CouchDB bulk requests in flight per upload
      */
     @Autowired
-    public FileSystemStorageService(@Qualifier("couchDbConnector1") CouchDbConnector db) {
+    public FileSystemStorageService(@Qualifier("couchDbConnector1") CouchDbConnector db,
+                                    @Value("${couchdb.bulk.max-in-flight:4}") int bulkMaxInFlight) {
         this.metadataFileRepository = new MetadataFileRepository(db);
+        this.metadataBulkWriter = new MetadataBulkWriter(metadataFileRepository, bulkMaxInFlight);
+        this.metadataTsvCache = new MetadataTsvCache(metadataFileRepository);
+    }
+
+    /**
+     * Stops the workers of the CouchDB bulk requests and deletes the cached metadata files when the application
+     * shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        metadataBulkWriter.shutdown();
+        metadataTsvCache.clear();
     }
 
     /**
@@ -100,8 +129,8 @@ public class FileSystemStorageService implements StorageService {
 
     /**
      * Verifies the file type of the uploaded file.
-     * This method checks if the uploaded file is a CSV file by examining its name and extension.
-     * If the file is not a CSV or has no name, it returns a bad request response with an appropriate error message.
+     * This method checks if the uploaded file is a CSV or an Arrow IPC file by examining its name and extension.
+     * If the file is neither or has no name, it returns a bad request response with an appropriate error message.
      *
      * @param file the uploaded file
      * @return a ResponseEntity indicating success or failure
@@ -111,124 +140,66 @@ public class FileSystemStorageService implements StorageService {
         if (fileName == null || fileName.isEmpty()) {
             return ResponseEntity.badRequest().body("Error: File has no name");
         }
-        if (!fileName.toLowerCase().endsWith(".csv")) {
-            return ResponseEntity.badRequest().body("Error: Only CSV files are allowed");
+        if (!fileName.toLowerCase().endsWith(".csv") && !ArrowMetadataReader.isArrowFile(fileName)) {
+            return ResponseEntity.badRequest().body("Error: Only CSV and Arrow IPC (.arrow, .arrows, .feather) files are allowed");
         }
         return null;
     }
 
-    /**
-     * Processes CSV lines to extract and group sample data by sample_id.
-     * * The method:
-     * * - Expects the first line to contain headers including a 'sample_id' column
-     * * - Groups data by sample_id into a map of {sample_id → list of sample records}
-     * * - Each sample record is a map of {header → value} pairs
-     * * - Filters out invalid lines (wrong column count or empty sample_id)
-     * * Processing details:
-     * * - Uses Java Streams for efficient processing
-     * * - Pre-computes column positions for optimal performance
-     * * - Returns empty map if no valid samples found
-     *
-     * @param batchLines List of CSV lines (first line should be headers)
-     * @param headers    Expected column headers
-     * @param separator  CSV field delimiter
-     * @return Non-null map grouping samples by sample_id (empty if no valid data)
-     * @throws NullPointerException if any parameter is null
-     * @implNote The SAMPLE_ID constant defines the key column name
-     * @implSpec This implementation is optimized for large files by:
-     * *           - Using stream processing
-     * *           - Avoiding repeated column lookups
-     * *           - Filtering early in the pipeline
-     */
-    private static @NotNull Map<String, List<Map<String, String>>> getSamplesBatchFromLines(List<String> batchLines, String[] headers, String separator) {
-        // Find the index of the sample_id column once, before processing the stream.
-        // This is much more efficient than searching for it in every single line.
-        int sampleIdIndex = -1;
-        for (int i = 0; i < headers.length; i++) {
-            if (SAMPLE_ID.equalsIgnoreCase(headers[i])) {
-                sampleIdIndex = i;
-                break;
-            }
-        }
-
-        // If there's no "sample_id" column in the headers at all, we can't proceed.
-        if (sampleIdIndex == -1) {
-            // Return an empty map as no grouping is possible.
-            return Collections.emptyMap();
-        }
-
-        // A final variable is required for use in a lambda expression.
-        final int finalSampleIdIndex = sampleIdIndex;
-
-        return batchLines.stream()
-                .map(line -> line.split(separator))
-                .filter(values -> values.length == headers.length)
-                // Filter for records where the sample_id is present and not empty.
-                .filter(values -> !values[finalSampleIdIndex].isEmpty())
-                .collect(Collectors.groupingBy(
-                        // Classifier: Directly access the sample_id using the pre-calculated index.
-                        // No need for a loop or null check here, as the stream is already filtered.
-                        values -> values[finalSampleIdIndex],
-
-                        // Downstream Collector: Map headers to values.
-                        Collectors.mapping(
-                                values ->
-                                        // Using IntStream is a concise way to create the map.
-                                        IntStream.range(0, headers.length)
-                                                .boxed()
-                                                .collect(Collectors.toMap(i -> headers[i], i -> values[i])),
-                                Collectors.toList()
-                        )
-                ));
-    }
-
     /**
      * Stores the uploaded file on CouchDB after processing it.
-     * This method reads the file, validates its headers, and processes its lines to extract metadata.
-     * It then stores the processed metadata in CouchDB in batches.
+     * This method reads the file, validates its headers, and aggregates its lines into one summary per sample.
+     * It then stores the metadata of the samples in CouchDB in batches.
      *
-     * @param file              the uploaded file
-     * @param detectedDelimiter the delimiter used in the CSV file
+     * @param file the uploaded file
      * @return a ResponseEntity indicating success or failure
-     * @implNote The method handles file reading, header validation, and metadata extraction.
-     * * It also manages the storage of metadata in CouchDB, ensuring that the file is processed in manageable batches.
+     * @implNote The file is read in a single pass with a {@link CsvRecordReader} and its lines are not kept: only the
+     * first record and the number of cells of each sample are, through a {@link MetadataSampleAggregator}, so the memory
+     * used grows with the number of samples and not with the number of cells.
+     * * The file is fully validated before anything is stored on CouchDB, then the samples are stored with concurrent
+     * * bulk requests through a {@link MetadataBulkWriter}, and the samples CouchDB rejects are reported.
+     * * When samples are already stored for the filename, only the added, changed and removed samples are written,
+     * * as computed by a {@link MetadataSampleDiff}.
+     * * The dialect of the file is detected from its first bytes, see {@link CsvDialect#detect(InputStream)}: the
+     * * headers come from it, and the header record and the type rows that follow it are skipped.
+     * * Arrow IPC files are read with {@link #storeArrowOnCouchDb(MultipartFile)} instead, without detecting a dialect.
      */
     @Override
-    public ResponseEntity<String> storeOnCouchDb(MultipartFile file, String detectedDelimiter) {
+    public ResponseEntity<String> storeOnCouchDb(MultipartFile file) {
 
         ResponseEntity<String> body = verifyFileType(file);
         if (body != null) return body;
+        if (ArrowMetadataReader.isArrowFile(file.getOriginalFilename())) {
+            return storeArrowOnCouchDb(file);
+        }
 
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
-            // Read headers and validate
-            String[] headers = reader.readLine().split(detectedDelimiter);
-            ResponseEntity<String> response = handleMissingDataInMetadataFile(headers);
-            if (response != null) return response;
-            // Process file lines
-            List<String> fileLines = reader.lines()
-                    .filter(line -> !line.toLowerCase().contains("type") &&
-                            !line.toLowerCase().contains("group"))
-                    .toList();
-
-            Map<String, Integer> sampleCounts = new HashMap<>();
-            ResponseEntity<String> body1 = parseFileLinesAndGetCellsCountNumber(detectedDelimiter, fileLines, headers, sampleCounts);
-            if (body1 != null) return body1;
-            // Process batch and upload to CouchDB
-            List<MetadataFileUploadEntity> fileList = processBatch(fileLines, headers, file, detectedDelimiter, sampleCounts);
-            // Process in batches
-            int batchSize = 1000;
-            for (int i = 0; i < fileList.size(); i += batchSize) {
-                int end = Math.min(i + batchSize, fileList.size());
-                List<MetadataFileUploadEntity> batch = fileList.subList(i, end);
-                if (batch.isEmpty()) {
-                    return ResponseEntity.badRequest().body("No valid records found to process");
-                }
-                metadataFileRepository.bulkAdd(batch);
-
+        CsvDialect dialect;
+        try (InputStream inputStream = file.getInputStream()) {
+            dialect = CsvDialect.detect(inputStream);
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error processing file: " + e.getMessage());
+        }
+        logger.info("Detected {} for {}", dialect, file.getOriginalFilename());
+
+        // Validate the detected headers
+        String[] headers = dialect.getHeaderArray();
+        ResponseEntity<String> response = handleMissingDataInMetadataFile(headers);
+        if (response != null) return response;
+        try (CsvRecordReader csvRecord = new CsvRecordReader(
+                new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8), dialect.delimiter())) {
+            // Skip the header record and the type rows
+            for (int i = 0; i <= dialect.typeRowCount(); i++) {
+                csvRecord.next();
             }
-
-            return ResponseEntity.ok("File processed successfully");
+            // Aggregate file records by sample
+            MetadataSampleAggregator aggregator = new MetadataSampleAggregator(headers);
+            boolean hasProtocol = Arrays.asList(headers).contains(PROTOCOL);
+            while (csvRecord.next()) {
+                ResponseEntity<String> recordResponse = aggregateRecord(csvRecord, aggregator, hasProtocol);
+                if (recordResponse != null) return recordResponse;
+            }
+            return storeSamples(file.getOriginalFilename(), aggregator);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("Error processing file: " + e.getMessage());
@@ -236,157 +207,141 @@ public class FileSystemStorageService implements StorageService {
     }
 
     /**
-     * Parses file lines and counts the number of cells for each sample.
-     * This method iterates through each line of the file, splits it by the detected delimiter,
-     * and counts the number of cells for each sample based on the sample_id.
-     * It also checks for required parameters and returns an error response if any are missing.
+     * Stores an uploaded Arrow IPC file on CouchDB after processing it.
+     * The file is read one record batch at a time with an {@link ArrowMetadataReader}, which only reads the columns
+     * used by the {@link MetadataSampleAggregator}, and its rows feed the same aggregation as the lines of a CSV file.
      *
-     * @param detectedDelimiter the delimiter used in the CSV file
-     * @param fileLines         the lines of the file
-     * @param headers           the headers of the file
-     * @param sampleCounts      a map to store sample counts
+     * @param file the uploaded file
      * @return a ResponseEntity indicating success or failure
+     * @implNote The file is copied to a temporary file first, since the file format of Arrow IPC is read by seeking to
+     * its footer; the temporary file is deleted once the file is stored.
      */
-    private @Nullable ResponseEntity<String> parseFileLinesAndGetCellsCountNumber(String detectedDelimiter, List<String> fileLines, String[] headers, Map<String, Integer> sampleCounts) {
-        for (String line : fileLines) {
-            List<String> values = Arrays.stream(line.split(detectedDelimiter)).toList();
-            String sampleId = null;
-            if (values.size() == headers.length) {
-                sampleId = findSampleId(values, headers);
-                sampleCounts.put(sampleId, sampleCounts.getOrDefault(sampleId, 0) + 1);
-            } else if (parseCSVLine(line).size() == headers.length) {
-                List<String> newValues = parseCSVLine(line);
-                sampleId = findSampleId(newValues, headers);
-                sampleCounts.put(sampleId, sampleCounts.getOrDefault(sampleId, 0) + 1);
+    private ResponseEntity<String> storeArrowOnCouchDb(MultipartFile file) {
+        Path arrowFile = null;
+        try {
+            arrowFile = Files.createTempFile("eomix-arrow-", ".arrow");
+            try (InputStream inputStream = file.getInputStream()) {
+                Files.copy(inputStream, arrowFile, StandardCopyOption.REPLACE_EXISTING);
             }
-            if (sampleId == null || sampleId.isEmpty()) {
-                return ResponseEntity.badRequest().body("Missing sample id in the records");
+            try (ArrowMetadataReader reader = ArrowMetadataReader.open(arrowFile)) {
+                String[] headers = reader.getHeaders();
+                ResponseEntity<String> response = handleMissingDataInMetadataFile(headers);
+                if (response != null) return response;
+                MetadataSampleAggregator aggregator = new MetadataSampleAggregator(headers);
+                reader.setUsedColumns(aggregator.getUsedColumns());
+                boolean hasProtocol = Arrays.asList(headers).contains(PROTOCOL);
+                while (reader.loadNextBatch()) {
+                    for (int row = 0; row < reader.getRowCount(); row++) {
+                        int batchRow = row;
+                        ResponseEntity<String> recordResponse = aggregateRecord(column -> reader.getValue(column, batchRow), aggregator, hasProtocol);
+                        if (recordResponse != null) return recordResponse;
+                    }
+                }
+                return storeSamples(file.getOriginalFilename(), aggregator);
             }
-            if (findCellularResolution(values, headers).equals("Single Cell") && !Arrays.stream(headers).toList().contains(PROTOCOL)) {
-                return ResponseEntity.badRequest().body("File is missing required parameter(s) : " + PROTOCOL +
-                        ". It is required for Single Cell data.");
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error processing file: " + e.getMessage());
+        } finally {
+            deleteTemporaryFile(arrowFile);
+        }
+    }
+
+    private static void deleteTemporaryFile(@Nullable Path path) {
+        if (path != null) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                logger.warn("Failed to delete the temporary file {}: {}", path, e.getMessage());
             }
         }
-        return null;
     }
 
     /**
-     * Parses a CSV line and returns a list of values.
-     * This method handles quoted values and commas within quotes correctly.
-     * It splits the line by commas, taking care to handle cases where commas are part of quoted strings.
+     * Stores the samples aggregated from a metadata file on CouchDB.
      *
-     * @param line the CSV line to parse
-     * @return a list of values extracted from the line
+     * @param filename   the name of the metadata file
+     * @param aggregator the aggregator of the samples of the file
+     * @return a ResponseEntity indicating success or failure
      */
-    private List<String> parseCSVLine(String line) {
-        List<String> values = new ArrayList<>();
-        boolean inQuotes = false;
-        StringBuilder currentValue = new StringBuilder();
-
-        for (char c : line.toCharArray()) {
-            if (c == '"') {
-                inQuotes = !inQuotes;
-            } else if (c == ',' && !inQuotes) {
-                values.add(currentValue.toString().trim());
-                currentValue = new StringBuilder();
-            } else {
-                currentValue.append(c);
-            }
+    private ResponseEntity<String> storeSamples(String filename, MetadataSampleAggregator aggregator) {
+        List<MetadataFileUploadEntity> fileList = aggregator.toEntities(filename, Instant.now().toString());
+        // Only write the samples that differ from the stored version of the file
+        MetadataSampleDiff diff = new MetadataSampleDiff(metadataFileRepository.findByFilename(filename), fileList);
+        logger.info("Samples of {}: {}", filename, diff.getSummary());
+        // Store in concurrent batches
+        List<String> errors = new ArrayList<>(metadataBulkWriter.write(diff.getDocumentsToWrite()));
+        errors.addAll(deleteSamples(diff.getDocumentsToDelete()));
+        if (!errors.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(errors.size() + " of " + fileList.size() + " samples could not be stored: " + String.join("; ", errors.subList(0, Math.min(errors.size(), 10))));
         }
-        values.add(currentValue.toString().trim());
-        return values;
+
+        return ResponseEntity.ok("File processed successfully (" + diff.getSummary() + ")");
     }
 
     /**
-     * Processes a batch of lines from the file and creates MetadataFileUploadEntity objects.
-     * This method groups the lines by sample_id, extracts relevant metadata, and creates entities for each sample.
-     * It also sets the createdAt timestamp and other metadata fields.
+     * Deletes the samples removed from a new version of a metadata file.
      *
-     * @param batchLines   the lines of the file to process
-     * @param headers      the headers of the file
-     * @param file         the original file
-     * @param separator    the field separator used in the file
-     * @param sampleCounts a map containing counts of cells for each sample_id
-     * @return a list of MetadataFileUploadEntity objects created from the batch lines
-     * @implNote This method is used to process a batch of lines from a file and create MetadataFileUploadEntity objects.
-     * * It is typically called after reading the file and validating its headers.
-     * @implSpec The method expects the batchLines to be a list of strings, where each string represents a line from the file.
+     * @param documents the id and revision of the documents to delete
+     * @return the errors of the documents that could not be deleted, empty if all of them were
      */
-    private List<MetadataFileUploadEntity> processBatch(List<String> batchLines, String[] headers,
-                                                        MultipartFile file, String separator, Map<String, Integer> sampleCounts) {
-
-        String createdAt = Instant.now().toString();
-        List<MetadataFileUploadEntity> uploadEntities = new ArrayList<>();
-        // Group by sample_id and create MetadataFileUploadEntity objects
-        Map<String, List<Map<String, String>>> samples = getSamplesBatchFromLines(batchLines, headers, separator);
-
-        samples.forEach((sampleId, records) -> {
-            if (!records.isEmpty()) {
-                MetadataFileUploadEntity.MetaData metaData = new MetadataFileUploadEntity.MetaData();
-                metaData.setFilename(file.getOriginalFilename());
-                metaData.setCreatedAt(createdAt);
-                Map<String, String> sourceColumns = new HashMap<>();
-                Map<String, String> firstRecord = records.get(0);
-                sourceColumns.put(ORGAN, firstRecord.get(ORGAN));
-                sourceColumns.put(GENDER, firstRecord.get(GENDER));
-                sourceColumns.put(SAMPLE_ID, sampleId);
-                sourceColumns.put(PATIENT_ID, firstRecord.get(PATIENT_ID));
-                if (firstRecord.get(PROTOCOL) != null)
-                    sourceColumns.put(PROTOCOL, Protocols.fromValue(firstRecord.get(PROTOCOL)).toString());
-                sourceColumns.put(STANDARDIZED_SPECIES, firstRecord.get(STANDARDIZED_SPECIES));
-                sourceColumns.put(CELLULAR_RESOLUTION, firstRecord.get(CELLULAR_RESOLUTION));
-                sourceColumns.put(DISORDER, firstRecord.get(DISORDER));
-                sourceColumns.put(AGE, firstRecord.get(AGE));
-                sourceColumns.put(SEQUENCE_TYPE, firstRecord.get(SEQUENCE_TYPE));
-                sourceColumns.put(BATCH, firstRecord.get(BATCH));
-                sourceColumns.put(CELL_NUMBER, sampleCounts.get(sampleId).toString());
-                MetadataFileUploadEntity uploadedFile = new MetadataFileUploadEntity();
-                uploadedFile.setMeta(metaData);
-                uploadedFile.setSourceColumns(sourceColumns);
-                uploadEntities.add(uploadedFile);
+    private List<String> deleteSamples(List<BulkDeleteDocument> documents) {
+        List<String> errors = new ArrayList<>();
+        for (int offset = 0; offset < documents.size(); offset += MetadataBulkWriter.INITIAL_BATCH_SIZE) {
+            List<BulkDeleteDocument> batch = documents.subList(offset, Math.min(offset + MetadataBulkWriter.INITIAL_BATCH_SIZE, documents.size()));
+            for (DocumentOperationResult result : metadataFileRepository.bulkDelete(batch)) {
+                errors.add("Document " + result.getId() + ": " + result.getError() + " (" + result.getReason() + ")");
             }
-        });
-        return uploadEntities;
+        }
+        return errors;
     }
 
     /**
-     * Finds the sample_id in the list of values based on the headers.
-     * This method iterates through the headers and returns the corresponding value for sample_id.
-     * * If sample_id is not found, it returns null.
+     * Adds the current record of the file to the cell count of its sample.
+     * It also checks for required parameters and returns an error response if any are missing.
      *
-     * @param values  the list of values from a CSV line
-     * @param headers the headers of the CSV file
-     * @return the sample_id if found, otherwise null
-     * @implNote This method is used to extract the sample_id from a list of values based on the headers.
-     * @implSpec It is typically called after parsing a CSV line to find the sample_id value.
+     * @param csvRecord   the reader of the file, on the record
+     * @param aggregator  the aggregator of the samples of the file
+     * @param hasProtocol whether the file has a protocol column
+     * @return a ResponseEntity indicating failure, or null if the record is valid
      */
-    private String findSampleId(List<String> values, String[] headers) {
-        for (int i = 0; i < headers.length; i++) {
-            if (SAMPLE_ID.equalsIgnoreCase(headers[i])) {
-                return values.get(i);
-            }
+    private @Nullable ResponseEntity<String> aggregateRecord(CsvRecordReader csvRecord,
+                                                             MetadataSampleAggregator aggregator, boolean hasProtocol) {
+        String sampleId = null;
+        if (csvRecord.getFieldCount() == aggregator.getHeaderCount()) {
+            sampleId = aggregator.getSampleId(csvRecord);
         }
+        if (sampleId == null || sampleId.isEmpty()) {
+            return ResponseEntity.badRequest().body(MISSING_SAMPLE_ID);
+        }
+        if (aggregator.isSingleCell(csvRecord) && !hasProtocol) {
+            return ResponseEntity.badRequest().body(MISSING_PROTOCOL);
+        }
+        aggregator.add(sampleId, csvRecord);
         return null;
     }
 
     /**
-     * Finds the cellular resolution in the list of values based on the headers.
-     * This method iterates through the headers and returns the corresponding value for cellular resolution.
-     * If cellular resolution is not found, it returns an empty string.
+     * Adds a row of an Arrow IPC file to the cell count of its sample.
+     * It also checks for required parameters and returns an error response if any are missing.
      *
-     * @param values  the list of values from a CSV line
-     * @param headers the headers of the CSV file
-     * @return the cellular resolution if found, otherwise an empty string
-     * @implNote This method is used to extract the cellular resolution from a list of values based on the headers.
-     * @implSpec It is typically called after parsing a CSV line to find the cellular resolution value.
+     * @param record      the values of the row, by header index
+     * @param aggregator  the aggregator of the samples of the file
+     * @param hasProtocol whether the file has a protocol column
+     * @return a ResponseEntity indicating failure, or null if the row is valid
      */
-    private String findCellularResolution(List<String> values, String[] headers) {
-        for (int i = 0; i < headers.length; i++) {
-            if (CELLULAR_RESOLUTION.equalsIgnoreCase(headers[i])) {
-                return values.get(i);
-            }
+    private @Nullable ResponseEntity<String> aggregateRecord(IntFunction<String> record,
+                                                             MetadataSampleAggregator aggregator, boolean hasProtocol) {
+        String sampleId = aggregator.getSampleId(record);
+        if (sampleId == null || sampleId.isEmpty()) {
+            return ResponseEntity.badRequest().body(MISSING_SAMPLE_ID);
+        }
+        if (aggregator.isSingleCell(record) && !hasProtocol) {
+            return ResponseEntity.badRequest().body(MISSING_PROTOCOL);
         }
-        return "";
+        aggregator.add(sampleId, record);
+        return null;
     }
 
     /**
@@ -401,75 +356,61 @@ public class FileSystemStorageService implements StorageService {
     public String convertToCSV(List<MetadataFileUploadEntity> documents) {
         StringWriter stringWriter = new StringWriter();
         PrintWriter writer = new PrintWriter(stringWriter);
-
-        if (!documents.isEmpty()) {
-            MetadataFileUploadEntity firstDoc = documents.get(0);
-            writer.println(String.join("\t", firstDoc.getSourceColumns().keySet()));
-            for (MetadataFileUploadEntity doc : documents) {
-                Map<String, String> sourceColumns = doc.getSourceColumns();
-                writer.println(String.join("\t", sourceColumns.values()));
-            }
-        }
+        MetadataTsvCache.writeTsv(documents, writer);
+        writer.flush();
         return stringWriter.toString();
     }
 
     /**
-     * Retrieves a metadata file from CouchDB by its filename and converts it to a File object.
-     * This method fetches the metadata file as bytes, converts it to a File object, and returns it.
+     * Retrieves a metadata file from CouchDB by its filename as a File object.
+     * This method returns the TSV regenerated from the samples of the file, from the {@link MetadataTsvCache}.
      * If the file is not found, it throws a FileNotFoundException.
      *
      * @param filename the name of the file to retrieve
-     * @return a File object containing the metadata
+     * @return a File object containing the metadata; it is shared with the other callers and must not be modified
      * @throws FileNotFoundException if the file is not found in CouchDB
+     * @implNote The TSV is only regenerated when the CouchDB database changed since it was cached.
      */
     @Override
     public File getMetadataFileFromCouchDBByFileName(String filename) throws FileNotFoundException {
-        byte[] csvBytes = getMetadataFileAsBytesFromFileName(filename);
-        return Helper.convertBytesToFile(csvBytes, "newFileName");
+        return metadataTsvCache.getFile(filename);
     }
 
     /**
-     * Retrieves a metadata file from CouchDB by its filename and converts it to a File object for Minio.
-     * <p> This method fetches the metadata file as bytes, converts it to a File object with a safe filename,
-     * and returns it. If the file is not found, it throws a FileNotFoundException.
-     * <p> This method is specifically designed to handle filenames that may contain characters
-     * that are not safe for Minio storage.
+     * Streams the samples of a metadata file from CouchDB by its filename.
+     * This method hands the source columns of each sample to the consumer as they are read from the CouchDB view,
+     * so that the file is neither rebuilt as a CSV string nor written to a temporary file.
+     * If the file is not found, it throws a FileNotFoundException.
      *
-     * @param filename the name of the file to retrieve
-     * @return a File object containing the metadata
+     * @param filename the name of the file to stream
+     * @param consumer the consumer of the source columns of each sample, by column name
      * @throws FileNotFoundException if the file is not found in CouchDB
-     * @implNote This method is specifically designed to handle filenames that may contain characters
-     * * that are not safe for Minio storage.
-     * @implSpec It replaces any forward slashes in the filename with underscores to ensure compatibility with Minio.
      */
     @Override
-    public File getMetadataFileFromCouchDBByFileNameForMinio(String filename) throws FileNotFoundException {
-        byte[] csvBytes = getMetadataFileAsBytesFromFileName(filename);
-        String safeFileName = filename.replace("/", "_");
-        return Helper.convertBytesToFile(csvBytes, safeFileName);
+    public void forEachSampleOfMetadataFile(String filename, Consumer<Map<String, String>> consumer) throws FileNotFoundException {
+        if (metadataFileRepository.streamSourceColumnsByFilename(filename, consumer) == 0) {
+            throw new FileNotFoundException(filename + " not found");
+        }
     }
 
     /**
-     * Retrieves a metadata file from CouchDB by its filename and converts it to a byte array.
-     * This method fetches the metadata file as bytes and returns it. If the file is not found,
-     * it throws a FileNotFoundException.
-     * * This method is used to retrieve the metadata file content as a byte array,
-     * * which can be useful for further processing or storage.
+     * Retrieves a metadata file from CouchDB by its filename as a File object for Minio.
+     * <p> This method returns the TSV regenerated from the samples of the file, from the {@link MetadataTsvCache},
+     * as a File object with a safe filename. If the file is not found, it throws a FileNotFoundException.
+     * <p> This method is specifically designed to handle filenames that may contain characters
+     * that are not safe for Minio storage.
      *
      * @param filename the name of the file to retrieve
-     * @return a byte array containing the metadata file content
+     * @return a File object containing the metadata; it is shared with the other callers and must not be modified
      * @throws FileNotFoundException if the file is not found in CouchDB
-     * @implNote It uses the metadataFileRepository to find the file by its filename.
-     * @implSpec The method converts the retrieved documents to a CSV string and then to a byte array.
+     * @implNote This method is specifically designed to handle filenames that may contain characters
+     * * that are not safe for Minio storage.
+     * @implSpec The cached file is named after the filename with any forward slashes replaced by underscores, to
+     * ensure compatibility with Minio.
      */
-    private byte @NotNull [] getMetadataFileAsBytesFromFileName(String filename) throws FileNotFoundException {
-        List<MetadataFileUploadEntity> documents = metadataFileRepository.findByFilename(filename);
-        if (documents.isEmpty()) {
-            throw new FileNotFoundException(filename + " not found");
-        }
-        String csvContent = convertToCSV(documents);
-        return csvContent.getBytes(StandardCharsets.UTF_8);
+    @Override
+    public File getMetadataFileFromCouchDBByFileNameForMinio(String filename) throws FileNotFoundException {
+        return metadataTsvCache.getFile(filename);
     }
 
-
 }
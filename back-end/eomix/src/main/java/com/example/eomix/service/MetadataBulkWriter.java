@@ -0,0 +1,166 @@
+package com.example.eomix.service;
+
+import com.example.eomix.entities.MetadataFileUploadEntity;
+import com.example.eomix.exception.MetadataFileUploadException;
+import com.example.eomix.exception.ProcessInterruptedException;
+import com.example.eomix.repositories.MetadataFileRepository;
+import org.ektorp.DocumentOperationResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.eomix.utils.Constants.SAMPLE_ID;
+
+/**
+ * The type Metadata bulk writer.
+ * <p>
+ * This class stores the samples of the metadata files on CouchDB with {@code _bulk_docs} requests sent concurrently:
+ * </p>
+ * <ul>
+ *     <li>Up to {@code couchdb.bulk.max-in-flight} requests of an upload are in flight at a time; the next batch is
+ *     only cut once a request completes, so the batches waiting for CouchDB never exceed that bound.</li>
+ *     <li>The size of the batches adapts to the latency of the requests: it doubles while the requests are fast and
+ *     is halved when they are slower than {@link #TARGET_LATENCY_MILLIS}.</li>
+ *     <li>The documents rejected by CouchDB (conflict, validation...) are reported one by one, by sample id, instead
+ *     of being ignored.</li>
+ * </ul>
+ *
+ * @implNote The documents are given their id before being sent, so that each error of the bulk response can be
+ * matched with its sample. The workers are shared by all the uploads.
+ */
+final class MetadataBulkWriter {
+
+    /**
+     * The constant INITIAL_BATCH_SIZE.
+     */
+    static final int INITIAL_BATCH_SIZE = 1000;
+    /**
+     * The constant MIN_BATCH_SIZE.
+     */
+    static final int MIN_BATCH_SIZE = 100;
+    /**
+     * The constant MAX_BATCH_SIZE.
+     */
+    static final int MAX_BATCH_SIZE = 10000;
+    /**
+     * The constant TARGET_LATENCY_MILLIS.
+     */
+    static final long TARGET_LATENCY_MILLIS = 2000;
+    private static final Logger logger = LoggerFactory.getLogger(MetadataBulkWriter.class);
+
+    private final MetadataFileRepository metadataFileRepository;
+    private final int maxInFlight;
+    private final ExecutorService executor;
+
+    /**
+     * Instantiates a new Metadata bulk writer.
+     *
+     * @param metadataFileRepository the metadata file repository
+     * @param maxInFlight            the maximum number of bulk requests in flight per upload
+     */
+    MetadataBulkWriter(MetadataFileRepository metadataFileRepository, int maxInFlight) {
+        this.metadataFileRepository = metadataFileRepository;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.maxInFlight, runnable -> {
+            Thread thread = new Thread(runnable, "couchdb-bulk-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Stores documents on CouchDB.
+     *
+     * @param documents the documents
+     * @return the errors of the documents that could not be stored, empty if all of them were
+     * @throws ProcessInterruptedException if the thread is interrupted while waiting for the requests
+     */
+    List<String> write(List<MetadataFileUploadEntity> documents) {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicInteger batchSize = new AtomicInteger(INITIAL_BATCH_SIZE);
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        List<Future<?>> requests = new ArrayList<>();
+        try {
+            int offset = 0;
+            while (offset < documents.size()) {
+                inFlight.acquire();
+                int end = Math.min(offset + batchSize.get(), documents.size());
+                List<MetadataFileUploadEntity> batch = documents.subList(offset, end);
+                offset = end;
+                requests.add(executor.submit(() -> {
+                    try {
+                        writeBatch(batch, batchSize, errors);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+            for (Future<?> request : requests) {
+                request.get();
+            }
+        } catch (InterruptedException e) {
+            requests.forEach(request -> request.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new ProcessInterruptedException("Interrupted while storing the samples on CouchDB", e);
+        } catch (ExecutionException e) {
+            throw new MetadataFileUploadException("Failed to store the samples on CouchDB", e.getCause());
+        }
+        return errors;
+    }
+
+    private void writeBatch(List<MetadataFileUploadEntity> batch, AtomicInteger batchSize, List<String> errors) {
+        Map<String, MetadataFileUploadEntity> documentsById = new HashMap<>();
+        for (MetadataFileUploadEntity document : batch) {
+            if (document.getId() == null) {
+                document.setId(UUID.randomUUID().toString());
+            }
+            documentsById.put(document.getId(), document);
+        }
+        long start = System.nanoTime();
+        try {
+            for (DocumentOperationResult result : metadataFileRepository.bulkAdd(batch)) {
+                MetadataFileUploadEntity document = documentsById.get(result.getId());
+                String sampleId = document == null ? result.getId() : document.getSourceColumns().get(SAMPLE_ID);
+                errors.add("Sample " + sampleId + ": " + result.getError() + " (" + result.getReason() + ")");
+            }
+        } catch (MetadataFileUploadException e) {
+            logger.error("Bulk request of {} samples failed: {}", batch.size(), e.getMessage());
+            batch.forEach(document -> errors.add("Sample " + document.getSourceColumns().get(SAMPLE_ID) + ": " + e.getMessage()));
+        }
+        long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        int newBatchSize = batchSize.updateAndGet(size -> adaptBatchSize(size, batch.size(), latencyMillis));
+        logger.debug("Bulk request of {} samples took {} ms, next batches of {}", batch.size(), latencyMillis, newBatchSize);
+    }
+
+    /**
+     * Adapts the batch size to the latency of a bulk request.
+     *
+     * @param currentSize   the current batch size
+     * @param requestSize   the size of the batch of the request
+     * @param latencyMillis the latency of the request
+     * @return the new batch size
+     * @implNote A request smaller than the current size is only taken into account to shrink the batches, since its
+     * latency says nothing about larger ones.
+     */
+    static int adaptBatchSize(int currentSize, int requestSize, long latencyMillis) {
+        if (latencyMillis > TARGET_LATENCY_MILLIS) {
+            return Math.max(MIN_BATCH_SIZE, Math.min(currentSize, requestSize) / 2);
+        }
+        if (latencyMillis < TARGET_LATENCY_MILLIS / 2 && requestSize >= currentSize) {
+            return Math.min(MAX_BATCH_SIZE, currentSize * 2);
+        }
+        return currentSize;
+    }
+
+    /**
+     * Stops the workers.
+     * The requests in flight are interrupted.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
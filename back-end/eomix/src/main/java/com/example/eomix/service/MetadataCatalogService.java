@@ -0,0 +1,153 @@
+package com.example.eomix.service;
+
+import com.example.eomix.repositories.MetadataFileRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The type Metadata catalog service.
+ * <p>
+ * This service keeps in memory the catalog of the metadata files (filename, species, organs, disorders...) built from
+ * the {@code file_metadata} view, so that the frequent polling of the dashboard does not query CouchDB.
+ * </p>
+ * <ul>
+ *     <li>The catalog is built on its first use, and rebuilt on the first use after {@link #invalidate()}, which is
+ *     called when a metadata file is uploaded or deleted.</li>
+ *     <li>The files being deleted are left out of the catalog as soon as their deletion is submitted.</li>
+ *     <li>Each entry comes with a strong ETag, the hash of its JSON representation, so that the clients can revalidate
+ *     it with {@code If-None-Match} and get a {@code 304 Not Modified}.</li>
+ * </ul>
+ *
+ * @implNote An invalidation during a rebuild discards the catalog being built, which may not include the change.
+ */
+@Service
+public class MetadataCatalogService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetadataCatalogService.class);
+
+    private final MetadataFileRepository metadataFileRepository;
+    private final ObjectMapper objectMapper;
+    private final AtomicLong generation = new AtomicLong();
+    private final Set<String> hiddenFilenames = ConcurrentHashMap.newKeySet();
+    private volatile Catalog catalog;
+
+    /**
+     * Instantiates a new Metadata catalog service.
+     *
+     * @param metadataFileRepository the metadata file repository
+     * @param objectMapper           the object mapper of the responses, used to compute the ETags
+     */
+    public MetadataCatalogService(MetadataFileRepository metadataFileRepository, ObjectMapper objectMapper) {
+        this.metadataFileRepository = metadataFileRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Gets the metadata of all the files.
+     *
+     * @return the metadata of the files, with its ETag
+     */
+    public CatalogEntry getAllMetadataFiles() {
+        return getCatalog().all();
+    }
+
+    /**
+     * Gets the metadata of a file.
+     *
+     * @param filename the filename
+     * @return the metadata of the file (an empty list if the file is unknown), with its ETag
+     */
+    public CatalogEntry getMetadataFile(String filename) {
+        Catalog current = getCatalog();
+        return current.byFilename().getOrDefault(filename, current.empty());
+    }
+
+    /**
+     * Invalidates the catalog, after a metadata file is uploaded or deleted.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        catalog = null;
+    }
+
+    /**
+     * Leaves a file out of the catalog, while it is being deleted.
+     *
+     * @param filename the filename
+     */
+    public void hide(String filename) {
+        hiddenFilenames.add(filename);
+        invalidate();
+    }
+
+    /**
+     * Puts back a file in the catalog, once its deletion is finished, in case some of its samples were not deleted.
+     *
+     * @param filename the filename
+     */
+    public void show(String filename) {
+        hiddenFilenames.remove(filename);
+        invalidate();
+    }
+
+    private Catalog getCatalog() {
+        Catalog current = catalog;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            current = catalog;
+            if (current == null) {
+                long builtGeneration = generation.get();
+                current = buildCatalog();
+                if (generation.get() == builtGeneration) {
+                    catalog = current;
+                }
+            }
+            return current;
+        }
+    }
+
+    private Catalog buildCatalog() {
+        List<Map<String, Object>> files = FileSystemStorageService.getAllMetadataFromJsonNodes(metadataFileRepository.findAllMetadataFiles())
+                .stream().filter(file -> !hiddenFilenames.contains(String.valueOf(file.get("filename")))).toList();
+        Map<String, CatalogEntry> byFilename = new HashMap<>();
+        for (Map<String, Object> file : files) {
+            List<Map<String, Object>> fileMetadata = List.of(file);
+            byFilename.put(String.valueOf(file.get("filename")), new CatalogEntry(fileMetadata, getETag(fileMetadata)));
+        }
+        logger.debug("Metadata catalog built: {} files", files.size());
+        return new Catalog(new CatalogEntry(List.copyOf(files), getETag(files)), byFilename, new CatalogEntry(List.of(), getETag(List.of())));
+    }
+
+    private String getETag(List<Map<String, Object>> metadata) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsString(metadata).getBytes(StandardCharsets.UTF_8));
+            return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Failed to compute the ETag of the metadata catalog", e);
+        }
+    }
+
+    /**
+     * The type Catalog entry.
+     *
+     * @param metadata the metadata of the files
+     * @param eTag     the strong ETag of the metadata, quoted
+     */
+    public record CatalogEntry(List<Map<String, Object>> metadata, String eTag) {
+    }
+
+    private record Catalog(CatalogEntry all, Map<String, CatalogEntry> byFilename, CatalogEntry empty) {
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.eomix.service;
+
+import com.example.eomix.entities.MetadataDeletionJob;
+import com.example.eomix.repositories.MetadataFileRepository;
+import jakarta.annotation.PreDestroy;
+import org.ektorp.BulkDeleteDocument;
+import org.ektorp.DocumentOperationResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The type Metadata deletion job service.
+ * <p>
+ * This service deletes the samples of the metadata files in the background, so that the request deleting a file
+ * returns as soon as the job is queued, whatever the size of the file.
+ * </p>
+ * <ul>
+ *     <li>The file is left out of the metadata catalog as soon as its deletion is submitted.</li>
+ *     <li>The documents are read by pages of {@code metadata.deletion.page-size}, following each other by document
+ *     id, and up to {@code metadata.deletion.max-in-flight} bulk deletes of a job are in flight at a time.</li>
+ *     <li>If {@code metadata.deletion.compact} is set, the database and its views are compacted once the file is
+ *     deleted.</li>
+ *     <li>A request for a file whose deletion is queued or running joins the existing job.</li>
+ * </ul>
+ *
+ * @implNote The last {@link FhirIngestionJobService#RETAINED_JOBS} jobs are kept for the status endpoint, the oldest
+ * are evicted first.
+ */
+@Service
+public class MetadataDeletionJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetadataDeletionJobService.class);
+
+    private final MetadataFileRepository metadataFileRepository;
+    private final MetadataCatalogService metadataCatalogService;
+    private final int pageSize;
+    private final int maxInFlight;
+    private final boolean compact;
+    private final ExecutorService jobExecutor;
+    private final ExecutorService bulkExecutor;
+    private final Map<String, MetadataDeletionJob> activeJobsByFilename = new ConcurrentHashMap<>();
+    private final Map<String, MetadataDeletionJob> jobsById = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MetadataDeletionJob> eldest) {
+            return size() > FhirIngestionJobService.RETAINED_JOBS;
+        }
+    });
+
+    /**
+     * Instantiates a new Metadata deletion job service.
+     *
+     * @param metadataFileRepository the metadata file repository
+     * @param metadataCatalogService the metadata catalog service
+     * @param pageSize               the number of documents read and deleted per bulk request
+     * @param maxInFlight            the maximum number of bulk deletes in flight per job
+     * @param compact                whether to compact the database once a file is deleted
+     */
+    public MetadataDeletionJobService(MetadataFileRepository metadataFileRepository,
+                                      MetadataCatalogService metadataCatalogService,
+                                      @Value("${metadata.deletion.page-size:5000}") int pageSize,
+                                      @Value("${metadata.deletion.max-in-flight:4}") int maxInFlight,
+                                      @Value("${metadata.deletion.compact:false}") boolean compact) {
+        this.metadataFileRepository = metadataFileRepository;
+        this.metadataCatalogService = metadataCatalogService;
+        this.pageSize = Math.max(1, pageSize);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.compact = compact;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.jobExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "metadata-deletion"));
+        this.bulkExecutor = Executors.newFixedThreadPool(this.maxInFlight,
+                runnable -> new Thread(runnable, "metadata-deletion-bulk-" + threadCount.incrementAndGet()));
+    }
+
+    /**
+     * Submits the deletion of the samples of a metadata file.
+     *
+     * @param filename the metadata file name
+     * @return the new job, or the queued or running job of the file
+     */
+    public synchronized MetadataDeletionJob submit(String filename) {
+        MetadataDeletionJob activeJob = activeJobsByFilename.get(filename);
+        if (activeJob != null) {
+            logger.info("Joining the deletion job {} of {}", activeJob.getJobId(), filename);
+            return activeJob;
+        }
+        MetadataDeletionJob job = new MetadataDeletionJob(UUID.randomUUID().toString(), filename);
+        activeJobsByFilename.put(filename, job);
+        metadataCatalogService.hide(filename);
+        jobExecutor.execute(() -> run(job));
+        jobsById.put(job.getJobId(), job);
+        logger.info("Deletion job {} of {} queued", job.getJobId(), filename);
+        return job;
+    }
+
+    /**
+     * Checks if the deletion of a metadata file is queued or running.
+     *
+     * @param filename the metadata file name
+     * @return true if a deletion job of the file is active
+     */
+    public boolean isDeleting(String filename) {
+        return filename != null && activeJobsByFilename.containsKey(filename);
+    }
+
+    /**
+     * Gets a job by its id.
+     *
+     * @param jobId the job id
+     * @return the job, if it is still retained
+     */
+    public Optional<MetadataDeletionJob> getJob(String jobId) {
+        return Optional.ofNullable(jobsById.get(jobId));
+    }
+
+    private void run(MetadataDeletionJob job) {
+        job.start();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        List<Future<?>> requests = new ArrayList<>();
+        try {
+            List<BulkDeleteDocument> page = metadataFileRepository.findDocumentsToDeleteByFilename(job.getFilename(), null, pageSize);
+            while (!page.isEmpty()) {
+                inFlight.acquire();
+                List<BulkDeleteDocument> batch = page;
+                requests.add(bulkExecutor.submit(() -> {
+                    try {
+                        deleteBatch(job, batch);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+                String afterDocId = page.get(page.size() - 1).getId();
+                page = metadataFileRepository.findDocumentsToDeleteByFilename(job.getFilename(), afterDocId, pageSize);
+            }
+            for (Future<?> request : requests) {
+                request.get();
+            }
+            if (compact) {
+                metadataFileRepository.compact();
+            }
+            job.complete();
+            logger.info("Deletion job {} of {} done: {} documents deleted, {} failed", job.getJobId(), job.getFilename(), job.getDocumentsDeleted(), job.getDocumentsFailed());
+        } catch (InterruptedException e) {
+            requests.forEach(request -> request.cancel(true));
+            Thread.currentThread().interrupt();
+            job.fail(e);
+        } catch (Exception e) {
+            job.fail(e instanceof ExecutionException ? e.getCause() : e);
+            logger.error("Deletion job {} of {} failed: {}", job.getJobId(), job.getFilename(), job.getError());
+        } finally {
+            activeJobsByFilename.remove(job.getFilename(), job);
+            metadataCatalogService.show(job.getFilename());
+        }
+    }
+
+    private void deleteBatch(MetadataDeletionJob job, List<BulkDeleteDocument> batch) {
+        List<DocumentOperationResult> failures = metadataFileRepository.bulkDelete(batch);
+        failures.forEach(failure -> logger.warn("Failed to delete {} of {}: {} ({})", failure.getId(), job.getFilename(), failure.getError(), failure.getReason()));
+        job.addDocuments(batch.size() - failures.size(), failures.size());
+    }
+
+    /**
+     * Stops the workers when the application shuts down.
+     * The queued jobs are dropped and the running ones are interrupted.
+     */
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        bulkExecutor.shutdownNow();
+    }
+}
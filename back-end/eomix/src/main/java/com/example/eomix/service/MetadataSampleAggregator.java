@@ -0,0 +1,184 @@
+package com.example.eomix.service;
+
+import com.example.eomix.entities.MetadataFileUploadEntity;
+import com.example.eomix.model.Protocols;
+import com.example.eomix.utils.CsvRecordReader;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+import static com.example.eomix.utils.Constants.*;
+
+/**
+ * The type Metadata sample aggregator.
+ * <p>
+ * This class aggregates the records of a metadata file into one summary per sample, as the lines are read, so that the
+ * upload of a file does not keep its lines nor a map per record, whatever the format of the file (CSV or Arrow IPC):
+ * </p>
+ * <ul>
+ *     <li>the number of records (cells) of the sample;</li>
+ *     <li>the columns of the first record of the sample that are stored on CouchDB (organ, gender, patient id...).</li>
+ * </ul>
+ *
+ * @implNote The memory used grows with the number of samples, not with the number of records of the file. The class is
+ * not thread-safe, an aggregator is used by a single upload.
+ */
+final class MetadataSampleAggregator {
+
+    private static final String[] FIRST_RECORD_COLUMNS = {ORGAN, GENDER, PATIENT_ID, PROTOCOL, STANDARDIZED_SPECIES,
+            CELLULAR_RESOLUTION, DISORDER, AGE, SEQUENCE_TYPE, BATCH};
+    private static final String SINGLE_CELL = "Single Cell";
+
+    private final int headerCount;
+    private final int sampleIdIndex;
+    private final int cellularResolutionIndex;
+    private final int[] firstRecordIndexes;
+    private final Map<String, SampleSummary> samples = new LinkedHashMap<>();
+
+    /**
+     * Instantiates a new Metadata sample aggregator.
+     *
+     * @param headers the headers of the metadata file
+     */
+    MetadataSampleAggregator(String[] headers) {
+        this.headerCount = headers.length;
+        int sampleId = -1;
+        for (int i = 0; i < headers.length && sampleId == -1; i++) {
+            if (SAMPLE_ID.equalsIgnoreCase(headers[i])) {
+                sampleId = i;
+            }
+        }
+        this.sampleIdIndex = sampleId;
+        List<String> headerList = Arrays.asList(headers);
+        this.cellularResolutionIndex = headerList.lastIndexOf(CELLULAR_RESOLUTION);
+        this.firstRecordIndexes = Arrays.stream(FIRST_RECORD_COLUMNS).mapToInt(headerList::lastIndexOf).toArray();
+    }
+
+    /**
+     * Gets the number of columns of a record.
+     *
+     * @return the number of headers of the file
+     */
+    int getHeaderCount() {
+        return headerCount;
+    }
+
+    /**
+     * Gets the indexes of the columns read by the aggregator.
+     *
+     * @return the distinct indexes of the sample id, cellular resolution and first record columns found in the headers
+     */
+    int[] getUsedColumns() {
+        return IntStream.concat(IntStream.of(sampleIdIndex, cellularResolutionIndex), Arrays.stream(firstRecordIndexes))
+                .filter(index -> index != -1).distinct().sorted().toArray();
+    }
+
+    /**
+     * Gets the sample id of the current record.
+     *
+     * @param csvRecord the reader, on a record with one value per header
+     * @return the sample id, or null if the file has no sample_id column
+     */
+    @Nullable String getSampleId(CsvRecordReader csvRecord) {
+        return getSampleId(csvRecord::getField);
+    }
+
+    /**
+     * Gets the sample id of a record.
+     *
+     * @param record the values of the record, by header index
+     * @return the sample id, or null if the file has no sample_id column
+     */
+    @Nullable String getSampleId(IntFunction<String> record) {
+        return sampleIdIndex == -1 ? null : record.apply(sampleIdIndex);
+    }
+
+    /**
+     * Checks if the current record is single cell data.
+     *
+     * @param csvRecord the reader, on a record with one value per header
+     * @return true if the cellular resolution of the record is "Single Cell"
+     */
+    boolean isSingleCell(CsvRecordReader csvRecord) {
+        return cellularResolutionIndex != -1 && csvRecord.fieldEquals(cellularResolutionIndex, SINGLE_CELL);
+    }
+
+    /**
+     * Checks if a record is single cell data.
+     *
+     * @param record the values of the record, by header index
+     * @return true if the cellular resolution of the record is "Single Cell"
+     */
+    boolean isSingleCell(IntFunction<String> record) {
+        return cellularResolutionIndex != -1 && SINGLE_CELL.equals(record.apply(cellularResolutionIndex));
+    }
+
+    /**
+     * Adds the current record to its sample.
+     *
+     * @param sampleId  the sample id of the record
+     * @param csvRecord the reader, on a record with one value per header
+     */
+    void add(String sampleId, CsvRecordReader csvRecord) {
+        add(sampleId, csvRecord::getField);
+    }
+
+    /**
+     * Adds a record to its sample.
+     * Only the first record of a sample has its columns read, the next ones are only counted.
+     *
+     * @param sampleId the sample id of the record
+     * @param record   the values of the record, by header index
+     */
+    void add(String sampleId, IntFunction<String> record) {
+        SampleSummary summary = samples.computeIfAbsent(sampleId, id -> new SampleSummary());
+        summary.cellCount++;
+        if (summary.firstRecord == null) {
+            String[] firstRecord = new String[firstRecordIndexes.length];
+            for (int i = 0; i < firstRecordIndexes.length; i++) {
+                firstRecord[i] = firstRecordIndexes[i] == -1 ? null : record.apply(firstRecordIndexes[i]);
+            }
+            summary.firstRecord = firstRecord;
+        }
+    }
+
+    /**
+     * Creates the upload entities of the samples, one per sample.
+     *
+     * @param filename  the name of the metadata file
+     * @param createdAt the creation timestamp of the entities
+     * @return the upload entities
+     */
+    List<MetadataFileUploadEntity> toEntities(String filename, String createdAt) {
+        List<MetadataFileUploadEntity> uploadEntities = new ArrayList<>(samples.size());
+        samples.forEach((sampleId, summary) -> {
+            MetadataFileUploadEntity.MetaData metaData = new MetadataFileUploadEntity.MetaData();
+            metaData.setFilename(filename);
+            metaData.setCreatedAt(createdAt);
+            Map<String, String> sourceColumns = new HashMap<>();
+            for (int i = 0; i < FIRST_RECORD_COLUMNS.length; i++) {
+                String value = summary.firstRecord[i];
+                if (PROTOCOL.equals(FIRST_RECORD_COLUMNS[i])) {
+                    if (value != null)
+                        sourceColumns.put(PROTOCOL, Protocols.fromValue(value).toString());
+                } else {
+                    sourceColumns.put(FIRST_RECORD_COLUMNS[i], value);
+                }
+            }
+            sourceColumns.put(SAMPLE_ID, sampleId);
+            sourceColumns.put(CELL_NUMBER, String.valueOf(summary.cellCount));
+            MetadataFileUploadEntity uploadedFile = new MetadataFileUploadEntity();
+            uploadedFile.setMeta(metaData);
+            uploadedFile.setSourceColumns(sourceColumns);
+            uploadEntities.add(uploadedFile);
+        });
+        return uploadEntities;
+    }
+
+    private static final class SampleSummary {
+        private int cellCount;
+        private String[] firstRecord;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.eomix.service;
+
+import com.example.eomix.entities.MetadataFileUploadEntity;
+import org.ektorp.BulkDeleteDocument;
+
+import java.util.*;
+
+import static com.example.eomix.utils.Constants.SAMPLE_ID;
+
+/**
+ * The type Metadata sample diff.
+ * <p>
+ * This class compares the samples of a metadata file being uploaded with the samples stored for the same filename, so
+ * that a new version of a file only writes what changed:
+ * </p>
+ * <ul>
+ *     <li>the added samples are inserted;</li>
+ *     <li>the changed samples are updated, keeping the id and revision of the stored document;</li>
+ *     <li>the removed samples, and the extra documents of a sample stored more than once, are deleted;</li>
+ *     <li>the unchanged samples are left as they are.</li>
+ * </ul>
+ *
+ * @implNote Two samples are the same if their source columns with a value are equal; the creation timestamp is not
+ * compared, so it keeps the date of the upload that last changed the sample.
+ */
+final class MetadataSampleDiff {
+
+    private final List<MetadataFileUploadEntity> documentsToWrite = new ArrayList<>();
+    private final List<BulkDeleteDocument> documentsToDelete = new ArrayList<>();
+    private int added;
+    private int changed;
+    private int unchanged;
+
+    /**
+     * Compares the uploaded samples with the stored ones.
+     *
+     * @param storedDocuments   the documents stored for the filename
+     * @param uploadedDocuments the documents of the upload, one per sample, without id
+     */
+    MetadataSampleDiff(List<MetadataFileUploadEntity> storedDocuments, List<MetadataFileUploadEntity> uploadedDocuments) {
+        Map<String, MetadataFileUploadEntity> storedBySampleId = new HashMap<>();
+        for (MetadataFileUploadEntity stored : storedDocuments) {
+            MetadataFileUploadEntity duplicate = storedBySampleId.putIfAbsent(getSampleId(stored), stored);
+            if (duplicate != null) {
+                documentsToDelete.add(BulkDeleteDocument.of(stored));
+            }
+        }
+        for (MetadataFileUploadEntity uploaded : uploadedDocuments) {
+            MetadataFileUploadEntity stored = storedBySampleId.remove(getSampleId(uploaded));
+            if (stored == null) {
+                documentsToWrite.add(uploaded);
+                added++;
+            } else if (withValues(stored.getSourceColumns()).equals(withValues(uploaded.getSourceColumns()))) {
+                unchanged++;
+            } else {
+                uploaded.setId(stored.getId());
+                uploaded.setRevision(stored.getRevision());
+                documentsToWrite.add(uploaded);
+                changed++;
+            }
+        }
+        storedBySampleId.values().forEach(removed -> documentsToDelete.add(BulkDeleteDocument.of(removed)));
+    }
+
+    private static String getSampleId(MetadataFileUploadEntity document) {
+        return document.getSourceColumns() == null ? null : document.getSourceColumns().get(SAMPLE_ID);
+    }
+
+    private static Map<String, String> withValues(Map<String, String> sourceColumns) {
+        Map<String, String> values = new HashMap<>();
+        if (sourceColumns != null) {
+            sourceColumns.forEach((column, value) -> {
+                if (value != null) {
+                    values.put(column, value);
+                }
+            });
+        }
+        return values;
+    }
+
+    /**
+     * Gets the documents to insert or update.
+     *
+     * @return the added samples, without id, and the changed samples, with the id and revision of the stored document
+     */
+    List<MetadataFileUploadEntity> getDocumentsToWrite() {
+        return documentsToWrite;
+    }
+
+    /**
+     * Gets the documents to delete.
+     *
+     * @return the id and revision of the removed samples and of the duplicated documents
+     */
+    List<BulkDeleteDocument> getDocumentsToDelete() {
+        return documentsToDelete;
+    }
+
+    /**
+     * Checks if the upload changes the stored samples.
+     *
+     * @return true if a document has to be written or deleted
+     */
+    boolean hasChanges() {
+        return !documentsToWrite.isEmpty() || !documentsToDelete.isEmpty();
+    }
+
+    /**
+     * Describes the diff.
+     *
+     * @return the number of added, changed, removed and unchanged samples
+     */
+    String getSummary() {
+        return added + " added, " + changed + " changed, " + documentsToDelete.size() + " removed, " + unchanged + " unchanged";
+    }
+}
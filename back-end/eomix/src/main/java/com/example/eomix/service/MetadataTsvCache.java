@@ -0,0 +1,179 @@
+package com.example.eomix.service;
+
+import com.example.eomix.entities.MetadataFileUploadEntity;
+import com.example.eomix.repositories.MetadataFileRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The type Metadata tsv cache.
+ * <p>
+ * This class keeps the TSV files regenerated from the samples of the metadata files stored on CouchDB, so that the
+ * alignment and post-processing submissions of a sheet do not rebuild it each time.
+ * </p>
+ * <ul>
+ *     <li>An entry is keyed by the filename and the update sequence of the CouchDB database: any upload or deletion
+ *     changes the sequence, and the file is regenerated on its next use.</li>
+ *     <li>Each entry is written once, in a directory of its own, under the safe filename of the sheet; a file is
+ *     never overwritten, so concurrent callers can read it without sharing a temporary file.</li>
+ * </ul>
+ *
+ * @implNote A file replaced by a newer sequence is deleted with its directory after {@link #GRACE_DELAY}, since a
+ * caller may still be reading it; the cache directory is deleted on shutdown.
+ */
+final class MetadataTsvCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetadataTsvCache.class);
+    /**
+     * The delay before the file of a replaced entry is deleted, longer than a caller takes to read or upload it.
+     */
+    static final Duration GRACE_DELAY = Duration.ofMinutes(10);
+
+    private final MetadataFileRepository metadataFileRepository;
+    private final Path directory;
+    private final Map<String, CachedTsv> entries = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService cleaner;
+
+    /**
+     * Instantiates a new Metadata tsv cache.
+     *
+     * @param metadataFileRepository the metadata file repository
+     * @throws UncheckedIOException if the cache directory cannot be created
+     */
+    MetadataTsvCache(MetadataFileRepository metadataFileRepository) {
+        this.metadataFileRepository = metadataFileRepository;
+        try {
+            this.directory = Files.createTempDirectory("eomix-metadata-");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create the metadata cache directory", e);
+        }
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metadata-tsv-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Writes documents as a TSV: the source columns of the first document as header, then one line per document.
+     *
+     * @param documents the documents
+     * @param writer    the writer
+     */
+    static void writeTsv(List<MetadataFileUploadEntity> documents, PrintWriter writer) {
+        if (!documents.isEmpty()) {
+            MetadataFileUploadEntity firstDoc = documents.get(0);
+            writer.println(String.join("\t", firstDoc.getSourceColumns().keySet()));
+            for (MetadataFileUploadEntity doc : documents) {
+                Map<String, String> sourceColumns = doc.getSourceColumns();
+                writer.println(String.join("\t", sourceColumns.values()));
+            }
+        }
+    }
+
+    /**
+     * Gets the TSV file of a metadata file, generating it if the cached one is missing or outdated.
+     *
+     * @param filename the name of the metadata file
+     * @return the TSV file, named after the metadata file with its slashes replaced by underscores; callers must not
+     * modify nor delete it
+     * @throws FileNotFoundException if no sample is stored for this filename
+     * @implNote The file of the replaced entry, if any, is deleted after {@link #GRACE_DELAY}.
+     */
+    File getFile(String filename) throws FileNotFoundException {
+        String updateSequence = metadataFileRepository.getUpdateSequence();
+        try {
+            return entries.compute(filename, (name, cached) -> {
+                if (cached != null && cached.updateSequence().equals(updateSequence) && Files.exists(cached.path())) {
+                    return cached;
+                }
+                Path path = generate(name, updateSequence);
+                if (cached != null && !cached.path().getParent().equals(path.getParent())) {
+                    scheduleDeletion(cached.path().getParent());
+                }
+                return new CachedTsv(updateSequence, path);
+            }).path().toFile();
+        } catch (UncheckedIOException e) {
+            if (e.getCause() instanceof FileNotFoundException fileNotFoundException) {
+                throw fileNotFoundException;
+            }
+            throw e;
+        }
+    }
+
+    private Path generate(String filename, String updateSequence) {
+        List<MetadataFileUploadEntity> documents = metadataFileRepository.findByFilename(filename);
+        if (documents.isEmpty()) {
+            throw new UncheckedIOException(new FileNotFoundException(filename + " not found"));
+        }
+        try {
+            Path entryDirectory = Files.createDirectories(directory.resolve(hash(filename + "\n" + updateSequence)));
+            Path path = entryDirectory.resolve(filename.replace("/", "_"));
+            Path partialPath = Files.createTempFile(entryDirectory, "partial-", ".tsv");
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(partialPath, StandardCharsets.UTF_8))) {
+                writeTsv(documents, writer);
+            }
+            Files.move(partialPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Metadata TSV of {} generated: {} samples", filename, documents.size());
+            return path;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write the metadata TSV of " + filename, e);
+        }
+    }
+
+    private void scheduleDeletion(Path entryDirectory) {
+        try {
+            cleaner.schedule(() -> {
+                try {
+                    FileSystemUtils.deleteRecursively(entryDirectory);
+                } catch (IOException e) {
+                    logger.warn("Failed to delete the replaced metadata TSV {}: {}", entryDirectory, e.getMessage());
+                }
+            }, GRACE_DELAY.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            logger.debug("Metadata cache closed, {} is deleted with it", entryDirectory);
+        }
+    }
+
+    private static String hash(String value) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Stops the deletions of the replaced files and deletes all the cached files.
+     */
+    void clear() {
+        cleaner.shutdownNow();
+        entries.clear();
+        try {
+            FileSystemUtils.deleteRecursively(directory);
+        } catch (IOException e) {
+            logger.warn("Failed to delete the metadata cache directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private record CachedTsv(String updateSequence, Path path) {
+    }
+}
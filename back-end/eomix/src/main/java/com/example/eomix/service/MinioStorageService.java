@@ -1,33 +1,51 @@
 package com.example.eomix.service;
 
+import com.example.eomix.config.MultipartMinioClient;
 import com.example.eomix.exception.MinioStorageException;
 import com.example.eomix.utils.Helper;
 import io.minio.*;
 import io.minio.errors.*;
 import io.minio.messages.Item;
-import lombok.RequiredArgsConstructor;
-import org.apache.commons.io.IOUtils;
-import org.jetbrains.annotations.NotNull;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.*;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -35,12 +53,27 @@ import java.util.zip.ZipOutputStream;
  * The type Minio storage service.
  */
 @Service
-@RequiredArgsConstructor
 public class MinioStorageService {
 
     private static final Logger logger = LoggerFactory.getLogger(MinioStorageService.class);
 
+    /**
+     * The path of the matrix file in the folder of a sample.
+     */
+    private static final String SAMPLE_MATRIX_PATH = "af_quant/alevin/quants_mat.mtx";
+    /**
+     * The size up to which an object downloaded ahead of its turn is kept in memory rather than in a temporary file.
+     */
+    private static final long PREFETCH_MEMORY_THRESHOLD = 8L * 1024 * 1024;
+
     private final MinioClient minioClient;
+    private final MultipartMinioClient multipartMinioClient;
+    private final boolean presignedRedirect;
+    private final Duration presignedExpiry;
+    private final int downloadMaxInFlight;
+    private final ExecutorService downloadExecutor;
+    private final long uploadPartSize;
+    private final ExecutorService uploadExecutor;
     private JSONStorageService jsonStorageService;
     private StorageService storageService;
 
@@ -53,16 +86,52 @@ public class MinioStorageService {
     /**
      * Instantiates a new Minio storage service.
      *
-     * @param minioClient        the minio client
-     * @param jsonStorageService the json storage service
-     * @param storageService     the storage service
+     * @param minioClient          the minio client
+     * @param multipartMinioClient the multipart minio client, signing the URLs for the public endpoint
+     * @param jsonStorageService   the json storage service
+     * @param storageService       the storage service
+     * @param downloadMaxInFlight  the maximum number of objects downloaded ahead when zipping the matrices
+     * @param presignedRedirect    whether the result files are answered with a redirect to a presigned URL by default
+     * @param presignedExpiry      the validity of the presigned URLs of the result files, up to 7 days
+     * @param uploadMaxInFlight    the maximum number of FASTQ files uploaded at a time
+     * @param uploadPartSize       the size of the parts of the multipart uploads, between 5 MiB and 5 GiB
      */
     @Autowired
-    public MinioStorageService(MinioClient minioClient, JSONStorageService jsonStorageService,
-                               StorageService storageService) {
+    public MinioStorageService(MinioClient minioClient, MultipartMinioClient multipartMinioClient,
+                               JSONStorageService jsonStorageService, StorageService storageService,
+                               @Value("${minio.download.max-in-flight:4}") int downloadMaxInFlight,
+                               @Value("${minio.download.presigned-redirect:false}") boolean presignedRedirect,
+                               @Value("${minio.download.presigned-expiry:5m}") Duration presignedExpiry,
+                               @Value("${minio.upload.max-in-flight:4}") int uploadMaxInFlight,
+                               @Value("${minio.upload.part-size:64MB}") DataSize uploadPartSize) {
         this.minioClient = minioClient;
+        this.multipartMinioClient = multipartMinioClient;
+        this.presignedRedirect = presignedRedirect;
+        this.presignedExpiry = presignedExpiry.compareTo(Duration.ofDays(7)) > 0 ? Duration.ofDays(7) : presignedExpiry;
         this.jsonStorageService = jsonStorageService;
         this.storageService = storageService;
+        this.downloadMaxInFlight = Math.max(1, downloadMaxInFlight);
+        this.downloadExecutor = newDaemonPool(this.downloadMaxInFlight, "minio-download-");
+        this.uploadPartSize = Math.min(Math.max(uploadPartSize.toBytes(), ObjectWriteArgs.MIN_MULTIPART_SIZE), ObjectWriteArgs.MAX_PART_SIZE);
+        this.uploadExecutor = newDaemonPool(Math.max(1, uploadMaxInFlight), "minio-upload-");
+    }
+
+    /**
+     * Gets the size of the parts of the multipart uploads.
+     *
+     * @return the part size, in bytes, between 5 MiB and 5 GiB
+     */
+    public long getUploadPartSize() {
+        return uploadPartSize;
+    }
+
+    private static ExecutorService newDaemonPool(int threads, String namePrefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     /**
@@ -109,29 +178,57 @@ public class MinioStorageService {
      * @return the string
      * @throws FileNotFoundException the file not found exception
      * @implNote The method generates a unique folder name based on the experiment name, aligner type, and current
-     * date. * It uploads the fastq files (fq1 and fq2) to the specified folder in the bucket. * It also updates the
+     * date. * It uploads the fastq files (fq1 and fq2) concurrently to the specified folder in the bucket. * It also updates the
      * alignment JSON with the tags of the uploaded files and uploads the updated JSON to MinIO.
      * @implSpec The method retrieves metadata from CouchDB using the experiment name and saves it to the specified
      * bucket.
      */
     public String uploadAlignmentFile(MultipartFile[] fq1Files, MultipartFile[] fq2Files, String experimentName,
                                       String jsonData) throws FileNotFoundException {
-        String fileName = "alignment_parameters.json";
         String createdAt = Helper.getDateString();
-        String bucketName = bucketNameForAlignment;
         String aligner = Helper.getAlignerFromJson(jsonData);
         String folderName = Helper.generateFolderName(experimentName, aligner, createdAt);
         File metadataFile = storageService.getMetadataFileFromCouchDBByFileNameForMinio(experimentName);
-        Map<String, String> fastq1Tags = uploadFastQFiles(fq1Files, folderName);
-        if (fq2Files != null) {
-            Map<String, String> fastq2Tags = uploadFastQFiles(fq2Files, folderName);
-            String jsonUpdated = Helper.updateAlignmentJsonWithTags(jsonData, fastq1Tags, fastq2Tags, folderName);
-            updateAndUploadJSON(experimentName, jsonUpdated, folderName, fileName, bucketName, createdAt);
-        } else {
-            String jsonUpdated = Helper.updateAlignmentJsonWithTags(jsonData, fastq1Tags, null, folderName);
-            updateAndUploadJSON(experimentName, jsonUpdated, folderName, fileName, bucketName, createdAt);
-        }
-        saveFileOnBucket(metadataFile, bucketName, folderName);
+        // Start the uploads of the fq1 and fq2 files together
+        List<Future<Map<String, String>>> fastq1Uploads = submitFastQUploads(fq1Files, folderName);
+        List<Future<Map<String, String>>> fastq2Uploads = fq2Files != null ? submitFastQUploads(fq2Files, folderName) : List.of();
+        Map<String, String> fastq1Tags = awaitFastQUploads(fastq1Uploads, fastq2Uploads);
+        Map<String, String> fastq2Tags = fq2Files != null ? awaitFastQUploads(fastq2Uploads, List.of()) : null;
+        return saveAlignmentParameters(metadataFile, experimentName, jsonData, folderName, createdAt, fastq1Tags, fastq2Tags);
+    }
+
+    /**
+     * Save alignment parameters string.
+     * * This method records an alignment whose FASTQ files are already in the bucket, uploaded by the browser.
+     * * It does the same bookkeeping as {@link #uploadAlignmentFile(MultipartFile[], MultipartFile[], String, String)}
+     * once its files are uploaded.
+     *
+     * @param experimentName the experiment name
+     * @param jsonData       the json data
+     * @param folderName     the folder of the experiment, where the FASTQ files are
+     * @param createdAt      the creation date of the experiment, as formatted in its folder name
+     * @param fastq1Tags     the tags of the fq 1 files
+     * @param fastq2Tags     the tags of the fq 2 files, null for single-end data
+     * @return the path of the alignment parameters in the bucket
+     * @throws FileNotFoundException if the metadata file of the experiment is not found
+     */
+    public String saveAlignmentParameters(String experimentName, String jsonData, String folderName, String createdAt,
+                                          Map<String, String> fastq1Tags, Map<String, String> fastq2Tags) throws FileNotFoundException {
+        File metadataFile = storageService.getMetadataFileFromCouchDBByFileNameForMinio(experimentName);
+        return saveAlignmentParameters(metadataFile, experimentName, jsonData, folderName, createdAt, fastq1Tags, fastq2Tags);
+    }
+
+    /**
+     * Updates the alignment JSON with the tags of the FASTQ files, uploads it and saves the metadata file next to it.
+     *
+     * @return the path of the alignment parameters in the bucket
+     */
+    private String saveAlignmentParameters(File metadataFile, String experimentName, String jsonData, String folderName,
+                                           String createdAt, Map<String, String> fastq1Tags, Map<String, String> fastq2Tags) {
+        String fileName = "alignment_parameters.json";
+        String jsonUpdated = Helper.updateAlignmentJsonWithTags(jsonData, fastq1Tags, fastq2Tags, folderName);
+        updateAndUploadJSON(experimentName, jsonUpdated, folderName, fileName, bucketNameForAlignment, createdAt);
+        saveFileOnBucket(metadataFile, bucketNameForAlignment, folderName);
         return folderName + "/" + fileName;
     }
 
@@ -255,8 +352,7 @@ public class MinioStorageService {
     /**
      * Upload fast q files map.
      * * This method uploads multiple FASTQ files to a specified folder in a MinIO bucket.
-     * * It iterates over an array of MultipartFile objects, saves each file to the bucket, and collects their tags
-     * in a map.
+     * * It uploads the files of the array concurrently, and collects their tags in a map.
      *
      * @param multipartFilesList the multipart files list
      * @param folderName         the folder name
@@ -271,14 +367,59 @@ public class MinioStorageService {
      * multiple files at once, such as in bioinformatics pipelines or data processing workflows.
      */
     public Map<String, String> uploadFastQFiles(MultipartFile[] multipartFilesList, String folderName) {
-        Map<String, String> allTags = new HashMap<>();
+        return awaitFastQUploads(submitFastQUploads(multipartFilesList, folderName), List.of());
+    }
+
+    /**
+     * Submits the uploads of FASTQ files.
+     * * Up to {@code minio.upload.max-in-flight} files are uploaded at a time, all uploads together.
+     *
+     * @param multipartFilesList the multipart files list
+     * @param folderName         the folder name
+     * @return the uploads, each returning the tags of its file
+     */
+    private List<Future<Map<String, String>>> submitFastQUploads(MultipartFile[] multipartFilesList, String folderName) {
+        List<Future<Map<String, String>>> uploads = new ArrayList<>();
         for (MultipartFile file : multipartFilesList) {
-            Map<String, String> tags = saveMultipartFileOnBucket(file, bucketNameForAlignment, folderName);
-            allTags.putAll(tags);
+            uploads.add(uploadExecutor.submit(() -> saveMultipartFileOnBucket(file, bucketNameForAlignment, folderName)));
+        }
+        return uploads;
+    }
+
+    /**
+     * Waits for the uploads of FASTQ files.
+     *
+     * @param uploads      the uploads
+     * @param otherUploads the other uploads in flight, cancelled with the uploads if one of them fails
+     * @return the tags of the uploaded files
+     * @throws MinioStorageException if a file could not be uploaded
+     */
+    private Map<String, String> awaitFastQUploads(List<Future<Map<String, String>>> uploads,
+                                                  List<Future<Map<String, String>>> otherUploads) {
+        Map<String, String> allTags = new HashMap<>();
+        try {
+            for (Future<Map<String, String>> upload : uploads) {
+                allTags.putAll(upload.get());
+            }
+        } catch (InterruptedException e) {
+            cancelUploads(uploads, otherUploads);
+            Thread.currentThread().interrupt();
+            throw new MinioStorageException("Interrupted while uploading the FASTQ files", e);
+        } catch (ExecutionException e) {
+            cancelUploads(uploads, otherUploads);
+            if (e.getCause() instanceof MinioStorageException minioStorageException) {
+                throw minioStorageException;
+            }
+            throw new MinioStorageException("Failed to upload the FASTQ files", e.getCause());
         }
         return allTags;
     }
 
+    private static void cancelUploads(List<Future<Map<String, String>>> uploads, List<Future<Map<String, String>>> otherUploads) {
+        uploads.forEach(upload -> upload.cancel(true));
+        otherUploads.forEach(upload -> upload.cancel(true));
+    }
+
     /**
      * Save multipart file on bucket map.
      * * This method saves a multipart file to a specified bucket in MinIO and generates a unique tag for the file.
@@ -291,8 +432,8 @@ public class MinioStorageService {
      * @return the map containing tags for the uploaded file
      * @throws MinioStorageException if there is an error during the file upload process
      * @implNote The method uses the MinIO client to put the object in the specified bucket with the content type of
-     * the file.
-     * * It sets the object tags in MinIO after uploading.
+     * the file, in parts of {@code minio.upload.part-size}.
+     * * The tags are sent with the object, and the throughput of the upload is logged.
      * @implSpec If an error occurs during the upload process, it throws a MinioStorageException with an appropriate
      * message.
      */
@@ -300,13 +441,17 @@ public class MinioStorageService {
         Map<String, String> tags = generateTag(file.getOriginalFilename());
         String fileName = file.getOriginalFilename();
         String objectName = folderName + "/" + fileName;
+        long start = System.nanoTime();
         try (InputStream is = file.getInputStream()) {
-            putObjectInMinioClient(bucketName, objectName, file.getSize(), file.getContentType(), is);
-            minioClient.setObjectTags(SetObjectTagsArgs.builder().bucket(bucketName).object(objectName).tags(tags).build());
-            logger.info("File {} uploaded successfully to bucket {}", fileName, bucketName);
+            minioClient.putObject(PutObjectArgs.builder().bucket(bucketName).object(objectName)
+                    .stream(is, file.getSize(), uploadPartSize).contentType(file.getContentType()).tags(tags).build());
         } catch (Exception e) {
             throw new MinioStorageException("Failed to upload file " + fileName, e);
         }
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        double megabytes = file.getSize() / (1024.0 * 1024.0);
+        logger.info("File {} uploaded successfully to bucket {}: {} MiB in {} s ({} MiB/s)", fileName, bucketName,
+                String.format("%.1f", megabytes), String.format("%.1f", seconds), String.format("%.1f", megabytes / seconds));
         return tags;
     }
 
@@ -321,7 +466,7 @@ public class MinioStorageService {
      * @implNote The method uses UUID.randomUUID() to generate a unique identifier for the file.
      * @implSpec This is typically used to create unique identifiers for files in cloud storage systems like MinIO.
      */
-    private Map<String, String> generateTag(String fileName) {
+    public static Map<String, String> generateTag(String fileName) {
         String tag = UUID.randomUUID().toString();
         Map<String, String> tags = new HashMap<>();
         tags.put(fileName, tag);
@@ -333,20 +478,23 @@ public class MinioStorageService {
      * Gets processed matrix.
      * * This method retrieves a processed matrix file from a specified folder in a MinIO bucket.
      * * It constructs the object name by combining the folder name and the matrix file name,
-     * * and uses the MinIO client to get the object as a stream.
+     * * and answers with a redirect to a presigned URL of the object, or with the object itself.
      *
-     * @param folderName the folder name
-     * @return the response entity containing the InputStreamResource of the matrix file
-     * @implNote The method sets the content type to "application/octet-stream" for the matrix file. * * It returns a
-     * ResponseEntity containing the InputStreamResource of the file, along with appropriate headers for content
-     * disposition. * @implSpec If an error occurs during the retrieval process, it returns a 404 Not Found response.
+     * @param folderName     the folder name
+     * @param redirect       whether to redirect to a presigned URL, null for {@code minio.download.presigned-redirect}
+     * @param requestHeaders the headers of the request, for the Range, If-Range and If-None-Match headers
+     * @return the response entity containing the body writing the matrix file
+     * @implNote The method sets the content type to "application/octet-stream" for the matrix file, see
+     * {@link #getFileFromMinio(String, String, String, String, Boolean, HttpHeaders)}.
+     * @implSpec If an error occurs during the retrieval process, it returns a 404 Not Found response.
      */
-    public ResponseEntity<InputStreamResource> getProcessedMatrix(String folderName) {
+    public ResponseEntity<StreamingResponseBody> getProcessedMatrix(String folderName, Boolean redirect,
+                                                                    HttpHeaders requestHeaders) {
         try {
             String matrix = folderName + "_postprocessed.rds";
             String objectName = folderName + "/" + matrix;
             String contentType = MediaType.APPLICATION_OCTET_STREAM_VALUE;
-            return getFileFromMinio(matrix, objectName, contentType, bucketNameForPostProcessing);
+            return getFileFromMinio(matrix, objectName, contentType, bucketNameForPostProcessing, redirect, requestHeaders);
         } catch (Exception e) {
             return ResponseEntity.notFound().build();
         }
@@ -355,104 +503,161 @@ public class MinioStorageService {
     /**
      * Download all matrices as zip response entity.
      * * This method downloads all matrix files from a specified folder in a MinIO bucket,
-     * * compresses them into a zip file, and returns the zip file as a ResponseEntity.
+     * * compresses them into a zip file, and streams the zip file to the client as it is written.
      *
      * @param folderName the folder name
-     * @return the response entity containing the InputStreamResource of the zip file
-     * @implNote The method lists all sample folders in the specified results_alignment directory,
-     * * checks for the existence of the matrix file (quants_mat.mtx) in each sample folder,
-     * * and adds it to the zip output stream if it exists.
-     * * It then prepares the response with appropriate headers for content disposition and content type.
+     * @return the response entity containing the body writing the zip file
+     * @implNote The method lists the matrix files (quants_mat.mtx) of the sample folders in the specified
+     * * results_alignment directory before responding, with a single recursive listing instead of one check per sample.
+     * * The matrices are then written to the zip output stream wrapping the response as they are prefetched, see
+     * * {@link #writeZip(List, OutputStream)}, so the archive is never held in memory and the first bytes are sent as
+     * * soon as the first matrix is read.
+     * * The length of the archive is unknown, so the response is sent with chunked transfer encoding.
      * @implSpec If no matrix files are found, it returns a 404 Not Found response.
-     * @implSpec If an error occurs during the process, it returns a 500 Internal Server Error response.
+     * @implSpec If an error occurs while listing the matrices, it returns a 500 Internal Server Error response; an
+     * error while streaming them aborts the response.
      */
-    public ResponseEntity<InputStreamResource> downloadAllMatricesAsZip(String folderName) {
+    public ResponseEntity<StreamingResponseBody> downloadAllMatricesAsZip(String folderName) {
+        List<ZipEntrySource> matrices;
         try {
-            String basePath = folderName + "/results_alignment/";
-
-            // List all sample folders
-            ListObjectsArgs listArgs =
-                    ListObjectsArgs.builder().bucket(bucketNameForAlignment).prefix(basePath).recursive(false).build();
-
-            // Create zip in memory
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ZipOutputStream zipOut = new ZipOutputStream(baos);
-
-            // Process each sample folder
-            for (Result<Item> itemResult : minioClient.listObjects(listArgs)) {
-                Item item = itemResult.get();
-                if (item.isDir()) {
-                    String sampleFolder = item.objectName();
-                    String sampleName = sampleFolder.substring(basePath.length(), sampleFolder.length() - 1);
-                    String matrixFilePath = sampleFolder + "af_quant/alevin/quants_mat.mtx";
-                    // Check if the matrix file exists
-                    downloadZipFile(matrixFilePath, sampleName, zipOut);
+            matrices = listMatrices(folderName);
+        } catch (Exception e) {
+            logger.error("Failed to list the matrices of {}", folderName, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+        if (matrices.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        StreamingResponseBody body = outputStream -> writeZip(matrices, outputStream);
+        return ResponseEntity.ok().header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"matrices" +
+                ".zip\"").contentType(MediaType.APPLICATION_OCTET_STREAM).body(body);
+    }
+
+    /**
+     * Lists the matrix files of the samples of an experiment.
+     *
+     * @param folderName the folder name
+     * @return the matrix files found, in the order of the sample folders, with their entry name in the zip file
+     * (sampleName/quants_mat.mtx) and their size
+     * @throws Exception if the objects cannot be listed
+     */
+    private List<ZipEntrySource> listMatrices(String folderName) throws Exception {
+        String basePath = folderName + "/results_alignment/";
+        String matrixSuffix = "/" + SAMPLE_MATRIX_PATH;
+
+        // List all the objects of the sample folders, and keep the matrix of each sample
+        ListObjectsArgs listArgs =
+                ListObjectsArgs.builder().bucket(bucketNameForAlignment).prefix(basePath).recursive(true).build();
+        List<ZipEntrySource> matrices = new ArrayList<>();
+        for (Result<Item> itemResult : minioClient.listObjects(listArgs)) {
+            Item item = itemResult.get();
+            String objectName = item.objectName();
+            if (objectName.endsWith(matrixSuffix)) {
+                String sampleName = objectName.substring(basePath.length(), objectName.length() - matrixSuffix.length());
+                if (!sampleName.isEmpty() && sampleName.indexOf('/') == -1) {
+                    matrices.add(new ZipEntrySource(bucketNameForAlignment, objectName, sampleName + "/quants_mat.mtx", item.size()));
                 }
             }
+        }
+        return matrices;
+    }
 
-            zipOut.finish();
-            zipOut.close();
-
-            // Check if zip is empty
-            if (baos.size() == 0) {
-                return ResponseEntity.notFound().build();
+    /**
+     * Writes objects of MinIO as a zip file.
+     * * Up to {@code minio.download.max-in-flight} objects are downloaded ahead of the one being written, concurrently,
+     * * and the writer appends them to the zip file in the order of the entries.
+     * * The objects of up to {@value #PREFETCH_MEMORY_THRESHOLD} bytes are prefetched in memory, the larger ones in
+     * * temporary files, so the memory used stays bounded whatever the size of the matrices.
+     *
+     * @param entries      the objects, their entry name and their size
+     * @param outputStream the output stream of the response
+     * @throws IOException if an object cannot be read or the response cannot be written
+     * @implNote When the response fails (client disconnected...), the pending downloads are cancelled and the temporary
+     * directory of the download is deleted.
+     */
+    private void writeZip(List<ZipEntrySource> entries, OutputStream outputStream) throws IOException {
+        Path spillDirectory = Files.createTempDirectory("eomix-zip-");
+        Deque<Future<PrefetchedObject>> prefetched = new ArrayDeque<>();
+        int next = 0;
+        try (ZipOutputStream zipOut = new ZipOutputStream(outputStream)) {
+            for (ZipEntrySource entry : entries) {
+                while (next < entries.size() && prefetched.size() < downloadMaxInFlight) {
+                    ZipEntrySource source = entries.get(next++);
+                    prefetched.add(downloadExecutor.submit(() -> prefetch(source, spillDirectory)));
+                }
+                try (PrefetchedObject object = await(prefetched.poll(), entry);
+                     InputStream fileStream = object.open()) {
+                    zipOut.putNextEntry(new ZipEntry(entry.entryName()));
+                    fileStream.transferTo(zipOut);
+                    zipOut.closeEntry();
+                }
             }
+        } finally {
+            prefetched.forEach(future -> future.cancel(true));
+            FileSystemUtils.deleteRecursively(spillDirectory);
+        }
+    }
 
-            // Prepare response
-            ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
-            InputStreamResource resource = new InputStreamResource(bais);
-
-            return ResponseEntity.ok().header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"matrices" +
-                    ".zip\"").contentType(MediaType.APPLICATION_OCTET_STREAM).contentLength(baos.size()).body(resource);
+    private PrefetchedObject prefetch(ZipEntrySource entry, Path spillDirectory) throws Exception {
+        try (InputStream fileStream =
+                     minioClient.getObject(GetObjectArgs.builder().bucket(entry.bucketName()).object(entry.objectName()).build())) {
+            if (entry.size() <= PREFETCH_MEMORY_THRESHOLD) {
+                return new PrefetchedObject(fileStream.readAllBytes(), null);
+            }
+            Path file = Files.createTempFile(spillDirectory, "object-", ".tmp");
+            Files.copy(fileStream, file, StandardCopyOption.REPLACE_EXISTING);
+            return new PrefetchedObject(null, file);
+        }
+    }
 
-        } catch (Exception e) {
-            logger.error("Failed to create matrices zip", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    private static PrefetchedObject await(Future<PrefetchedObject> future, ZipEntrySource entry) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + entry.objectName() + " from MinIO", e);
+        } catch (ExecutionException e) {
+            logger.error("Failed to add {} to the zip file", entry.objectName(), e.getCause());
+            throw new IOException("Failed to read " + entry.objectName() + " from MinIO", e.getCause());
         }
     }
 
     /**
-     * Download zip file.
-     * * This method checks if a specific matrix file exists in a MinIO bucket and, if it does, downloads the file
-     * and adds it to a zip output stream.
+     * Stops the download and upload workers when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        downloadExecutor.shutdownNow();
+        uploadExecutor.shutdownNow();
+    }
+
+    /**
+     * An object of MinIO to add to a zip file.
      *
-     * @param matrixFilePath the matrix file path
-     * @param sampleName     the sample name
-     * @param zipOut         the zip output stream
-     * @throws InsufficientDataException if there is insufficient data in the response
-     * @throws InternalException         if there is an internal error in the MinIO client
-     * @throws InvalidKeyException       if the provided key is invalid
-     * @throws InvalidResponseException  if the response from MinIO is invalid
-     * @throws IOException               if there is an I/O error during the operation
-     * @throws NoSuchAlgorithmException  if the specified algorithm is not available
-     * @throws ServerException           if there is a server error in the MinIO client
-     * @throws XmlParserException        if there is an error parsing XML in the response
-     * @throws ErrorResponseException    if there is an error response from MinIO
-     * @implNote The method first checks for the existence of the matrix file using the statObject method.
-     * * If the file exists, it retrieves the file as an input stream and adds it to the provided zip output stream
-     * with a structured entry name.
-     * * If the file does not exist, it simply skips adding it to the zip.
-     * @implSpec This method is useful for creating zip archives of multiple files stored in MinIO, especially when
-     * some files may not be present.
+     * @param bucketName the bucket name
+     * @param objectName the object name
+     * @param entryName  the name of the entry in the zip file
+     * @param size       the size of the object, from the listing
      */
-    private void downloadZipFile(String matrixFilePath, String sampleName, ZipOutputStream zipOut) throws InsufficientDataException, InternalException, InvalidKeyException, InvalidResponseException, IOException, NoSuchAlgorithmException, ServerException, XmlParserException, ErrorResponseException {
-        try {
-            minioClient.statObject(StatObjectArgs.builder().bucket(bucketNameForAlignment).object(matrixFilePath).build());
+    private record ZipEntrySource(String bucketName, String objectName, String entryName, long size) {
+    }
 
-            // If exists, download and add to zip
-            try (InputStream fileStream =
-                         minioClient.getObject(GetObjectArgs.builder().bucket(bucketNameForAlignment).object(matrixFilePath).build())) {
+    /**
+     * An object downloaded ahead of its turn, in memory or in a temporary file.
+     *
+     * @param content the content of the object, or null if it is in a file
+     * @param file    the temporary file holding the object, or null if it is in memory
+     */
+    private record PrefetchedObject(byte[] content, Path file) implements Closeable {
 
-                // Create zip entry path: sampleName/quants_mat.mtx
-                String entryName = sampleName + "/quants_mat.mtx";
-                zipOut.putNextEntry(new ZipEntry(entryName));
+        InputStream open() throws IOException {
+            return content != null ? new ByteArrayInputStream(content) : Files.newInputStream(file);
+        }
 
-                IOUtils.copy(fileStream, zipOut);
-                zipOut.closeEntry();
-            }
-        } catch (ErrorResponseException e) {
-            if (!e.errorResponse().code().equals("NoSuchKey")) {
-                throw e; // Re-throw if it's not a "file not found" error
+        @Override
+        public void close() throws IOException {
+            if (file != null) {
+                Files.deleteIfExists(file);
             }
         }
     }
@@ -461,71 +666,126 @@ public class MinioStorageService {
      * Gets multiqc file.
      * * This method retrieves a MultiQC file from a specified folder in a MinIO bucket.
      * * It constructs the object name by combining the folder name and the file name,
-     * * and uses the MinIO client to get the object as a stream.
+     * * and answers with a redirect to a presigned URL of the object, or with the object itself.
      *
-     * @param folderName the folder name
-     * @param fileName   the file name
+     * @param folderName     the folder name
+     * @param fileName       the file name
+     * @param redirect       whether to redirect to a presigned URL, null for {@code minio.download.presigned-redirect}
+     * @param requestHeaders the headers of the request, for the Range, If-Range and If-None-Match headers
      * @return the multiqc file
-     * @implNote The method sets the content type to "text/html" for the MultiQC file. * * It returns a
-     * ResponseEntity containing the InputStreamResource of the file, along with appropriate headers for content
-     * disposition. * @implSpec If an error occurs during the retrieval process, it returns a 404 Not Found response.
+     * @implNote The method sets the content type to "text/html" for the MultiQC file, see
+     * {@link #getFileFromMinio(String, String, String, String, Boolean, HttpHeaders)}.
+     * @implSpec If an error occurs during the retrieval process, it returns a 404 Not Found response.
      */
-    public ResponseEntity<InputStreamResource> getMultiqcFile(String folderName, String fileName) {
+    public ResponseEntity<StreamingResponseBody> getMultiqcFile(String folderName, String fileName, Boolean redirect,
+                                                                HttpHeaders requestHeaders) {
         try {
             String objectName = folderName + "/results_alignment/multiqc/" + fileName;
             String contentType = MediaType.TEXT_HTML_VALUE;
-            return getResultFile(fileName, objectName, contentType);
+            return getFileFromMinio(fileName, objectName, contentType, bucketNameForAlignment, redirect, requestHeaders);
         } catch (Exception e) {
             return ResponseEntity.notFound().build();
         }
     }
 
     /**
-     * * Gets result file.
-     * * This method retrieves a result file from a specified object in a MinIO bucket.
-     * * It constructs the object name using the provided file name and object name,
-     * * and uses the MinIO client to get the object as a stream.
+     * Gets a file from MinIO.
+     * * The object is looked up first, so that a missing file is answered with a 404 Not Found response in both
+     * cases:
+     * <ul>
+     *     <li>with a redirect, the response is a 302 Found to a URL of the object presigned for
+     *     {@code minio.download.presigned-expiry}, which the client downloads straight from MinIO, ranges
+     *     included;</li>
+     *     <li>otherwise, the object is streamed by the server, with its length, ETag and last modification date. A
+     *     single byte range is answered with a 206 Partial Content response, and a request whose If-None-Match matches
+     *     the ETag with a 304 Not Modified response.</li>
+     * </ul>
      *
-     * @param fileName    the file name
-     * @param objectName  the object name
-     * @param contentType the content type
-     * @return the response entity containing the InputStreamResource of the file
-     * @throws ErrorResponseException    if there is an error response from MinIO
-     * @throws InsufficientDataException if there is insufficient data in the response
-     * @throws InternalException         if there is an internal error in the MinIO client
-     * @throws InvalidKeyException       if the provided key is invalid
-     * @throws InvalidResponseException  if the response from MinIO is invalid
-     * @throws IOException               if there is an I/O error during the operation
-     * @throws NoSuchAlgorithmException  if the specified algorithm is not available
-     * @throws ServerException           if there is a server error in the MinIO client
-     * @throws XmlParserException        if there is an error parsing XML in the response
-     * @implNote The method sets the content type based on the provided content type parameter.
-     * * * It returns a ResponseEntity containing the InputStreamResource of the file, along with appropriate headers
-     * for content disposition.
-     * @implSpec If an error occurs during the retrieval process, it throws various exceptions such as
-     * ErrorResponseException, InsufficientDataException, etc.
-     * *
-     * @implNote This method is typically used to retrieve files such as CSV or other result files stored in MinIO.
-     * @implSpec It is useful in scenarios where applications need to access and download result files from a cloud
-     * storage service like MinIO.
+     * @param fileName       the file name
+     * @param objectName     the object name
+     * @param contentType    the content type
+     * @param bucketName     the bucket name
+     * @param redirect       whether to redirect to a presigned URL, null for {@code minio.download.presigned-redirect}
+     * @param requestHeaders the headers of the request
+     * @return the response entity
+     * @throws MinioException           if the object cannot be found
+     * @throws GeneralSecurityException if the request cannot be signed
+     * @throws IOException              if MinIO cannot be reached
+     * @implNote The CSV files are sent as attachments, the other files inline.
+     * * The range requests with several ranges, or whose If-Range does not match the ETag, are answered with the whole
+     * object. The object is read only if its ETag is still the one looked up, so that the ranges of a resumed download
+     * all come from the same object.
      */
-    private @NotNull ResponseEntity<InputStreamResource> getResultFile(String fileName, String objectName,
-                                                                       String contentType) throws ErrorResponseException, InsufficientDataException, InternalException, InvalidKeyException, InvalidResponseException, IOException, NoSuchAlgorithmException, ServerException, XmlParserException {
-        return getFileFromMinio(fileName, objectName, contentType, bucketNameForAlignment);
+    private ResponseEntity<StreamingResponseBody> getFileFromMinio(String fileName, String objectName,
+                                                                   String contentType, String bucketName,
+                                                                   Boolean redirect, HttpHeaders requestHeaders) throws MinioException, GeneralSecurityException, IOException {
+        StatObjectResponse stat = minioClient.statObject(StatObjectArgs.builder().bucket(bucketName).object(objectName).build());
+        String contentDisposition = (fileName.endsWith(".csv") ? ContentDisposition.attachment() : ContentDisposition.inline())
+                .filename(fileName).build().toString();
+        if (redirect != null ? redirect : presignedRedirect) {
+            String url = multipartMinioClient.presignGetObject(bucketName, objectName, (int) presignedExpiry.toSeconds(),
+                    Map.of("response-content-type", contentType, "response-content-disposition", contentDisposition));
+            return ResponseEntity.status(HttpStatus.FOUND).location(URI.create(url)).cacheControl(CacheControl.noStore()).build();
+        }
+        String eTag = "\"" + stat.etag() + "\"";
+        long size = stat.size();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(eTag);
+        headers.setLastModified(stat.lastModified());
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, contentDisposition);
+        if (requestHeaders.getIfNoneMatch().stream().anyMatch(tag -> tag.equals("*") || tag.equals(eTag) || tag.equals("W/" + eTag))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        }
+        HttpRange range = getRequestedRange(requestHeaders, eTag);
+        if (range == null) {
+            return ResponseEntity.ok().headers(headers).contentType(MediaType.parseMediaType(contentType))
+                    .contentLength(size).body(streamObject(bucketName, objectName, stat.etag(), 0, null));
+        }
+        long start;
+        long end;
+        try {
+            start = range.getRangeStart(size);
+            end = range.getRangeEnd(size);
+        } catch (IllegalArgumentException e) {
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(headers).build();
+        }
+        headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).contentType(MediaType.parseMediaType(contentType))
+                .contentLength(end - start + 1).body(streamObject(bucketName, objectName, stat.etag(), start, end - start + 1));
     }
 
-    @NotNull
-    private ResponseEntity<InputStreamResource> getFileFromMinio(String fileName, String objectName,
-                                                                 String contentType, String bucketName) throws ErrorResponseException, InsufficientDataException, InternalException, InvalidKeyException, InvalidResponseException, IOException, NoSuchAlgorithmException, ServerException, XmlParserException {
-        InputStream stream =
-                minioClient.getObject(GetObjectArgs.builder().bucket(bucketName).object(objectName).build());
-        HttpHeaders headers = new HttpHeaders();
-        if (fileName.endsWith(".csv")) {
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
-        } else {
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + fileName + "\"");
+    /**
+     * Gets the byte range requested, if it can be served.
+     *
+     * @param requestHeaders the headers of the request
+     * @param eTag           the ETag of the object, quoted
+     * @return the range, or null if there is none, several, an invalid one, or if If-Range does not match the ETag
+     */
+    private static HttpRange getRequestedRange(HttpHeaders requestHeaders, String eTag) {
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        if (requestHeaders.getFirst(HttpHeaders.RANGE) == null || (ifRange != null && !ifRange.equals(eTag))) {
+            return null;
+        }
+        try {
+            List<HttpRange> ranges = requestHeaders.getRange();
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
         }
-        return ResponseEntity.ok().contentType(MediaType.parseMediaType(contentType)).headers(headers).body(new InputStreamResource(stream));
+    }
+
+    private StreamingResponseBody streamObject(String bucketName, String objectName, String eTag, long offset, Long length) {
+        return outputStream -> {
+            GetObjectArgs args = GetObjectArgs.builder().bucket(bucketName).object(objectName).matchETag(eTag)
+                    .offset(offset).length(length).build();
+            try (InputStream stream = minioClient.getObject(args)) {
+                stream.transferTo(outputStream);
+            } catch (MinioException | GeneralSecurityException e) {
+                throw new IOException("Failed to read " + objectName + " from MinIO", e);
+            }
+        };
     }
 
 }
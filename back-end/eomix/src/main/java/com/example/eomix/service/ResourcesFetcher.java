@@ -1,36 +1,38 @@
 package com.example.eomix.service;
 
 import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.rest.api.MethodOutcome;
-import ca.uhn.fhir.rest.client.api.IGenericClient;
 import com.example.eomix.exception.FhirResourceFetchException;
-import org.hl7.fhir.instance.model.api.IBaseResource;
+import com.example.eomix.exception.FhirTransactionException;
+import com.example.eomix.repositories.FhirResourceRepository;
+import com.example.eomix.repositories.InMemoryFhirResourceRepository;
+import com.example.eomix.repositories.RemoteFhirResourceRepository;
 import org.hl7.fhir.r5.model.*;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Utility class for fetching and managing FHIR resources such as Specimen, Patient, Group, and MolecularSequence.
  * <p>
- * This class provides static methods to interact with a FHIR server using the HAPI FHIR client.
+ * This class provides static methods to interact with the FHIR resources through a {@link FhirResourceRepository}.
  * It supports operations including adding resources to the server, checking for existing resources,
  * and retrieving resources by identifiers.
+ * By default, the resources are accessed in process, on the in-memory store of the embedded FHIR server, and
+ * lookups by identifier are answered by its {@link FhirIdentifierIndex}.
  * </p>
  * <p>
  * Designed as a utility class with only static methods, it should not be instantiated.
  * Intended for healthcare applications requiring management of patient data, specimens, and molecular sequences.
  * </p>
  * <p>
- * The class assumes a FHIR server running at a specified base URL and handles resource-specific operations
- * using the HAPI FHIR client.
+ * A remote FHIR server can be used instead with {@link #useRemoteServer(String)}, in which case the resource-specific
+ * operations go through the HAPI FHIR client.
  * </p>
  *
  * @author Molka Anaghim FTOUHI
- * @implNote Uses the HAPI FHIR client to perform create and read operations on FHIR resources.
+ * @implNote Uses the FHIR resource repository to perform create and read operations on FHIR resources.
  * @implSpec Utility class with static methods only; no instance should be created.
  */
 
@@ -45,13 +47,18 @@ public class ResourcesFetcher {
      */
     static FhirContext ctx = FhirContext.forR5Cached();
     /**
-     * The Spring boot base url.
+     * The In memory repository.
+     * <p>
+     * Its resource providers and interceptor service are registered on the embedded FHIR server, so the resources
+     * written in process and through HTTP share the same store and the same identifier index.
      */
-    static String springBootBaseUrl = "http://localhost:7000/api/fhir/";
+    static final InMemoryFhirResourceRepository inMemoryRepository = new InMemoryFhirResourceRepository(ctx);
     /**
-     * The Client.
+     * The Repository.
+     * <p>
+     * The in-memory repository, unless a persistent repository or a remote FHIR server is configured.
      */
-    static IGenericClient client = ctx.newRestfulGenericClient(springBootBaseUrl);
+    static FhirResourceRepository repository = inMemoryRepository;
 
     /**
      * Private constructor to prevent instantiation.
@@ -60,6 +67,47 @@ public class ResourcesFetcher {
     private ResourcesFetcher() {
     }
 
+    /**
+     * Gets the in-memory repository shared with the embedded FHIR server.
+     *
+     * @return the in-memory repository
+     */
+    public static InMemoryFhirResourceRepository getInMemoryRepository() {
+        return inMemoryRepository;
+    }
+
+    /**
+     * Gets the repository the resources are read from and written to.
+     *
+     * @return the repository
+     */
+    public static FhirResourceRepository getRepository() {
+        return repository;
+    }
+
+    /**
+     * Use repository.
+     * <p>
+     * This method switches the repository the resources are read from and written to, e.g. to a persistent one.
+     *
+     * @param fhirResourceRepository the repository
+     */
+    public static void useRepository(FhirResourceRepository fhirResourceRepository) {
+        repository = fhirResourceRepository;
+        logger.info("FHIR resources are stored in {}", fhirResourceRepository.getClass().getSimpleName());
+    }
+
+    /**
+     * Use remote server.
+     * <p>
+     * This method switches the repository to a remote FHIR server, accessed through the HAPI FHIR client.
+     *
+     * @param serverBaseUrl the base url of the remote FHIR server
+     */
+    public static void useRemoteServer(String serverBaseUrl) {
+        useRepository(new RemoteFhirResourceRepository(ctx.newRestfulGenericClient(serverBaseUrl)));
+    }
+
     /**
      * Add specimen resources to fhir server.
      * <p>
@@ -69,7 +117,7 @@ public class ResourcesFetcher {
      * If the list is empty, it logs a message indicating that no specimens were found.
      *
      * @param specimens the specimens
-     * @implNote The method uses the HAPI FHIR client to create resources on the server.
+     * @implNote The method uses the FHIR resource repository to create resources on the server.
      * @implSpec Each specimen is checked for existence by its identifier and accession identifier before being added
      * .<br>
      * If a specimen already exists, it logs a message indicating that the specimen already exists.
@@ -88,7 +136,7 @@ public class ResourcesFetcher {
      * <p>
      * This method adds a single specimen to the FHIR server.
      * <p>
-     * It checks if the specimen already exists by its identifier and accession identifier.
+     * It creates the specimen with a conditional create on its identifier and accession identifier.
      * <ul>
      * <li>    If it does not exist, it creates the specimen resource on the server.</li>
      * <li> If it already exists, it logs a message indicating that the specimen already exists.</li>
@@ -96,11 +144,7 @@ public class ResourcesFetcher {
      * @param specimen the specimen
      */
     private static void addSpecimenToServerFHIR(Specimen specimen) {
-        String identifierValue = specimen.getIdentifierFirstRep().getId();
-        String accessionIdentifier = specimen.getAccessionIdentifier().getId();
-        if (getSpecimenByIdAndIdentifier(identifierValue, accessionIdentifier) == null) {
-            client.create().resource(specimen).execute();
-        } else {
+        if (!Boolean.TRUE.equals(repository.createIfNoneExist(specimen).getCreated())) {
             logger.info("Specimen already exist!");
         }
     }
@@ -119,7 +163,7 @@ public class ResourcesFetcher {
      *     </ul>
      *
      * @param patients the patients
-     * @implNote The method uses the HAPI FHIR client to create resources on the server.
+     * @implNote The method uses the FHIR resource repository to create resources on the server.
      * @implSpec Each patient is checked for existence by its official identifier and accession identifier before
      * being added.<br>
      * If a patient already exists, it logs a message indicating that the patient already exists.
@@ -136,19 +180,14 @@ public class ResourcesFetcher {
     /**
      * Add patient to server fhir.
      * This method adds a single patient to the FHIR server.
-     * * It checks if the patient already exists by its official identifier and accession identifier.
+     * * It creates the patient with a conditional create on its official identifier and accession identifier.
      * * If it does not exist, it creates the patient resource on the server.
      * * If it already exists, it logs a message indicating that the patient already exists.
      *
      * @param patient the patient
      */
     private static void addPatientTOServerFHIR(Patient patient) {
-        List<Identifier> identifiersList = patient.getIdentifier().stream().toList();
-        String accessionIdentifier = getAccessionIdentifier(identifiersList);
-        String officialIdentifier = getOfficialIdentifier(identifiersList);
-        if (getPatientByIdAndIdentifier(accessionIdentifier, officialIdentifier) == null) {
-            client.create().resource(patient).execute();
-        } else {
+        if (!Boolean.TRUE.equals(repository.createIfNoneExist(patient).getCreated())) {
             logger.info("Patient already exist!");
         }
     }
@@ -159,16 +198,19 @@ public class ResourcesFetcher {
      * This method adds a group resource to the FHIR server and returns its ID.
      * It checks if the group already exists by its official identifier and accession identifier.
      *  <ul>
-     * <li> If it does not exist, it creates the group resource on the server and returns its ID.</li>
-     * <li> If it already exists, it logs a message indicating that the group already exists and returns null.</li>
+     * <li> If it does not exist, it creates the group resource on the server, with the ID it was given if any, and
+     * returns its ID.</li>
+     * <li> If it already exists and is unchanged, it is not written again and its ID is returned.</li>
+     * <li> If it already exists and has changed, it is updated on the version that was read, and its ID is returned.</li>
      * </ul>
      *
      * @param group the group (batch)
      * @return the string
-     * @implNote The method uses the HAPI FHIR client to create resources on the server.
-     * @implSpec Each group is checked for existence by its official identifier and accession identifier before being
-     * added.<br>
-     * If a group already exists, it logs a message indicating that the group already exists.
+     * @throws ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException if the group was changed concurrently
+     * @implNote The method uses the FHIR resource repository to create resources on the server.
+     * @implSpec The group is created with a conditional create on its official identifier and accession identifier,
+     * and updated with a versioned update ({@code If-Match}), so that a concurrent change of the group is not
+     * silently overwritten.
      */
     static String addOrUpdateGroupTOServerFHIRAndGetID(Group group) {
         List<Identifier> identifiersList = group.getIdentifier().stream().toList();
@@ -176,27 +218,49 @@ public class ResourcesFetcher {
         String accessionIdentifier = getAccessionIdentifier(identifiersList);
         Group existingGroup = getGroupByIdAndIdentifier(accessionIdentifier, officialIdentifier);
         if (existingGroup == null) {
-            MethodOutcome outcome = client.create().resource(group).execute();
-            return outcome.getId().getIdPart();
-        } else {
-            logger.info("Group already exist!");
-            group.setId(existingGroup.getIdElement());
-            MethodOutcome outcome = client.update().resource(group).execute();
-            return outcome.getId().getIdPart();
+            if (group.hasIdElement()) {
+                // The ID was computed while parsing, and is already referenced by the specimens
+                return repository.update(group).getIdPart();
+            }
+            return repository.createIfNoneExist(group).getId().getIdPart();
+        }
+        String groupId = existingGroup.getIdElement().getIdPart();
+        group.setId(groupId);
+        if (isUnchanged(group, existingGroup)) {
+            logger.info("Group {} unchanged", groupId);
+            return groupId;
         }
+        return repository.updateIfMatch(group, FhirResourceRepository.getVersionId(existingGroup)).getIdPart();
+    }
+
+    /**
+     * Checks if a group has the same content as the stored one, ignoring their id and meta.
+     *
+     * @param group         the group
+     * @param existingGroup the stored group
+     * @return true if the group is unchanged
+     */
+    private static boolean isUnchanged(Group group, Group existingGroup) {
+        Group newContent = group.copy();
+        Group existingContent = existingGroup.copy();
+        newContent.setIdElement(null);
+        newContent.setMeta(null);
+        existingContent.setIdElement(null);
+        existingContent.setMeta(null);
+        return newContent.equalsDeep(existingContent);
     }
 
     /**
      * Add molecular sequence resources to fhir server.
      * This method adds a molecular sequence resource to the FHIR server.
-     * It checks if the molecular sequence already exists by its ID.
+     * It creates the molecular sequence with a conditional create on its identifiers.
      *  <ul>
      * <li>  If it does not exist, it creates the molecular sequence resource on the server. </li>
      * <li>  If it already exists, it logs a message indicating that the molecular sequence already exists. </li>
      *  </ul>
      *
      * @param molecularSequenceList the molecular sequence list
-     * @implNote The method uses the HAPI FHIR client to create resources on the server.
+     * @implNote The method uses the FHIR resource repository to create resources on the server.
      * @implSpec Each molecular sequence is checked for existence by its ID before being added.<br>
      * If a molecular sequence already exists, it logs a message indicating that the molecular sequence already exists.
      */
@@ -210,10 +274,7 @@ public class ResourcesFetcher {
 
     private static void addMolecularSequenceToServerFHIR(MolecularSequence molecularSequence) {
         if (molecularSequence != null && !molecularSequence.isEmpty()) {
-            String id = molecularSequence.getId();
-            if (getMolecularSequenceByIdAndIdentifier(id) == null) {
-                client.create().resource(molecularSequence).execute();
-            } else {
+            if (!Boolean.TRUE.equals(repository.createIfNoneExist(molecularSequence).getCreated())) {
                 logger.info("Molecular sequence already exist!");
             }
         } else {
@@ -221,6 +282,47 @@ public class ResourcesFetcher {
         }
     }
 
+    /**
+     * Add resources to fhir server as transaction.
+     * <p>
+     * This method stores a list of resources on the FHIR server with {@code transaction} Bundles instead of one
+     * request per resource, through a {@link FhirTransactionWriter}.
+     * <ul>
+     *     <li>Groups are written with a conditional update on their accession and official identifiers.</li>
+     *     <li>The other resources are written with a conditional create ({@code ifNoneExist}) on the same
+     *     identifiers, so that resources already on the server are not duplicated.</li>
+     * </ul>
+     * The resources are submitted in chunks of {@code chunkSize} entries, in the order of the list.
+     *
+     * @param resources the resources to store
+     * @param chunkSize the maximum number of entries per transaction Bundle
+     * @throws FhirTransactionException if a chunk is rejected; the resources created by the previous chunks are
+     *                                  deleted first, so the ingestion of a file is all or nothing
+     * @implNote A 5k-sample sheet is stored with a handful of requests instead of one round trip per resource.
+     */
+    public static void addResourcesToFHIRServerAsTransaction(List<? extends Resource> resources, int chunkSize) {
+        if (resources.isEmpty()) {
+            logger.info("No resources found!");
+            return;
+        }
+        FhirTransactionWriter writer = newTransactionWriter(chunkSize);
+        writer.addAll(resources);
+        writer.commit();
+    }
+
+    /**
+     * New transaction writer.
+     * <p>
+     * This method creates a {@link FhirTransactionWriter} on the FHIR server, to store resources with
+     * {@code transaction} Bundles as they are produced.
+     *
+     * @param chunkSize the maximum number of entries per transaction Bundle
+     * @return the transaction writer
+     */
+    public static FhirTransactionWriter newTransactionWriter(int chunkSize) {
+        return new FhirTransactionWriter(repository, chunkSize);
+    }
+
     /**
      * Gets official identifier.
      * <p> This method retrieves the official identifier from a list of identifiers.
@@ -267,9 +369,8 @@ public class ResourcesFetcher {
 
     /**
      * Gets specimen by id and identifier.
-     * <p> This method retrieves a specimen from the server by its ID and identifier.
-     * It first fetches a list of specimens from the server using the provided identifier.
-     * It then iterates through the list to find a specimen whose official identifier matches the provided specimen ID.
+     * <p> This method retrieves a specimen stored on the server by its ID and identifier.
+     * It looks up the identifier index with the accession identifier and the official identifier (the specimen ID).
      * <ul>
      * <li>  If a matching specimen is found, it returns that specimen. </li>
      * <li>  If no matching specimen is found, it returns null. </li>
@@ -278,206 +379,132 @@ public class ResourcesFetcher {
      * @param specimenId the specimen id
      * @param identifier the identifier
      * @return the specimen by id and identifier
-     * @implNote The method uses the HAPI FHIR client to search for specimens on the server.
+     * @implNote In process, the lookup is answered by the identifier index in constant time.
      * @implSpec If an error occurs during the retrieval process, it throws a RuntimeException with the caught
      * exception.
      */
     public static Specimen getSpecimenByIdAndIdentifier(String specimenId, String identifier) {
         try {
-            List<Specimen> specimenList = getSpecimenFromServerByAccessionIdentifier(identifier);
-            for (Specimen specimen : specimenList) {
-                List<Identifier> identifiersList = specimen.getIdentifier().stream().toList();
-                String officialIdentifier = getOfficialIdentifier(identifiersList);
-                if (officialIdentifier != null && officialIdentifier.equals(specimenId)) {
-                    return specimen;
-                }
-            }
+            return repository.findByIdentifiers(Specimen.class, identifier, specimenId);
         } catch (Exception e) {
             throw new FhirResourceFetchException("Failed to fetch Specimen by id and identifier", e);
         }
-        return null;
     }
 
     /**
      * Gets specimen from server by accession identifier.
-     * <p> This method retrieves a list of specimens from the server based on the provided accession identifier.<br>
-     * It fetches a bundle of specimens from the server and iterates through each entry.<br>
-     * For each specimen, it checks if the accession identifier matches the provided identifier.<br>
-     * If a match is found, it adds the specimen to the list and returns the list.
+     * <p> This method retrieves a list of specimens stored on the server based on the provided accession identifier.<br>
+     * The specimens are read from the identifier index, in the order they were created.
      *
      * @param identifier the accession identifier (is the metadata file name)
      * @return the specimen from server by accession identifier
-     * @implNote The method uses the HAPI FHIR client to search for resources on the server.
+     * @implNote In process, the lookup is answered by the identifier index without fetching the whole bundle of the resource type.
      * @implSpec If no specimens are found with the given accession identifier, it returns an empty list.
      */
     public static List<Specimen> getSpecimenFromServerByAccessionIdentifier(String identifier) {
-        List<Specimen> specimenList = new ArrayList<>();
-        for (Bundle.BundleEntryComponent entry : getBundle(Specimen.class).getEntry()) {
-            if (entry.getResource() instanceof Specimen specimen && specimen.hasAccessionIdentifier() && !specimen.getAccessionIdentifier().isEmpty() && specimen.getAccessionIdentifier().getId().equals(identifier)) {
-                specimenList.add(specimen);
-            }
-        }
-        return specimenList;
+        return repository.findAllByAccession(Specimen.class, identifier);
     }
 
     /**
      * Gets patient by id and identifier.
-     * <p> This method retrieves a patient from the server by its ID and identifier.
+     * <p> This method retrieves a patient stored on the server by its ID and identifier.
+     * It looks up the identifier index with the accession identifier and the official identifier (the patient ID).
      * <ul>
-     * <li>  It first fetches a list of patients from the server using the provided identifier. </li>
-     * <li>  It then iterates through the list to find a patient whose official identifier matches the provided
-     * patient ID.  </li>
-     *  - If a matching patient is found, it returns that patient. <br>
-     *  - If no matching patient is found, it returns null.
+     * <li>  If a matching patient is found, it returns that patient. </li>
+     * <li>  If no matching patient is found, it returns null. </li>
      * </ul>
      *
-     * @param identifier the identifier
+     * @param identifier         the identifier
+     * @param officialIdentifier the official identifier
      * @return the patient by id and identifier
-     * @implNote The method uses the HAPI FHIR client to search for patients on the server.
+     * @implNote In process, the lookup is answered by the identifier index in constant time.
      * @implSpec If an error occurs during the retrieval process, it throws a RuntimeException with the caught
      * exception.
      */
     public static Patient getPatientByIdAndIdentifier(String identifier, String officialIdentifier) {
         try {
-            List<Patient> patientList = getPatientFromServerByAccessionIdentifier(identifier);
-            for (Patient patient : patientList) {
-                List<Identifier> identifiersList = patient.getIdentifier().stream().toList();
-                String officialId = getOfficialIdentifier(identifiersList);
-                if (officialId != null && officialId.equals(officialIdentifier)) {
-                    return patient;
-                }
-            }
+            return repository.findByIdentifiers(Patient.class, identifier, officialIdentifier);
         } catch (Exception e) {
 
             throw new FhirResourceFetchException("Failed to fetch Patient by id and identifier", e);
         }
-        return null;
     }
 
+    /**
+     * Gets group by id and identifier.
+     * <p> This method retrieves a group (batch) stored on the server by its accession and official identifiers.
+     *
+     * @param accessionIdentifier the accession identifier (is the metadata file name)
+     * @param officialIdentifier  the official identifier (is the batch id)
+     * @return the group, or null if no matching group is found
+     * @implNote In process, the lookup is answered by the identifier index in constant time.
+     */
     public static Group getGroupByIdAndIdentifier(String accessionIdentifier, String officialIdentifier) {
         try {
-            List<Group> groupList = getGroupFromServerByAccessionIdentifier(accessionIdentifier);
-            for (Group group : groupList) {
-                List<Identifier> identifiersList = group.getIdentifier().stream().toList();
-                String officialId = getOfficialIdentifier(identifiersList);
-                if (officialId != null && officialId.equals(officialIdentifier)) {
-                    return group;
-                }
-            }
+            return repository.findByIdentifiers(Group.class, accessionIdentifier, officialIdentifier);
         } catch (Exception e) {
 
-            throw new FhirResourceFetchException("Failed to fetch Patient by id and identifier", e);
+            throw new FhirResourceFetchException("Failed to fetch Group by id and identifier", e);
         }
-        return null;
     }
 
     /**
      * Gets patient from server by accession identifier.
-     * <p> This method retrieves a list of patients from the server based on the provided accession identifier.<br>
-     * It fetches a bundle of patients from the server and iterates through each entry.<br>
-     * For each patient, it checks if the accession identifier matches the provided identifier.<br>
-     * If a match is found, it adds the patient to the list and returns the list.
+     * <p> This method retrieves a list of patients stored on the server based on the provided accession identifier.<br>
+     * The patients are read from the identifier index, in the order they were created.
      *
      * @param identifier the identifier
      * @return the patient from server by accession identifier
-     * @implNote The method uses the HAPI FHIR client to search for resources on the server.
+     * @implNote In process, the lookup is answered by the identifier index without fetching the whole bundle of the resource type.
      * @implSpec If no patients are found with the given accession identifier, it returns an empty list.
      */
     public static List<Patient> getPatientFromServerByAccessionIdentifier(String identifier) {
-        List<Patient> patientList = new ArrayList<>();
-        for (Bundle.BundleEntryComponent entry : getBundle(Patient.class).getEntry()) {
-            if (entry.getResource() instanceof Patient patient) {
-                List<Identifier> identifiersList = patient.getIdentifier().stream().toList();
-                String accessionIdentifier = getAccessionIdentifier(identifiersList);
-                if (accessionIdentifier != null && accessionIdentifier.equals(identifier)) {
-                    patientList.add(patient);
-                }
-            }
-        }
-        return patientList;
+        return repository.findAllByAccession(Patient.class, identifier);
     }
 
     /**
      * Gets group from server by accession identifier.
-     * <p> This method retrieves a list of groups from the server based on the provided accession identifier.<br>
-     * It fetches a bundle of groups from the server and iterates through each entry.<br>
-     * For each group, it checks if the accession identifier matches the provided identifier.<br>
-     * If a match is found, it adds the group to the list and returns the list.
+     * <p> This method retrieves a list of groups stored on the server based on the provided accession identifier.<br>
+     * The groups are read from the identifier index, in the order they were created.
      *
      * @param identifier the identifier
      * @return the group from server by accession identifier
-     * @implNote The method uses the HAPI FHIR client to search for resources on the server.
+     * @implNote In process, the lookup is answered by the identifier index without fetching the whole bundle of the resource type.
      * @implSpec If no groups are found with the given accession identifier, it returns an empty list.
      */
     public static List<Group> getGroupFromServerByAccessionIdentifier(String identifier) {
-        List<Group> groupList = new ArrayList<>();
-        for (Bundle.BundleEntryComponent entry : getBundle(Group.class).getEntry()) {
-            if (entry.getResource() instanceof Group group) {
-                List<Identifier> identifiersList = group.getIdentifier().stream().toList();
-                String accessionIdentifier = getAccessionIdentifier(identifiersList);
-                if (accessionIdentifier != null && accessionIdentifier.equals(identifier)) {
-                    groupList.add(group);
-                }
-            }
-        }
-        return groupList;
+        return repository.findAllByAccession(Group.class, identifier);
     }
 
     /**
      * Gets observation from server by accession identifier.
-     * <p> This method retrieves a list of observations from the server based on the provided accession identifier.<br>
-     * It fetches a bundle of observations from the server and iterates through each entry.<br>
-     * For each observation, it checks if the accession identifier matches the provided identifier.<br>
-     * If a match is found, it adds the observation to the list and returns the list.
+     * <p> This method retrieves a list of observations stored on the server based on the provided accession identifier.<br>
+     * The observations are read from the identifier index, in the order they were created.
      *
      * @param identifier the identifier
      * @return the observation from server by accession identifier
-     * @implNote The method uses the HAPI FHIR client to search for resources on the server.
+     * @implNote In process, the lookup is answered by the identifier index without fetching the whole bundle of the resource type.
      * @implSpec If no observations are found with the given accession identifier, it returns an empty list.
      */
     public static List<Observation> getObservationFromServerByAccessionIdentifier(String identifier) {
-        List<Observation> observationList = new ArrayList<>();
-        for (Bundle.BundleEntryComponent entry : getBundle(Observation.class).getEntry()) {
-            if (entry.getResource() instanceof Observation observation) {
-                List<Identifier> identifiersList = observation.getIdentifier().stream().toList();
-                String accessionIdentifier = getAccessionIdentifier(identifiersList);
-                if (accessionIdentifier != null && accessionIdentifier.equals(identifier)) {
-                    observationList.add(observation);
-                }
-            }
-        }
-        return observationList;
+        return repository.findAllByAccession(Observation.class, identifier);
     }
 
     /**
      * Gets molecular sequence from server by accession identifier.
-     * <p> This method retrieves a molecular sequence from the server based on the provided accession identifier.<br>
-     * It fetches a bundle of molecular sequences from the server and iterates through each entry.<br>
-     * For each molecular sequence, it checks if the accession identifier matches the provided identifier.
-     * <ul>
-     * <li> If a match is found, it returns the molecular sequence.</li>
-     * <li> If no matching molecular sequence is found, it returns null.</li>
-     * </ul>
+     * <p> This method retrieves the molecular sequences stored on the server based on the provided accession
+     * identifier.<br>
+     * The molecular sequences are read from the identifier index, in the order they were created.
      *
      * @param identifier the identifier
      * @return the molecular sequence from server by accession identifier
-     * @implNote The method uses the HAPI FHIR client to search for resources on the server.
+     * @implNote In process, the lookup is answered by the identifier index without fetching the whole bundle of the resource type.
      * @implSpec If an error occurs during the retrieval process, it throws a RuntimeException with the caught
      * exception.
      */
     public static List<MolecularSequence> getMolecularSequenceFromServerByAccessionIdentifier(String identifier) {
         try {
-            List<MolecularSequence> molecularSequenceList = new ArrayList<>();
-            for (Bundle.BundleEntryComponent entry : getBundle(MolecularSequence.class).getEntry()) {
-                if (entry.getResource() instanceof MolecularSequence molecularSequence) {
-                    List<Identifier> identifiersList = molecularSequence.getIdentifier().stream().toList();
-                    String accessionIdentifier = getAccessionIdentifier(identifiersList);
-                    if (accessionIdentifier != null && accessionIdentifier.equals(identifier)) {
-                        molecularSequenceList.add(molecularSequence);
-                    }
-                }
-            }
-            return molecularSequenceList;
+            return repository.findAllByAccession(MolecularSequence.class, identifier);
         } catch (Exception e) {
 
             throw new FhirResourceFetchException("Failed to fetch MolecularSequence by accession identifier", e);
@@ -486,36 +513,26 @@ public class ResourcesFetcher {
 
     /**
      * Gets molecular sequence by id and identifier.
-     * <p> This method retrieves a molecular sequence from the server by its ID.
-     * It fetches a bundle of molecular sequences from the server and iterates through each entry. <br>
-     * For each molecular sequence, it checks if the ID matches the provided ID.
+     * <p> This method retrieves a molecular sequence from the identifier index by its ID and accession identifier.
+     * The ID of a molecular sequence is also its official identifier.
      * <ul>
      * <li> If a matching molecular sequence is found, it returns that molecular sequence.</li>
      * <li>If no matching molecular sequence is found, it returns null.</li>
      * </ul>
      *
-     * @param id the id
+     * @param id                  the id
+     * @param accessionIdentifier the accession identifier (is the metadata file name)
      * @return the molecular sequence by id and identifier
-     * @implNote The method uses the HAPI FHIR client to search for resources on the server.
-     * @implSpec If an error occurs during the retrieval process, it throws a RuntimeException with the caught
-     * exception.
+     * @implNote In process, the lookup is answered by the identifier index in constant time.
+     * @implSpec If an error occurs during the retrieval process, it throws a FhirResourceFetchException with the
+     * caught exception.
      */
-    public static MolecularSequence getMolecularSequenceByIdAndIdentifier(String id) {
+    public static MolecularSequence getMolecularSequenceByIdAndIdentifier(String id, String accessionIdentifier) {
         try {
-            for (Bundle.BundleEntryComponent entry : getBundle(MolecularSequence.class).getEntry()) {
-                if (entry.getResource() instanceof MolecularSequence molecularSequence && molecularSequence.getId().equalsIgnoreCase(id)) {
-                    return molecularSequence;
-                }
-            }
+            return repository.findByIdentifiers(MolecularSequence.class, accessionIdentifier, id);
         } catch (Exception e) {
             throw new FhirResourceFetchException("Failed to fetch MolecularSequence by ID", e);
         }
-
-        return null;
-    }
-
-    private static Bundle getBundle(Class<? extends IBaseResource> var1) {
-        return client.search().forResource(var1).returnBundle(Bundle.class).execute();
     }
 
 }
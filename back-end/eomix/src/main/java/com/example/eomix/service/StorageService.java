@@ -2,12 +2,15 @@ package com.example.eomix.service;
 
 
 import com.example.eomix.entities.MetadataFileUploadEntity;
+import com.example.eomix.utils.CsvDialect;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * The interface Storage service.
@@ -20,8 +23,7 @@ public interface StorageService {
      * Store on couch db and return response entity.
      * <p> This method is used to store a file on CouchDB and return a response entity.
      *
-     * @param file              the csv file passed as a MultipartFile
-     * @param detectedDelimiter the detected delimiter in the csv file
+     * @param file the csv or Arrow IPC file passed as a MultipartFile
      * @return the response entity
      * @implNote The method handles the storage of a file in CouchDB, allowing for efficient data management and
      * retrieval.
@@ -30,11 +32,11 @@ public interface StorageService {
      * such as status codes and messages.</li>
      * <li> This method is useful for applications that require persistent storage of files, such as CSV files, in a
      * database system like CouchDB.</li>
-     * <li> The detected delimiter parameter is particularly useful when dealing with CSV files, as it allows the
-     * service to correctly parse the file contents based on the identified delimiter.</li>
+     * <li> The dialect of a csv file is detected by the service, see {@link CsvDialect#detect(java.io.InputStream)}, so
+     * the file contents are parsed with the delimiter the file actually uses.</li>
      * </ul>
      */
-    ResponseEntity<String> storeOnCouchDb(MultipartFile file, String detectedDelimiter);
+    ResponseEntity<String> storeOnCouchDb(MultipartFile file);
 
     /**
      * Convert to csv string.
@@ -74,6 +76,17 @@ public interface StorageService {
      */
     File getMetadataFileFromCouchDBByFileName(String filename) throws FileNotFoundException;
 
+    /**
+     * Streams the samples of a metadata file from CouchDB.
+     * <p> This method hands the source columns of each sample of the metadata file to the consumer
+     * as they are read from CouchDB, without rebuilding the file.
+     *
+     * @param filename the filename
+     * @param consumer the consumer of the source columns of each sample, by column name
+     * @throws FileNotFoundException if no sample is stored for this filename
+     */
+    void forEachSampleOfMetadataFile(String filename, Consumer<Map<String, String>> consumer) throws FileNotFoundException;
+
     /**
      * Gets metadata file from couch db by file name for minio.
      * <p> This method is used to retrieve a metadata file from CouchDB by its filename specifically for MinIO storage.
@@ -79,6 +79,26 @@ public class Constants {
      * The constant MESSAGE.
      */
     public static final String MESSAGE = "message";
+    /**
+     * The constant FHIR_DEFAULT_PAGE_SIZE.
+     * <p>
+     * Number of resources per page of a FHIR search when the client does not set {@code _count}.
+     */
+    public static final int FHIR_DEFAULT_PAGE_SIZE = 1000;
+    /**
+     * The constant FHIR_MAXIMUM_PAGE_SIZE.
+     */
+    public static final int FHIR_MAXIMUM_PAGE_SIZE = 5000;
+    /**
+     * The constant FHIR_MAXIMUM_PAGED_SEARCHES.
+     * <p>
+     * Number of searches kept by the paging provider for their continuation links; the oldest are evicted first.
+     */
+    public static final int FHIR_MAXIMUM_PAGED_SEARCHES = 100;
+    /**
+     * The constant FHIR_CLIENT_PAGE_SIZE.
+     */
+    public static final int FHIR_CLIENT_PAGE_SIZE = 500;
 
     /**
      * Private constructor to prevent instantiation.
@@ -0,0 +1,126 @@
+package com.example.eomix.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The type Csv dialect.
+ * <p>
+ * This record describes the layout of an uploaded metadata file, as detected from its first bytes:
+ * </p>
+ * <ul>
+ *     <li>the delimiter, among {@code ,}, tab, {@code ;} and {@code |}: the one splitting the header into the most
+ *     consistent records, then into the most fields;</li>
+ *     <li>the headers, from the first non-empty record, without the byte order mark of the file if any;</li>
+ *     <li>the number of type rows following the headers, whose first field is {@code TYPE} or {@code group}.</li>
+ * </ul>
+ * <p>
+ * The records of the sample are read with a {@link CsvRecordReader}, so the detection splits quoted fields the same
+ * way the file is then parsed.
+ * </p>
+ *
+ * @param delimiter    the field delimiter
+ * @param headers      the headers of the file, empty if the file has no record
+ * @param typeRowCount the number of type rows following the headers
+ * @implNote Only the first {@value #SAMPLE_SIZE} bytes of the file are read; when the file is longer, the last record
+ * of the sample, which may be cut, is left out.
+ */
+public record CsvDialect(char delimiter, List<String> headers, int typeRowCount) {
+
+    /**
+     * The constant SAMPLE_SIZE.
+     */
+    public static final int SAMPLE_SIZE = 64 * 1024;
+    private static final int SAMPLE_RECORDS = 50;
+    private static final char[] CANDIDATE_DELIMITERS = {',', '\t', ';', '|'};
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    /**
+     * Detects the dialect of a file from its first bytes.
+     *
+     * @param inputStream the input stream of the file, positioned at its start; it is read up to
+     *                    {@value #SAMPLE_SIZE} bytes, and not closed
+     * @return the dialect of the file
+     * @throws IOException if the file cannot be read
+     */
+    public static CsvDialect detect(InputStream inputStream) throws IOException {
+        byte[] sample = inputStream.readNBytes(SAMPLE_SIZE);
+        boolean truncated = inputStream.read() != -1;
+        String text = new String(sample, StandardCharsets.UTF_8);
+        if (!text.isEmpty() && text.charAt(0) == BYTE_ORDER_MARK) {
+            text = text.substring(1);
+        }
+        char delimiter = CANDIDATE_DELIMITERS[0];
+        List<String[]> records = readRecords(text, delimiter, truncated);
+        long bestScore = score(records);
+        for (int i = 1; i < CANDIDATE_DELIMITERS.length; i++) {
+            List<String[]> candidateRecords = readRecords(text, CANDIDATE_DELIMITERS[i], truncated);
+            long candidateScore = score(candidateRecords);
+            if (candidateScore > bestScore) {
+                delimiter = CANDIDATE_DELIMITERS[i];
+                records = candidateRecords;
+                bestScore = candidateScore;
+            }
+        }
+        if (records.isEmpty()) {
+            return new CsvDialect(delimiter, List.of(), 0);
+        }
+        int typeRowCount = 0;
+        while (typeRowCount + 1 < records.size() && isTypeRow(records.get(typeRowCount + 1))) {
+            typeRowCount++;
+        }
+        return new CsvDialect(delimiter, List.of(records.get(0)), typeRowCount);
+    }
+
+    private static List<String[]> readRecords(String text, char delimiter, boolean truncated) throws IOException {
+        List<String[]> records = new ArrayList<>();
+        try (CsvRecordReader csvRecord = new CsvRecordReader(new StringReader(text), delimiter)) {
+            while (records.size() <= SAMPLE_RECORDS && csvRecord.next()) {
+                records.add(csvRecord.getFields());
+            }
+            if (truncated && records.size() <= SAMPLE_RECORDS && !records.isEmpty()) {
+                records.remove(records.size() - 1);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Scores the records of a candidate delimiter.
+     *
+     * @param records the records read with the delimiter
+     * @return the number of records with as many fields as the headers, then the number of headers; -1 if the
+     * delimiter does not split the headers
+     */
+    private static long score(List<String[]> records) {
+        if (records.isEmpty() || records.get(0).length < 2) {
+            return -1;
+        }
+        int headerCount = records.get(0).length;
+        long consistentRecords = records.stream().filter(fields -> fields.length == headerCount).count();
+        return (consistentRecords << 32) + headerCount;
+    }
+
+    private static boolean isTypeRow(String[] fields) {
+        return fields.length > 0 && ("TYPE".equalsIgnoreCase(fields[0]) || "group".equalsIgnoreCase(fields[0]));
+    }
+
+    /**
+     * Gets the headers as an array.
+     *
+     * @return the headers
+     */
+    public String[] getHeaderArray() {
+        return headers.toArray(new String[0]);
+    }
+
+    @Override
+    public String toString() {
+        return "CsvDialect[delimiter=" + (delimiter == '\t' ? "\\t" : String.valueOf(delimiter))
+                + ", headers=" + headers.size() + ", typeRowCount=" + typeRowCount + "]";
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.eomix.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * The type Csv record reader.
+ * <p>
+ * This class reads the records of a delimited file (CSV, TSV...) one at a time, following RFC 4180:
+ * </p>
+ * <ul>
+ *     <li>fields may be enclosed in double quotes, in which case they may contain the delimiter, line breaks and
+ *     escaped double quotes ({@code ""});</li>
+ *     <li>records end with {@code \n}, {@code \r\n} or {@code \r};</li>
+ *     <li>empty lines are skipped.</li>
+ * </ul>
+ * <p>
+ * The delimiter is a single character compared as is, no regular expression is involved. The decoded fields of the
+ * current record are kept in a char buffer reused from one record to the next, and a field only becomes a
+ * {@link String} when {@link #getField(int)} is called, so the caller only pays for the columns it reads.
+ * </p>
+ *
+ * @implNote The reader is not thread-safe. A double quote inside an unquoted field opens a quoted section, as the
+ * previous parser of the application did, instead of being rejected.
+ */
+public final class CsvRecordReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int NO_PENDING_CHAR = -2;
+
+    private final Reader reader;
+    private final char delimiter;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int bufferPosition;
+    private int bufferLength;
+    private int pendingChar = NO_PENDING_CHAR;
+
+    private char[] record = new char[256];
+    private int recordLength;
+    private int[] fieldStarts = new int[32];
+    private int[] fieldEnds = new int[32];
+    private int fieldCount;
+
+    /**
+     * Instantiates a new Csv record reader.
+     *
+     * @param reader    the reader of the file
+     * @param delimiter the field delimiter
+     */
+    public CsvRecordReader(Reader reader, char delimiter) {
+        this.reader = reader;
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Reads the next non-empty record.
+     *
+     * @return true if a record was read, false at the end of the file
+     * @throws IOException if the file cannot be read
+     */
+    public boolean next() throws IOException {
+        while (readRecord()) {
+            if (fieldCount > 1 || recordLength > 0) {
+                return true;
+            }
+        }
+        fieldCount = 0;
+        return false;
+    }
+
+    /**
+     * Gets the number of fields of the current record.
+     *
+     * @return the field count
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Gets a field of the current record.
+     *
+     * @param index the index of the field
+     * @return the decoded value of the field
+     * @throws IndexOutOfBoundsException if the record has no such field
+     */
+    public String getField(int index) {
+        checkIndex(index);
+        return new String(record, fieldStarts[index], fieldEnds[index] - fieldStarts[index]);
+    }
+
+    /**
+     * Gets all the fields of the current record.
+     *
+     * @return the decoded values of the fields
+     */
+    public String[] getFields() {
+        String[] fields = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            fields[i] = getField(i);
+        }
+        return fields;
+    }
+
+    /**
+     * Checks if a field of the current record is equal to a value, without creating a String.
+     *
+     * @param index the index of the field
+     * @param value the value
+     * @return true if the field is equal to the value
+     * @throws IndexOutOfBoundsException if the record has no such field
+     */
+    public boolean fieldEquals(int index, String value) {
+        checkIndex(index);
+        int start = fieldStarts[index];
+        if (fieldEnds[index] - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (record[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private boolean readRecord() throws IOException {
+        recordLength = 0;
+        fieldCount = 0;
+        int c = read();
+        if (c == -1) {
+            return false;
+        }
+        int fieldStart = 0;
+        boolean inQuotes = false;
+        while (true) {
+            if (inQuotes) {
+                if (c == -1) {
+                    endField(fieldStart);
+                    return true;
+                }
+                if (c == '"') {
+                    int next = read();
+                    if (next != '"') {
+                        inQuotes = false;
+                        c = next;
+                        continue;
+                    }
+                }
+                append((char) c);
+            } else if (c == -1 || c == '\n' || c == '\r') {
+                endField(fieldStart);
+                if (c == '\r') {
+                    int next = read();
+                    if (next != '\n' && next != -1) {
+                        pendingChar = next;
+                    }
+                }
+                return true;
+            } else if (c == delimiter) {
+                endField(fieldStart);
+                append(delimiter);
+                fieldStart = recordLength;
+            } else if (c == '"') {
+                inQuotes = true;
+            } else {
+                append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    private int read() throws IOException {
+        if (pendingChar != NO_PENDING_CHAR) {
+            int c = pendingChar;
+            pendingChar = NO_PENDING_CHAR;
+            return c;
+        }
+        if (bufferPosition == bufferLength) {
+            bufferLength = reader.read(buffer, 0, buffer.length);
+            bufferPosition = 0;
+            if (bufferLength <= 0) {
+                bufferLength = 0;
+                return -1;
+            }
+        }
+        return buffer[bufferPosition++];
+    }
+
+    private void append(char c) {
+        if (recordLength == record.length) {
+            record = Arrays.copyOf(record, record.length * 2);
+        }
+        record[recordLength++] = c;
+    }
+
+    private void endField(int fieldStart) {
+        if (fieldCount == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        }
+        fieldStarts[fieldCount] = fieldStart;
+        fieldEnds[fieldCount] = recordLength;
+        fieldCount++;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + index + " of a record of " + fieldCount + " fields");
+        }
+    }
+}
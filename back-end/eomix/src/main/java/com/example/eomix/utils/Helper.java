@@ -6,14 +6,10 @@ import com.example.eomix.exception.AlignerRetrievalException;
 import com.example.eomix.exception.HelperException;
 import com.example.eomix.model.Aligner;
 import com.example.eomix.model.ExperimentType;
-import com.example.eomix.service.FhirServiceImplementation;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,13 +17,11 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
 /**
  * The type Helper.
@@ -84,102 +78,6 @@ public class Helper {
 
     }
 
-    /**
-     * Reads a CSV file and returns a list of parsed CSV records.
-     * <p>
-     * This method uses the Apache Commons CSV library to parse a tab-delimited CSV file.
-     * It treats the first row as a header and skips any empty rows. If the first header contains
-     * the word {@code "TYPE"}, it is removed from the records.
-     *
-     * @param fileEntry the uploaded file to read (typically a tab-delimited CSV file)
-     * @return a list of {@link org.apache.commons.csv.CSVRecord} objects, each representing a row in the file
-     * @throws HelperException if an error occurs while reading or parsing the CSV file
-     * @implSpec The method uses a {@link java.io.BufferedReader} for efficient file reading
-     * and constructs a {@link org.apache.commons.csv.CSVParser} to parse the content.
-     * @implNote This method is commonly used in scenarios such as importing structured data from CSV files
-     * or preprocessing data for further analysis.
-     * <ul>
-     *   <li>Tab-delimited format is assumed (i.e., TSV)</li>
-     *   <li>Empty rows are skipped during parsing</li>
-     *   <li>The first row is removed if it contains a header with the word {@code "TYPE"}</li>
-     * </ul>
-     */
-
-    public static List<CSVRecord> getCSVRecords(File fileEntry) {
-
-        List<CSVRecord> csvRecordList;
-        try {
-            CSVParser csvParser = getCSVParser(fileEntry);
-            FhirServiceImplementation.headersList = csvParser.getHeaderNames();
-            csvRecordList = csvParser.getRecords();
-            for (CSVRecord csvRecord : csvParser) {
-                if (!isRowEmpty(csvRecord)) {
-                    csvRecordList.add(csvRecord);
-                }
-            }
-            if (csvRecordList.get(0).get(0).equalsIgnoreCase("TYPE")) {
-                csvRecordList.remove(0);
-            }
-
-        } catch (IOException e) {
-            throw new HelperException("Error reading CSV file: " + fileEntry.getName(), e);
-        }
-        return csvRecordList;
-    }
-
-    /**
-     * Creates and returns a CSV parser for the specified file entry.
-     * <p>
-     * This method reads a CSV file using a tab delimiter and treats the first row as the header.
-     * It utilizes a {@link java.io.BufferedReader} for efficient reading and
-     * constructs a {@link org.apache.commons.csv.CSVParser} to parse the file content.
-     *
-     * @param fileEntry the uploaded file to parse
-     * @return a configured {@link org.apache.commons.csv.CSVParser} instance for the file
-     * @throws IOException if an I/O error occurs while reading the file
-     * @implSpec The parser is configured with:
-     * <ul>
-     *   <li>Tab ({@code \t}) as the delimiter</li>
-     *   <li>The first row treated as the header</li>
-     * </ul>
-     * @implNote This method reads the entire file content and builds the parser accordingly.
-     * It is intended for use cases that require structured tabular data extraction from tab-delimited files.
-     */
-
-    private static CSVParser getCSVParser(File fileEntry) throws IOException {
-        InputStream inputStream = new FileInputStream(fileEntry);
-        Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
-        try (BufferedReader bufferedReader = new BufferedReader(reader)) {
-            String firstLine = bufferedReader.readLine();
-            reader = new StringReader(firstLine + "\n" + bufferedReader.lines().collect(Collectors.joining("\n")));
-        }
-        CSVFormat format = CSVFormat.DEFAULT.builder()
-                .setDelimiter('\t')
-                .setHeader() // Or .setHeader() depending on your exact need
-                .build();
-        return format.parse(reader);
-    }
-
-    /**
-     * Checks whether a given CSV record (row) is empty.
-     * <p>
-     * A row is considered empty if all its cells are either {@code null} or contain only whitespace.
-     *
-     * @param row the CSV record to check
-     * @return {@code true} if the row is empty; {@code false} otherwise
-     * @implNote The method iterates over each cell in the row, trimming whitespace and verifying
-     * if any cell contains non-empty content. If any cell has meaningful content, the row is not empty.
-     */
-
-    private static boolean isRowEmpty(CSVRecord row) {
-        for (String recordCell : row) {
-            if (recordCell != null && !recordCell.trim().isEmpty()) {
-                return false;
-            }
-        }
-        return true;
-    }
-
     /**
      * Updates alignment JSON data by adding Fastq file tags and experiment information.
      * <p>
@@ -0,0 +1,89 @@
+package com.example.eomix.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link CsvDialect}.
+ */
+class CsvDialectTest {
+
+    private static CsvDialect detect(String text) throws IOException {
+        return CsvDialect.detect(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void detectsTheDelimiter() throws IOException {
+        assertEquals(',', detect("sample_id,organ,sex\nS1,liver,F\n").delimiter());
+        assertEquals('\t', detect("sample_id\torgan\tsex\nS1\tliver\tF\n").delimiter());
+        assertEquals(';', detect("sample_id;organ;sex\nS1;liver;F\n").delimiter());
+        assertEquals('|', detect("sample_id|organ|sex\nS1|liver|F\n").delimiter());
+    }
+
+    @Test
+    void ignoresDelimitersInQuotedFields() throws IOException {
+        CsvDialect dialect = detect("sample_id;\"organ, side\";sex\nS1;\"liver, left\";F\nS2;\"kidney, right\";M\n");
+
+        assertEquals(';', dialect.delimiter());
+        assertEquals(List.of("sample_id", "organ, side", "sex"), dialect.headers());
+    }
+
+    @Test
+    void prefersTheDelimiterGivingConsistentRecords() throws IOException {
+        CsvDialect dialect = detect("id,x;organ,y;sex\n1;liver;F\n2;kidney;M\n");
+
+        assertEquals(';', dialect.delimiter());
+        assertArrayEquals(new String[]{"id,x", "organ,y", "sex"}, dialect.getHeaderArray());
+    }
+
+    @Test
+    void readsTheHeadersAfterEmptyLinesAndTheByteOrderMark() throws IOException {
+        CsvDialect dialect = detect("\uFEFF\r\nsample_id,organ\r\nS1,liver\r\n");
+
+        assertEquals(List.of("sample_id", "organ"), dialect.headers());
+        assertEquals(0, dialect.typeRowCount());
+    }
+
+    @Test
+    void countsTheTypeRows() throws IOException {
+        CsvDialect dialect = detect("sample_id,organ\nTYPE,string\ngroup,Specimen\nS1,liver\n");
+
+        assertEquals(2, dialect.typeRowCount());
+    }
+
+    @Test
+    void countsOnlyTheTypeRowsFollowingTheHeaders() throws IOException {
+        CsvDialect dialect = detect("sample_id,organ\nS1,liver\ntype,string\n");
+
+        assertEquals(0, dialect.typeRowCount());
+    }
+
+    @Test
+    void detectsTheDialectFromTheStartOfALongFile() throws IOException {
+        StringBuilder text = new StringBuilder("sample_id,organ\n");
+        while (text.length() < CsvDialect.SAMPLE_SIZE) {
+            text.append("S,liver\n");
+        }
+        text.setLength(CsvDialect.SAMPLE_SIZE - 3);
+        text.append(";x;y;z\n");
+
+        CsvDialect dialect = detect(text.toString());
+
+        assertEquals(',', dialect.delimiter());
+        assertEquals(List.of("sample_id", "organ"), dialect.headers());
+    }
+
+    @Test
+    void detectsAnEmptyFile() throws IOException {
+        CsvDialect dialect = detect("\n\n");
+
+        assertEquals(List.of(), dialect.headers());
+        assertEquals(0, dialect.typeRowCount());
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.eomix.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link CsvRecordReader}.
+ */
+class CsvRecordReaderTest {
+
+    private static List<String[]> readAll(String text, char delimiter) throws IOException {
+        List<String[]> records = new ArrayList<>();
+        try (CsvRecordReader reader = new CsvRecordReader(new StringReader(text), delimiter)) {
+            while (reader.next()) {
+                records.add(reader.getFields());
+            }
+        }
+        return records;
+    }
+
+    @Test
+    void readsUnquotedFields() throws IOException {
+        List<String[]> records = readAll("sample_id,organ\nS1,liver\n", ',');
+
+        assertEquals(2, records.size());
+        assertArrayEquals(new String[]{"sample_id", "organ"}, records.get(0));
+        assertArrayEquals(new String[]{"S1", "liver"}, records.get(1));
+    }
+
+    @Test
+    void keepsDelimitersInQuotedFields() throws IOException {
+        List<String[]> records = readAll("S1,\"liver, left lobe\",F\n", ',');
+
+        assertArrayEquals(new String[]{"S1", "liver, left lobe", "F"}, records.get(0));
+    }
+
+    @Test
+    void decodesEscapedQuotes() throws IOException {
+        List<String[]> records = readAll("S1,\"the \"\"left\"\" lobe\",\"\"\"\"\n", ',');
+
+        assertArrayEquals(new String[]{"S1", "the \"left\" lobe", "\""}, records.get(0));
+    }
+
+    @Test
+    void endsRecordsWithCrLfAndCr() throws IOException {
+        List<String[]> records = readAll("a,b\r\nc,d\re,f", ',');
+
+        assertEquals(3, records.size());
+        assertArrayEquals(new String[]{"a", "b"}, records.get(0));
+        assertArrayEquals(new String[]{"c", "d"}, records.get(1));
+        assertArrayEquals(new String[]{"e", "f"}, records.get(2));
+    }
+
+    @Test
+    void keepsLineBreaksInQuotedFields() throws IOException {
+        List<String[]> records = readAll("S1,\"first line\r\nsecond line\nthird\"\nS2,x\n", ',');
+
+        assertEquals(2, records.size());
+        assertArrayEquals(new String[]{"S1", "first line\r\nsecond line\nthird"}, records.get(0));
+        assertArrayEquals(new String[]{"S2", "x"}, records.get(1));
+    }
+
+    @Test
+    void skipsEmptyLines() throws IOException {
+        List<String[]> records = readAll("\na,b\n\n\r\n\rc,d\n\n", ',');
+
+        assertEquals(2, records.size());
+        assertArrayEquals(new String[]{"a", "b"}, records.get(0));
+        assertArrayEquals(new String[]{"c", "d"}, records.get(1));
+    }
+
+    @Test
+    void keepsEmptyFields() throws IOException {
+        List<String[]> records = readAll(",a,,\n", ',');
+
+        assertArrayEquals(new String[]{"", "a", "", ""}, records.get(0));
+    }
+
+    @Test
+    void splitsOnTheGivenDelimiterOnly() throws IOException {
+        List<String[]> records = readAll("a,b\tc|d\n", '\t');
+
+        assertArrayEquals(new String[]{"a,b", "c|d"}, records.get(0));
+    }
+
+    @Test
+    void readsRecordsLongerThanTheBuffers() throws IOException {
+        String longField = "x".repeat(20_000);
+        StringBuilder text = new StringBuilder(longField);
+        for (int i = 0; i < 100; i++) {
+            text.append(',').append(i);
+        }
+
+        List<String[]> records = readAll(text.toString(), ',');
+
+        assertEquals(1, records.size());
+        assertEquals(101, records.get(0).length);
+        assertEquals(longField, records.get(0)[0]);
+        assertEquals("99", records.get(0)[100]);
+    }
+
+    @Test
+    void comparesFieldsWithoutDecodingThem() throws IOException {
+        try (CsvRecordReader reader = new CsvRecordReader(new StringReader("TYPE,\"group\"\n"), ',')) {
+            assertTrue(reader.next());
+            assertEquals(2, reader.getFieldCount());
+            assertTrue(reader.fieldEquals(0, "TYPE"));
+            assertTrue(reader.fieldEquals(1, "group"));
+            assertFalse(reader.fieldEquals(1, "groups"));
+            assertThrows(IndexOutOfBoundsException.class, () -> reader.getField(2));
+            assertFalse(reader.next());
+            assertEquals(0, reader.getFieldCount());
+        }
+    }
+}
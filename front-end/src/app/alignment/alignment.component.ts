@@ -30,6 +30,8 @@ import { ErrorComponent } from '../dialog-components/error/error.component';
 import { MatProgressSpinnerModule } from '@angular/material/progress-spinner';
 import { saveAs } from 'file-saver';
 import { environment } from '../../environment';
+import { AlignmentUploadSession, FastqUpload } from '../models/Experiment/alignmentUploadSession';
+import { firstValueFrom } from 'rxjs';
 // #endregion
 
 @Component({
@@ -92,6 +94,7 @@ export class AlignmentComponent implements AfterViewInit, OnInit {
   sampleFq2FilesList: File[] = [];
   allFq1FilesList: File[] = [];
   allFq2FilesList: File[] = [];
+  private readonly maxPartsInFlight = 4;
   showFileDropdown = false;
   filesDataSource: MatTableDataSource<any> = new MatTableDataSource<any>();
   pageSize: number = 6;
@@ -271,13 +274,26 @@ export class AlignmentComponent implements AfterViewInit, OnInit {
   //#endregion
 
   //#region 📁 FastQ File Management
-  private addFastqFiles(formData: FormData) {
-    this.allFq1FilesList.forEach(file => {
-      formData.append('fq1Files', file);
-    });
-    this.allFq2FilesList.forEach(file => {
-      formData.append('fq2Files', file);
-    });
+  private describeFastqFiles(files: File[]) {
+    return files.map(file => ({ name: file.name, size: file.size, contentType: file.type || null }));
+  }
+  private async uploadFastqFiles(session: AlignmentUploadSession) {
+    const filesByName = new Map(this.allFq1FilesList.concat(this.allFq2FilesList).map(file => [file.name, file]));
+    const parts = session.fq1Files.concat(session.fq2Files).flatMap(upload =>
+      upload.partUrls.map((url, index) => ({ file: filesByName.get(upload.fileName)!, upload, url, index })));
+    let next = 0;
+    const uploadNextParts = async () => {
+      while (next < parts.length) {
+        const part = parts[next++];
+        await this.uploadFastqPart(part.file, part.upload, part.url, part.index);
+      }
+    };
+    await Promise.all(Array.from({ length: Math.min(this.maxPartsInFlight, parts.length) }, uploadNextParts));
+  }
+  private uploadFastqPart(file: File, upload: FastqUpload, url: string, index: number) {
+    const start = index * upload.partSize;
+    const body = file.slice(start, Math.min(start + upload.partSize, upload.size));
+    return firstValueFrom(this.http.put(url, body, { responseType: 'text' }));
   }
   onFqFileSelected(event: Event, sampleIndex: number, fileType: 'fq1Name' | 'fq2Name') {
     const input = event.target as HTMLInputElement;
@@ -424,33 +440,34 @@ export class AlignmentComponent implements AfterViewInit, OnInit {
   // #endregion
 
   //#region 📦 Alignment Submission
-  onAlignmentSubmit() {
+  async onAlignmentSubmit() {
     this.loadingOnSavingAlignment = true;
     this.allSamplesData.selectedAligner = this.selectedAligner;
     this.cdr.detectChanges();
-    const jsonNewData = JSON.stringify(this.allSamplesData);
-    const formData = new FormData();
-    formData.append('jsonData', jsonNewData);
-    formData.append('experimentName', this.selectedMetadataFileDetails)
-    this.addFastqFiles(formData);
-    this.saveAlignmentParametersAsJSON(formData);
-  }
-  private saveAlignmentParametersAsJSON(formData: FormData) {
-    this.http.post(`${environment.apiUrl}/alignment/save-json`, formData, { responseType: 'text' }).subscribe(
-      {
-        next: () => {
-          this.isParametersSubmited = true;
-          this.loadingOnSavingAlignment = false;
-          this.toastr.success('Alignment parameters submitted successfully', 'Success');
-          this.cdr.detectChanges();
-        },
-        error: (error: any) => {
-          console.error('Error:', error);
-          this.loadingOnSavingAlignment = false;
-          this.handleAlignmentSubmissionError(error);
-          this.cdr.detectChanges();
-        }
-      });
+    const request = {
+      experimentName: this.selectedMetadataFileDetails,
+      jsonData: JSON.stringify(this.allSamplesData),
+      fq1Files: this.describeFastqFiles(this.allFq1FilesList),
+      fq2Files: this.describeFastqFiles(this.allFq2FilesList)
+    };
+    let session: AlignmentUploadSession | undefined;
+    try {
+      // The FASTQ files are uploaded straight to MinIO, the server only records the alignment
+      session = await firstValueFrom(this.http.post<AlignmentUploadSession>(`${environment.apiUrl}/alignment/uploads`, request));
+      await this.uploadFastqFiles(session);
+      await firstValueFrom(this.http.post(`${environment.apiUrl}/alignment/uploads/${session.sessionId}/commit`, null, { responseType: 'text' }));
+      this.isParametersSubmited = true;
+      this.toastr.success('Alignment parameters submitted successfully', 'Success');
+    } catch (error: any) {
+      console.error('Error:', error);
+      if (session && error.status !== 409) {
+        this.http.delete(`${environment.apiUrl}/alignment/uploads/${session.sessionId}`).subscribe({ error: () => { } });
+      }
+      this.handleAlignmentSubmissionError(error);
+    } finally {
+      this.loadingOnSavingAlignment = false;
+      this.cdr.detectChanges();
+    }
   }
   //#endregion
 
@@ -500,6 +517,8 @@ export class AlignmentComponent implements AfterViewInit, OnInit {
   private handleAlignmentSubmissionError(error: any) {
     if (error.status === 400) {
       this.handleBadRequetErrors(error);
+    } else if (error.status === 404 || error.status === 409) {
+      this.errors = [error.error];
     } else if (error.status === 0) {
       this.errors = ['Unable to connect to the server. Please check your network connection.'];
     } else if (error.status >= 500) {
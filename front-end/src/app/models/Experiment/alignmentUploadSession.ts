@@ -0,0 +1,19 @@
+export interface FastqUpload {
+    fileName: string;
+    objectName: string;
+    uploadId: string;
+    tag: string;
+    size: number;
+    partSize: number;
+    partUrls: string[];
+}
+
+export interface AlignmentUploadSession {
+    sessionId: string;
+    experimentName: string;
+    folderName: string;
+    createdAt: string;
+    expiresAt: string;
+    fq1Files: FastqUpload[];
+    fq2Files: FastqUpload[];
+}
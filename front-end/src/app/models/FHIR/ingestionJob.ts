@@ -0,0 +1,12 @@
+export interface IngestionJob {
+  jobId: string;
+  filename: string;
+  status: 'Queued' | 'Running' | 'Done' | 'Error';
+  submittedAt: string;
+  startedAt?: string;
+  finishedAt?: string;
+  error?: string;
+  rowsProcessed: number;
+  resourcesWritten: number;
+  throughput: number;
+}
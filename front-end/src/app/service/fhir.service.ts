@@ -1,11 +1,12 @@
 import { Injectable } from '@angular/core';
 import { HttpClient } from '@angular/common/http';
-import { Observable } from 'rxjs';
+import { Observable, first, map, switchMap, timer } from 'rxjs';
 import { Bundle } from '../models/FHIR/patientResource';
 import { SpecimenBundle } from '../models/FHIR/specimenResource';
 import { environment } from '../../environment';
 import { MolecularSequenceBundle } from '../models/FHIR/molecularSequenceResource';
 import { GroupBundle } from '../models/FHIR/groupResource';
+import { IngestionJob } from '../models/FHIR/ingestionJob';
 
 @Injectable({
   providedIn: 'root'
@@ -21,9 +22,23 @@ export class FHIRService {
     const filename = encodeURIComponent(identifier);
     return this.http.get<SpecimenBundle>(`${environment.fhirApiUrl}/Specimen?accession=${filename}`);
   }
-  saveResourcesOnServer(identifier: string){
+  saveResourcesOnServer(identifier: string): Observable<IngestionJob> {
     const filename = encodeURIComponent(identifier);
-    return this.http.post(`${environment.apiUrl}/resourceFHIR?filename=${filename}`,null);
+    return this.http.post<IngestionJob>(`${environment.apiUrl}/resourceFHIR?filename=${filename}`, null).pipe(
+      switchMap(job => this.waitForIngestionJob(job.jobId))
+    );
+  }
+  private waitForIngestionJob(jobId: string): Observable<IngestionJob> {
+    return timer(0, 1000).pipe(
+      switchMap(() => this.http.get<IngestionJob>(`${environment.apiUrl}/resourceFHIR/status?jobId=${encodeURIComponent(jobId)}`)),
+      first(job => job.status === 'Done' || job.status === 'Error'),
+      map(job => {
+        if (job.status === 'Error') {
+          throw new Error(job.error);
+        }
+        return job;
+      })
+    );
   }
   getAllMolecularSequences(identifier: string): Observable<MolecularSequenceBundle> {
     const filename = encodeURIComponent(identifier);
@@ -24,10 +24,9 @@ export class FileManagementService {
     }
     return this.getTooltipResult(array);
   }
-  prepareUploadFormData(csvContent: string, fileName: string, delimiter: string): FormData {
+  prepareUploadFormData(csvContent: string, fileName: string): FormData {
     const blob = new Blob([csvContent], { type: 'text/csv' });
     const formData = new FormData();
-    formData.append('detectedDelimiter', delimiter);
     formData.append('file', blob, `${fileName.trim()}.csv`);
     return formData;
   }
@@ -188,12 +188,11 @@ export class UploadMetadataComponent implements OnInit, AfterViewInit, OnDestroy
       reader.readAsText(this.selectedFile);
     }
   }
-  private async uploadFile(csvContent: string, delimiter: string): Promise<void> {
+  private async uploadFile(csvContent: string): Promise<void> {
     this.uploadLoading = true;
     const formData = this.fileManagementService.prepareUploadFormData(
       csvContent,
-      this.newFileName,
-      delimiter
+      this.newFileName
     );
     try {
       await firstValueFrom(
@@ -238,7 +237,7 @@ export class UploadMetadataComponent implements OnInit, AfterViewInit, OnDestroy
         return;
       }
       const modifiedCsv = this.papa.unparse({ fields: headers, data });
-      await this.uploadFile(modifiedCsv, result.meta.delimiter);
+      await this.uploadFile(modifiedCsv);
     } catch (error) {
       this.handleUploadError(error);
     }